@@ -16,11 +16,10 @@
 # directory before creating the final CTS distribution.
 CTS_TESTCASES_OUT := $(HOST_OUT)/cts/android-cts/repository/testcases
 
-# Scanners of source files for tests which are then inputed into
+# Scanners of native sources and java classes for tests which are then inputed into
 # the XML generator to produce test XMLs.
 CTS_NATIVE_TEST_SCANNER := $(HOST_OUT_EXECUTABLES)/cts-native-scanner
 CTS_JAVA_TEST_SCANNER := $(HOST_OUT_EXECUTABLES)/cts-java-scanner
-CTS_JAVA_TEST_SCANNER_DOCLET := $(HOST_OUT_JAVA_LIBRARIES)/cts-java-scanner-doclet.jar
 
 # Generator of test XMLs from scanner output.
 CTS_XML_GENERATOR := $(HOST_OUT_EXECUTABLES)/cts-xml-generator
@@ -31,6 +30,11 @@ CTS_EXPECTATIONS := cts/tests/expectations/knownfailures.txt
 # File indicating which tests should be blacklisted due to unsupported abi.
 CTS_UNSUPPORTED_ABIS := cts/tests/expectations/unsupportedabis.txt
 
+# Compiled snapshots of the expectation files, which the XML generator maps
+# instead of parsing the files again for every test package.
+CTS_EXPECTATIONS_SNAPSHOT_DIR := $(HOST_OUT)/cts/expectations-snapshots
+CTS_EXPECTATIONS_SNAPSHOTS := $(CTS_EXPECTATIONS_SNAPSHOT_DIR)/snapshots.stamp
+
 # Holds the target architecture to build for.
 CTS_TARGET_ARCH := $(TARGET_ARCH)
 
@@ -36,7 +36,8 @@ include $(BUILD_HOST_JAVA_LIBRARY)
 
 include $(CLEAR_VARS)
 
-LOCAL_SRC_FILES := $(call all-java-files-under, tests/src)
+LOCAL_SRC_FILES := $(call all-java-files-under, tests/src) \
+    ../../../libs/commonutil/src/com/android/cts/util/TimeoutReq.java
 
 LOCAL_JAVA_LIBRARIES := compatibility-tradefed_v2 compatibility-java-scanner_v2 junit
 
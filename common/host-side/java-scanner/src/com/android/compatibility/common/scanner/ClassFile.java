@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.scanner;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a class file needed to find tests: names, access flags, method descriptors,
+ * annotations and the nesting of classes. Everything else is skipped while reading.
+ * <p>
+ * Class names are internal names, such as "junit/framework/TestCase".
+ */
+public final class ClassFile {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /** A method with the annotations visible in its source. */
+    public static final class Method {
+        private final String mName;
+        private final String mDescriptor;
+        private final int mAccess;
+        private final Map<String, Annotation> mAnnotations;
+
+        Method(String name, String descriptor, int access, Map<String, Annotation> annotations) {
+            mName = name;
+            mDescriptor = descriptor;
+            mAccess = access;
+            mAnnotations = annotations;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /** Returns the descriptor, such as "()V" for a method without parameters. */
+        public String getDescriptor() {
+            return mDescriptor;
+        }
+
+        public int getAccess() {
+            return mAccess;
+        }
+
+        /**
+         * Returns the annotation of the given type descriptor, such as "Lorg/junit/Test;", or
+         * null.
+         */
+        public Annotation getAnnotation(String type) {
+            return mAnnotations.get(type);
+        }
+    }
+
+    /** An annotation with its constant values. Other kinds of values are left out. */
+    public static final class Annotation {
+        private final boolean mRuntimeVisible;
+        private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+        Annotation(boolean runtimeVisible) {
+            mRuntimeVisible = runtimeVisible;
+        }
+
+        /** Returns true if reflection sees the annotation, false for CLASS retention. */
+        public boolean isRuntimeVisible() {
+            return mRuntimeVisible;
+        }
+
+        /** Returns the Integer, Long, String, ... given for the element, or null. */
+        public Object getValue(String element) {
+            return mValues.get(element);
+        }
+    }
+
+    /** An entry of the InnerClasses attribute. */
+    public static final class InnerClass {
+        private final String mOuterName;
+        private final String mSimpleName;
+        private final int mAccess;
+
+        InnerClass(String outerName, String simpleName, int access) {
+            mOuterName = outerName;
+            mSimpleName = simpleName;
+            mAccess = access;
+        }
+
+        /** Returns the enclosing class, or null for local and anonymous classes. */
+        public String getOuterName() {
+            return mOuterName;
+        }
+
+        /** Returns the name in the source, or null for anonymous classes. */
+        public String getSimpleName() {
+            return mSimpleName;
+        }
+
+        /** Returns the access flags as declared in the source. */
+        public int getAccess() {
+            return mAccess;
+        }
+    }
+
+    private String mName;
+    private String mSuperName;
+    private int mAccess;
+    private final List<Method> mMethods = new ArrayList<Method>();
+    private Map<String, Annotation> mAnnotations = Collections.emptyMap();
+    private final Map<String, InnerClass> mInnerClasses = new HashMap<String, InnerClass>();
+
+    private ClassFile() {}
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns the name of the superclass, or null for java/lang/Object. */
+    public String getSuperName() {
+        return mSuperName;
+    }
+
+    public int getAccess() {
+        return mAccess;
+    }
+
+    /**
+     * Returns the annotation of the class with the given type descriptor, or null. Inherited
+     * annotations are not included.
+     */
+    public Annotation getAnnotation(String type) {
+        return mAnnotations.get(type);
+    }
+
+    /** Returns the methods in the order of the class file. */
+    public List<Method> getMethods() {
+        return Collections.unmodifiableList(mMethods);
+    }
+
+    /**
+     * Returns the InnerClasses entry of the given class, which is this class or one it
+     * references, or null if the class is not nested.
+     */
+    public InnerClass getInnerClass(String name) {
+        return mInnerClasses.get(name);
+    }
+
+    /**
+     * Reads a class file. The stream is not closed.
+     *
+     * @throws IOException if the stream does not hold a valid class file
+     */
+    public static ClassFile parse(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a class file");
+        }
+        in.readUnsignedShort(); // minor_version
+        in.readUnsignedShort(); // major_version
+
+        int count = in.readUnsignedShort();
+        Object[] constants = new Object[count];
+        int[] classNames = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    constants[i] = in.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                    constants[i] = in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    constants[i] = in.readFloat();
+                    break;
+                case CONSTANT_LONG:
+                    constants[i++] = in.readLong();
+                    break;
+                case CONSTANT_DOUBLE:
+                    constants[i++] = in.readDouble();
+                    break;
+                case CONSTANT_CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                default:
+                    throw new IOException("unknown constant pool tag " + tag);
+            }
+        }
+
+        ClassFile classFile = new ClassFile();
+        classFile.mAccess = in.readUnsignedShort();
+        classFile.mName = className(constants, classNames, in.readUnsignedShort());
+        classFile.mSuperName = className(constants, classNames, in.readUnsignedShort());
+        int interfaces = in.readUnsignedShort();
+        skip(in, interfaces * 2);
+
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            skip(in, 6);
+            skipAttributes(in);
+        }
+
+        int methods = in.readUnsignedShort();
+        for (int i = 0; i < methods; i++) {
+            int access = in.readUnsignedShort();
+            String name = (String) constants[in.readUnsignedShort()];
+            String descriptor = (String) constants[in.readUnsignedShort()];
+            Map<String, Annotation> annotations = Collections.emptyMap();
+            int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                String attribute = (String) constants[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (isAnnotations(attribute)) {
+                    annotations = readAnnotations(in, constants, attribute, annotations);
+                } else {
+                    skip(in, length);
+                }
+            }
+            classFile.mMethods.add(new Method(name, descriptor, access, annotations));
+        }
+
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String attribute = (String) constants[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("InnerClasses".equals(attribute)) {
+                int classes = in.readUnsignedShort();
+                for (int j = 0; j < classes; j++) {
+                    String inner = className(constants, classNames, in.readUnsignedShort());
+                    String outer = className(constants, classNames, in.readUnsignedShort());
+                    int simpleName = in.readUnsignedShort();
+                    int access = in.readUnsignedShort();
+                    classFile.mInnerClasses.put(inner, new InnerClass(outer,
+                            simpleName == 0 ? null : (String) constants[simpleName], access));
+                }
+            } else if (isAnnotations(attribute)) {
+                classFile.mAnnotations = readAnnotations(in, constants, attribute,
+                        classFile.mAnnotations);
+            } else {
+                skip(in, length);
+            }
+        }
+        return classFile;
+    }
+
+    // javadoc sees annotations of every retention, reflection only the visible ones
+    private static boolean isAnnotations(String attribute) {
+        return "RuntimeVisibleAnnotations".equals(attribute)
+                || "RuntimeInvisibleAnnotations".equals(attribute);
+    }
+
+    // adds the annotations of the attribute to the given map, or a new one if it is empty
+    private static Map<String, Annotation> readAnnotations(DataInputStream in, Object[] constants,
+            String attribute, Map<String, Annotation> annotations) throws IOException {
+        if (annotations.isEmpty()) {
+            annotations = new HashMap<String, Annotation>();
+        }
+        boolean runtimeVisible = "RuntimeVisibleAnnotations".equals(attribute);
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String type = (String) constants[in.readUnsignedShort()];
+            annotations.put(type, readAnnotation(in, constants, runtimeVisible));
+        }
+        return annotations;
+    }
+
+    private static String className(Object[] constants, int[] classNames, int index) {
+        return index == 0 ? null : (String) constants[classNames[index]];
+    }
+
+    // reads the annotation after its type, keeping the constant element values
+    private static Annotation readAnnotation(DataInputStream in, Object[] constants,
+            boolean runtimeVisible) throws IOException {
+        Annotation annotation = new Annotation(runtimeVisible);
+        int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            String element = (String) constants[in.readUnsignedShort()];
+            Object value = readElementValue(in, constants);
+            if (value != null) {
+                annotation.mValues.put(element, value);
+            }
+        }
+        return annotation;
+    }
+
+    private static Object readElementValue(DataInputStream in, Object[] constants)
+            throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 's':
+                return constants[in.readUnsignedShort()];
+            case 'e':
+                skip(in, 4);
+                return null;
+            case 'c':
+                skip(in, 2);
+                return null;
+            case '@':
+                in.readUnsignedShort();
+                readAnnotation(in, constants, false);
+                return null;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    readElementValue(in, constants);
+                }
+                return null;
+            default:
+                throw new IOException("unknown element value tag " + (char) tag);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            in.readUnsignedShort();
+            skip(in, in.readInt());
+        }
+    }
+
+    private static void skip(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new IOException("truncated class file");
+            }
+            length -= skipped;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -29,6 +30,8 @@ import java.util.List;
 
 /**
  * Scans a source directory for java tests and outputs a list of test classes and methods.
+ * <p>
+ * Given -j, it scans compiled classes with {@link TestClassScanner} instead of running javadoc.
  */
 public class JavaScanner {
 
@@ -132,6 +135,10 @@ public class JavaScanner {
 
     public static void main(String[] args) throws Exception {
         final HashMap<String, String> argsMap = KeyValueArgsParser.parse(args);
+        final String jarPath = argsMap.get("-j");
+        if (jarPath != null) {
+            System.exit(scanClasses(jarPath, argsMap.get("-c"), argsMap.get("-t")));
+        }
         final String sourcePath = argsMap.get("-s");
         final String docletPath = argsMap.get("-d");
         if (sourcePath == null || docletPath == null) {
@@ -140,9 +147,38 @@ public class JavaScanner {
         System.exit(new JavaScanner(new File(sourcePath), new File(docletPath)).scan());
     }
 
+    /**
+     * Lists the tests of compiled classes, which is much faster than running javadoc.
+     *
+     * @param jarPath The jars or class directories to scan, separated like a class path.
+     * @param classPath The class path holding their superclasses, or null.
+     * @param threads The number of threads, or null for one per processor.
+     */
+    static int scanClasses(String jarPath, String classPath, String threads) throws Exception {
+        final int threadCount = (threads == null)
+                ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+        final TestClassScanner scanner = new TestClassScanner(toFiles(jarPath),
+                toFiles(classPath), threadCount);
+        scanner.scan(new PrintWriter(System.out));
+        return 0;
+    }
+
+    private static List<File> toFiles(String path) {
+        final ArrayList<File> files = new ArrayList<File>();
+        if (path != null) {
+            for (String s : path.split(File.pathSeparator)) {
+                if (!s.isEmpty()) {
+                    files.add(new File(s));
+                }
+            }
+        }
+        return files;
+    }
+
     private static void usage(String[] args) {
         System.err.println("Arguments: " + Arrays.toString(args));
         System.err.println("Usage: javascanner -s SOURCE_DIR -d DOCLET_PATH");
+        System.err.println("       javascanner -j JARS_OR_CLASS_DIRS [-c CLASS_PATH] [-t THREADS]");
         System.exit(1);
     }
 }
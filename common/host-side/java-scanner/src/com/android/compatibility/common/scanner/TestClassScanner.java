@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists the tests of compiled classes, in the format of the javadoc based scanners:
+ *
+ * suite:com.android.sample.cts
+ * case:SampleDeviceTest
+ * test:testSharedPreferences
+ * test:testTimeout:5
+ *
+ * The class files of the given jars or directories are parsed in parallel. Superclasses are
+ * looked up in the same files and on a class path, which has to hold the test frameworks, as
+ * test methods of base classes such as android.test.AndroidTestCase are listed too.
+ * <p>
+ * Like javadoc, only public and protected classes and methods are considered.
+ */
+public class TestClassScanner {
+
+    private static final String JUNIT_TEST_CASE_CLASS_NAME = "junit/framework/TestCase";
+    private static final String JUNIT4_TEST_ANNOTATION = "Lorg/junit/Test;";
+    private static final String TIMEOUT_ANNOTATION = "Lcom/android/cts/util/TimeoutReq;";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final List<File> mInputs;
+    private final List<File> mClassPath;
+    private final int mThreads;
+    private boolean mJUnit4;
+    private boolean mTimeouts;
+
+    /** Class path entries, opened on the first lookup of a class outside the inputs. */
+    private Map<String, Object> mClassPathIndex;
+    private final List<ZipFile> mOpenJars = new ArrayList<ZipFile>();
+    private final Map<String, ClassFile> mClassPathCache = new HashMap<String, ClassFile>();
+    private final Set<String> mMissing = new HashSet<String>();
+
+    /**
+     * @param inputs The jars or class directories whose tests are listed.
+     * @param classPath The jars or class directories holding their superclasses.
+     * @param threads The number of threads parsing class files.
+     */
+    public TestClassScanner(List<File> inputs, List<File> classPath, int threads) {
+        mInputs = inputs;
+        mClassPath = classPath;
+        mThreads = Math.max(1, threads);
+    }
+
+    /** Also lists classes with JUnit4 @Test methods, as the CTS doclet does. */
+    public void setJUnit4(boolean junit4) {
+        mJUnit4 = junit4;
+    }
+
+    /**
+     * Appends the timeouts of @TimeoutReq and @Test(timeout) in minutes, as the CTS doclet does.
+     */
+    public void setTimeouts(boolean timeouts) {
+        mTimeouts = timeouts;
+    }
+
+    /**
+     * Writes the tests to the given writer, the classes ordered by name.
+     */
+    public void scan(PrintWriter writer) throws IOException {
+        List<ZipFile> inputJars = new ArrayList<ZipFile>();
+        try {
+            Map<String, ClassFile> classes = parseInputs(inputJars);
+            for (ClassFile clazz : classes.values()) {
+                writeTests(writer, clazz, classes);
+            }
+            writer.flush();
+        } finally {
+            closeAll(inputJars);
+            closeAll(mOpenJars);
+        }
+    }
+
+    private Map<String, ClassFile> parseInputs(List<ZipFile> jars) throws IOException {
+        List<Callable<ClassFile>> tasks = new ArrayList<Callable<ClassFile>>();
+        for (File input : mInputs) {
+            if (input.isDirectory()) {
+                addClassFiles(tasks, input);
+            } else {
+                final ZipFile jar = new ZipFile(input);
+                jars.add(jar);
+                for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    if (isClassFile(entry.getName())) {
+                        tasks.add(new Callable<ClassFile>() {
+                            @Override
+                            public ClassFile call() throws IOException {
+                                return parse(jar.getInputStream(entry));
+                            }
+                        });
+                    }
+                }
+            }
+        }
+
+        Map<String, ClassFile> classes = new TreeMap<String, ClassFile>();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            for (Future<ClassFile> result : executor.invokeAll(tasks)) {
+                ClassFile clazz = result.get();
+                classes.put(clazz.getName(), clazz);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while parsing classes", e);
+        } catch (ExecutionException e) {
+            throw new IOException("failed to parse classes", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return classes;
+    }
+
+    private static void addClassFiles(List<Callable<ClassFile>> tasks, File dir) {
+        for (final File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                addClassFiles(tasks, file);
+            } else if (isClassFile(file.getName())) {
+                tasks.add(new Callable<ClassFile>() {
+                    @Override
+                    public ClassFile call() throws IOException {
+                        return parse(new FileInputStream(file));
+                    }
+                });
+            }
+        }
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(CLASS_SUFFIX) && !name.endsWith("module-info.class")
+                && !name.startsWith("META-INF/");
+    }
+
+    private static String toClassName(String fileName) {
+        return fileName.substring(0, fileName.length() - CLASS_SUFFIX.length());
+    }
+
+    private static ClassFile parse(InputStream input) throws IOException {
+        InputStream in = new BufferedInputStream(input);
+        try {
+            return ClassFile.parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeTests(PrintWriter writer, ClassFile clazz, Map<String, ClassFile> classes)
+            throws IOException {
+        if ((clazz.getAccess() & ClassFile.ACC_ABSTRACT) != 0
+                || (clazz.getAccess() & ClassFile.ACC_SYNTHETIC) != 0
+                || !isDocumented(clazz, clazz.getName(), classes)) {
+            return;
+        }
+        String name = sourceName(clazz, clazz.getName());
+        if (name == null) {
+            return;
+        }
+
+        boolean isJUnit3 = isJUnit3TestCase(clazz, classes);
+        if (!isJUnit3 && !(mJUnit4 && isJUnit4TestClass(clazz))) {
+            return;
+        }
+
+        String className = clazz.getName();
+        int slash = className.lastIndexOf('/');
+        writer.append("suite:").println(slash < 0 ? "" : className.substring(0, slash)
+                .replace('/', '.'));
+        writer.append("case:").println(name);
+        for (ClassFile c = clazz; c != null; c = superclass(c, classes)) {
+            for (ClassFile.Method method : c.getMethods()) {
+                if (!isDocumented(method)) {
+                    continue;
+                }
+                int timeout = -1;
+                if (isJUnit3) {
+                    if (!method.getName().startsWith("test")) {
+                        continue;
+                    }
+                    ClassFile.Annotation timeoutReq = method.getAnnotation(TIMEOUT_ANNOTATION);
+                    if (timeoutReq != null && timeoutReq.getValue("minutes") != null) {
+                        timeout = (Integer) timeoutReq.getValue("minutes");
+                    }
+                } else {
+                    ClassFile.Annotation test = method.getAnnotation(JUNIT4_TEST_ANNOTATION);
+                    if (test == null) {
+                        continue;
+                    }
+                    if (test.getValue("timeout") != null) {
+                        /* JUnit4 timeouts are in milliseconds. */
+                        timeout = (int) (((Long) test.getValue("timeout")) / 60000L);
+                    }
+                }
+
+                writer.append("test:");
+                if (mTimeouts && timeout >= 0) {
+                    writer.append(method.getName()).println(":" + timeout);
+                } else {
+                    writer.println(method.getName());
+                }
+            }
+        }
+    }
+
+    private boolean isJUnit3TestCase(ClassFile clazz, Map<String, ClassFile> classes)
+            throws IOException {
+        // the name is enough, the class itself need not be on the class path
+        for (String name = clazz.getSuperName(); name != null; ) {
+            if (JUNIT_TEST_CASE_CLASS_NAME.equalsIgnoreCase(name)) {
+                return true;
+            }
+            ClassFile superclass = lookup(name, classes);
+            name = (superclass == null) ? null : superclass.getSuperName();
+        }
+        return false;
+    }
+
+    private static boolean isJUnit4TestClass(ClassFile clazz) {
+        for (ClassFile.Method method : clazz.getMethods()) {
+            if (isDocumented(method) && method.getAnnotation(JUNIT4_TEST_ANNOTATION) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDocumented(ClassFile.Method method) {
+        return (method.getAccess() & (ClassFile.ACC_PUBLIC | ClassFile.ACC_PROTECTED)) != 0
+                && (method.getAccess() & (ClassFile.ACC_SYNTHETIC | ClassFile.ACC_BRIDGE)) == 0
+                && !method.getName().startsWith("<");
+    }
+
+    /**
+     * Returns true if javadoc would document the given class, which is the class itself or one
+     * of its enclosing classes: a public top-level class, or a public or protected member of
+     * such a class.
+     */
+    private static boolean isDocumented(ClassFile clazz, String name,
+            Map<String, ClassFile> classes) {
+        ClassFile.InnerClass inner = clazz.getInnerClass(name);
+        if (inner == null) {
+            ClassFile topLevel = name.equals(clazz.getName()) ? clazz : classes.get(name);
+            return topLevel == null || (topLevel.getAccess() & ClassFile.ACC_PUBLIC) != 0;
+        }
+        return (inner.getAccess() & (ClassFile.ACC_PUBLIC | ClassFile.ACC_PROTECTED)) != 0
+                && inner.getOuterName() != null
+                && isDocumented(clazz, inner.getOuterName(), classes);
+    }
+
+    /**
+     * Returns the name of the class as in its source, such as "Outer.Inner", or null for local
+     * and anonymous classes.
+     */
+    private static String sourceName(ClassFile clazz, String name) {
+        ClassFile.InnerClass inner = clazz.getInnerClass(name);
+        if (inner == null) {
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+        if (inner.getOuterName() == null || inner.getSimpleName() == null) {
+            return null;
+        }
+        String outer = sourceName(clazz, inner.getOuterName());
+        return (outer == null) ? null : outer + "." + inner.getSimpleName();
+    }
+
+    private ClassFile superclass(ClassFile clazz, Map<String, ClassFile> classes)
+            throws IOException {
+        return (clazz.getSuperName() == null) ? null : lookup(clazz.getSuperName(), classes);
+    }
+
+    /** Returns the class from the inputs or the class path, or null if it is in neither. */
+    private ClassFile lookup(String name, Map<String, ClassFile> classes) throws IOException {
+        ClassFile clazz = classes.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        clazz = mClassPathCache.get(name);
+        if (clazz != null || mMissing.contains(name)) {
+            return clazz;
+        }
+
+        if (mClassPathIndex == null) {
+            mClassPathIndex = indexClassPath();
+        }
+        Object location = mClassPathIndex.get(name);
+        if (location instanceof File) {
+            clazz = parse(new FileInputStream((File) location));
+        } else if (location != null) {
+            ZipFile jar = (ZipFile) location;
+            clazz = parse(jar.getInputStream(jar.getEntry(name + CLASS_SUFFIX)));
+        }
+        if (clazz == null) {
+            if (!name.startsWith("java/")) {
+                System.err.println("warning: class not found on the class path: "
+                        + name.replace('/', '.'));
+            }
+            mMissing.add(name);
+        } else {
+            mClassPathCache.put(name, clazz);
+        }
+        return clazz;
+    }
+
+    // maps class names to their file or jar, the first entry of the class path wins
+    private Map<String, Object> indexClassPath() throws IOException {
+        Map<String, Object> index = new HashMap<String, Object>();
+        for (File entry : mClassPath) {
+            if (entry.isDirectory()) {
+                indexDirectory(index, entry, "");
+            } else if (entry.isFile()) {
+                ZipFile jar = new ZipFile(entry);
+                mOpenJars.add(jar);
+                for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+                    String name = e.nextElement().getName();
+                    if (isClassFile(name)) {
+                        String className = toClassName(name);
+                        if (!index.containsKey(className)) {
+                            index.put(className, jar);
+                        }
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void indexDirectory(Map<String, Object> index, File dir, String prefix) {
+        for (File file : dir.listFiles()) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                indexDirectory(index, file, name + "/");
+            } else if (isClassFile(name)) {
+                String className = toClassName(name);
+                if (!index.containsKey(className)) {
+                    index.put(className, file);
+                }
+            }
+        }
+    }
+
+    private static void closeAll(List<ZipFile> jars) throws IOException {
+        for (ZipFile jar : jars) {
+            jar.close();
+        }
+        jars.clear();
+    }
+}
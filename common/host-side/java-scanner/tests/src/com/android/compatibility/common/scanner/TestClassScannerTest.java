@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.scanner;
+
+import com.android.cts.util.TimeoutReq;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Scans the classes of this test, which hold the sample test cases below.
+ */
+public class TestClassScannerTest extends TestCase {
+
+    private static final String VALID_RESULT =
+        "suite:com.android.compatibility.common.scanner\n" +
+        "case:TestClassScannerTest.ValidTest\n" +
+        "test:testA\n" +
+        "test:testB\n";
+
+    private static final String SUBCLASS_RESULT =
+        "suite:com.android.compatibility.common.scanner\n" +
+        "case:TestClassScannerTest.ValidSubclassTest\n" +
+        "test:testC\n" +
+        "test:testA\n" +
+        "test:testB\n";
+
+    private static final String JUNIT4_RESULT =
+        "suite:com.android.compatibility.common.scanner\n" +
+        "case:TestClassScannerTest.JUnit4Test\n" +
+        "test:testA\n" +
+        "test:checkB\n";
+
+    private static final String TIMEOUT_RESULT =
+        "suite:com.android.compatibility.common.scanner\n" +
+        "case:TestClassScannerTest.TimeoutTest\n" +
+        "test:testA:5\n" +
+        "test:testB\n";
+
+    private static final String JUNIT4_TIMEOUT_RESULT =
+        "suite:com.android.compatibility.common.scanner\n" +
+        "case:TestClassScannerTest.JUnit4TimeoutTest\n" +
+        "test:testA:2\n" +
+        "test:testB:0\n" +
+        "test:testC\n";
+
+    public static class ValidTest extends TestCase {
+        public void testA() {
+            // anonymous classes are never listed
+            new Runnable() {
+                public void run() {
+                }
+            }.run();
+        }
+
+        protected void testB() {
+        }
+
+        void testPackagePrivate() {
+        }
+
+        public void helper() {
+        }
+    }
+
+    public static class ValidSubclassTest extends ValidTest {
+        public void testC() {
+        }
+    }
+
+    // JUnit4 classes list their @Test methods, whatever their name
+    public static class JUnit4Test {
+        @Test
+        public void testA() {
+        }
+
+        @Test
+        public void checkB() {
+        }
+
+        public void testHelper() {
+        }
+    }
+
+    public static class TimeoutTest extends TestCase {
+        @TimeoutReq(minutes = 5)
+        public void testA() {
+        }
+
+        public void testB() {
+        }
+    }
+
+    // JUnit4 timeouts are in milliseconds, rounded down to minutes
+    public static class JUnit4TimeoutTest {
+        @Test(timeout = 150000)
+        public void testA() {
+        }
+
+        @Test(timeout = 1000)
+        public void testB() {
+        }
+
+        @Test
+        public void testC() {
+        }
+    }
+
+    // TestCases cant be abstract classes
+    public static abstract class AbstractTest extends TestCase {
+        public void testA() {
+        }
+    }
+
+    // TestCases must have TestCase in their hierarchy
+    public static class NotTestCase {
+        public void testA() {
+        }
+    }
+
+    // javadoc does not see private classes
+    private static class PrivateTest extends TestCase {
+        public void testA() {
+        }
+    }
+
+    public void testValidClasses() throws Exception {
+        String result = scan();
+        assertTrue(result, result.contains(VALID_RESULT));
+        assertTrue(result, result.contains(SUBCLASS_RESULT));
+    }
+
+    public void testJUnit4Classes() throws Exception {
+        String result = scan(true, false);
+        assertTrue(result, result.contains(JUNIT4_RESULT));
+        assertFalse(result, result.contains("testHelper"));
+        assertFalse(scan(false, false).contains("case:TestClassScannerTest.JUnit4Test\n"));
+    }
+
+    public void testTimeouts() throws Exception {
+        String result = scan(true, true);
+        assertTrue(result, result.contains(TIMEOUT_RESULT));
+        assertTrue(result, result.contains(JUNIT4_TIMEOUT_RESULT));
+    }
+
+    public void testTimeoutsNotListed() throws Exception {
+        String result = scan(true, false);
+        assertTrue(result, result.contains(TIMEOUT_RESULT.replace(":5", "")));
+        assertTrue(result, result.contains(JUNIT4_TIMEOUT_RESULT.replace(":2", "")
+                .replace(":0", "")));
+    }
+
+    public void testInvalidClasses() throws Exception {
+        String result = scan();
+        assertFalse(result, result.contains("case:TestClassScannerTest.AbstractTest\n"));
+        assertFalse(result, result.contains("case:TestClassScannerTest.NotTestCase\n"));
+        assertFalse(result, result.contains("case:TestClassScannerTest.PrivateTest\n"));
+        assertFalse(result, result.contains("testPackagePrivate"));
+        assertFalse(result, result.contains("helper"));
+    }
+
+    private static String scan() throws Exception {
+        return scan(false, false);
+    }
+
+    private static String scan(boolean junit4, boolean timeouts) throws Exception {
+        List<File> inputs = Arrays.asList(codeSource(TestClassScannerTest.class));
+        List<File> classPath = Arrays.asList(codeSource(TestCase.class));
+        StringWriter output = new StringWriter();
+        TestClassScanner scanner = new TestClassScanner(inputs, classPath, 4);
+        scanner.setJUnit4(junit4);
+        scanner.setTimeouts(timeouts);
+        scanner.scan(new PrintWriter(output));
+        return output.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+
+    // the jar or directory the class was loaded from
+    private static File codeSource(Class<?> clazz) throws Exception {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+}
@@ -16,22 +16,93 @@
 
 package com.android.compatibility.common.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple in-memory store for metrics results. This should be used for hostside metrics reporting.
+ * <p/>
+ * Results are kept in a partition per device. Each partition holds at most
+ * {@link #MAX_RESULTS_PER_DEVICE} results; beyond that the oldest result is evicted, so that
+ * results which are never removed can not grow the store for the life of the host. A reporter
+ * that removes the results of a device may also drop its partition with
+ * {@link #clearResults(String)} when the invocation on that device ends; the store does not do
+ * this by itself.
  */
 public class MetricsStore {
 
-    // needs concurrent version as there can be multiple client accessing this.
-    // But there is no additional protection for the same key as that should not happen.
-    private static final ConcurrentHashMap<String, ReportLog> mMap =
-            new ConcurrentHashMap<String, ReportLog>();
+    /** Maximum number of results kept for a device. */
+    static final int MAX_RESULTS_PER_DEVICE = 4096;
+
+    // needs concurrent version as there can be multiple devices accessing this.
+    private static final ConcurrentHashMap<String, Partition> mPartitions =
+            new ConcurrentHashMap<String, Partition>();
+
+    private static final AtomicLong mEvictedCount = new AtomicLong();
+
+    /**
+     * Results of one device, oldest first. Tests of a device run sequentially, so locking the
+     * partition is rarely contended.
+     */
+    @SuppressWarnings("serial")
+    private static class Partition extends LinkedHashMap<Key, ReportLog> {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ReportLog> eldest) {
+            if (size() > MAX_RESULTS_PER_DEVICE) {
+                mEvictedCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Identifies a result within the partition of a device.
+     */
+    private static final class Key {
+        private final String mAbi;
+        private final String mClassMethodName;
+        private final int mHashCode;
+
+        Key(String abi, String classMethodName) {
+            mAbi = abi;
+            mClassMethodName = classMethodName;
+            mHashCode = 31 * hash(abi) + hash(classMethodName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mHashCode == other.mHashCode && same(mAbi, other.mAbi)
+                    && same(mClassMethodName, other.mClassMethodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        private static int hash(String s) {
+            return s == null ? 0 : s.hashCode();
+        }
+
+        private static boolean same(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
 
     /**
      * Stores a result. Existing result with the same key will be replaced.
-     * Note that key is generated in the form of device_serial#class#method name.
-     * So there should be no concurrent test for the same (serial, class, method).
+     * Note that key is made of device_serial, abi and class#method name.
+     * So there should be no concurrent test for the same (serial, abi, class, method).
      * @param deviceSerial
      * @param abi
      * @param classMethodName
@@ -39,7 +110,17 @@ public class MetricsStore {
      */
     public static void storeResult(
             String deviceSerial, String abi, String classMethodName, ReportLog reportLog) {
-        mMap.put(generateTestKey(deviceSerial, abi, classMethodName), reportLog);
+        Partition partition = mPartitions.get(String.valueOf(deviceSerial));
+        if (partition == null) {
+            Partition newPartition = new Partition();
+            partition = mPartitions.putIfAbsent(String.valueOf(deviceSerial), newPartition);
+            if (partition == null) {
+                partition = newPartition;
+            }
+        }
+        synchronized (partition) {
+            partition.put(new Key(abi, classMethodName), reportLog);
+        }
     }
 
     /**
@@ -47,13 +128,35 @@ public class MetricsStore {
      * storage. If there is no result for the given condition, it will return null.
      */
     public static ReportLog removeResult(String deviceSerial, String abi, String classMethodName) {
-        return mMap.remove(generateTestKey(deviceSerial, abi, classMethodName));
+        Partition partition = mPartitions.get(String.valueOf(deviceSerial));
+        if (partition == null) {
+            return null;
+        }
+        synchronized (partition) {
+            return partition.remove(new Key(abi, classMethodName));
+        }
+    }
+
+    /**
+     * Drops all results of the given device, such as when the invocation on it ends. Results
+     * stored for the device while this runs may be lost.
+     * @return the number of results dropped
+     */
+    public static int clearResults(String deviceSerial) {
+        Partition partition = mPartitions.remove(String.valueOf(deviceSerial));
+        if (partition == null) {
+            return 0;
+        }
+        synchronized (partition) {
+            return partition.size();
+        }
     }
 
     /**
-     * @return test key in the form of device_serial#abi#class_name#method_name
+     * @return the number of results evicted because a device had too many, since the host
+     * started
      */
-    private static String generateTestKey(String deviceSerial, String abi, String classMethodName) {
-        return String.format("%s#%s#%s", deviceSerial, abi, classMethodName);
+    public static long getEvictedCount() {
+        return mEvictedCount.get();
     }
 }
@@ -26,10 +26,26 @@ import java.util.List;
  */
 public final class MetricsXmlSerializer {
 
+    /**
+     * Arrays with more values than this are written as a single element encoded by
+     * {@link ValueArrayCodec}, rather than one Value element per value.
+     */
+    public static final int DEFAULT_ENCODING_THRESHOLD = ValueArrayCodec.ENCODING_THRESHOLD;
+
     private final XmlSerializer mXmlSerializer;
+    private final int mEncodingThreshold;
 
     public MetricsXmlSerializer(XmlSerializer xmlSerializer) {
+        this(xmlSerializer, DEFAULT_ENCODING_THRESHOLD);
+    }
+
+    /**
+     * @param encodingThreshold arrays with more values than this are encoded by
+     *        {@link ValueArrayCodec}. Use {@link Integer#MAX_VALUE} to always write Value elements.
+     */
+    public MetricsXmlSerializer(XmlSerializer xmlSerializer, int encodingThreshold) {
         this.mXmlSerializer = xmlSerializer;
+        this.mEncodingThreshold = encodingThreshold;
     }
 
     public void serialize(ReportLog reportLog) throws IOException {
@@ -57,10 +73,18 @@ public final class MetricsXmlSerializer {
                 mXmlSerializer.attribute(null, "scoreType", result.getType().getXmlString());
                 mXmlSerializer.attribute(null, "unit", result.getUnit().getXmlString());
 
-                for (double value : result.getValues()) {
-                    mXmlSerializer.startTag(null, "Value");
-                    mXmlSerializer.text(Double.toString(value));
-                    mXmlSerializer.endTag(null, "Value");
+                double[] values = result.getValues();
+                if (values.length > mEncodingThreshold) {
+                    // <EncodedValues>AAAAAAAA8D8AAAAAAAAmQA==</EncodedValues>
+                    mXmlSerializer.startTag(null, ValueArrayCodec.TAG);
+                    mXmlSerializer.text(ValueArrayCodec.encode(values));
+                    mXmlSerializer.endTag(null, ValueArrayCodec.TAG);
+                } else {
+                    for (double value : values) {
+                        mXmlSerializer.startTag(null, "Value");
+                        mXmlSerializer.text(Double.toString(value));
+                        mXmlSerializer.endTag(null, "Value");
+                    }
                 }
                 mXmlSerializer.endTag(null, "ValueArray");
             }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Pool of the names and types of an API description such as current.xml.
+ * <p>
+ * Every distinct string gets a small int id, so signatures can be stored as int arrays and equal
+ * strings are held once. A pool is not thread-safe while strings are added; once loading is done
+ * it can be read from several threads.
+ */
+public class TypePool {
+
+    private final Map<String, Integer> mIds = new HashMap<String, Integer>();
+    private final List<String> mValues = new ArrayList<String>();
+
+    /**
+     * Returns the id of the given string, adding it to the pool if needed.
+     */
+    public int intern(String value) {
+        Integer id = mIds.get(value);
+        if (id == null) {
+            id = mValues.size();
+            mIds.put(value, id);
+            mValues.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ids of the given strings, adding them to the pool if needed.
+     */
+    public int[] intern(List<String> values) {
+        int[] ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = intern(values.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the pooled instance equal to the given string, or null for null.
+     */
+    public String canonical(String value) {
+        return value == null ? null : mValues.get(intern(value));
+    }
+
+    public String get(int id) {
+        return mValues.get(id);
+    }
+
+    /**
+     * Returns an unmodifiable list view of the strings with the given ids. The array must not be
+     * changed afterwards.
+     */
+    public List<String> get(int[] ids) {
+        return new TypeList(ids);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    private class TypeList extends AbstractList<String> implements RandomAccess {
+        private final int[] mTypeIds;
+
+        TypeList(int[] ids) {
+            mTypeIds = ids;
+        }
+
+        @Override
+        public String get(int index) {
+            return mValues.get(mTypeIds[index]);
+        }
+
+        @Override
+        public int size() {
+            return mTypeIds.length;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.compatibility.common.util;
+
+import java.util.Arrays;
+
+/**
+ * Encodes the values of a ValueArray as the text of a single EncodedValues element: base64 of
+ * the values as little endian IEEE 754 doubles. This takes about 11 characters per value, and
+ * keeps values exact.
+ * <p/>
+ * This is the only base64 codec of the compatibility and CTS results; the encoded report log
+ * of CTS uses {@link #encodeBase64} and {@link #decodeBase64} too.
+ */
+public final class ValueArrayCodec {
+
+    /** Tag of the element holding encoded values, instead of one Value element per value. */
+    public static final String TAG = "EncodedValues";
+
+    /**
+     * Arrays with more values than this are written as one EncodedValues element by default,
+     * by both the compatibility and the CTS result writers.
+     */
+    public static final int ENCODING_THRESHOLD = 32;
+
+    private static final char[] BASE64_DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_DIGITS.length; i++) {
+            BASE64_VALUES[BASE64_DIGITS[i]] = i;
+        }
+    }
+
+    private ValueArrayCodec() {}
+
+    public static String encode(double[] values) {
+        byte[] bytes = new byte[values.length * 8];
+        for (int i = 0; i < values.length; i++) {
+            long raw = Double.doubleToRawLongBits(values[i]);
+            for (int j = 0; j < 8; j++) {
+                bytes[i * 8 + j] = (byte) (raw >>> (j * 8));
+            }
+        }
+        StringBuilder result = new StringBuilder((bytes.length + 2) / 3 * 4);
+        encodeBase64(bytes, bytes.length, result);
+        return result.toString();
+    }
+
+    /**
+     * Decodes the text of an EncodedValues element. Whitespace is ignored.
+     *
+     * @throws IllegalArgumentException if the text is not base64 of a whole number of doubles
+     */
+    public static double[] decode(String text) {
+        byte[] bytes = decodeBase64(text, 0);
+        if (bytes.length % 8 != 0) {
+            throw new IllegalArgumentException("Encoded values are truncated");
+        }
+        double[] values = new double[bytes.length / 8];
+        for (int i = 0; i < values.length; i++) {
+            long raw = 0;
+            for (int j = 0; j < 8; j++) {
+                raw |= (long) (bytes[i * 8 + j] & 0xff) << (j * 8);
+            }
+            values[i] = Double.longBitsToDouble(raw);
+        }
+        return values;
+    }
+
+    /**
+     * Appends the base64 of the first {@code count} bytes of {@code bytes} to {@code out},
+     * padded with '='.
+     */
+    public static void encodeBase64(byte[] bytes, int count, StringBuilder out) {
+        int i = 0;
+        for (; i + 3 <= count; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8
+                    | (bytes[i + 2] & 0xff);
+            out.append(BASE64_DIGITS[bits >> 18]);
+            out.append(BASE64_DIGITS[(bits >> 12) & 0x3f]);
+            out.append(BASE64_DIGITS[(bits >> 6) & 0x3f]);
+            out.append(BASE64_DIGITS[bits & 0x3f]);
+        }
+        if (i < count) {
+            boolean twoBytes = i + 1 < count;
+            int bits = (bytes[i] & 0xff) << 16 | (twoBytes ? (bytes[i + 1] & 0xff) << 8 : 0);
+            out.append(BASE64_DIGITS[bits >> 18]);
+            out.append(BASE64_DIGITS[(bits >> 12) & 0x3f]);
+            out.append(twoBytes ? BASE64_DIGITS[(bits >> 6) & 0x3f] : '=');
+            out.append('=');
+        }
+    }
+
+    /**
+     * Decodes the base64 in {@code text} from index {@code start} on. Whitespace is ignored.
+     *
+     * @throws IllegalArgumentException if the text is not base64
+     */
+    public static byte[] decodeBase64(String text, int start) {
+        byte[] bytes = new byte[(text.length() - start) * 3 / 4];
+        int count = 0;
+        int bits = 0;
+        int bitCount = 0;
+        int padding = 0;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (c == '=') {
+                padding++;
+                continue;
+            }
+            int digit = decodeBase64Digit(c);
+            if (digit < 0 || padding > 0) {
+                throw new IllegalArgumentException("Bad character in base64: " + c);
+            }
+            bits = (bits << 6) | digit;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                bytes[count++] = (byte) (bits >> bitCount);
+            }
+        }
+        if (padding > 2) {
+            throw new IllegalArgumentException("Bad base64 padding");
+        }
+        return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
+    }
+
+    /**
+     * @return the value of the base64 digit {@code c}, or -1 if it is not one
+     */
+    public static int decodeBase64Digit(char c) {
+        return c < 128 ? BASE64_VALUES[c] : -1;
+    }
+}
@@ -18,6 +18,13 @@ package com.android.compatibility.common.util;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Unit tests for {@link MetricsStore}
  */
@@ -46,4 +53,69 @@ public class MetricsStoreTest extends TestCase {
         assertNull(MetricsStore.removeResult("blah", ABI, CLASSMETHOD_NAME));
     }
 
+    public void testClearResults() {
+        MetricsStore.storeResult(DEVICE_SERIAL, ABI, CLASSMETHOD_NAME, mReportLog);
+        MetricsStore.storeResult("other", ABI, CLASSMETHOD_NAME, mReportLog);
+        assertEquals(1, MetricsStore.clearResults(DEVICE_SERIAL));
+        assertEquals(0, MetricsStore.clearResults(DEVICE_SERIAL));
+        assertNull(MetricsStore.removeResult(DEVICE_SERIAL, ABI, CLASSMETHOD_NAME));
+        // other devices keep their results
+        assertSame(mReportLog, MetricsStore.removeResult("other", ABI, CLASSMETHOD_NAME));
+    }
+
+    public void testEviction() {
+        long evicted = MetricsStore.getEvictedCount();
+        for (int i = 0; i <= MetricsStore.MAX_RESULTS_PER_DEVICE; i++) {
+            MetricsStore.storeResult(DEVICE_SERIAL, ABI, CLASSMETHOD_NAME + i, mReportLog);
+        }
+        assertEquals(evicted + 1, MetricsStore.getEvictedCount());
+        // the oldest result is evicted first
+        assertNull(MetricsStore.removeResult(DEVICE_SERIAL, ABI, CLASSMETHOD_NAME + 0));
+        assertSame(mReportLog, MetricsStore.removeResult(DEVICE_SERIAL, ABI, CLASSMETHOD_NAME + 1));
+        assertEquals(MetricsStore.MAX_RESULTS_PER_DEVICE - 1,
+                MetricsStore.clearResults(DEVICE_SERIAL));
+    }
+
+    /**
+     * Test many devices storing and removing results at the same time.
+     */
+    public void testConcurrentDevices() throws Exception {
+        final int deviceCount = 32;
+        final int resultCount = 1000;
+        long evicted = MetricsStore.getEvictedCount();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int d = 0; d < deviceCount; d++) {
+                final String serial = "device" + d;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        List<ReportLog> logs = new ArrayList<ReportLog>();
+                        for (int i = 0; i < resultCount; i++) {
+                            ReportLog log = new ReportLog();
+                            logs.add(log);
+                            MetricsStore.storeResult(serial, ABI, CLASSMETHOD_NAME + i, log);
+                        }
+                        int found = 0;
+                        // leave every other result behind, to be dropped with the device
+                        for (int i = 0; i < resultCount; i += 2) {
+                            if (MetricsStore.removeResult(serial, ABI, CLASSMETHOD_NAME + i)
+                                    == logs.get(i)) {
+                                found++;
+                            }
+                        }
+                        assertEquals(resultCount / 2, MetricsStore.clearResults(serial));
+                        return found;
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(resultCount / 2, (int) future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(evicted, MetricsStore.getEvictedCount());
+    }
 }
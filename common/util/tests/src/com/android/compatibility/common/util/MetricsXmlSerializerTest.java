@@ -89,4 +89,36 @@ public class MetricsXmlSerializerTest extends TestCase {
 
         assertEquals(EXPECTED_XML, mByteArrayOutputStream.toString("utf-8"));
     }
+
+    public void testSerialize_encoded() throws IOException {
+        double[] values = new double[MetricsXmlSerializer.DEFAULT_ENCODING_THRESHOLD + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i / 3.0;
+        }
+        mLocalReportLog.setSummary("Sample", 1.0, ResultType.HIGHER_BETTER, ResultUnit.BYTE);
+        mLocalReportLog.addValues("Details", values, ResultType.NEUTRAL, ResultUnit.FPS);
+
+        xmlSerializer.startDocument("utf-8", true);
+        mMetricsXmlSerializer.serialize(mLocalReportLog);
+        xmlSerializer.endDocument();
+
+        String xml = mByteArrayOutputStream.toString("utf-8");
+        assertTrue(xml, xml.contains("<EncodedValues>" + ValueArrayCodec.encode(values)
+                + "</EncodedValues></ValueArray>"));
+        assertFalse(xml, xml.contains("<Value>"));
+    }
+
+    public void testSerialize_threshold() throws IOException {
+        mMetricsXmlSerializer = new MetricsXmlSerializer(xmlSerializer, VALUES.length - 1);
+        mLocalReportLog.setSummary("Sample", 1.0, ResultType.HIGHER_BETTER, ResultUnit.BYTE);
+        mLocalReportLog.addValues("Details", VALUES, ResultType.NEUTRAL, ResultUnit.FPS);
+
+        xmlSerializer.startDocument("utf-8", true);
+        mMetricsXmlSerializer.serialize(mLocalReportLog);
+        xmlSerializer.endDocument();
+
+        String xml = mByteArrayOutputStream.toString("utf-8");
+        assertTrue(xml, xml.contains("<EncodedValues>"));
+        assertFalse(xml, xml.contains("<Value>"));
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link TypePool}
+ */
+public class TypePoolTest extends TestCase {
+
+    public void testIntern() {
+        TypePool pool = new TypePool();
+        int string = pool.intern("java.lang.String");
+        int integer = pool.intern("int");
+        assertEquals(string, pool.intern(new String("java.lang.String")));
+        assertTrue(string != integer);
+        assertEquals("int", pool.get(integer));
+        assertEquals(2, pool.size());
+    }
+
+    public void testCanonical() {
+        TypePool pool = new TypePool();
+        String first = pool.canonical(new String("android.view.View"));
+        assertSame(first, pool.canonical(new String("android.view.View")));
+        assertNull(pool.canonical(null));
+    }
+
+    public void testList() {
+        TypePool pool = new TypePool();
+        List<String> types = Arrays.asList("int", "java.lang.String", "int");
+        int[] ids = pool.intern(types);
+        assertEquals(ids[0], ids[2]);
+        List<String> view = pool.get(ids);
+        assertEquals(types, view);
+        assertEquals(view, new ArrayList<String>(types));
+        assertEquals(types.hashCode(), view.hashCode());
+        assertEquals(0, pool.get(new int[0]).size());
+    }
+}
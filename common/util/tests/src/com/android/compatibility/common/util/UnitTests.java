@@ -29,5 +29,7 @@ public class UnitTests extends TestSuite {
         addTestSuite(MetricsStoreTest.class);
         addTestSuite(MetricsXmlSerializerTest.class);
         addTestSuite(ReportLogTest.class);
+        addTestSuite(TypePoolTest.class);
+        addTestSuite(ValueArrayCodecTest.class);
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.compatibility.common.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ValueArrayCodec}
+ */
+public class ValueArrayCodecTest extends TestCase {
+
+    public void testEncode() {
+        assertEquals("", ValueArrayCodec.encode(new double[0]));
+        // 1.0 is 0x3ff0000000000000, written little endian
+        assertEquals("AAAAAAAA8D8=", ValueArrayCodec.encode(new double[] {1.0}));
+        assertEquals("AAAAAAAA8D8AAAAAAAAmQA==", ValueArrayCodec.encode(new double[] {1.0, 11.0}));
+    }
+
+    public void testRoundTrip() {
+        for (int length = 0; length < 10; length++) {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = i % 3 == 0 ? Double.NaN : i * -1.1e100;
+            }
+            String encoded = ValueArrayCodec.encode(values);
+            assertTrue(Arrays.equals(values, ValueArrayCodec.decode(encoded)));
+        }
+    }
+
+    public void testBase64() {
+        byte[] bytes = "foobar".getBytes();
+        String[] expected = { "", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy" };
+        for (int count = 0; count < expected.length; count++) {
+            StringBuilder out = new StringBuilder("prefix:");
+            ValueArrayCodec.encodeBase64(bytes, count, out);
+            assertEquals("prefix:" + expected[count], out.toString());
+            assertTrue(Arrays.equals(Arrays.copyOf(bytes, count),
+                    ValueArrayCodec.decodeBase64(out.toString(), "prefix:".length())));
+        }
+    }
+
+    public void testDecode_whitespace() {
+        assertTrue(Arrays.equals(new double[] {1.0, 11.0},
+                ValueArrayCodec.decode("\n  AAAAAAAA8D8A\n  AAAAAAAmQA==\n")));
+    }
+
+    public void testDecode_truncated() {
+        try {
+            ValueArrayCodec.decode("AAAAAAAA8D");
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testDecode_badCharacter() {
+        try {
+            ValueArrayCodec.decode("AAAAAAAA8D8*");
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
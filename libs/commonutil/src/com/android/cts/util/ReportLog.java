@@ -30,6 +30,9 @@ import junit.framework.Assert;
  * Message = summary log SUMMARY_SEPARATOR [LOG_SEPARATOR log]*
  * summary = message|target|unit|type|value, target can be " " if there is no target set.
  * log for array = classMethodName:line_number|message|unit|type|space seSummaryparated values
+ *
+ * {@link #generateEncodedReport()} reports the same results as typed records of
+ * {@link ReportLogEncoder} instead.
  */
 public class ReportLog {
     private static final String LOG_SEPARATOR = "+++";
@@ -38,6 +41,13 @@ public class ReportLog {
 
     private List<String> mMessages = new LinkedList<String> ();
     private String mSummary = null;
+    // the same results, typed
+    private ReportLogEncoder mEncoder = new ReportLogEncoder();
+    private String mSummaryMessage;
+    private double mSummaryTarget;
+    private ResultType mSummaryType = null;
+    private ResultUnit mSummaryUnit;
+    private double mSummaryValue;
     protected static int mDepth = 3;
 
     /**
@@ -96,6 +106,7 @@ public class ReportLog {
             builder.append(" ");
         }
         mMessages.add(builder.toString());
+        mEncoder.writeValues(testId, message, type, unit, values);
         printLog(builder.toString());
     }
 
@@ -115,6 +126,7 @@ public class ReportLog {
             ResultType type, ResultUnit unit) {
         mSummary = message + LOG_ELEM_SEPARATOR + target + LOG_ELEM_SEPARATOR + type.getXmlString()
                 + LOG_ELEM_SEPARATOR + unit.getXmlString() + LOG_ELEM_SEPARATOR + value;
+        setSummary(message, target, type, unit, value);
         boolean resultOk = true;
         if (type == ResultType.HIGHER_BETTER) {
             resultOk = value >= target;
@@ -138,6 +150,16 @@ public class ReportLog {
     public void printSummary(String message, double value, ResultType type, ResultUnit unit) {
         mSummary = message + LOG_ELEM_SEPARATOR + " " + LOG_ELEM_SEPARATOR + type.getXmlString() +
                 LOG_ELEM_SEPARATOR + unit.getXmlString() + LOG_ELEM_SEPARATOR + value;
+        setSummary(message, Double.NaN, type, unit, value);
+    }
+
+    private void setSummary(String message, double target, ResultType type, ResultUnit unit,
+            double value) {
+        mSummaryMessage = message;
+        mSummaryTarget = target;
+        mSummaryType = type;
+        mSummaryUnit = unit;
+        mSummaryValue = value;
     }
 
     /**
@@ -159,9 +181,32 @@ public class ReportLog {
         if (builder.length() >= LOG_SEPARATOR.length()) {
             builder.delete(builder.length() - LOG_SEPARATOR.length(), builder.length());
         }
+        clear();
+        return builder.toString();
+    }
+
+    /**
+     * @return the report encoded by {@link ReportLogEncoder}, or an empty string if nothing
+     * was reported. Like {@link #generateReport()}, this clears the report.
+     */
+    protected String generateEncodedReport() {
+        if ((mSummaryType == null) && mEncoder.isEmpty()) {
+            return "";
+        }
+        if (mSummaryType != null) {
+            mEncoder.writeSummary(mSummaryMessage, mSummaryTarget, mSummaryType, mSummaryUnit,
+                    mSummaryValue);
+        }
+        String report = mEncoder.finish();
+        clear();
+        return report;
+    }
+
+    private void clear() {
         mSummary = null;
         mMessages.clear();
-        return builder.toString();
+        mEncoder = new ReportLogEncoder();
+        mSummaryType = null;
     }
 
     /**
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import com.android.compatibility.common.util.ValueArrayCodec;
+
+import java.nio.charset.Charset;
+
+/**
+ * Encodes the results of a {@link ReportLog} as typed binary records, which keep
+ * values exact and allow any characters in messages.
+ *
+ * Format:
+ * Report = PREFIX base64(record* END)
+ * record for summary = SUMMARY message target type unit value, target is NaN if not set.
+ * record for array = VALUES source message type unit count value*
+ * Strings are a big endian int length followed by UTF-8, type and unit are enum names,
+ * and values are big endian IEEE 754 doubles. The report is text so that it can be
+ * passed wherever the text reports of {@link ReportLog} are.
+ */
+public class ReportLogEncoder {
+    /** Starts every encoded report, and no text report. */
+    public static final String PREFIX = "#ctsmetrics1:";
+
+    public static final int END = 0;
+    public static final int SUMMARY = 1;
+    public static final int VALUES = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] mBytes = new byte[256];
+    private int mCount = 0;
+
+    /**
+     * Adds a summary record.
+     *
+     * @param target the performance target, or {@link Double#NaN} if there is none
+     */
+    public void writeSummary(String message, double target, ResultType type, ResultUnit unit,
+            double value) {
+        writeByte(SUMMARY);
+        writeString(message);
+        writeDouble(target);
+        writeString(type.name());
+        writeString(unit.name());
+        writeDouble(value);
+    }
+
+    /**
+     * Adds a record holding an array of values.
+     *
+     * @param source the test and line that measured the values, in class#method:line format
+     */
+    public void writeValues(String source, String message, ResultType type, ResultUnit unit,
+            double[] values) {
+        writeByte(VALUES);
+        writeString(source);
+        writeString(message);
+        writeString(type.name());
+        writeString(unit.name());
+        writeInt(values.length);
+        for (double value : values) {
+            writeDouble(value);
+        }
+    }
+
+    /**
+     * @return true if no record has been added since this encoder was created or finished
+     */
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * Returns the report of the records added so far and removes them from this encoder.
+     */
+    public String finish() {
+        writeByte(END);
+        StringBuilder result = new StringBuilder(PREFIX.length() + (mCount + 2) / 3 * 4);
+        result.append(PREFIX);
+        ValueArrayCodec.encodeBase64(mBytes, mCount, result);
+        mCount = 0;
+        return result.toString();
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeInt(bytes.length);
+        require(bytes.length);
+        System.arraycopy(bytes, 0, mBytes, mCount, bytes.length);
+        mCount += bytes.length;
+    }
+
+    private void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+    }
+
+    private void writeInt(int value) {
+        require(4);
+        mBytes[mCount++] = (byte) (value >>> 24);
+        mBytes[mCount++] = (byte) (value >>> 16);
+        mBytes[mCount++] = (byte) (value >>> 8);
+        mBytes[mCount++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        require(1);
+        mBytes[mCount++] = (byte) value;
+    }
+
+    private void require(int count) {
+        if (mBytes.length - mCount < count) {
+            byte[] bytes = new byte[Math.max(mBytes.length * 2, mCount + count)];
+            System.arraycopy(mBytes, 0, bytes, 0, mCount);
+            mBytes = bytes;
+        }
+    }
+}
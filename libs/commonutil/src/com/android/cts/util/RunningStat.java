@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+/**
+ * Accumulates the count, average, min, max and variance of values in a single pass, without
+ * storing them. The average and variance are updated with Welford's method, which stays
+ * accurate where the E[X^2] - E[X]^2 formula loses precision.
+ *
+ * Statistics of separate parts of the data, such as those of different threads, can be
+ * combined with {@link #merge(RunningStat)}.
+ */
+public class RunningStat {
+    private int mCount = 0;
+    private double mAverage = 0.0;
+    /** Sum of squared differences from the average */
+    private double mSquares = 0.0;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        mCount++;
+        double delta = value - mAverage;
+        mAverage += delta / mCount;
+        mSquares += delta * (value - mAverage);
+        if (value < mMin) {
+            mMin = value;
+        }
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    public void addAll(double[] values) {
+        for (double value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Adds the values accumulated by {@code other} to this stat, as if they had been added
+     * here.
+     */
+    public void merge(RunningStat other) {
+        if (other.mCount == 0) {
+            return;
+        }
+        int count = mCount + other.mCount;
+        double delta = other.mAverage - mAverage;
+        mAverage += delta * other.mCount / count;
+        mSquares += other.mSquares + delta * delta * ((double) mCount * other.mCount / count);
+        mCount = count;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /**
+     * @return the number of values accumulated
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the average, or {@link Double#NaN} if there are no values
+     */
+    public double getAverage() {
+        return mCount > 0 ? mAverage : Double.NaN;
+    }
+
+    /**
+     * @return the minimum, or {@link Double#NaN} if there are no values
+     */
+    public double getMin() {
+        return mCount > 0 ? mMin : Double.NaN;
+    }
+
+    /**
+     * @return the maximum, or {@link Double#NaN} if there are no values
+     */
+    public double getMax() {
+        return mCount > 0 ? mMax : Double.NaN;
+    }
+
+    /**
+     * @return the population variance, E[(X - E[X])^2], as used by {@link Stat}
+     */
+    public double getVariance() {
+        return mCount > 0 ? mSquares / mCount : Double.NaN;
+    }
+
+    /**
+     * @return the bias-corrected sample variance, as computed by
+     * {@link StatisticsUtils#getVariance(java.util.Collection)}
+     */
+    public double getSampleVariance() {
+        return mCount > 1 ? mSquares / (mCount - 1) : Double.NaN;
+    }
+
+    /**
+     * @return the population standard deviation, as used by {@link Stat}
+     */
+    public double getStddev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public Stat.StatResult getStatResult() {
+        return new Stat.StatResult(getAverage(), getMin(), getMax(), getStddev(), mCount);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests for the {@link RunningStat} class, and the {@link Stat} methods built on it.
+ */
+public class RunningStatTest extends TestCase {
+
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Test {@link Stat#getStat(double[])}.
+     */
+    public void testGetStat() {
+        Stat.StatResult result = Stat.getStat(new double[] { 2, 4, 4, 4, 5, 5, 7, 9 });
+        assertEquals(5.0, result.mAverage, DELTA);
+        assertEquals(2.0, result.mMin);
+        assertEquals(9.0, result.mMax);
+        assertEquals(2.0, result.mStddev, DELTA);
+        assertEquals(8, result.mDataCount);
+    }
+
+    /**
+     * Test {@link Stat#getStatWithOutlierRejection(double[], double)}.
+     */
+    public void testGetStatWithOutlierRejection() {
+        double[] data = { 100, 1, 10, 11, 9, 10, 1000 };
+        Stat.StatResult result = Stat.getStatWithOutlierRejection(data, 0.5);
+        assertEquals(10.0, result.mAverage, DELTA);
+        assertEquals(9.0, result.mMin);
+        assertEquals(11.0, result.mMax);
+        assertEquals(Math.sqrt(0.5), result.mStddev, DELTA);
+        assertEquals(4, result.mDataCount);
+        // the data is left alone
+        assertEquals(100.0, data[0]);
+
+        // everything rejected
+        result = Stat.getStatWithOutlierRejection(new double[] { 1, 2, 100, 200 }, 0.1);
+        assertEquals(51.0, result.mAverage);
+        assertEquals(51.0, result.mMin);
+        assertEquals(51.0, result.mMax);
+        assertEquals(0, result.mDataCount);
+    }
+
+    /**
+     * Test {@link Stat#getMedian(double[])} against sorting.
+     */
+    public void testGetMedian() {
+        Random random = new Random(0);
+        for (int length = 1; length < 50; length++) {
+            double[] data = new double[length];
+            for (int i = 0; i < length; i++) {
+                // include duplicates
+                data[i] = random.nextInt(length);
+            }
+            double[] sorted = Arrays.copyOf(data, length);
+            Arrays.sort(sorted);
+            double expected = length % 2 == 1 ? sorted[length / 2]
+                    : (sorted[length / 2 - 1] + sorted[length / 2]) / 2.0;
+            assertEquals(expected, Stat.getMedian(data));
+        }
+    }
+
+    /**
+     * Test that the variance stays accurate for values with a big offset, where the
+     * E[X^2] - E[X]^2 formula loses all precision.
+     */
+    public void testVarianceWithOffset() {
+        RunningStat stat = new RunningStat();
+        stat.addAll(new double[] { 1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16 });
+        assertEquals(22.5, stat.getVariance(), DELTA);
+        assertEquals(30.0, stat.getSampleVariance(), DELTA);
+    }
+
+    /**
+     * Test that merged stats match the stat of all values.
+     */
+    public void testMerge() {
+        Random random = new Random(0);
+        RunningStat all = new RunningStat();
+        RunningStat first = new RunningStat();
+        RunningStat second = new RunningStat();
+        for (int i = 0; i < 1000; i++) {
+            double value = random.nextGaussian() * 3 + 10;
+            all.add(value);
+            (i < 300 ? first : second).add(value);
+        }
+        first.merge(second);
+        first.merge(new RunningStat());
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getAverage(), first.getAverage(), DELTA);
+        assertEquals(all.getVariance(), first.getVariance(), DELTA);
+        assertEquals(all.getMin(), first.getMin());
+        assertEquals(all.getMax(), first.getMax());
+
+        RunningStat empty = new RunningStat();
+        empty.merge(all);
+        assertEquals(all.getAverage(), empty.getAverage(), DELTA);
+        assertEquals(all.getVariance(), empty.getVariance(), DELTA);
+    }
+}
@@ -46,25 +46,9 @@ public class Stat {
      * Calculate statistics properties likes average, min, max, and stddev for the given array
      */
     public static StatResult getStat(double[] data) {
-        double average = data[0];
-        double min = data[0];
-        double max = data[0];
-        double eX2 = data[0] * data[0]; // will become E[X^2]
-        for (int i = 1; i < data.length; i++) {
-            average += data[i];
-            eX2 += data[i] * data[i];
-            if (data[i] > max) {
-                max = data[i];
-            }
-            if (data[i] < min) {
-                min = data[i];
-            }
-        }
-        average /= data.length;
-        eX2 /= data.length;
-        // stddev = sqrt(E[X^2] - (E[X])^2)
-        double stddev = Math.sqrt(eX2 - average * average);
-        return new StatResult(average, min, max, stddev, data.length);
+        RunningStat stat = new RunningStat();
+        stat.addAll(data);
+        return stat.getStatResult();
     }
 
     /**
@@ -73,49 +57,81 @@ public class Stat {
      * rejectionThreshold should be bigger than 0.0 and be lowerthan 1.0
      */
     public static StatResult getStatWithOutlierRejection(double[] data, double rejectionThreshold) {
-        double[] dataCopied = Arrays.copyOf(data, data.length);
-        Arrays.sort(dataCopied);
-        int medianIndex = dataCopied.length / 2;
-        double median;
-        if (dataCopied.length % 2 == 1) {
-            median = dataCopied[medianIndex];
-        } else {
-            median = (dataCopied[medianIndex - 1] + dataCopied[medianIndex]) / 2.0;
-        }
+        double median = getMedian(data);
         double thresholdMin = median * (1.0 - rejectionThreshold);
         double thresholdMax = median * (1.0 + rejectionThreshold);
 
-        double average = 0.0;
-        double min = median;
-        double max = median;
-        double eX2 = 0.0; // will become E[X^2]
-        int validDataCounter = 0;
+        RunningStat stat = new RunningStat();
         for (int i = 0; i < data.length; i++) {
             if ((data[i] > thresholdMin) && (data[i] < thresholdMax)) {
-                validDataCounter++;
-                average += data[i];
-                eX2 += data[i] * data[i];
-                if (data[i] > max) {
-                    max = data[i];
-                }
-                if (data[i] < min) {
-                    min = data[i];
-                }
+                stat.add(data[i]);
             }
             //TODO report rejected data
         }
-        double stddev;
-        if (validDataCounter > 0) {
-            average /= validDataCounter;
-            eX2 /= validDataCounter;
-            // stddev = sqrt(E[X^2] - (E[X])^2)
-            stddev = Math.sqrt(eX2 - average * average);
-        } else { // both median is showing too much diff
-            average = median;
-            stddev = 0; // don't care
+        if (stat.getCount() == 0) { // both median is showing too much diff
+            return new StatResult(median, median, median, 0, 0);
         }
+        return new StatResult(stat.getAverage(), Math.min(median, stat.getMin()),
+                Math.max(median, stat.getMax()), stat.getStddev(), stat.getCount());
+    }
 
-        return new StatResult(average, min, max, stddev, validDataCounter);
+    /**
+     * return the median value of the passed array, averaging the two middle values if the
+     * length is even
+     */
+    public static double getMedian(double[] data) {
+        double[] dataCopied = Arrays.copyOf(data, data.length);
+        int medianIndex = dataCopied.length / 2;
+        double upper = select(dataCopied, medianIndex);
+        if (dataCopied.length % 2 == 1) {
+            return upper;
+        }
+        // select() left the smaller values in front of medianIndex
+        double lower = dataCopied[0];
+        for (int i = 1; i < medianIndex; i++) {
+            if (Double.compare(dataCopied[i], lower) > 0) {
+                lower = dataCopied[i];
+            }
+        }
+        return (lower + upper) / 2.0;
+    }
+
+    /**
+     * Partially sorts data so that data[k] holds the value it would hold if data were sorted,
+     * with no bigger value before it and no smaller value after it, and returns that value.
+     * Values are ordered as by {@link Arrays#sort(double[])}.
+     */
+    private static double select(double[] data, int k) {
+        int left = 0;
+        int right = data.length - 1;
+        while (left < right) {
+            double pivot = data[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (Double.compare(data[i], pivot) < 0) {
+                    i++;
+                }
+                while (Double.compare(data[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    double temp = data[i];
+                    data[i] = data[j];
+                    data[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return data[k];
     }
 
     /**
@@ -18,7 +18,8 @@ include $(CLEAR_VARS)
 
 LOCAL_SRC_FILES := \
     $(call all-java-files-under, src) \
-    $(call all-java-files-under, ../commonutil/src)
+    $(call all-java-files-under, ../commonutil/src) \
+    ../../common/util/src/com/android/compatibility/common/util/ValueArrayCodec.java
 
 LOCAL_ADDITIONAL_DEPENDENCIES := $(LOCAL_PATH)/Android.mk
 
@@ -43,7 +43,7 @@ public class DeviceReportLog extends ReportLog {
 
     public void deliverReportToHost(Instrumentation instrumentation) {
         Log.i(TAG, "deliverReportToHost");
-        String report = generateReport();
+        String report = generateEncodedReport();
         if (!report.equals("")) {
             Bundle output = new Bundle();
             output.putString(CTS_RESULT_KEY, report);
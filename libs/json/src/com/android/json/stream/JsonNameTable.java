@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+/**
+ * Canonical instances of the property names read by a {@link JsonReader}.
+ * Documents that repeat a few names many times, such as expectation files,
+ * then share one string per name instead of creating one per occurrence, and
+ * callers comparing names hit the identity check of {@link String#equals}.
+ *
+ * <p>Names found in the table are returned without creating a string. The
+ * table keeps at most {@code maxSize} names; other names are returned as new
+ * strings. Subclasses may intern differently by overriding both methods.
+ *
+ * <p>A table is not thread safe. It may be shared by readers that are used
+ * on the same thread.
+ */
+public class JsonNameTable {
+
+    private final int maxSize;
+    private String[] names = new String[16];
+    private int size = 0;
+
+    /**
+     * Creates a table of at most 256 names, holding {@code names} already.
+     */
+    public JsonNameTable(String... names) {
+        this(256);
+        for (String name : names) {
+            intern(name);
+        }
+    }
+
+    public JsonNameTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the canonical instance of the name held in
+     * {@code chars[offset, offset + length)}.
+     */
+    public String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int mask = names.length - 1;
+        for (int index = hash & mask; ; index = (index + 1) & mask) {
+            String name = names[index];
+            if (name == null) {
+                return add(index, new String(chars, offset, length));
+            }
+            if (name.hashCode() == hash && equals(name, chars, offset, length)) {
+                return name;
+            }
+        }
+    }
+
+    /**
+     * Returns the canonical instance of {@code name}.
+     */
+    public String intern(String name) {
+        int mask = names.length - 1;
+        for (int index = name.hashCode() & mask; ; index = (index + 1) & mask) {
+            String existing = names[index];
+            if (existing == null) {
+                return add(index, name);
+            }
+            if (existing.equals(name)) {
+                return existing;
+            }
+        }
+    }
+
+    private String add(int index, String name) {
+        if (size == maxSize) {
+            return name;
+        }
+        names[index] = name;
+        if (++size * 2 > names.length) {
+            // keep the table at most half full so that probes stay short
+            String[] old = names;
+            names = new String[old.length * 2];
+            int mask = names.length - 1;
+            for (String existing : old) {
+                if (existing != null) {
+                    int i = existing.hashCode() & mask;
+                    while (names[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    names[i] = existing;
+                }
+            }
+        }
+        return name;
+    }
+
+    private static boolean equals(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
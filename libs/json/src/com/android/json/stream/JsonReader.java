@@ -17,8 +17,10 @@
 package com.android.json.stream;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -172,6 +174,9 @@ public final class JsonReader implements Closeable {
     private static final String TRUE = "true";
     private static final String FALSE = "false";
 
+    /** The buffer size when reading bytes, fewer but larger reads pay off there. */
+    private static final int BYTE_INPUT_BUFFER_SIZE = 8192;
+
     /** The input JSON. */
     private final Reader in;
 
@@ -184,7 +189,7 @@ public final class JsonReader implements Closeable {
      * We decode literals directly out of this buffer, so it must be at least as
      * long as the longest token that can be reported as a number.
      */
-    private final char[] buffer = new char[1024];
+    private final char[] buffer;
     private int pos = 0;
     private int limit = 0;
 
@@ -213,14 +218,49 @@ public final class JsonReader implements Closeable {
     /** True if we're currently handling a skipValue() call. */
     private boolean skipping = false;
 
+    /** Canonical instances of names, or null to create a string per name. */
+    private JsonNameTable nameTable;
+
     /**
      * Creates a new instance that reads a JSON-encoded stream from {@code in}.
      */
     public JsonReader(Reader in) {
+        this(in, 1024);
+    }
+
+    /**
+     * Creates a new instance that reads a UTF-8 encoded JSON stream from
+     * {@code in}. The bytes are decoded by the reader itself, which is faster
+     * than reading through an {@link java.io.InputStreamReader}.
+     */
+    public JsonReader(InputStream in) {
+        this(new Utf8Reader(in, BYTE_INPUT_BUFFER_SIZE), BYTE_INPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance that reads the UTF-8 encoded JSON between the
+     * position and the limit of {@code in}, such as a mapped file. This
+     * consumes the buffer's remaining bytes.
+     */
+    public JsonReader(ByteBuffer in) {
+        this(new Utf8Reader(in), BYTE_INPUT_BUFFER_SIZE);
+    }
+
+    private JsonReader(Reader in, int bufferSize) {
         if (in == null) {
             throw new NullPointerException("in == null");
         }
         this.in = in;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Returns the names of this reader's properties through {@code nameTable},
+     * so that repeated names are the same string instance. A null table, the
+     * default, creates a new string for each name.
+     */
+    public void setNameTable(JsonNameTable nameTable) {
+        this.nameTable = nameTable;
     }
 
     /**
@@ -622,12 +662,19 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                name = nextString((char) quote);
+                name = nextString((char) quote, nameTable);
                 break;
             default:
                 checkLenient();
                 pos--;
-                name = nextLiteral(false);
+                if (nameTable != null) {
+                    String literal = nextLiteral(true);
+                    name = (literal != null)
+                            ? nameTable.intern(literal)
+                            : nameTable.intern(buffer, valuePos, valueLength);
+                } else {
+                    name = nextLiteral(false);
+                }
                 if (name.isEmpty()) {
                     throw syntaxError("Expected name");
                 }
@@ -673,7 +720,7 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                value = nextString((char) c);
+                value = nextString((char) c, null);
                 return token = JsonToken.STRING;
 
             default:
@@ -800,15 +847,21 @@ public final class JsonReader implements Closeable {
      * should have already been read. This consumes the closing quote, but does
      * not include it in the returned string.
      *
+     * <p>Strings without escapes are created straight from the buffer. When
+     * the buffer runs out in the middle of one, its start is moved to the front
+     * of the buffer before reading on, so only strings longer than the buffer
+     * need a builder.
+     *
      * @param quote either ' or ".
+     * @param names the table to intern the string with, or null
      * @throws NumberFormatException if any unicode escape sequences are
      *     malformed.
      */
-    private String nextString(char quote) throws IOException {
+    private String nextString(char quote, JsonNameTable names) throws IOException {
         StringBuilder builder = null;
-        do {
-            /* the index of the first character not yet appended to the builder. */
-            int start = pos;
+        /* the index of the first character not yet appended to the builder. */
+        int start = pos;
+        while (true) {
             while (pos < limit) {
                 int c = buffer[pos++];
 
@@ -816,10 +869,14 @@ public final class JsonReader implements Closeable {
                     if (skipping) {
                         return "skipped!";
                     } else if (builder == null) {
-                        return new String(buffer, start, pos - start - 1);
+                        return names != null
+                                ? names.intern(buffer, start, pos - start - 1)
+                                : new String(buffer, start, pos - start - 1);
                     } else {
                         builder.append(buffer, start, pos - start - 1);
-                        return builder.toString();
+                        return names != null
+                                ? names.intern(builder.toString())
+                                : builder.toString();
                     }
 
                 } else if (c == '\\') {
@@ -832,11 +889,25 @@ public final class JsonReader implements Closeable {
                 }
             }
 
-            if (builder == null) {
-                builder = new StringBuilder();
+            if (builder == null && start > 0) {
+                int scanned = pos - start;
+                pos = start;
+                if (!fillBuffer(scanned + 1)) {
+                    break;
+                }
+                start = 0;
+                pos = scanned;
+            } else {
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                builder.append(buffer, start, pos - start);
+                if (!fillBuffer(1)) {
+                    break;
+                }
+                start = pos;
             }
-            builder.append(buffer, start, pos - start);
-        } while (fillBuffer(1));
+        }
 
         throw syntaxError("Unterminated string");
     }
@@ -18,9 +18,9 @@ package com.android.json.stream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 
 /**
  * Writes a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
@@ -113,18 +113,66 @@ import java.util.List;
  *     writer.endArray();
  *   }}</pre>
  *
+ * <h3>Writing bytes</h3>
+ * A writer created with an {@link OutputStream} or a {@link ByteBuffer} encodes
+ * straight to UTF-8 in a buffer of its own, which it hands to the sink when it
+ * is full and on {@link #flush} and {@link #close}. Numbers are formatted
+ * without creating strings, and {@link #value(double[])} and {@link
+ * #value(long[])} write whole arrays of samples at once. Closed writers return
+ * their buffer to a per-thread pool for the next writer to reuse.
+ *
  * <p>Each {@code JsonWriter} may be used to write a single JSON stream.
  * Instances of this class are not thread safe. Calls that would result in a
  * malformed JSON string will fail with an {@link IllegalStateException}.
  */
 public final class JsonWriter implements Closeable {
 
-    /** The output data, containing at most one top-level array or object. */
+    /*
+     * The scopes on the stack, as the ordinals of the JsonScope constants.
+     */
+    private static final int EMPTY_ARRAY = 0;
+    private static final int NONEMPTY_ARRAY = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_DOCUMENT = 5;
+    private static final int NONEMPTY_DOCUMENT = 6;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The buffer of the last writer closed on each thread, for the next one. */
+    private static final ThreadLocal<byte[]> BUFFER_POOL = new ThreadLocal<byte[]>();
+
+    /** Powers of ten up to the most fraction digits formatted directly. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+        1e16, 1e17
+    };
+
+    /** The largest double below which every integer is exact. */
+    private static final double MAX_EXACT_LONG = 1L << 53;
+
+    /**
+     * The output data, containing at most one top-level array or object, or
+     * null if this writer encodes bytes.
+     */
     private final Writer out;
 
-    private final List<JsonScope> stack = new ArrayList<JsonScope>();
+    /** The destination of the encoded bytes, if this writer encodes bytes. */
+    private final OutputStream stream;
+    private final ByteBuffer target;
+
+    /** The UTF-8 not yet handed to the stream or target. */
+    private byte[] bytes;
+    private int count = 0;
+
+    /** Holds a number while it's formatted. */
+    private final char[] digits = new char[24];
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
     {
-        stack.add(JsonScope.EMPTY_DOCUMENT);
+        push(EMPTY_DOCUMENT);
     }
 
     /**
@@ -148,6 +196,49 @@ public final class JsonWriter implements Closeable {
             throw new NullPointerException("out == null");
         }
         this.out = out;
+        this.stream = null;
+        this.target = null;
+    }
+
+    /**
+     * Creates a new instance that writes a UTF-8 encoded JSON stream to
+     * {@code out}. The writer buffers its output, so {@code out} needn't be.
+     */
+    public JsonWriter(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = null;
+        this.stream = out;
+        this.target = null;
+        this.bytes = takeBuffer();
+    }
+
+    /**
+     * Creates a new instance that puts a UTF-8 encoded JSON stream into
+     * {@code out}, starting at its position. The bytes written so far are in
+     * the buffer after {@link #flush} or {@link #close}.
+     *
+     * @throws java.nio.BufferOverflowException from {@link #flush} or another
+     *     call if the JSON doesn't fit into {@code out}.
+     */
+    public JsonWriter(ByteBuffer out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = null;
+        this.stream = null;
+        this.target = out;
+        this.bytes = takeBuffer();
+    }
+
+    private static byte[] takeBuffer() {
+        byte[] buffer = BUFFER_POOL.get();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        BUFFER_POOL.set(null);
+        return buffer;
     }
 
     /**
@@ -175,7 +266,7 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter beginArray() throws IOException {
-        return open(JsonScope.EMPTY_ARRAY, "[");
+        return open(EMPTY_ARRAY, '[');
     }
 
     /**
@@ -184,7 +275,7 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter endArray() throws IOException {
-        return close(JsonScope.EMPTY_ARRAY, JsonScope.NONEMPTY_ARRAY, "]");
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
     }
 
     /**
@@ -194,7 +285,7 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter beginObject() throws IOException {
-        return open(JsonScope.EMPTY_OBJECT, "{");
+        return open(EMPTY_OBJECT, '{');
     }
 
     /**
@@ -203,17 +294,17 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter endObject() throws IOException {
-        return close(JsonScope.EMPTY_OBJECT, JsonScope.NONEMPTY_OBJECT, "}");
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
     }
 
     /**
      * Enters a new scope by appending any necessary whitespace and the given
      * bracket.
      */
-    private JsonWriter open(JsonScope empty, String openBracket) throws IOException {
+    private JsonWriter open(int empty, char openBracket) throws IOException {
         beforeValue(true);
-        stack.add(empty);
-        out.write(openBracket);
+        push(empty);
+        write(openBracket);
         return this;
     }
 
@@ -221,33 +312,54 @@ public final class JsonWriter implements Closeable {
      * Closes the current scope by appending any necessary whitespace and the
      * given bracket.
      */
-    private JsonWriter close(JsonScope empty, JsonScope nonempty, String closeBracket)
+    private JsonWriter close(int empty, int nonempty, char closeBracket)
             throws IOException {
-        JsonScope context = peek();
+        int context = peek();
         if (context != nonempty && context != empty) {
-            throw new IllegalStateException("Nesting problem: " + stack);
+            throw new IllegalStateException("Nesting problem: " + stackToString());
         }
 
-        stack.remove(stack.size() - 1);
+        stackSize--;
         if (context == nonempty) {
             newline();
         }
-        out.write(closeBracket);
+        write(closeBracket);
         return this;
     }
 
+    private void push(int newTop) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = newTop;
+    }
+
     /**
      * Returns the value on the top of the stack.
      */
-    private JsonScope peek() {
-        return stack.get(stack.size() - 1);
+    private int peek() {
+        return stack[stackSize - 1];
     }
 
     /**
      * Replace the value on the top of the stack with the given value.
      */
-    private void replaceTop(JsonScope topOfStack) {
-        stack.set(stack.size() - 1, topOfStack);
+    private void replaceTop(int topOfStack) {
+        stack[stackSize - 1] = topOfStack;
+    }
+
+    /** Returns the stack as the list of scopes it holds. */
+    private String stackToString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < stackSize; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(JsonScope.values()[stack[i]]);
+        }
+        return result.append(']').toString();
     }
 
     /**
@@ -287,7 +399,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter nullValue() throws IOException {
         beforeValue(false);
-        out.write("null");
+        write("null");
         return this;
     }
 
@@ -298,7 +410,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(boolean value) throws IOException {
         beforeValue(false);
-        out.write(value ? "true" : "false");
+        write(value ? "true" : "false");
         return this;
     }
 
@@ -310,11 +422,9 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter value(double value) throws IOException {
-        if (Double.isNaN(value) || Double.isInfinite(value)) {
-            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
-        }
+        checkFinite(value);
         beforeValue(false);
-        out.append(Double.toString(value));
+        writeDouble(value);
         return this;
     }
 
@@ -325,16 +435,62 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(long value) throws IOException {
         beforeValue(false);
-        out.write(Long.toString(value));
+        writeLong(value);
         return this;
     }
 
+    /**
+     * Encodes {@code values} as an array of numbers.
+     *
+     * @param values finite values. May not contain {@link Double#isNaN() NaNs}
+     *     or {@link Double#isInfinite() infinities}.
+     * @return this writer.
+     */
+    public JsonWriter value(double[] values) throws IOException {
+        for (double value : values) {
+            checkFinite(value);
+        }
+        beginArray();
+        for (double value : values) {
+            beforeValue(false);
+            writeDouble(value);
+        }
+        return endArray();
+    }
+
+    /**
+     * Encodes {@code values} as an array of numbers.
+     *
+     * @return this writer.
+     */
+    public JsonWriter value(long[] values) throws IOException {
+        beginArray();
+        for (long value : values) {
+            beforeValue(false);
+            writeLong(value);
+        }
+        return endArray();
+    }
+
+    private static void checkFinite(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+    }
+
     /**
      * Ensures all buffered data is written to the underlying {@link Writer}
      * and flushes that writer.
      */
     public void flush() throws IOException {
-        out.flush();
+        if (out != null) {
+            out.flush();
+        } else {
+            flushBytes();
+            if (stream != null) {
+                stream.flush();
+            }
+        }
     }
 
     /**
@@ -343,15 +499,25 @@ public final class JsonWriter implements Closeable {
      * @throws IOException if the JSON document is incomplete.
      */
     public void close() throws IOException {
-        out.close();
+        if (out != null) {
+            out.close();
+        } else if (bytes.length > 0) {
+            flushBytes();
+            if (stream != null) {
+                stream.close();
+            }
+            BUFFER_POOL.set(bytes);
+            // any later write finds no room and fails
+            bytes = new byte[0];
+        }
 
-        if (peek() != JsonScope.NONEMPTY_DOCUMENT) {
+        if (peek() != NONEMPTY_DOCUMENT) {
             throw new IOException("Incomplete document");
         }
     }
 
     private void string(String value) throws IOException {
-        out.write("\"");
+        write('"');
         for (int i = 0, length = value.length(); i < length; i++) {
             char c = value.charAt(i);
 
@@ -365,41 +531,43 @@ public final class JsonWriter implements Closeable {
                 case '"':
                 case '\\':
                 case '/':
-                    out.write('\\');
-                    out.write(c);
+                    write('\\');
+                    write(c);
                     break;
 
                 case '\t':
-                    out.write("\\t");
+                    write("\\t");
                     break;
 
                 case '\b':
-                    out.write("\\b");
+                    write("\\b");
                     break;
 
                 case '\n':
-                    out.write("\\n");
+                    write("\\n");
                     break;
 
                 case '\r':
-                    out.write("\\r");
+                    write("\\r");
                     break;
 
                 case '\f':
-                    out.write("\\f");
+                    write("\\f");
                     break;
 
                 default:
                     if (c <= 0x1F) {
-                        out.write(String.format("\\u%04x", (int) c));
-                    } else {
+                        write(String.format("\\u%04x", (int) c));
+                    } else if (out != null) {
                         out.write(c);
+                    } else {
+                        i = writeUtf8(value, i);
                     }
                     break;
             }
 
         }
-        out.write("\"");
+        write('"');
     }
 
     private void newline() throws IOException {
@@ -407,9 +575,9 @@ public final class JsonWriter implements Closeable {
             return;
         }
 
-        out.write("\n");
-        for (int i = 1; i < stack.size(); i++) {
-            out.write(indent);
+        write('\n');
+        for (int i = 1; i < stackSize; i++) {
+            write(indent);
         }
     }
 
@@ -418,14 +586,14 @@ public final class JsonWriter implements Closeable {
      * adjusts the stack to expect the name's value.
      */
     private void beforeName() throws IOException {
-        JsonScope context = peek();
-        if (context == JsonScope.NONEMPTY_OBJECT) { // first in object
-            out.write(',');
-        } else if (context != JsonScope.EMPTY_OBJECT) { // not in an object!
-            throw new IllegalStateException("Nesting problem: " + stack);
+        int context = peek();
+        if (context == NONEMPTY_OBJECT) { // first in object
+            write(',');
+        } else if (context != EMPTY_OBJECT) { // not in an object!
+            throw new IllegalStateException("Nesting problem: " + stackToString());
         }
         newline();
-        replaceTop(JsonScope.DANGLING_NAME);
+        replaceTop(DANGLING_NAME);
     }
 
     /**
@@ -443,22 +611,22 @@ public final class JsonWriter implements Closeable {
                     throw new IllegalStateException(
                             "JSON must start with an array or an object.");
                 }
-                replaceTop(JsonScope.NONEMPTY_DOCUMENT);
+                replaceTop(NONEMPTY_DOCUMENT);
                 break;
 
             case EMPTY_ARRAY: // first in array
-                replaceTop(JsonScope.NONEMPTY_ARRAY);
+                replaceTop(NONEMPTY_ARRAY);
                 newline();
                 break;
 
             case NONEMPTY_ARRAY: // another in array
-                out.append(',');
+                write(',');
                 newline();
                 break;
 
             case DANGLING_NAME: // value for name
-                out.append(separator);
-                replaceTop(JsonScope.NONEMPTY_OBJECT);
+                write(separator);
+                replaceTop(NONEMPTY_OBJECT);
                 break;
 
             case NONEMPTY_DOCUMENT:
@@ -466,7 +634,147 @@ public final class JsonWriter implements Closeable {
                         "JSON must have only one top-level value.");
 
             default:
-                throw new IllegalStateException("Nesting problem: " + stack);
+                throw new IllegalStateException("Nesting problem: " + stackToString());
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (out != null) {
+            out.write(c);
+        } else if (c < 0x80) {
+            if (count == bytes.length) {
+                flushBytes();
+            }
+            bytes[count++] = (byte) c;
+        } else {
+            writeUtf8(String.valueOf(c), 0);
+        }
+    }
+
+    private void write(String s) throws IOException {
+        if (out != null) {
+            out.write(s);
+        } else {
+            for (int i = 0, length = s.length(); i < length; i++) {
+                i = writeUtf8(s, i);
+            }
+        }
+    }
+
+    /**
+     * Encodes the character at {@code i}, or the surrogate pair starting there,
+     * and returns the index of the last character encoded. Unpaired surrogates
+     * are encoded as '?', as {@link java.io.OutputStreamWriter} does.
+     */
+    private int writeUtf8(String s, int i) throws IOException {
+        if (bytes.length - count < 4) {
+            flushBytes();
+        }
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            bytes[count++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[count++] = (byte) (0xc0 | (c >> 6));
+            bytes[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (!Character.isSurrogate(c)) {
+            bytes[count++] = (byte) (0xe0 | (c >> 12));
+            bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, s.charAt(++i));
+            bytes[count++] = (byte) (0xf0 | (codePoint >> 18));
+            bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            bytes[count++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+            bytes[count++] = '?';
+        }
+        return i;
+    }
+
+    /** Hands the buffered bytes to the stream or target. */
+    private void flushBytes() throws IOException {
+        if (bytes.length == 0) {
+            throw new IOException("JsonWriter is closed");
+        }
+        if (stream != null) {
+            stream.write(bytes, 0, count);
+        } else {
+            target.put(bytes, 0, count);
+        }
+        count = 0;
+    }
+
+    /** Writes the characters {@code digits[start, digits.length)}, which are ASCII. */
+    private void writeDigits(int start) throws IOException {
+        int length = digits.length - start;
+        if (out != null) {
+            out.write(digits, start, length);
+            return;
+        }
+        if (bytes.length - count < length) {
+            flushBytes();
+        }
+        for (int i = start; i < digits.length; i++) {
+            bytes[count++] = (byte) digits[i];
+        }
+    }
+
+    /** Writes {@code value} as {@link Long#toString(long)} does. */
+    private void writeLong(long value) throws IOException {
+        writeDigits(formatFixed(value, 0));
+    }
+
+    /**
+     * Writes {@code value} as {@link Double#toString(double)} does, formatting
+     * it directly when it needs few digits. That is the shortest decimal with
+     * at least one fraction digit which parses back to {@code value}, in the
+     * range where Double.toString doesn't use scientific notation.
+     */
+    private void writeDouble(double value) throws IOException {
+        double magnitude = Math.abs(value);
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            for (int scale = 1; scale < POWERS_OF_TEN.length; scale++) {
+                double scaled = magnitude * POWERS_OF_TEN[scale];
+                if (scaled >= MAX_EXACT_LONG) {
+                    break;
+                }
+                long mantissa = Math.round(scaled);
+                // both operands are exact, so this is how the decimal parses
+                if (mantissa / POWERS_OF_TEN[scale] == magnitude) {
+                    writeDigits(formatFixed(value < 0 ? -mantissa : mantissa, scale));
+                    return;
+                }
+            }
+        }
+        write(Double.toString(value));
+    }
+
+    /**
+     * Formats {@code unscaled} with a decimal point before its last {@code
+     * scale} digits into the end of {@link #digits}, and returns the index
+     * the number starts at.
+     */
+    private int formatFixed(long unscaled, int scale) {
+        int start = digits.length;
+        boolean negative = unscaled < 0;
+        // negative values cover Long.MIN_VALUE
+        long remaining = negative ? unscaled : -unscaled;
+        int digitCount = 0;
+        do {
+            digits[--start] = (char) ('0' - (remaining % 10));
+            remaining /= 10;
+            if (++digitCount == scale) {
+                digits[--start] = '.';
+                if (remaining == 0) {
+                    digits[--start] = '0';
+                }
+            }
+        } while (remaining != 0 || digitCount < scale);
+        if (negative) {
+            digits[--start] = '-';
         }
+        return start;
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes UTF-8 bytes from a stream or a buffer straight into the caller's
+ * characters. Runs of ASCII, which make up nearly all JSON, are copied one
+ * byte per character. Malformed input decodes to one U+FFFD for each maximal
+ * ill-formed subsequence, as the Unicode standard recommends, except that an
+ * encoded surrogate is a single ill-formed sequence. This is what the JDK
+ * decoder does, so both read the same characters.
+ */
+final class Utf8Reader extends Reader {
+
+    private static final char REPLACEMENT = '\ufffd';
+
+    private final InputStream stream;
+    private final ByteBuffer source;
+    private final byte[] bytes;
+    private int pos = 0;
+    private int limit = 0;
+    /** The low surrogate of a pair whose high surrogate was returned last, or 0. */
+    private char pendingLowSurrogate = 0;
+
+    Utf8Reader(InputStream stream, int bufferSize) {
+        if (stream == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.stream = stream;
+        this.source = null;
+        this.bytes = new byte[bufferSize];
+    }
+
+    Utf8Reader(ByteBuffer source) {
+        if (source == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.stream = null;
+        if (source.hasArray()) {
+            // decode in place
+            this.source = null;
+            this.bytes = source.array();
+            this.pos = source.arrayOffset() + source.position();
+            this.limit = source.arrayOffset() + source.limit();
+            source.position(source.limit());
+        } else {
+            this.source = source;
+            this.bytes = new byte[Math.min(8192, Math.max(16, source.remaining()))];
+        }
+    }
+
+    @Override public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int end = offset + length;
+        int i = offset;
+        if (pendingLowSurrogate != 0) {
+            chars[i++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+        while (i < end) {
+            if (limit - pos < 4 && !fill() && pos == limit) {
+                break;
+            }
+            int b = bytes[pos];
+            if (b >= 0) {
+                // ASCII, the common case
+                byte[] bytes = this.bytes;
+                int p = pos;
+                int stop = p + Math.min(end - i, limit - p);
+                while (p < stop && bytes[p] >= 0) {
+                    chars[i++] = (char) bytes[p++];
+                }
+                pos = p;
+                continue;
+            }
+
+            int lead = b & 0xff;
+            int size = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : 2;
+            int valid = wellFormedPrefix(lead, size);
+            if (valid < size) {
+                // one replacement for the longest prefix of a sequence, as the JDK does
+                chars[i++] = REPLACEMENT;
+                pos += valid;
+            } else if (size == 2) {
+                chars[i++] = (char) (((lead & 0x1f) << 6) | (bytes[pos + 1] & 0x3f));
+                pos += 2;
+            } else if (size == 3) {
+                char c = (char) (((lead & 0x0f) << 12) | ((bytes[pos + 1] & 0x3f) << 6)
+                        | (bytes[pos + 2] & 0x3f));
+                chars[i++] = Character.isSurrogate(c) ? REPLACEMENT : c;
+                pos += 3;
+            } else {
+                int c = ((lead & 0x07) << 18) | ((bytes[pos + 1] & 0x3f) << 12)
+                        | ((bytes[pos + 2] & 0x3f) << 6) | (bytes[pos + 3] & 0x3f);
+                chars[i++] = Character.highSurrogate(c);
+                if (i < end) {
+                    chars[i++] = Character.lowSurrogate(c);
+                } else {
+                    pendingLowSurrogate = Character.lowSurrogate(c);
+                }
+                pos += 4;
+            }
+        }
+        return i == offset ? -1 : i - offset;
+    }
+
+    /**
+     * Returns how many bytes at {@code pos}, at least one, begin a well-formed
+     * sequence of {@code length} bytes led by {@code lead}. Overlong forms and
+     * code points beyond U+10FFFF are not well-formed. Encoded surrogates pass,
+     * for the caller to replace as a whole.
+     */
+    private int wellFormedPrefix(int lead, int length) {
+        int min = 0x80;
+        int max = 0xbf;
+        if (lead < 0xc2 || lead > 0xf4) {
+            return 1;
+        } else if (lead == 0xe0) {
+            min = 0xa0;
+        } else if (lead == 0xf0) {
+            min = 0x90;
+        } else if (lead == 0xf4) {
+            max = 0x8f;
+        }
+        int available = Math.min(length, limit - pos);
+        int i = 1;
+        while (i < available) {
+            int b = bytes[pos + i] & 0xff;
+            if (b < min || b > max) {
+                break;
+            }
+            min = 0x80;
+            max = 0xbf;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Moves the undecoded bytes to the front and reads more. Returns false if
+     * there is no more input.
+     */
+    private boolean fill() throws IOException {
+        if (stream == null && source == null) {
+            return false;
+        }
+        int remaining = limit - pos;
+        System.arraycopy(bytes, pos, bytes, 0, remaining);
+        pos = 0;
+        limit = remaining;
+        boolean read = false;
+        while (limit < bytes.length) {
+            int n;
+            if (stream != null) {
+                n = stream.read(bytes, limit, bytes.length - limit);
+            } else {
+                n = Math.min(source.remaining(), bytes.length - limit);
+                source.get(bytes, limit, n);
+                if (n == 0) {
+                    n = -1;
+                }
+            }
+            if (n == -1) {
+                break;
+            }
+            limit += n;
+            read = true;
+            if (limit - pos >= 4) {
+                break;
+            }
+        }
+        return read;
+    }
+
+    @Override public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
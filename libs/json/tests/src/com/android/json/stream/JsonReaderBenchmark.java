@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures reading JSON files through an {@link InputStreamReader}, as callers
+ * did before, against reading their bytes with
+ * {@link JsonReader#JsonReader(InputStream)} and a name table.
+ * <p>
+ * Both readers must report the same tokens for every file.
+ * <p>
+ * Usage: JsonReaderBenchmark ROUNDS JSON_FILE...
+ */
+class JsonReaderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: JsonReaderBenchmark ROUNDS JSON_FILE...");
+            System.exit(1);
+        }
+        int rounds = Integer.parseInt(args[0]);
+        List<byte[]> files = new ArrayList<byte[]>();
+        long size = 0;
+        for (int i = 1; i < args.length; i++) {
+            byte[] bytes = readFully(new FileInputStream(args[i]));
+            files.add(bytes);
+            size += bytes.length;
+        }
+        System.out.println(files.size() + " files, " + size + " bytes");
+
+        for (byte[] file : files) {
+            List<String> expected = new ArrayList<String>();
+            List<String> actual = new ArrayList<String>();
+            read(file, false, expected);
+            read(file, true, actual);
+            if (!expected.equals(actual)) {
+                System.err.println("readers differ");
+                System.exit(1);
+            }
+        }
+
+        // twice, the first pass warms up
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (byte[] file : files) {
+                    read(file, false, null);
+                }
+            }
+            long charNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (byte[] file : files) {
+                    read(file, true, null);
+                }
+            }
+            long byteNanos = System.nanoTime() - start;
+
+            long megabytes = Math.max(1, rounds * size / (1024 * 1024));
+            System.out.println("InputStreamReader: " + charNanos / megabytes / 1000 + " us/MiB");
+            System.out.println("InputStream:       " + byteNanos / megabytes / 1000 + " us/MiB");
+        }
+    }
+
+    /** Reads all tokens of {@code file}, adding them to {@code tokens} if it isn't null. */
+    private static void read(byte[] file, boolean bytes, List<String> tokens) throws IOException {
+        InputStream in = new ByteArrayInputStream(file);
+        JsonReader reader;
+        if (bytes) {
+            reader = new JsonReader(in);
+            reader.setNameTable(new JsonNameTable());
+        } else {
+            reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        }
+        reader.setLenient(true);
+        try {
+            while (true) {
+                JsonToken token = reader.peek();
+                String value;
+                switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    value = "[";
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    value = "]";
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    value = "{";
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    value = "}";
+                    break;
+                case NAME:
+                    value = "name " + reader.nextName();
+                    break;
+                case BOOLEAN:
+                    value = "boolean " + reader.nextBoolean();
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    value = "null";
+                    break;
+                case END_DOCUMENT:
+                    return;
+                default:
+                    value = token + " " + reader.nextString();
+                    break;
+                }
+                if (tokens != null) {
+                    tokens.add(value);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link JsonReader}, checking that the InputStream and
+ * ByteBuffer inputs, which decode UTF-8 with {@link Utf8Reader}, read the same
+ * tokens as a reader over an {@link InputStreamReader}.
+ */
+public class JsonReaderTest extends TestCase {
+
+    private static final String NAMES_AND_VALUES = "{\n"
+            + "  \"description\": \"café ☃ 😀\",\n"
+            + "  \"über\": [1, -2.5e10, true, false, null, \"\\u00e9\\ud83d\\ude00\"],\n"
+            + "  \"result\": {\"name\": \"a\", \"name\": \"b\", \"bug\": 1234}\n"
+            + "}\n";
+
+    /** Ill-formed and truncated sequences inside string values. */
+    private static final int[][] MALFORMED = {
+        { 0x80 },                   // continuation byte without a lead
+        { 0xbf, 0x80 },
+        { 0xc0, 0xaf },             // overlong
+        { 0xc1, 0xbf },
+        { 0xe0, 0x80, 0xaf },       // overlong
+        { 0xe0, 0xa0 },             // truncated by the closing quote
+        { 0xed, 0xa0, 0x80 },       // encoded surrogate
+        { 0xf0, 0x80, 0x80, 0xaf }, // overlong
+        { 0xf0, 0x9f, 0x98 },       // truncated by the closing quote
+        { 0xf4, 0x90, 0x80, 0x80 }, // beyond U+10FFFF
+        { 0xf5, 0x80 },
+        { 0xfe },
+        { 0xff, 0x41 },
+        { 0xc3, 0xa9, 0x80, 0xe2, 0x98 },
+    };
+
+    public void testNamesAndValues() throws IOException {
+        assertSameTokens(utf8(NAMES_AND_VALUES));
+    }
+
+    public void testMalformedSequences() throws IOException {
+        for (int[] sequence : MALFORMED) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write('[');
+            out.write('"');
+            out.write('a');
+            for (int b : sequence) {
+                out.write(b);
+            }
+            out.write('"');
+            out.write(']');
+            assertSameTokens(out.toByteArray());
+        }
+    }
+
+    public void testTruncatedInput() throws IOException {
+        // a string cut in the middle of a sequence is unterminated on every path
+        byte[] complete = utf8("[\"😀\"]");
+        for (int length = 0; length < complete.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(complete, 0, truncated, 0, length);
+            assertSameTokens(truncated);
+        }
+    }
+
+    /**
+     * Test strings that cross the ends of the 1024 and 8192 char buffers,
+     * which nextString() moves to the front of the buffer, with escapes and
+     * characters of every UTF-8 length around the boundaries.
+     */
+    public void testStringsAcrossBuffers() throws IOException {
+        String[] fillers = { "a", "é", "☃", "😀", "\\n", "\\u2603" };
+        for (String filler : fillers) {
+            StringBuilder json = new StringBuilder("[");
+            for (int length : new int[] { 1000, 1030, 2100, 8180, 8200, 20000 }) {
+                json.append("\"x");
+                for (int i = 0; i < length; i++) {
+                    json.append(filler);
+                }
+                json.append("\", ");
+            }
+            json.append("\"end\"]");
+            assertSameTokens(utf8(json.toString()));
+        }
+    }
+
+    /**
+     * Test that supplementary characters split across read() calls keep both
+     * halves of their surrogate pair.
+     */
+    public void testSurrogatePairsAcrossReads() throws IOException {
+        String text = "a😀é😁😂☃b";
+        Utf8Reader reader = new Utf8Reader(new ByteArrayInputStream(utf8(text)), 4);
+        StringBuilder result = new StringBuilder();
+        char[] chars = new char[1];
+        while (reader.read(chars, 0, 1) != -1) {
+            result.append(chars[0]);
+        }
+        assertEquals(text, result.toString());
+
+        for (int size = 1; size <= 4; size++) {
+            reader = new Utf8Reader(ByteBuffer.wrap(utf8(text)));
+            result.setLength(0);
+            chars = new char[size];
+            int count;
+            while ((count = reader.read(chars, 0, size)) != -1) {
+                result.append(chars, 0, count);
+            }
+            assertEquals(text, result.toString());
+        }
+    }
+
+    public void testNameTable() throws IOException {
+        JsonNameTable names = new JsonNameTable("name");
+        String name = names.intern("name");
+        JsonReader reader = new JsonReader(ByteBuffer.wrap(utf8(NAMES_AND_VALUES)));
+        reader.setNameTable(names);
+        reader.beginObject();
+        assertEquals("description", reader.nextName());
+        reader.skipValue();
+        assertEquals("über", reader.nextName());
+        reader.skipValue();
+        assertEquals("result", reader.nextName());
+        reader.beginObject();
+        assertSame(name, reader.nextName());
+        reader.skipValue();
+        assertSame(name, reader.nextName());
+        reader.skipValue();
+        String bug = reader.nextName();
+        assertSame(bug, names.intern(new String("bug")));
+    }
+
+    public void testNameTableMaxSize() {
+        JsonNameTable names = new JsonNameTable(2);
+        String a = names.intern(new String("a"));
+        String b = names.intern(new String("b"));
+        String c = names.intern(new String("c"));
+        assertSame(a, names.intern("a".toCharArray(), 0, 1));
+        assertSame(b, names.intern(new String("b")));
+        // a full table returns new strings
+        assertNotSame(c, names.intern(new String("c")));
+        assertEquals("c", names.intern("xcx".toCharArray(), 1, 1));
+    }
+
+    /**
+     * Asserts that every byte input reads the same tokens as the reader input,
+     * with and without a name table.
+     */
+    private static void assertSameTokens(byte[] json) throws IOException {
+        List<String> expected = tokens(new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(json), "UTF-8")), null);
+        assertEquals(expected, tokens(new JsonReader(new ByteArrayInputStream(json)), null));
+        assertEquals(expected, tokens(new JsonReader(new OneByteInputStream(json)), null));
+        assertEquals(expected, tokens(new JsonReader(ByteBuffer.wrap(json)), null));
+        ByteBuffer direct = ByteBuffer.allocateDirect(json.length);
+        direct.put(json);
+        direct.flip();
+        assertEquals(expected, tokens(new JsonReader(direct), null));
+        assertEquals(expected, tokens(new JsonReader(ByteBuffer.wrap(json)),
+                new JsonNameTable("name", "bug")));
+    }
+
+    /** Returns the tokens and values of a document, ending with "error" if it is malformed. */
+    private static List<String> tokens(JsonReader reader, JsonNameTable names) {
+        reader.setNameTable(names);
+        List<String> tokens = new ArrayList<String>();
+        try {
+            while (true) {
+                JsonToken token = reader.peek();
+                switch (token) {
+                    case BEGIN_ARRAY:
+                        reader.beginArray();
+                        tokens.add("[");
+                        break;
+                    case END_ARRAY:
+                        reader.endArray();
+                        tokens.add("]");
+                        break;
+                    case BEGIN_OBJECT:
+                        reader.beginObject();
+                        tokens.add("{");
+                        break;
+                    case END_OBJECT:
+                        reader.endObject();
+                        tokens.add("}");
+                        break;
+                    case NAME:
+                        tokens.add("name:" + reader.nextName());
+                        break;
+                    case STRING:
+                    case NUMBER:
+                        tokens.add(token + ":" + reader.nextString());
+                        break;
+                    case BOOLEAN:
+                        tokens.add("boolean:" + reader.nextBoolean());
+                        break;
+                    case NULL:
+                        reader.nextNull();
+                        tokens.add("null");
+                        break;
+                    case END_DOCUMENT:
+                        return tokens;
+                }
+            }
+        } catch (IOException e) {
+            tokens.add("error");
+        } catch (IllegalStateException e) {
+            tokens.add("error");
+        }
+        return tokens;
+    }
+
+    private static byte[] utf8(String s) throws IOException {
+        return s.getBytes("UTF-8");
+    }
+
+    /** Returns one byte per read, so that every sequence is split across reads. */
+    private static class OneByteInputStream extends InputStream {
+        private final byte[] bytes;
+        private int pos = 0;
+
+        OneByteInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override public int read() {
+            return pos < bytes.length ? bytes[pos++] & 0xff : -1;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int b = read();
+            if (b == -1) {
+                return -1;
+            }
+            buffer[offset] = (byte) b;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures writing performance samples, objects holding a name and arrays of
+ * doubles and longs, through a buffered {@link OutputStreamWriter} one value
+ * at a time, as callers did before, against writing UTF-8 with
+ * {@link JsonWriter#JsonWriter(java.io.OutputStream)} and the array values.
+ * <p>
+ * Both writers must produce the same bytes.
+ * <p>
+ * Usage: JsonWriterBenchmark ROUNDS SAMPLES
+ */
+class JsonWriterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: JsonWriterBenchmark ROUNDS SAMPLES");
+            System.exit(1);
+        }
+        int rounds = Integer.parseInt(args[0]);
+        int samples = Integer.parseInt(args[1]);
+        Random random = new Random(0);
+        double[] doubles = new double[samples];
+        long[] longs = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            // timings in milliseconds with microsecond precision, and in nanoseconds
+            doubles[i] = Math.round(Math.abs(random.nextGaussian()) * 1e6) / 1e3;
+            longs[i] = (long) (doubles[i] * 1e6);
+        }
+
+        byte[] expected = writeChars(doubles, longs);
+        if (!Arrays.equals(expected, writeBytes(doubles, longs))) {
+            System.err.println("writers differ");
+            System.exit(1);
+        }
+        System.out.println(samples + " samples, " + expected.length + " bytes");
+
+        // twice, the first pass warms up
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                writeChars(doubles, longs);
+            }
+            long charNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                writeBytes(doubles, longs);
+            }
+            long byteNanos = System.nanoTime() - start;
+
+            long values = 2L * rounds * samples;
+            System.out.println("OutputStreamWriter: " + charNanos / values + " ns/value");
+            System.out.println("OutputStream:       " + byteNanos / values + " ns/value");
+        }
+    }
+
+    private static byte[] writeChars(double[] doubles, long[] longs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        writer.beginObject();
+        writer.name("name").value("sample");
+        writer.name("doubles").beginArray();
+        for (double value : doubles) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.name("longs").beginArray();
+        for (long value : longs) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] writeBytes(double[] doubles, long[] longs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("name").value("sample");
+        writer.name("doubles").value(doubles);
+        writer.name("longs").value(longs);
+        writer.endObject();
+        writer.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link JsonWriter}, checking that the OutputStream and
+ * ByteBuffer outputs, which encode UTF-8 and format numbers themselves, write
+ * the same bytes as a writer over an {@link OutputStreamWriter}.
+ */
+public class JsonWriterTest extends TestCase {
+
+    private static final double[] DOUBLES = {
+        0.0, -0.0, 1.0, -1.0, 0.1, -2.5, 1.0 / 3, 2.0 / 3, 100.0, 123456.789,
+        1e-3, -1e-3, 9.99e-4, 0.0010000000000000002, 1e7, -1e7, 9999999.999999998,
+        1e-4, 1.5e300, Double.MIN_VALUE, Double.MAX_VALUE, (double) (1L << 53),
+        (double) Long.MAX_VALUE,
+    };
+
+    private static final long[] LONGS = {
+        0, 1, -1, 9, 10, -10, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+        Long.MIN_VALUE, Long.MIN_VALUE + 1,
+    };
+
+    private static final String[] STRINGS = {
+        "",
+        "plain",
+        "quote \" backslash \\ slash / tab \t newline \n\r\b\f \u0000 \u001f",
+        "café ☃ 😀",
+        "unpaired \ud83d high",
+        "unpaired \ude00 low",
+        "reversed \ude00\ud83d pair",
+        "high at end \ud83d",
+    };
+
+    /** Writes a document using every kind of value. */
+    private interface Document {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private static final Document ALL_VALUES = new Document() {
+        @Override public void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("doubles").value(DOUBLES);
+            writer.name("longs").value(LONGS);
+            writer.name("values").beginArray();
+            for (double value : DOUBLES) {
+                writer.value(value);
+            }
+            for (long value : LONGS) {
+                writer.value(value);
+            }
+            writer.value(true).value(false).nullValue();
+            writer.endArray();
+            for (String s : STRINGS) {
+                writer.name(s).value(s);
+            }
+            writer.name("empty").value(new double[0]);
+            writer.endObject();
+        }
+    };
+
+    public void testSameBytes() throws IOException {
+        assertSameBytes(ALL_VALUES, "");
+        assertSameBytes(ALL_VALUES, "  ");
+    }
+
+    /**
+     * Test documents larger than the byte buffer, with characters of every
+     * UTF-8 length across its end.
+     */
+    public void testSameBytesAcrossBuffers() throws IOException {
+        for (final String filler : new String[] { "a", "é", "☃", "😀" }) {
+            assertSameBytes(new Document() {
+                @Override public void write(JsonWriter writer) throws IOException {
+                    writer.beginArray();
+                    StringBuilder s = new StringBuilder();
+                    for (int i = 0; i < 5000; i++) {
+                        s.append(filler);
+                        if (i % 1000 == 0) {
+                            writer.value(s.toString());
+                        }
+                    }
+                    writer.value(s.toString());
+                    double[] values = new double[3000];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = i / 7.0;
+                    }
+                    writer.value(values);
+                    writer.endArray();
+                }
+            }, "");
+        }
+    }
+
+    /**
+     * Test that value(double[]) and value(long[]) write what a value() call
+     * per element does.
+     */
+    public void testArrays() throws IOException {
+        String arrays = toString(new Document() {
+            @Override public void write(JsonWriter writer) throws IOException {
+                writer.beginArray().value(DOUBLES).value(LONGS).endArray();
+            }
+        });
+        String elements = toString(new Document() {
+            @Override public void write(JsonWriter writer) throws IOException {
+                writer.beginArray().beginArray();
+                for (double value : DOUBLES) {
+                    writer.value(value);
+                }
+                writer.endArray().beginArray();
+                for (long value : LONGS) {
+                    writer.value(value);
+                }
+                writer.endArray().endArray();
+            }
+        });
+        assertEquals(elements, arrays);
+    }
+
+    public void testDoublesLikeToString() throws IOException {
+        for (double value : DOUBLES) {
+            assertDouble(value);
+            assertDouble(-value);
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            // magnitudes around the range formatted directly, and short decimals in it
+            assertDouble((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(14) - 5));
+            assertDouble(random.nextInt(10000000) / Math.pow(10, random.nextInt(10)));
+        }
+    }
+
+    public void testLongsLikeToString() throws IOException {
+        for (long value : LONGS) {
+            assertEquals("[" + value + "]", toJson(value));
+        }
+        assertEquals("[-9223372036854775808]", toJson(Long.MIN_VALUE));
+    }
+
+    public void testNonFiniteDoublesRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray();
+        for (double value : new double[] {
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY }) {
+            try {
+                writer.value(value);
+                fail("IllegalArgumentException not thrown for " + value);
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                writer.value(new double[] { 1.0, value });
+                fail("IllegalArgumentException not thrown for " + value);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        // a rejected array writes nothing
+        writer.value(2.0);
+        writer.endArray();
+        writer.close();
+        assertEquals("[2.0]", out.toString("UTF-8"));
+    }
+
+    /**
+     * Test that unpaired surrogates are written as '?', as OutputStreamWriter
+     * does.
+     */
+    public void testUnpairedSurrogates() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray().value("a\ud83db").value("\ude00").value("😀").endArray();
+        writer.close();
+        assertTrue(Arrays.equals("[\"a?b\",\"?\",\"😀\"]".getBytes("UTF-8"),
+                out.toByteArray()));
+    }
+
+    private static void assertDouble(double value) throws IOException {
+        assertEquals("[" + Double.toString(value) + "]",
+                toJson(value));
+    }
+
+    private static String toJson(double value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray().value(value).endArray();
+        writer.close();
+        return out.toString("UTF-8");
+    }
+
+    private static String toJson(long value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray().value(value).endArray();
+        writer.close();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Asserts that the OutputStream and ByteBuffer outputs write the bytes
+     * that the Writer output encodes.
+     */
+    private static void assertSameBytes(Document document, String indent) throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(expected, "UTF-8"));
+        writer.setIndent(indent);
+        document.write(writer);
+        writer.close();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer = new JsonWriter(stream);
+        writer.setIndent(indent);
+        document.write(writer);
+        writer.close();
+        assertTrue(Arrays.equals(expected.toByteArray(), stream.toByteArray()));
+
+        for (ByteBuffer buffer : new ByteBuffer[] {
+                ByteBuffer.allocate(expected.size() + 10),
+                ByteBuffer.allocateDirect(expected.size()) }) {
+            writer = new JsonWriter(buffer);
+            writer.setIndent(indent);
+            document.write(writer);
+            writer.close();
+            buffer.flip();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertTrue(Arrays.equals(expected.toByteArray(), bytes));
+        }
+    }
+
+    private static String toString(Document document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        document.write(writer);
+        writer.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -95,13 +95,25 @@ public final class Expectation {
      * Returns true if {@code outcome} matches this expectation.
      */
     public boolean matches(Outcome outcome) {
-        return patternMatches(outcome) && (bugIsOpen || result == outcome.getResult());
+        return patternMatches(outcome) && resultMatches(outcome);
     }
 
     private boolean patternMatches(Outcome outcome) {
         return pattern.matcher(outcome.getOutput()).matches();
     }
 
+    /**
+     * Returns true if {@code outcome} matches this expectation, given that its
+     * output is already known to match.
+     */
+    boolean resultMatches(Outcome outcome) {
+        return bugIsOpen || result == outcome.getResult();
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
     @Override public String toString() {
         return "Expectation[description=" + description + " pattern=" + pattern.pattern() + "]";
     }
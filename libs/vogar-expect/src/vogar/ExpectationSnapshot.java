@@ -0,0 +1,465 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled form of the expectations of an {@link ExpectationStore}, written
+ * once by the build and memory-mapped by each tool that needs it.
+ *
+ * <p>The snapshot holds the outcome names as a trie, one record per
+ * expectation with its result, bug, description, tags and pattern source, the
+ * failure expectations in order, and the length and SHA-1 digest of each
+ * source file. Lookups walk the mapped trie and only create the
+ * {@link Expectation} objects they return, so opening a snapshot costs
+ * neither JSON parsing nor compiling all patterns.
+ *
+ * <p>A snapshot is stale when its source files, their contents or the mode
+ * differ from the ones it was written for. Contents are compared by digest,
+ * as an edit that keeps the length of a file can also keep its modification
+ * time within the resolution of the file system.
+ *
+ * <p>Usage: ExpectationSnapshot SNAPSHOT MODE EXPECTATION_FILE...
+ * <br>If SNAPSHOT is a directory, the snapshot is written to the file
+ * {@link #getFile} names in it.
+ */
+public final class ExpectationSnapshot {
+
+    private static final int MAGIC = 0x56455850; // "VEXP"
+    private static final int VERSION = 2;
+    private static final int DIGEST_LENGTH = 20;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final class Source {
+        final String path;
+        final long length;
+        final byte[] digest;
+
+        Source(String path, long length, byte[] digest) {
+            this.path = path;
+            this.length = length;
+            this.digest = digest;
+        }
+
+        static Source of(File file) throws IOException {
+            MessageDigest sha1;
+            try {
+                sha1 = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+            long length = 0;
+            FileInputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    sha1.update(buffer, 0, count);
+                    length += count;
+                }
+            } finally {
+                in.close();
+            }
+            return new Source(file.getCanonicalPath(), length, sha1.digest());
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return path.equals(other.path) && length == other.length
+                    && Arrays.equals(digest, other.digest);
+        }
+
+        @Override public int hashCode() {
+            return path.hashCode() * 31 + Arrays.hashCode(digest);
+        }
+    }
+
+    private final ByteBuffer data;
+    private final String mode;
+    private final Set<Source> sources;
+    private final int[] recordOffsets;
+    private final int[] failureIndexes;
+    private final int rootOffset;
+    private final Expectation[] expectations;
+
+    private ExpectationSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("not an expectation snapshot");
+        }
+        if (buffer.getInt() != VERSION) {
+            throw new IOException("unsupported expectation snapshot version");
+        }
+        mode = readString(buffer);
+        sources = new LinkedHashSet<Source>();
+        int sourceCount = buffer.getInt();
+        for (int i = 0; i < sourceCount; i++) {
+            String path = readString(buffer);
+            long length = buffer.getLong();
+            byte[] digest = new byte[DIGEST_LENGTH];
+            buffer.get(digest);
+            sources.add(new Source(path, length, digest));
+        }
+        recordOffsets = new int[buffer.getInt()];
+        for (int i = 0; i < recordOffsets.length; i++) {
+            recordOffsets[i] = buffer.getInt();
+        }
+        failureIndexes = new int[buffer.getInt()];
+        for (int i = 0; i < failureIndexes.length; i++) {
+            failureIndexes[i] = buffer.getInt();
+        }
+        rootOffset = buffer.getInt();
+        data = buffer.slice();
+        expectations = new Expectation[recordOffsets.length];
+    }
+
+    /**
+     * Maps the snapshot in {@code file}.
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot of
+     *     this version
+     */
+    public static ExpectationSnapshot open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return new ExpectationSnapshot(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (RuntimeException e) {
+            // a truncated file
+            throw new IOException("corrupt expectation snapshot " + file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns true if this snapshot was written for {@code mode} from exactly
+     * {@code expectationFiles}, and none of them changed since. Missing files
+     * are skipped, as {@link ExpectationStore#parse(Set, ModeId)} does.
+     */
+    public boolean isFresh(Set<File> expectationFiles, ModeId mode) throws IOException {
+        return this.mode.equals(mode.name()) && sources.equals(sourcesOf(expectationFiles));
+    }
+
+    private static Set<Source> sourcesOf(Set<File> expectationFiles) throws IOException {
+        Set<Source> result = new LinkedHashSet<Source>();
+        for (File file : expectationFiles) {
+            if (file.exists()) {
+                result.add(Source.of(file));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the file in {@code directory} that holds the snapshot of the
+     * given expectation files and mode.
+     */
+    public static File getFile(File directory, Set<File> expectationFiles, ModeId mode)
+            throws IOException {
+        List<String> paths = new ArrayList<String>();
+        for (File file : expectationFiles) {
+            paths.add(file.getCanonicalPath());
+        }
+        String[] sorted = paths.toArray(new String[paths.size()]);
+        Arrays.sort(sorted);
+        int hash = mode.name().hashCode() * 31 + Arrays.hashCode(sorted);
+        return new File(directory, "expectations-" + Integer.toHexString(hash) + ".snapshot");
+    }
+
+    /** See {@link ExpectationTrie#getByNameOrPackage(String, String)}. */
+    Expectation getByNameOrPackage(String className, String methodName) {
+        int classLength = className.length();
+        int length = methodName == null ? classLength : classLength + 1 + methodName.length();
+        int longest = -1;
+        int node = rootOffset;
+        for (int i = 0; i < length; i++) {
+            char c;
+            if (i < classLength) {
+                c = className.charAt(i);
+            } else if (i == classLength) {
+                c = '#';
+            } else {
+                c = methodName.charAt(i - classLength - 1);
+            }
+            if ((c == '.' || c == '#') && data.getInt(node) >= 0) {
+                longest = data.getInt(node);
+            }
+            node = child(node, c);
+            if (node < 0) {
+                return longest >= 0 ? get(longest) : null;
+            }
+        }
+        int index = data.getInt(node) >= 0 ? data.getInt(node) : longest;
+        return index >= 0 ? get(index) : null;
+    }
+
+    /** Returns the expectation of exactly {@code name}, or null. */
+    Expectation get(String name) {
+        int node = rootOffset;
+        for (int i = 0; i < name.length() && node >= 0; i++) {
+            node = child(node, name.charAt(i));
+        }
+        return node >= 0 && data.getInt(node) >= 0 ? get(data.getInt(node)) : null;
+    }
+
+    /** Returns the offset of the child of {@code node} reached by {@code c}, or -1. */
+    private int child(int node, char c) {
+        int low = 0;
+        int high = data.getInt(node + 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = node + 8 + mid * 6;
+            char key = data.getChar(entry);
+            if (key < c) {
+                low = mid + 1;
+            } else if (key > c) {
+                high = mid - 1;
+            } else {
+                return data.getInt(entry + 2);
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the failure expectations in the order they are tried. */
+    List<Expectation> getFailures() {
+        List<Expectation> result = new ArrayList<Expectation>();
+        for (int index : failureIndexes) {
+            result.add(get(index));
+        }
+        return result;
+    }
+
+    /** Returns all expectations, creating those that weren't looked up yet. */
+    List<Expectation> getAll() {
+        List<Expectation> result = new ArrayList<Expectation>();
+        for (int i = 0; i < expectations.length; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    private synchronized Expectation get(int index) {
+        Expectation expectation = expectations[index];
+        if (expectation == null) {
+            ByteBuffer record = data.duplicate();
+            record.position(recordOffsets[index]);
+            Result result = Result.values()[record.get()];
+            long bug = record.getLong();
+            int flags = record.getInt();
+            Pattern pattern = Pattern.compile(readString(record), flags);
+            String description = readString(record);
+            Set<String> tags = new LinkedHashSet<String>();
+            int tagCount = record.getInt();
+            for (int i = 0; i < tagCount; i++) {
+                tags.add(readString(record));
+            }
+            expectation = new Expectation(result, pattern, tags, description, bug);
+            expectations[index] = expectation;
+        }
+        return expectation;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Writes the snapshot of {@code store}, which was parsed from
+     * {@code expectationFiles} for {@code mode}. The file is replaced
+     * atomically, so tools reading it concurrently see the old or the new
+     * snapshot.
+     */
+    static void write(ExpectationStore store, Set<File> expectationFiles, ModeId mode,
+            File file) throws IOException {
+        Map<String, Expectation> outcomes = new TreeMap<String, Expectation>(store.getOutcomes());
+        Collection<Expectation> failures = store.getFailures();
+
+        // number each expectation once, however many names it has
+        Map<Expectation, Integer> indexes = new IdentityHashMap<Expectation, Integer>();
+        List<Expectation> ordered = new ArrayList<Expectation>();
+        for (Expectation expectation : outcomes.values()) {
+            index(indexes, ordered, expectation);
+        }
+        for (Expectation expectation : failures) {
+            index(indexes, ordered, expectation);
+        }
+
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(dataBytes);
+        int[] recordOffsets = new int[ordered.size()];
+        for (int i = 0; i < ordered.size(); i++) {
+            Expectation expectation = ordered.get(i);
+            recordOffsets[i] = data.size();
+            data.writeByte(expectation.getResult().ordinal());
+            data.writeLong(expectation.getBug());
+            data.writeInt(expectation.getPattern().flags());
+            writeString(data, expectation.getPattern().pattern());
+            writeString(data, expectation.getDescription());
+            data.writeInt(expectation.getTags().size());
+            for (String tag : expectation.getTags()) {
+                writeString(data, tag);
+            }
+        }
+        List<String> names = new ArrayList<String>(outcomes.keySet());
+        int rootOffset = writeNode(data, names, 0, names.size(), 0, outcomes, indexes);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, mode.name());
+        Set<Source> sources = sourcesOf(expectationFiles);
+        out.writeInt(sources.size());
+        for (Source source : sources) {
+            writeString(out, source.path);
+            out.writeLong(source.length);
+            out.write(source.digest);
+        }
+        out.writeInt(recordOffsets.length);
+        for (int offset : recordOffsets) {
+            out.writeInt(offset);
+        }
+        out.writeInt(failures.size());
+        for (Expectation expectation : failures) {
+            out.writeInt(indexes.get(expectation));
+        }
+        out.writeInt(rootOffset);
+        dataBytes.writeTo(out);
+        out.flush();
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        try {
+            bytes.writeTo(fileOut);
+        } finally {
+            fileOut.close();
+        }
+        if (!temp.renameTo(file)) {
+            // renameTo doesn't replace existing files everywhere
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("cannot write " + file);
+            }
+        }
+    }
+
+    private static void index(Map<Expectation, Integer> indexes, List<Expectation> ordered,
+            Expectation expectation) {
+        if (!indexes.containsKey(expectation)) {
+            indexes.put(expectation, ordered.size());
+            ordered.add(expectation);
+        }
+    }
+
+    /**
+     * Writes the trie node of the sorted {@code names[from, to)}, which share
+     * their first {@code depth} characters, after its children. Returns its
+     * offset.
+     */
+    private static int writeNode(DataOutputStream out, List<String> names, int from, int to,
+            int depth, Map<String, Expectation> outcomes, Map<Expectation, Integer> indexes)
+            throws IOException {
+        int expectationIndex = -1;
+        if (from < to && names.get(from).length() == depth) {
+            expectationIndex = indexes.get(outcomes.get(names.get(from)));
+            from++;
+        }
+        List<Character> keys = new ArrayList<Character>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        while (from < to) {
+            char key = names.get(from).charAt(depth);
+            int end = from + 1;
+            while (end < to && names.get(end).charAt(depth) == key) {
+                end++;
+            }
+            keys.add(key);
+            offsets.add(writeNode(out, names, from, end, depth + 1, outcomes, indexes));
+            from = end;
+        }
+        int offset = out.size();
+        out.writeInt(expectationIndex);
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeChar(keys.get(i));
+            out.writeInt(offsets.get(i));
+        }
+        return offset;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ExpectationSnapshot SNAPSHOT MODE EXPECTATION_FILE...");
+            System.exit(1);
+        }
+        ModeId mode = ModeId.valueOf(args[1].toUpperCase());
+        Set<File> expectationFiles = new LinkedHashSet<File>();
+        for (int i = 2; i < args.length; i++) {
+            expectationFiles.add(new File(args[i]));
+        }
+        File file = new File(args[0]);
+        if (file.isDirectory()) {
+            file = getFile(file, expectationFiles, mode);
+        }
+        if (file.exists()) {
+            try {
+                if (open(file).isFresh(expectationFiles, mode)) {
+                    return;
+                }
+            } catch (IOException e) {
+                // an older version or a damaged file, written again below
+            }
+        }
+        write(ExpectationStore.parse(expectationFiles, mode), expectationFiles, mode, file);
+    }
+}
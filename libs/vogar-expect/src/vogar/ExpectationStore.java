@@ -18,14 +18,16 @@ package vogar;
 
 //import com.google.caliper.internal.gson.stream.JsonReader;
 
+import com.android.json.stream.JsonNameTable;
 import com.android.json.stream.JsonReader;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -62,17 +64,39 @@ public final class ExpectationStore {
 
     private static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
 
-    private final Map<String, Expectation> outcomes = new LinkedHashMap<String, Expectation>();
+    private final ExpectationTrie outcomes = new ExpectationTrie();
     private final Map<String, Expectation> failures = new LinkedHashMap<String, Expectation>();
+    /** Matches outcomes against all of {@code failures}, rebuilt after each parse. */
+    private FailureMatcher failureMatcher = new FailureMatcher(failures.values());
 
-    private ExpectationStore() {}
+    /** The snapshot the expectations are read from, or null if they were parsed. */
+    private final ExpectationSnapshot snapshot;
+
+    private ExpectationStore() {
+        this.snapshot = null;
+    }
+
+    private ExpectationStore(ExpectationSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.failureMatcher = new FailureMatcher(snapshot.getFailures());
+    }
 
     /**
      * Finds the expected result for the specified action or outcome name. This
      * returns a value for all names, even if no explicit expectation was set.
      */
     public Expectation get(String name) {
-        Expectation byName = getByNameOrPackage(name);
+        Expectation byName = getByNameOrPackage(name, null);
+        return byName != null ? byName : SUCCESS;
+    }
+
+    /**
+     * Finds the expected result for the test {@code className#methodName}, the
+     * same as {@code get(className + "#" + methodName)} but without building
+     * that name.
+     */
+    public Expectation get(String className, String methodName) {
+        Expectation byName = getByNameOrPackage(className, methodName);
         return byName != null ? byName : SUCCESS;
     }
 
@@ -86,35 +110,65 @@ public final class ExpectationStore {
      * name matches.
      */
     public Expectation get(Outcome outcome) {
-        Expectation exactNameMatch = outcomes.get(outcome.getName());
+        Expectation exactNameMatch = snapshot != null
+                ? snapshot.get(outcome.getName())
+                : outcomes.get(outcome.getName());
         if (exactNameMatch != null) {
             return exactNameMatch;
         }
 
-        for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
-            if (entry.getValue().matches(outcome)) {
-                return entry.getValue();
-            }
+        Expectation failureMatch = failureMatcher.find(outcome);
+        if (failureMatch != null) {
+            return failureMatch;
         }
 
-        Expectation byName = getByNameOrPackage(outcome.getName());
+        Expectation byName = getByNameOrPackage(outcome.getName(), null);
         return byName != null ? byName : SUCCESS;
     }
 
-    private Expectation getByNameOrPackage(String name) {
-        while (true) {
-            Expectation expectation = outcomes.get(name);
-            if (expectation != null) {
-                return expectation;
-            }
+    private Expectation getByNameOrPackage(String className, String methodName) {
+        return snapshot != null
+                ? snapshot.getByNameOrPackage(className, methodName)
+                : outcomes.getByNameOrPackage(className, methodName);
+    }
+
+    /** Returns the outcome expectations by name of a parsed store. */
+    Map<String, Expectation> getOutcomes() {
+        return outcomes.toMap();
+    }
 
-            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
-            if (dotOrHash == -1) {
-                return null;
+    /** Returns the failure expectations of a parsed store, in the order they are tried. */
+    Collection<Expectation> getFailures() {
+        return failures.values();
+    }
+
+    /**
+     * Returns the expectations of {@code expectationFiles}, read from the
+     * snapshot in {@code snapshotFile} if it is fresh. Otherwise the files are
+     * parsed and the snapshot is written for the next run. Stores read from a
+     * snapshot can't parse further files.
+     */
+    public static ExpectationStore load(File snapshotFile, Set<File> expectationFiles,
+            ModeId mode) throws IOException {
+        if (snapshotFile.exists()) {
+            try {
+                ExpectationSnapshot snapshot = ExpectationSnapshot.open(snapshotFile);
+                if (snapshot.isFresh(expectationFiles, mode)) {
+                    Log.verbose("loading expectations snapshot " + snapshotFile);
+                    return new ExpectationStore(snapshot);
+                }
+            } catch (IOException e) {
+                Log.warn("ignoring expectations snapshot " + snapshotFile + ": " + e.getMessage());
             }
+        }
 
-            name = name.substring(0, dotOrHash);
+        ExpectationStore result = parse(expectationFiles, mode);
+        try {
+            ExpectationSnapshot.write(result, expectationFiles, mode, snapshotFile);
+        } catch (IOException e) {
+            Log.warn("cannot write expectations snapshot " + snapshotFile + ": " + e.getMessage());
         }
+        return result;
     }
 
     public static ExpectationStore parse(Set<File> expectationFiles, ModeId mode) throws IOException {
@@ -128,12 +182,17 @@ public final class ExpectationStore {
     }
 
     public void parse(File expectationsFile, ModeId mode) throws IOException {
+        if (snapshot != null) {
+            throw new IllegalStateException("expectations were loaded from a snapshot");
+        }
         Log.verbose("loading expectations file " + expectationsFile);
 
         int count = 0;
         JsonReader reader = null;
         try {
-            reader = new JsonReader(new FileReader(expectationsFile));
+            reader = new JsonReader(new FileInputStream(expectationsFile));
+            reader.setNameTable(new JsonNameTable("result", "name", "names", "failure",
+                    "pattern", "substring", "tags", "description", "bug", "modes"));
             reader.setLenient(true);
             reader.beginArray();
             while (reader.hasNext()) {
@@ -141,6 +200,7 @@ public final class ExpectationStore {
                 count++;
             }
             reader.endArray();
+            failureMatcher = new FailureMatcher(failures.values());
 
             Log.verbose("loaded " + count + " expectations from " + expectationsFile);
         } finally {
@@ -206,9 +266,11 @@ public final class ExpectationStore {
         }
 
         Expectation expectation = new Expectation(result, pattern, tags, description, buganizerBug);
-        Map<String, Expectation> map = isFailure ? failures : outcomes;
         for (String name : names) {
-            if (map.put(name, expectation) != null) {
+            Expectation previous = isFailure
+                    ? failures.put(name, expectation)
+                    : outcomes.put(name, expectation);
+            if (previous != null) {
                 throw new IllegalArgumentException("Duplicate expectations for " + name);
             }
         }
@@ -237,7 +299,9 @@ public final class ExpectationStore {
      * tracker.
      */
     public void loadBugStatuses(String openBugsCommand) {
-        Iterable<Expectation> allExpectations = Iterables.concat(outcomes.values(), failures.values());
+        Iterable<Expectation> allExpectations = snapshot != null
+                ? snapshot.getAll()
+                : Iterables.concat(outcomes.values(), failures.values());
 
         // figure out what bug IDs we're interested in
         Set<String> bugs = new LinkedHashSet<String>();
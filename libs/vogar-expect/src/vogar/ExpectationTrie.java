@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome expectations keyed by name, such as "java.util",
+ * "java.util.ArrayListTest" or "java.util.ArrayListTest#testAdd".
+ *
+ * <p>The names are kept in a character trie. The expectation of the longest
+ * name that is either the whole query or a prefix of it followed by a '.' or
+ * '#' is found in a single walk over the query, without creating substrings.
+ * A query can also be given as a class and a method name, which are then
+ * walked as if joined by a '#'.
+ *
+ * <p>Lookups don't modify the trie, so a trie that is no longer written to can
+ * be read from several threads.
+ */
+final class ExpectationTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        /** The characters leading to the children, sorted. */
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        Expectation expectation;
+
+        Node child(char c) {
+            // most nodes are inside a single name and have one child
+            if (keys.length == 1) {
+                return keys[0] == c ? children[0] : null;
+            }
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, keys.length - index);
+            Node child = new Node();
+            newKeys[index] = c;
+            newChildren[index] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<Expectation> values = new ArrayList<Expectation>();
+
+    /**
+     * Sets the expectation of {@code name}.
+     *
+     * @return the previous expectation of that exact name, or null
+     */
+    public Expectation put(String name, Expectation expectation) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.getOrAddChild(name.charAt(i));
+        }
+        Expectation previous = node.expectation;
+        node.expectation = expectation;
+        values.add(expectation);
+        return previous;
+    }
+
+    /** Returns the expectation of exactly {@code name}, or null. */
+    public Expectation get(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.child(name.charAt(i));
+        }
+        return node != null ? node.expectation : null;
+    }
+
+    /**
+     * Returns the expectation of {@code name} or of its longest prefix that
+     * ends before a '.' or '#', or null if there is none.
+     */
+    public Expectation getByNameOrPackage(String name) {
+        return getByNameOrPackage(name, null);
+    }
+
+    /**
+     * Like {@link #getByNameOrPackage(String)} for the name
+     * {@code className + "#" + methodName}, without building that name.
+     * A null {@code methodName} looks up {@code className} alone.
+     */
+    public Expectation getByNameOrPackage(String className, String methodName) {
+        int classLength = className.length();
+        int length = methodName == null ? classLength : classLength + 1 + methodName.length();
+        Expectation longest = null;
+        Node node = root;
+        for (int i = 0; i < length; i++) {
+            char c;
+            if (i < classLength) {
+                c = className.charAt(i);
+            } else if (i == classLength) {
+                c = '#';
+            } else {
+                c = methodName.charAt(i - classLength - 1);
+            }
+            if ((c == '.' || c == '#') && node.expectation != null) {
+                longest = node.expectation;
+            }
+            node = node.child(c);
+            if (node == null) {
+                // no longer name starts with these characters
+                return longest;
+            }
+        }
+        return node.expectation != null ? node.expectation : longest;
+    }
+
+    /**
+     * Returns the expectations in the order they were put, once per name.
+     */
+    public List<Expectation> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /** Returns the expectations by name, ordered by name. */
+    Map<String, Expectation> toMap() {
+        Map<String, Expectation> result = new LinkedHashMap<String, Expectation>();
+        collect(root, new StringBuilder(), result);
+        return result;
+    }
+
+    private static void collect(Node node, StringBuilder name, Map<String, Expectation> result) {
+        if (node.expectation != null) {
+            result.put(name.toString(), node.expectation);
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            name.append(node.keys[i]);
+            collect(node.children[i], name, result);
+            name.setLength(name.length() - 1);
+        }
+    }
+}
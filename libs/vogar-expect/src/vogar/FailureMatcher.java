@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first of a list of failure expectations that matches an outcome,
+ * scanning the outcome's output only once for all of them.
+ *
+ * <p>Substring expectations, whose pattern is {@code .*\Qtext\E.*} in DOTALL
+ * mode, match exactly when the output contains the text. All those texts,
+ * together with a literal that each other pattern requires, are searched at
+ * once with an Aho-Corasick automaton. Substring expectations are then decided
+ * without running their pattern, and the other patterns only run when their
+ * required literal was found.
+ */
+final class FailureMatcher {
+
+    private final Expectation[] expectations;
+    /** Index of the literal each expectation requires in the output, or -1. */
+    private final int[] literals;
+    /** True if finding the literal alone means the pattern matches. */
+    private final boolean[] substringOnly;
+    private final Automaton automaton;
+
+    /**
+     * @param failures the failure expectations, in the order they are tried
+     */
+    FailureMatcher(Collection<Expectation> failures) {
+        // an expectation listed under several names is only tried the first time
+        Map<Expectation, Boolean> unique = new IdentityHashMap<Expectation, Boolean>();
+        List<Expectation> ordered = new ArrayList<Expectation>();
+        for (Expectation expectation : failures) {
+            if (unique.put(expectation, Boolean.TRUE) == null) {
+                ordered.add(expectation);
+            }
+        }
+
+        expectations = ordered.toArray(new Expectation[ordered.size()]);
+        literals = new int[expectations.length];
+        substringOnly = new boolean[expectations.length];
+        Map<String, Integer> literalIds = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < expectations.length; i++) {
+            Pattern pattern = expectations[i].getPattern();
+            String literal = substringOf(pattern);
+            substringOnly[i] = literal != null;
+            if (literal == null) {
+                literal = requiredLiteral(pattern);
+            }
+            if (literal == null || literal.isEmpty()) {
+                // an empty substring is in every output
+                literals[i] = -1;
+                continue;
+            }
+            Integer id = literalIds.get(literal);
+            if (id == null) {
+                id = literalIds.size();
+                literalIds.put(literal, id);
+            }
+            literals[i] = id;
+        }
+        automaton = new Automaton(literalIds.keySet());
+    }
+
+    /**
+     * Returns the first failure expectation that matches {@code outcome}, or
+     * null if none does.
+     */
+    Expectation find(Outcome outcome) {
+        if (expectations.length == 0) {
+            return null;
+        }
+        String output = outcome.getOutput();
+        BitSet found = automaton.scan(output);
+        for (int i = 0; i < expectations.length; i++) {
+            Expectation expectation = expectations[i];
+            if (literals[i] >= 0 && !found.get(literals[i])) {
+                continue;
+            }
+            if (substringOnly[i]
+                    ? expectation.resultMatches(outcome)
+                    : expectation.matches(outcome)) {
+                return expectation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the text of a substring expectation's pattern, or null if the
+     * pattern is not of that form.
+     */
+    static String substringOf(Pattern pattern) {
+        if ((pattern.flags() & Pattern.DOTALL) == 0
+                || (pattern.flags() & ~(Pattern.DOTALL | Pattern.MULTILINE)) != 0) {
+            return null;
+        }
+        String source = pattern.pattern();
+        if (source.length() < 8 || !source.startsWith(".*\\Q") || !source.endsWith("\\E.*")) {
+            return null;
+        }
+        String text = source.substring(4, source.length() - 4);
+        // texts holding \E are quoted in several pieces, leave those to the regex
+        return text.contains("\\E") ? null : text;
+    }
+
+    /**
+     * Returns the longest run of literal characters that every input matching
+     * {@code pattern} contains, or null if none could be found. The analysis is
+     * conservative: it only looks at the top level of patterns without
+     * alternation or inline flags.
+     */
+    static String requiredLiteral(Pattern pattern) {
+        if ((pattern.flags() & ~(Pattern.DOTALL | Pattern.MULTILINE)) != 0) {
+            return null;
+        }
+        String source = pattern.pattern();
+        if (source.contains("(?")) {
+            return null;
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i++);
+            if (c == '*' || c == '?' || c == '{' || c == '+') {
+                if (c == '{') {
+                    i = source.indexOf('}', i) + 1;
+                    if (i == 0) {
+                        return null;
+                    }
+                }
+                if (i < source.length()
+                        && (source.charAt(i) == '?' || source.charAt(i) == '+')) {
+                    // a lazy or possessive quantifier
+                    i++;
+                }
+                if (depth == 0) {
+                    if (c != '+') {
+                        // the quantified character may be missing, with both
+                        // halves of a surrogate pair
+                        int length = run.length() - 1;
+                        if (length > 0 && Character.isLowSurrogate(run.charAt(length))
+                                && Character.isHighSurrogate(run.charAt(length - 1))) {
+                            length--;
+                        }
+                        run.setLength(Math.max(0, length));
+                    }
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                }
+                continue;
+            }
+
+            String literal = null;
+            if (c == '\\') {
+                if (i == source.length()) {
+                    return null;
+                }
+                char escaped = source.charAt(i++);
+                if (escaped == 'Q') {
+                    int end = source.indexOf("\\E", i);
+                    literal = source.substring(i, end < 0 ? source.length() : end);
+                    i = end < 0 ? source.length() : end + 2;
+                } else if (!Character.isLetterOrDigit(escaped)) {
+                    literal = String.valueOf(escaped);
+                } else {
+                    // a class, anchor, back reference or code point, which ends the run
+                    i = skipEscapeOperand(source, escaped, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+            } else if (c == '[') {
+                i = skipClass(source, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return null;
+            } else if (c != '.' && c != '^' && c != '$') {
+                literal = String.valueOf(c);
+            }
+
+            if (depth == 0 && c != ')' && literal != null) {
+                run.append(literal);
+            } else if (depth == 0 || c == '(') {
+                longest = longer(longest, run);
+                run.setLength(0);
+            }
+        }
+        longest = longer(longest, run);
+        return longest.isEmpty() ? null : longest;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+
+    /**
+     * Returns the index after the operand of a backslash escape, such as the
+     * hex digits after an 'x'. {@code escaped} is the letter or digit after the
+     * backslash and {@code i} the index after it. Returns {@code i} for escapes
+     * without an operand, and -1 if the operand is not closed.
+     */
+    private static int skipEscapeOperand(String source, char escaped, int i) {
+        switch (escaped) {
+            case 'x':
+                if (i < source.length() && source.charAt(i) == '{') {
+                    return skipPast(source, '}', i);
+                }
+                return Math.min(i + 2, source.length());
+            case 'u':
+                return Math.min(i + 4, source.length());
+            case 'c':
+                return Math.min(i + 1, source.length());
+            case '0':
+                // up to three octal digits
+                int end = Math.min(i + 3, source.length());
+                while (i < end && source.charAt(i) >= '0' && source.charAt(i) <= '7') {
+                    i++;
+                }
+                return i;
+            case 'k':
+                return skipPast(source, '>', i);
+            case 'p':
+            case 'P':
+                if (i < source.length() && source.charAt(i) == '{') {
+                    return skipPast(source, '}', i);
+                }
+                return Math.min(i + 1, source.length());
+            case 'N':
+                return skipPast(source, '}', i);
+            case 'b':
+                return source.startsWith("{g}", i) ? i + 3 : i;
+            default:
+                if (escaped >= '1' && escaped <= '9') {
+                    // a back reference takes as many digits as make a group number
+                    while (i < source.length() && Character.isDigit(source.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    /** Returns the index after the first {@code c} at or after {@code i}, or -1. */
+    private static int skipPast(String source, char c, int i) {
+        int index = source.indexOf(c, i);
+        return index < 0 ? -1 : index + 1;
+    }
+
+    /** Returns the index after the character class starting before {@code i}, or -1. */
+    private static int skipClass(String source, int i) {
+        int depth = 1;
+        if (i < source.length() && source.charAt(i) == '^') {
+            i++;
+        }
+        // a leading ']' is a member
+        if (i < source.length() && source.charAt(i) == ']') {
+            i++;
+        }
+        while (i < source.length()) {
+            char c = source.charAt(i++);
+            if (c == '\\') {
+                if (source.startsWith("Q", i)) {
+                    int end = source.indexOf("\\E", i);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    i = end + 2;
+                } else {
+                    i++;
+                }
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** An Aho-Corasick automaton over a set of literals. */
+    private static final class Automaton {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private static final class Node {
+            char[] keys = NO_KEYS;
+            Node[] children = NO_CHILDREN;
+            /** The longest proper suffix of this node that is also a node. */
+            Node fail;
+            /** The longest proper suffix of this node that ends a literal. */
+            Node output;
+            /** The literal ending at this node, or -1. */
+            int literal = -1;
+
+            Node child(char c) {
+                int index = Arrays.binarySearch(keys, c);
+                return index >= 0 ? children[index] : null;
+            }
+
+            Node getOrAddChild(char c) {
+                int index = Arrays.binarySearch(keys, c);
+                if (index >= 0) {
+                    return children[index];
+                }
+                index = -index - 1;
+                char[] newKeys = new char[keys.length + 1];
+                Node[] newChildren = new Node[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(children, 0, newChildren, 0, index);
+                System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+                System.arraycopy(children, index, newChildren, index + 1, keys.length - index);
+                Node child = new Node();
+                newKeys[index] = c;
+                newChildren[index] = child;
+                keys = newKeys;
+                children = newChildren;
+                return child;
+            }
+        }
+
+        private final Node root = new Node();
+        private final int size;
+
+        Automaton(Collection<String> literals) {
+            int id = 0;
+            for (String literal : literals) {
+                Node node = root;
+                for (int i = 0; i < literal.length(); i++) {
+                    node = node.getOrAddChild(literal.charAt(i));
+                }
+                node.literal = id++;
+            }
+            size = id;
+
+            // link the nodes breadth first, so that shorter suffixes are linked before
+            Queue<Node> queue = new ArrayDeque<Node>();
+            root.fail = root;
+            for (Node child : root.children) {
+                child.fail = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+                for (int i = 0; i < node.keys.length; i++) {
+                    char c = node.keys[i];
+                    Node child = node.children[i];
+                    Node fail = node.fail;
+                    while (fail != root && fail.child(c) == null) {
+                        fail = fail.fail;
+                    }
+                    Node next = fail.child(c);
+                    child.fail = (next != null && next != child) ? next : root;
+                    child.output = child.fail.literal >= 0 ? child.fail : child.fail.output;
+                    queue.add(child);
+                }
+            }
+        }
+
+        /** Returns the ids of the literals that occur in {@code text}. */
+        BitSet scan(String text) {
+            BitSet found = new BitSet(size);
+            if (size == 0) {
+                return found;
+            }
+            Node node = root;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                Node next = node.child(c);
+                while (next == null && node != root) {
+                    node = node.fail;
+                    next = node.child(c);
+                }
+                node = next != null ? next : root;
+                for (Node match = node.literal >= 0 ? node : node.output;
+                        match != null && !found.get(match.literal); match = match.output) {
+                    found.set(match.literal);
+                }
+            }
+            return found;
+        }
+    }
+}
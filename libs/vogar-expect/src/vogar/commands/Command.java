@@ -22,10 +22,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,20 @@ import vogar.util.Threads;
  * An out of process executable.
  */
 public final class Command {
+    /**
+     * Gathers the output of commands executed later or with a timeout. Its
+     * threads are reused and exit when idle. It never queues a command, so
+     * output is always read and commands may wait on one another.
+     */
+    private static final ExecutorService EXECUTOR = Threads.cachedThreadsExecutor("command");
+
+    /**
+     * Receives a command's output as it is read, one line at a time.
+     */
+    public interface OutputListener {
+        void outputLine(String line);
+    }
+
     private final List<String> args;
     private final Map<String, String> env;
     private final File workingDirectory;
@@ -114,13 +130,27 @@ public final class Command {
 
     public List<String> gatherOutput()
             throws IOException, InterruptedException {
+        return gatherOutput(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the command's output until it exits, passing each line to
+     * {@code listener} as it arrives.
+     *
+     * @param listener receives each line, or null
+     * @param tailLines how many of the last lines to keep and return. A failed
+     *     command reports these lines.
+     * @return the last {@code tailLines} lines of output
+     */
+    public List<String> gatherOutput(OutputListener listener, int tailLines)
+            throws IOException, InterruptedException {
         if (!isStarted()) {
             throw new IllegalStateException("Not started!");
         }
 
         BufferedReader in = new BufferedReader(
                 new InputStreamReader(getInputStream(), "UTF-8"));
-        List<String> outputLines = new ArrayList<String>();
+        Deque<String> outputLines = new ArrayDeque<String>();
         String outputLine;
         while ((outputLine = in.readLine()) != null) {
             if (tee != null) {
@@ -129,24 +159,40 @@ public final class Command {
             if (nativeOutput) {
                 Log.nativeOutput(outputLine);
             }
-            outputLines.add(outputLine);
+            if (listener != null) {
+                listener.outputLine(outputLine);
+            }
+            if (tailLines > 0) {
+                if (outputLines.size() == tailLines) {
+                    outputLines.removeFirst();
+                }
+                outputLines.addLast(outputLine);
+            }
         }
 
+        List<String> result = new ArrayList<String>(outputLines);
         if (process.waitFor() != 0 && !permitNonZeroExitStatus) {
-            StringBuilder message = new StringBuilder();
-            for (String line : outputLines) {
-                message.append("\n").append(line);
-            }
-            throw new CommandFailedException(args, outputLines);
+            throw new CommandFailedException(args, result);
         }
 
-        return outputLines;
+        return result;
     }
 
     public List<String> execute() {
+        return execute(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Executes the command, passing each line of its output to {@code listener}.
+     *
+     * @param listener receives each line, or null
+     * @param tailLines how many of the last lines to keep and return
+     * @return the last {@code tailLines} lines of output
+     */
+    public List<String> execute(OutputListener listener, int tailLines) {
         try {
             start();
-            return gatherOutput();
+            return gatherOutput(listener, tailLines);
         } catch (IOException e) {
             throw new RuntimeException("Failed to execute process: " + args, e);
         } catch (InterruptedException e) {
@@ -159,41 +205,65 @@ public final class Command {
      * complete normally before the timeout has elapsed, it will be destroyed.
      *
      * @param timeoutSeconds how long to wait, or 0 to wait indefinitely
-     * @return the command's output, or null if the command timed out
+     * @return the command's output
+     * @throws TimeoutException if the command timed out
      */
     public List<String> executeWithTimeout(int timeoutSeconds)
             throws TimeoutException {
+        return executeWithTimeout(timeoutSeconds, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #executeWithTimeout(int)}, passing each line of output to
+     * {@code listener} and returning the last {@code tailLines} lines. The
+     * output is read on a shared background thread, so the timeout holds even
+     * if another process keeps the output stream open.
+     */
+    public List<String> executeWithTimeout(int timeoutSeconds, final OutputListener listener,
+            final int tailLines) throws TimeoutException {
         if (timeoutSeconds == 0) {
-            return execute();
+            return execute(listener, tailLines);
         }
 
         try {
-            return executeLater().get(timeoutSeconds, TimeUnit.SECONDS);
+            start();
+            Future<List<String>> output = EXECUTOR.submit(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return gatherOutput(listener, tailLines);
+                }
+            });
+            try {
+                return output.get(timeoutSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new TimeoutException("Timed out after " + timeoutSeconds + "s: " + this);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to execute process: " + args, e);
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while executing process: " + args, e);
         } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+            if (e.getCause() instanceof CommandFailedException) {
+                throw (CommandFailedException) e.getCause();
+            }
+            throw new RuntimeException("Failed to execute process: " + args, e.getCause());
         } finally {
             destroy();
         }
     }
 
     /**
-     * Executes the command on a new background thread. This method returns
+     * Executes the command on a shared background thread. This method returns
      * immediately.
      *
      * @return a future to retrieve the command's output.
      */
     public Future<List<String>> executeLater() {
-        ExecutorService executor = Threads.fixedThreadsExecutor("command", 1);
-        Future<List<String>> result = executor.submit(new Callable<List<String>>() {
+        return EXECUTOR.submit(new Callable<List<String>>() {
             public List<String> call() throws Exception {
                 start();
                 return gatherOutput();
             }
         });
-        executor.shutdown();
-        return result;
     }
 
     /**
@@ -16,8 +16,10 @@
 
 package vogar.util;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -43,11 +45,27 @@ public final class Threads {
         return fixedThreadsExecutor(name, Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Returns an executor that runs each task at once, on an idle thread if
+     * there is one and on a new thread otherwise. Tasks never queue, so one
+     * may wait for another without deadlock. Idle threads exit after 10
+     * seconds, so the executor may be kept for the life of the process.
+     */
+    public static ExecutorService cachedThreadsExecutor(String name) {
+        return newExecutor(name, 0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>());
+    }
+
     public static ExecutorService fixedThreadsExecutor(String name, int count) {
+        return newExecutor(name, count, count,
+                new LinkedBlockingQueue<Runnable>(Integer.MAX_VALUE));
+    }
+
+    private static ExecutorService newExecutor(String name, int coreThreads, int maxThreads,
+            BlockingQueue<Runnable> queue) {
         ThreadFactory threadFactory = daemonThreadFactory(name);
 
-        return new ThreadPoolExecutor(count, count, 10, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(Integer.MAX_VALUE), threadFactory) {
+        return new ThreadPoolExecutor(coreThreads, maxThreads, 10, TimeUnit.SECONDS,
+                queue, threadFactory) {
             @Override protected void afterExecute(Runnable runnable, Throwable throwable) {                if (throwable != null) {
                     Log.info("Unexpected failure from " + runnable, throwable);
                 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Locates the expectation files of the source tree, for tests that check
+ * lookups against real expectations.
+ */
+final class ExpectationFiles {
+
+    /** Directories holding expectation files, relative to the top of the tree. */
+    private static final String[] DIRECTORIES = {
+        "cts/tests/expectations",
+        "libcore/expectations",
+    };
+
+    private ExpectationFiles() {}
+
+    /**
+     * Returns the expectation files under {@code $ANDROID_BUILD_TOP}, or under
+     * the current directory if it is not set.
+     *
+     * @throws IllegalStateException if there are none
+     */
+    static Set<File> find() {
+        String top = System.getenv("ANDROID_BUILD_TOP");
+        File root = new File(top != null ? top : ".");
+        Set<File> files = new LinkedHashSet<File>();
+        for (String directory : DIRECTORIES) {
+            File[] children = new File(root, directory).listFiles();
+            if (children == null) {
+                continue;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.getName().endsWith(".txt")) {
+                    files.add(child);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalStateException("no expectation files under "
+                    + root.getAbsolutePath() + ", set ANDROID_BUILD_TOP");
+        }
+        return files;
+    }
+}
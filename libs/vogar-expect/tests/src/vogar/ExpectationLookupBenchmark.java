@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures {@link ExpectationStore} lookups of test names against the lookup
+ * the store used before its trie: a hash map probed with the name and each of
+ * its '.'/'#' prefixes in turn.
+ * <p>
+ * The queries are derived from the names in the expectation files: each test
+ * and class name, tests of each class, and names next to them that miss. Both
+ * lookups must return the same expectation for every query.
+ * <p>
+ * Usage: ExpectationLookupBenchmark ROUNDS EXPECTATION_FILE...
+ */
+class ExpectationLookupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ExpectationLookupBenchmark ROUNDS EXPECTATION_FILE...");
+            System.exit(1);
+        }
+        int rounds = Integer.parseInt(args[0]);
+        Set<File> files = new LinkedHashSet<File>();
+        for (int i = 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+        ExpectationStore store = ExpectationStore.parse(files, ModeId.DEVICE);
+        Map<String, Expectation> outcomes = store.getOutcomes();
+        // what an empty store returns for any name
+        Expectation success = ExpectationStore.parse(new LinkedHashSet<File>(), ModeId.DEVICE)
+                .get("");
+
+        List<String[]> queries = new ArrayList<String[]>();
+        for (String name : outcomes.keySet()) {
+            int hash = name.indexOf('#');
+            String className = hash < 0 ? name : name.substring(0, hash);
+            if (hash >= 0) {
+                queries.add(new String[] { className, name.substring(hash + 1) });
+            }
+            queries.add(new String[] { className, "testSomething" });
+            queries.add(new String[] { className + "Inner", "testSomething" });
+            int dot = className.lastIndexOf('.');
+            if (dot >= 0) {
+                queries.add(new String[] { className.substring(0, dot) + ".OtherTest", "testA" });
+            }
+        }
+        System.out.println(outcomes.size() + " names, " + queries.size() + " queries");
+
+        for (String[] query : queries) {
+            if (legacyGet(outcomes, success, query[0], query[1])
+                    != store.get(query[0], query[1])) {
+                System.err.println("lookups differ for " + query[0] + "#" + query[1]);
+                System.exit(1);
+            }
+        }
+
+        // twice, the first pass warms up
+        for (int pass = 0; pass < 2; pass++) {
+            int hits = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String[] query : queries) {
+                    Expectation expectation = legacyGet(outcomes, success, query[0], query[1]);
+                    if (expectation.getResult() != Result.SUCCESS) {
+                        hits++;
+                    }
+                }
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String[] query : queries) {
+                    if (store.get(query[0], query[1]).getResult() != Result.SUCCESS) {
+                        hits--;
+                    }
+                }
+            }
+            long trieNanos = System.nanoTime() - start;
+
+            long lookups = (long) rounds * queries.size();
+            System.out.println("legacy: " + legacyNanos / lookups + " ns/lookup");
+            System.out.println("trie:   " + trieNanos / lookups + " ns/lookup");
+            if (hits != 0) {
+                System.err.println("lookups differ");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static Expectation legacyGet(Map<String, Expectation> outcomes, Expectation success,
+            String className, String methodName) {
+        String name = String.format("%s#%s", className, methodName);
+        while (true) {
+            Expectation expectation = outcomes.get(name);
+            if (expectation != null) {
+                return expectation;
+            }
+
+            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
+            if (dotOrHash == -1) {
+                return success;
+            }
+
+            name = name.substring(0, dotOrHash);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link ExpectationSnapshot}, checked against the lookups of
+ * the {@link ExpectationStore} parsed from the same files.
+ */
+public class ExpectationSnapshotTest extends TestCase {
+
+    private static final String EXPECTATIONS = "[\n"
+            + "{\n"
+            + "  description: \"package\",\n"
+            + "  name: \"android.app.cts\",\n"
+            + "  bug: 1234\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"tests\",\n"
+            + "  result: UNSUPPORTED,\n"
+            + "  names: [\n"
+            + "    \"android.view.cts.ViewTest#testInvalidate\",\n"
+            + "    \"android.view.cts.ViewTest#testLayout\"\n"
+            + "  ],\n"
+            + "  tags: [\"large\"]\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"substring\",\n"
+            + "  failure: \"noFile\",\n"
+            + "  substring: \"java.io.FileNotFoundException\"\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"pattern\",\n"
+            + "  failure: \"timeout\",\n"
+            + "  pattern: \".*Test timed out after \\\\d+ ms.*\"\n"
+            + "}\n"
+            + "]\n";
+
+    private static final String[] OUTPUTS = {
+        "",
+        "java.io.FileNotFoundException: /data/foo",
+        "Test timed out after 60000 ms",
+    };
+
+    private File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("snapshot", "");
+        mDir.delete();
+        mDir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that a snapshot of the expectation files of the tree returns the
+     * same expectations as the store parsed from them.
+     */
+    public void testLookupsOfTreeFiles() throws IOException {
+        Set<File> files = ExpectationFiles.find();
+        for (ModeId mode : ModeId.values()) {
+            assertSameLookups(files, mode);
+        }
+    }
+
+    /**
+     * Test the same for an expectation file with tags, bugs and failures.
+     */
+    public void testLookups() throws IOException {
+        File file = write("expectations.txt", EXPECTATIONS);
+        assertSameLookups(Collections.singleton(file), ModeId.DEVICE);
+    }
+
+    /**
+     * Test that a snapshot is stale once a file changes, even if it keeps its
+     * length and modification time.
+     */
+    public void testStaleAfterEdit() throws IOException {
+        File file = write("expectations.txt", EXPECTATIONS);
+        Set<File> files = Collections.singleton(file);
+        File snapshotFile = ExpectationSnapshot.getFile(mDir, files, ModeId.DEVICE);
+        ExpectationStore.load(snapshotFile, files, ModeId.DEVICE);
+        assertTrue(ExpectationSnapshot.open(snapshotFile).isFresh(files, ModeId.DEVICE));
+        assertFalse(ExpectationSnapshot.open(snapshotFile).isFresh(files, ModeId.HOST));
+
+        long lastModified = file.lastModified();
+        write("expectations.txt", EXPECTATIONS.replace("1234", "4321"));
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals(lastModified, file.lastModified());
+        assertFalse(ExpectationSnapshot.open(snapshotFile).isFresh(files, ModeId.DEVICE));
+
+        // loading parses the edited file and writes the snapshot again
+        ExpectationStore store = ExpectationStore.load(snapshotFile, files, ModeId.DEVICE);
+        assertEquals(4321, store.get("android.app.cts.FooTest#test").getBug());
+        assertTrue(ExpectationSnapshot.open(snapshotFile).isFresh(files, ModeId.DEVICE));
+    }
+
+    private void assertSameLookups(Set<File> files, ModeId mode) throws IOException {
+        ExpectationStore parsed = ExpectationStore.parse(files, mode);
+        File snapshotFile = ExpectationSnapshot.getFile(mDir, files, mode);
+        ExpectationSnapshot.write(parsed, files, mode, snapshotFile);
+        assertTrue(ExpectationSnapshot.open(snapshotFile).isFresh(files, mode));
+        ExpectationStore loaded = ExpectationStore.load(snapshotFile, files, mode);
+
+        List<String> names = new ArrayList<String>();
+        for (String name : parsed.getOutcomes().keySet()) {
+            names.add(name);
+            names.add(name + "#testOther");
+            names.add(name + "Other");
+            names.add(name + ".Inner#test");
+        }
+        names.add("com.example.Unknown#test");
+        for (String name : names) {
+            assertEquals(name, parsed.get(name), loaded.get(name));
+            int hash = name.indexOf('#');
+            if (hash >= 0) {
+                assertEquals(name, parsed.get(name), loaded.get(name.substring(0, hash),
+                        name.substring(hash + 1)));
+            }
+            for (String output : OUTPUTS) {
+                Outcome outcome = new Outcome(name, Result.EXEC_FAILED, output);
+                assertEquals(name + " " + output, parsed.get(outcome), loaded.get(outcome));
+            }
+        }
+    }
+
+    /** Compares expectations by everything a snapshot keeps of them. */
+    private static void assertEquals(String message, Expectation expected, Expectation actual) {
+        assertEquals(message, expected.getResult(), actual.getResult());
+        assertEquals(message, expected.getDescription(), actual.getDescription());
+        assertEquals(message, expected.getBug(), actual.getBug());
+        assertEquals(message, expected.getTags(), actual.getTags());
+        assertEquals(message, expected.getPattern().pattern(), actual.getPattern().pattern());
+        assertEquals(message, expected.getPattern().flags(), actual.getPattern().flags());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(mDir, name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link ExpectationStore} lookups, checked against the linear
+ * lookups it used before its trie and {@link FailureMatcher}.
+ */
+public class ExpectationStoreTest extends TestCase {
+
+    private static final String EXPECTATIONS = "[\n"
+            + "{\n"
+            + "  description: \"package\",\n"
+            + "  name: \"android.app.cts\"\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"tests\",\n"
+            + "  names: [\n"
+            + "    \"android.view.cts.ViewTest#testInvalidate\",\n"
+            + "    \"android.view.cts.ViewTest#testLayout\"\n"
+            + "  ]\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"class\",\n"
+            + "  result: SUCCESS,\n"
+            + "  name: \"android.app.cts.ActivityTest\"\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"other mode\",\n"
+            + "  name: \"android.app.cts.ServiceTest\",\n"
+            + "  modes: [\"host\"]\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"substring\",\n"
+            + "  failure: \"noFile\",\n"
+            + "  substring: \"java.io.FileNotFoundException\"\n"
+            + "},\n"
+            + "{\n"
+            + "  description: \"pattern\",\n"
+            + "  failure: \"timeout\",\n"
+            + "  pattern: \".*Test timed out after \\\\d+ ms.*\"\n"
+            + "}\n"
+            + "]\n";
+
+    private static final String[] NAMES = {
+        "android.app.cts.ActivityTest#testFinish",
+        "android.app.cts.ActivityTestCase#testStart",
+        "android.app.cts.ServiceTest#testStart",
+        "android.app.ctsx.FooTest#testFoo",
+        "android.view.cts.ViewTest#testInvalidate",
+        "android.view.cts.ViewTest#testInvalidateRect",
+        "android.view.cts.ViewTest#testLayout",
+        "android.widget.cts.TextViewTest#testText",
+    };
+
+    private static final String[] OUTPUTS = {
+        "",
+        "junit.framework.AssertionFailedError",
+        "java.io.FileNotFoundException: /data/foo",
+        "Test timed out after 60000 ms",
+        "first line\nTest timed out after 10 ms\nlast line",
+        "Test timed out after ms",
+    };
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("expectations", ".txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8");
+        try {
+            out.write(EXPECTATIONS);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test lookups of names, including class and method names given apart.
+     */
+    public void testGetByName() throws IOException {
+        ExpectationStore store = parse();
+        Map<String, Expectation> outcomes = store.getOutcomes();
+        assertEquals(4, outcomes.size());
+        for (String name : NAMES) {
+            Expectation expected = linearGet(outcomes, name, store.get(""));
+            assertSame(name, expected, store.get(name));
+            int hash = name.indexOf('#');
+            assertSame(name, expected,
+                    store.get(name.substring(0, hash), name.substring(hash + 1)));
+        }
+        assertEquals("package", store.get("android.app.cts.ActivityTestCase#testStart")
+                .getDescription());
+        assertEquals(Result.SUCCESS, store.get("android.app.cts.ActivityTest#testFinish")
+                .getResult());
+        // only the package applies in this mode
+        assertEquals("package", store.get("android.app.cts.ServiceTest").getDescription());
+    }
+
+    /**
+     * Test lookups of outcomes, which also try the failure patterns on their output.
+     */
+    public void testGetByOutcome() throws IOException {
+        ExpectationStore store = parse();
+        for (String name : NAMES) {
+            for (String output : OUTPUTS) {
+                for (Result result : new Result[] { Result.EXEC_FAILED, Result.ERROR }) {
+                    Outcome outcome = new Outcome(name, result, output);
+                    assertSame(name + " " + result + " " + output,
+                            linearGet(store, outcome), store.get(outcome));
+                }
+            }
+        }
+        assertEquals("pattern", store.get(new Outcome(
+                "android.widget.cts.TextViewTest#testText", Result.EXEC_FAILED,
+                "Test timed out after 5 ms")).getDescription());
+    }
+
+    private ExpectationStore parse() throws IOException {
+        Set<File> files = new LinkedHashSet<File>(Collections.singleton(mFile));
+        return ExpectationStore.parse(files, ModeId.DEVICE);
+    }
+
+    /** The lookup of {@link ExpectationStore#get(Outcome)} before its trie. */
+    static Expectation linearGet(ExpectationStore store, Outcome outcome) {
+        Map<String, Expectation> outcomes = store.getOutcomes();
+        Expectation exactNameMatch = outcomes.get(outcome.getName());
+        if (exactNameMatch != null) {
+            return exactNameMatch;
+        }
+        for (Expectation failure : store.getFailures()) {
+            if (failure.matches(outcome)) {
+                return failure;
+            }
+        }
+        return linearGet(outcomes, outcome.getName(), store.get(""));
+    }
+
+    /** The lookup of {@link ExpectationStore#get(String)} before its trie. */
+    static Expectation linearGet(Map<String, Expectation> outcomes, String name,
+            Expectation success) {
+        while (true) {
+            Expectation expectation = outcomes.get(name);
+            if (expectation != null) {
+                return expectation;
+            }
+            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
+            if (dotOrHash == -1) {
+                return success;
+            }
+            name = name.substring(0, dotOrHash);
+        }
+    }
+}
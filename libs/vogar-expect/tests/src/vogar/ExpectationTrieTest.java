@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link ExpectationTrie}, checked against the hash map lookup
+ * {@link ExpectationStore#get(String)} used before it: the name and then each
+ * of its '.'/'#' prefixes in turn.
+ */
+public class ExpectationTrieTest extends TestCase {
+
+    private static final String[] NAMES = {
+        "android",
+        "android.app.cts",
+        "android.app.cts.ActivityTest",
+        "android.app.cts.ActivityTest#testFinish",
+        "android.app.cts.ActivityTestCase#testStart",
+        "android.app.cts.Activity",
+        "android.view.cts.ViewTest#testInvalidate",
+        "android.view.cts.ViewTest#testInvalidateRect",
+        "android.view.cts.ViewTest$Inner",
+        "com.android.cts.Foo#",
+        "libcore.java.util",
+        "libcore.java.util.ArrayListTest#testAdd",
+    };
+
+    private static final String[] QUERIES = {
+        "",
+        "android",
+        "androi",
+        "androidx.Foo",
+        "android.app",
+        "android.app.cts",
+        "android.app.c",
+        "android.app.cts.ActivityTest",
+        "android.app.cts.ActivityTest#testFinish",
+        "android.app.cts.ActivityTest#testFinishAgain",
+        "android.app.cts.ActivityTest#testFin",
+        "android.app.cts.ActivityTestCase",
+        "android.app.cts.ActivityTestCase#testStart",
+        "android.app.cts.ActivityTestCase#testStop",
+        "android.app.cts.Activity.Inner#test",
+        "android.app.cts.ActivityTe",
+        "android.view.cts.ViewTest",
+        "android.view.cts.ViewTest#testInvalidate",
+        "android.view.cts.ViewTest#testInvalidateRect",
+        "android.view.cts.ViewTest#testInvalidateRectF",
+        "android.view.cts.ViewTest$Inner#test",
+        "android.view.cts.ViewTest$Inner",
+        "com.android.cts.Foo#",
+        "com.android.cts.Foo#test",
+        "libcore.java.util.ArrayListTest#testAdd",
+        "libcore.java.util.ArrayListTest#testRemove",
+        "libcore.java.util.concurrent.FooTest#test",
+        "libcore.java.utility.FooTest#test",
+    };
+
+    private final Map<String, Expectation> mByName = new LinkedHashMap<String, Expectation>();
+    private final ExpectationTrie mTrie = new ExpectationTrie();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (String name : NAMES) {
+            Expectation expectation = new Expectation(Result.EXEC_FAILED, Pattern.compile(".*"),
+                    Collections.<String>emptySet(), name, -1);
+            mByName.put(name, expectation);
+            assertNull(mTrie.put(name, expectation));
+        }
+    }
+
+    /**
+     * Test lookups of exact names.
+     */
+    public void testGet() {
+        for (String query : QUERIES) {
+            assertSame(query, mByName.get(query), mTrie.get(query));
+        }
+    }
+
+    /**
+     * Test lookups of names or their package, class or method prefixes.
+     */
+    public void testGetByNameOrPackage() {
+        for (String query : QUERIES) {
+            assertSame(query, linearGet(query), mTrie.getByNameOrPackage(query));
+            assertSame(query, linearGet(query), mTrie.getByNameOrPackage(query, null));
+        }
+    }
+
+    /**
+     * Test lookups of tests given as a class and a method name.
+     */
+    public void testGetByClassAndMethod() {
+        for (String query : QUERIES) {
+            int hash = query.indexOf('#');
+            if (hash >= 0) {
+                String className = query.substring(0, hash);
+                String methodName = query.substring(hash + 1);
+                assertSame(query, linearGet(query),
+                        mTrie.getByNameOrPackage(className, methodName));
+            } else {
+                for (String methodName : new String[] { "", "testFinish", "test" }) {
+                    String name = query + "#" + methodName;
+                    assertSame(name, linearGet(name),
+                            mTrie.getByNameOrPackage(query, methodName));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a name put twice keeps the last expectation.
+     */
+    public void testPutTwice() {
+        Expectation replacement = new Expectation(Result.SUCCESS, Pattern.compile(".*"),
+                Collections.<String>emptySet(), "", -1);
+        assertSame(mByName.get("android.app.cts"), mTrie.put("android.app.cts", replacement));
+        assertSame(replacement, mTrie.get("android.app.cts"));
+        assertSame(replacement, mTrie.getByNameOrPackage("android.app.cts.FooTest#test"));
+    }
+
+    /**
+     * Test that the map of a trie holds every name, ordered by name.
+     */
+    public void testToMap() {
+        List<String> sorted = new ArrayList<String>(mByName.keySet());
+        Collections.sort(sorted);
+        Map<String, Expectation> map = mTrie.toMap();
+        assertEquals(sorted, new ArrayList<String>(map.keySet()));
+        for (String name : NAMES) {
+            assertSame(mByName.get(name), map.get(name));
+        }
+    }
+
+    private Expectation linearGet(String name) {
+        while (true) {
+            Expectation expectation = mByName.get(name);
+            if (expectation != null) {
+                return expectation;
+            }
+            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
+            if (dotOrHash == -1) {
+                return null;
+            }
+            name = name.substring(0, dotOrHash);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link FailureMatcher}, checked against trying each failure
+ * expectation's pattern in turn.
+ */
+public class FailureMatcherTest extends TestCase {
+
+    private static final int FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+
+    /** Patterns with an input they match. */
+    private static final String[][] MATCHES = {
+        { ".*\\x41BC.*", "xABCx" },
+        { ".*\\x{41}BC.*", "ABC" },
+        { ".*\\u0041BC.*", "ABC" },
+        { ".*\\0101BC.*", "ABC" },
+        { ".*\\041BC.*", "!BC" },
+        { ".*\\cJfoo.*", "\nfoo" },
+        { ".*\\p{Lu}abc.*", "Xabc" },
+        { ".*\\pLabc.*", "Xabc" },
+        { ".*\\P{Lu}abc.*", "xabc" },
+        { ".*(a)\\1bc.*", "aabc" },
+        { ".*(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)\\10xyz.*", "abcdefghijjxyz" },
+        { ".*\\bfoo\\b.*", "a foo b" },
+        { ".*\\d+ ms.*", "timed out after 10 ms" },
+        { ".*\\Q[\\E\\d+\\].*", "[10]" },
+        { ".*[\\Q]\\E]xyz.*", "]xyz" },
+        { ".*[^\\x41]xyz.*", "Bxyz" },
+        { ".*ab*c.*", "ac" },
+        { ".*ab+c.*", "abbc" },
+        { ".*abc{2}d.*", "abccd" },
+        { "Test timed out after \\d+ ms", "Test timed out after 10 ms" },
+        { ".*x\uD83D\uDE00*y.*", "xy" },
+    };
+
+    /**
+     * Test the literals found in patterns.
+     */
+    public void testRequiredLiteral() {
+        assertEquals("BC", literal(".*\\x41BC.*"));
+        assertEquals("BC", literal(".*\\u0041BC.*"));
+        assertEquals("BC", literal(".*\\0101BC.*"));
+        assertEquals("foo", literal(".*\\cJfoo.*"));
+        assertEquals("abc", literal(".*\\p{Lu}abc.*"));
+        assertEquals("xyz", literal(".*(a)\\1bc.*xyz"));
+        assertEquals(" ms", literal(".*\\d+ ms.*"));
+        assertEquals("Test timed out after ", literal("Test timed out after \\d+ ms"));
+        assertEquals("foo.bar", literal(".*foo\\.bar.*"));
+        // a quantified supplementary character leaves no half of its surrogate pair
+        assertEquals("ab", literal(".*ab\uD83D\uDE00*y.*"));
+        assertEquals("x\uD83D\uDE00", literal(".*x\uD83D\uDE00+y.*"));
+        assertNull(literal(".*(foo|bar).*"));
+        assertNull(literal(".*(?i)foo.*"));
+    }
+
+    /**
+     * Test that the literal of a pattern is in an input it matches, and that
+     * the pattern is found in that input.
+     */
+    public void testLiteralInMatches() {
+        for (String[] match : MATCHES) {
+            Pattern pattern = Pattern.compile(match[0], FLAGS);
+            assertTrue(match[0], pattern.matcher(match[1]).matches());
+            String literal = FailureMatcher.requiredLiteral(pattern);
+            assertTrue(match[0] + " requires " + literal,
+                    literal == null || match[1].contains(literal));
+
+            Expectation expectation = new Expectation(Result.EXEC_FAILED, pattern,
+                    Collections.<String>emptySet(), "", -1);
+            FailureMatcher matcher = new FailureMatcher(Collections.singleton(expectation));
+            assertSame(match[0], expectation,
+                    matcher.find(new Outcome("Test#test", Result.EXEC_FAILED, match[1])));
+        }
+    }
+
+    /**
+     * Test that {@link FailureMatcher#find} returns what trying each failure
+     * expectation in turn returns, for the expectation files of the tree
+     * together with the patterns above.
+     */
+    public void testFindLikeLinearSearch() throws IOException {
+        Set<File> files = ExpectationFiles.find();
+        List<Expectation> failures = new ArrayList<Expectation>();
+        for (ModeId mode : ModeId.values()) {
+            failures.addAll(ExpectationStore.parse(files, mode).getFailures());
+        }
+        for (String[] match : MATCHES) {
+            failures.add(new Expectation(Result.EXEC_FAILED, Pattern.compile(match[0], FLAGS),
+                    Collections.<String>emptySet(), "", -1));
+        }
+
+        Set<String> outputs = new LinkedHashSet<String>();
+        outputs.add("");
+        for (String[] match : MATCHES) {
+            outputs.add(match[1]);
+        }
+        for (Expectation failure : failures) {
+            String source = failure.getPattern().pattern();
+            outputs.add(source);
+            String text = FailureMatcher.substringOf(failure.getPattern());
+            if (text == null) {
+                text = FailureMatcher.requiredLiteral(failure.getPattern());
+            }
+            if (text != null) {
+                outputs.add(text);
+                outputs.add("line\n" + text + "\nline");
+                outputs.add(text.substring(1));
+            }
+        }
+
+        FailureMatcher matcher = new FailureMatcher(failures);
+        for (String output : outputs) {
+            for (Result result : new Result[] { Result.EXEC_FAILED, Result.ERROR }) {
+                Outcome outcome = new Outcome("Test#test", result, output);
+                assertSame(output, linearFind(failures, outcome), matcher.find(outcome));
+            }
+        }
+    }
+
+    private static String literal(String pattern) {
+        return FailureMatcher.requiredLiteral(Pattern.compile(pattern, FLAGS));
+    }
+
+    /** The search of {@link ExpectationStore#get(Outcome)} before {@link FailureMatcher}. */
+    private static Expectation linearFind(Collection<Expectation> failures, Outcome outcome) {
+        for (Expectation failure : failures) {
+            if (failure.matches(outcome)) {
+                return failure;
+            }
+        }
+        return null;
+    }
+}
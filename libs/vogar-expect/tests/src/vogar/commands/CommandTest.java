@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.commands;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Unit tests for {@link Command}, running shell commands on the host.
+ */
+public class CommandTest extends TestCase {
+
+    /** Prints the lines 1 to 5. */
+    private static final String FIVE_LINES = "for i in 1 2 3 4 5; do echo $i; done";
+
+    public void testListenerAndTail() {
+        RecordingListener listener = new RecordingListener();
+        List<String> tail = sh(FIVE_LINES).execute(listener, 2);
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), listener.lines);
+        assertEquals(Arrays.asList("4", "5"), tail);
+    }
+
+    public void testNoTail() {
+        RecordingListener listener = new RecordingListener();
+        assertEquals(new ArrayList<String>(), sh(FIVE_LINES).execute(listener, 0));
+        assertEquals(5, listener.lines.size());
+    }
+
+    public void testAllLines() {
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), sh(FIVE_LINES).execute());
+    }
+
+    public void testFailureReportsTail() {
+        RecordingListener listener = new RecordingListener();
+        try {
+            sh(FIVE_LINES + "; exit 1").execute(listener, 2);
+            fail("CommandFailedException not thrown");
+        } catch (CommandFailedException e) {
+            assertEquals(Arrays.asList("4", "5"), e.getOutputLines());
+        }
+        assertEquals(5, listener.lines.size());
+    }
+
+    public void testWithTimeout() throws TimeoutException {
+        RecordingListener listener = new RecordingListener();
+        assertEquals(Arrays.asList("5"), sh(FIVE_LINES).executeWithTimeout(10, listener, 1));
+        assertEquals(5, listener.lines.size());
+        try {
+            sh(FIVE_LINES + "; exit 1").executeWithTimeout(10, null, 1);
+            fail("CommandFailedException not thrown");
+        } catch (CommandFailedException e) {
+            assertEquals(Arrays.asList("5"), e.getOutputLines());
+        }
+    }
+
+    public void testTimeout() {
+        RecordingListener listener = new RecordingListener();
+        long start = System.nanoTime();
+        try {
+            sh("echo started; sleep 30").executeWithTimeout(1, listener, 10);
+            fail("TimeoutException not thrown");
+        } catch (TimeoutException expected) {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(Arrays.asList("started"), listener.lines);
+    }
+
+    /**
+     * Test that the timeout holds when a child of the destroyed process keeps
+     * its output open.
+     */
+    public void testTimeoutWithOutputHeldOpen() {
+        long start = System.nanoTime();
+        try {
+            sh("sleep 30 & sleep 30").executeWithTimeout(1);
+            fail("TimeoutException not thrown");
+        } catch (TimeoutException expected) {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    /**
+     * Test that commands run at once however many are running, so that a
+     * timed command never waits behind others.
+     */
+    public void testManyCommands() throws Exception {
+        int count = 4 * Runtime.getRuntime().availableProcessors() + 8;
+        long start = System.nanoTime();
+        List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+        for (int i = 0; i < count; i++) {
+            results.add(sh("sleep 3; echo later").executeLater());
+        }
+        assertEquals(Arrays.asList("now"), sh("echo now").executeWithTimeout(2));
+        for (Future<List<String>> result : results) {
+            assertEquals(Arrays.asList("later"), result.get(30, TimeUnit.SECONDS));
+        }
+        // less than two rounds of sleeps
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(6));
+    }
+
+    private static Command sh(String script) {
+        return new Command("sh", "-c", script);
+    }
+
+    private static class RecordingListener implements Command.OutputListener {
+        final List<String> lines = new ArrayList<String>();
+
+        @Override public void outputLine(String line) {
+            lines.add(line);
+        }
+    }
+}
@@ -14,8 +14,10 @@
 # See the License for the specific language governing permissions and
 # limitations under the License.
 
+import base64
 import os
 import re
+import struct
 import subprocess
 import sys
 from xml.dom import Node
@@ -80,6 +82,11 @@ def parseSuite(suite, parentName):
             values = []
             for c in getChildrenWithTag(d, "Value"):
               values.append(getText(c))
+            # long arrays are base64 of little endian doubles
+            for c in getChildrenWithTag(d, "EncodedValues"):
+              data = base64.b64decode(getText(c))
+              for v in struct.unpack("<%dd" % (len(data) / 8), data):
+                values.append(repr(v))
             details[d.getAttribute("message")] = values
         else:
           result = "no results"
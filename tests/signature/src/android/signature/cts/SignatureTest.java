@@ -32,6 +32,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 
 /**
@@ -71,6 +72,8 @@ public class SignatureTest extends AndroidTestCase {
 
     private HashSet<String> mKeyTagSet;
     private TestResultObserver mResultObserver;
+    // holds one instance of each type name, they repeat across the whole api description
+    private HashMap<String, String> mTypeNames;
 
     private class TestResultObserver implements ResultObserver {
         boolean mDidFail = false;
@@ -151,6 +154,7 @@ public class SignatureTest extends AndroidTestCase {
         JDiffClassDescription currentClass = null;
         String currentPackage = "";
         JDiffMethod currentMethod = null;
+        mTypeNames = new HashMap<String, String>();
 
         beginDocument(parser, TAG_ROOT);
         int type;
@@ -188,7 +192,7 @@ public class SignatureTest extends AndroidTestCase {
             } else if (tagname.equals(TAG_INTERFACE)) {
                 currentClass = loadClassInfo(parser, true, currentPackage);
             } else if (tagname.equals(TAG_IMPLEMENTS)) {
-                currentClass.addImplInterface(parser.getAttributeValue(null, ATTRIBUTE_NAME));
+                currentClass.addImplInterface(type(parser, ATTRIBUTE_NAME));
             } else if (tagname.equals(TAG_CONSTRUCTOR)) {
                 JDiffConstructor constructor = loadConstructorInfo(parser, currentClass);
                 currentClass.addConstructor(constructor);
@@ -197,9 +201,9 @@ public class SignatureTest extends AndroidTestCase {
                 currentMethod = loadMethodInfo(currentClass.getClassName(), parser);
                 currentClass.addMethod(currentMethod);
             } else if (tagname.equals(TAG_PARAM)) {
-                currentMethod.addParam(parser.getAttributeValue(null, ATTRIBUTE_TYPE));
+                currentMethod.addParam(type(parser, ATTRIBUTE_TYPE));
             } else if (tagname.equals(TAG_EXCEPTION)) {
-                currentMethod.addException(parser.getAttributeValue(null, ATTRIBUTE_TYPE));
+                currentMethod.addException(type(parser, ATTRIBUTE_TYPE));
             } else if (tagname.equals(TAG_FIELD)) {
                 JDiffField field = loadFieldInfo(currentClass.getClassName(), parser);
                 currentClass.addField(field);
@@ -228,7 +232,7 @@ public class SignatureTest extends AndroidTestCase {
      */
     private JDiffField loadFieldInfo(String className, XmlPullParser parser) {
         String fieldName = parser.getAttributeValue(null, ATTRIBUTE_NAME);
-        String fieldType = parser.getAttributeValue(null, ATTRIBUTE_TYPE);
+        String fieldType = type(parser, ATTRIBUTE_TYPE);
         int modifier = jdiffModifierToReflectionFormat(className, parser);
         return new JDiffField(fieldName, fieldType, modifier);
     }
@@ -242,7 +246,7 @@ public class SignatureTest extends AndroidTestCase {
      */
     private JDiffMethod loadMethodInfo(String className, XmlPullParser parser) {
         String methodName = parser.getAttributeValue(null, ATTRIBUTE_NAME);
-        String returnType = parser.getAttributeValue(null, ATTRIBUTE_RETURN);
+        String returnType = type(parser, ATTRIBUTE_RETURN);
         int modifier = jdiffModifierToReflectionFormat(className, parser);
         return new JDiffMethod(methodName, modifier, returnType);
     }
@@ -279,10 +283,26 @@ public class SignatureTest extends AndroidTestCase {
         currentClass.setModifier(jdiffModifierToReflectionFormat(className, parser));
         currentClass.setType(isInterface ? JDiffClassDescription.JDiffType.INTERFACE :
                              JDiffClassDescription.JDiffType.CLASS);
-        currentClass.setExtendsClass(parser.getAttributeValue(null, ATTRIBUTE_EXTENDS));
+        currentClass.setExtendsClass(type(parser, ATTRIBUTE_EXTENDS));
         return currentClass;
     }
 
+    /**
+     * Returns the pooled value of a type attribute, or null if it is missing.
+     */
+    private String type(XmlPullParser parser, String attribute) {
+        String value = parser.getAttributeValue(null, attribute);
+        if (value == null) {
+            return null;
+        }
+        String pooled = mTypeNames.get(value);
+        if (pooled == null) {
+            mTypeNames.put(value, value);
+            pooled = value;
+        }
+        return pooled;
+    }
+
     /**
      * Convert string modifier to int modifier.
      *
@@ -22,6 +22,7 @@ include $(CLEAR_VARS)
 LOCAL_SRC_FILES := $(call all-subdir-java-files)
 LOCAL_JAVA_RESOURCE_DIRS := res 
 LOCAL_JAR_MANIFEST := MANIFEST.mf
+LOCAL_STATIC_JAVA_LIBRARIES := dex-tools compatibility-common-util-hostsidelib_v2
 
 LOCAL_MODULE := cts-api-coverage
 LOCAL_MODULE_TAGS := optional
@@ -17,9 +17,12 @@
 package com.android.cts.apicoverage;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Representation of a class in the API with constructors and methods. */
 class ApiClass implements Comparable<ApiClass>, HasCoverage {
@@ -40,6 +43,20 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     private ApiClass mSuperClass;
 
+    /*
+     * Lookup indexes built by buildIndex(). Members without generic parameter types are keyed by
+     * their exact signature, the others are kept per name (or all together for constructors) and
+     * matched with compareParameterTypes. Values are positions in mApiMethods and
+     * mApiConstructors, so that a lookup returns the same member as a linear scan would.
+     */
+    private Map<String, int[]> mMethodIndex;
+
+    private Map<String, int[]> mGenericMethodIndex;
+
+    private Map<String, int[]> mConstructorIndex;
+
+    private int[] mGenericConstructors;
+
     /**
      * @param name The name of the class
      * @param deprecated true iff the class is marked as deprecated
@@ -83,6 +100,7 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addConstructor(ApiConstructor constructor) {
         mApiConstructors.add(constructor);
+        mConstructorIndex = null;
     }
 
 
@@ -92,6 +110,89 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addMethod(ApiMethod method) {
         mApiMethods.add(method);
+        mMethodIndex = null;
+    }
+
+    /**
+     * Indexes the methods and constructors added so far for hashed lookups. Until this is called,
+     * and again after adding a member, lookups scan all members.
+     */
+    public void buildIndex() {
+        Map<String, List<Integer>> methods = new HashMap<String, List<Integer>>();
+        Map<String, List<Integer>> genericMethods = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < mApiMethods.size(); i++) {
+            ApiMethod method = mApiMethods.get(i);
+            if (hasGenericType(method.getParameterTypes())) {
+                add(genericMethods, method.getName(), i);
+            } else {
+                add(methods, signature(method.getName(), method.getParameterTypes()), i);
+            }
+        }
+        Map<String, List<Integer>> constructors = new HashMap<String, List<Integer>>();
+        List<Integer> genericConstructors = new ArrayList<Integer>();
+        for (int i = 0; i < mApiConstructors.size(); i++) {
+            ApiConstructor constructor = mApiConstructors.get(i);
+            if (hasGenericType(constructor.getParameterTypes())) {
+                genericConstructors.add(i);
+            } else {
+                add(constructors, signature("", constructor.getParameterTypes()), i);
+            }
+        }
+        mGenericMethodIndex = toArrays(genericMethods);
+        mGenericConstructors = toArray(genericConstructors);
+        mConstructorIndex = toArrays(constructors);
+        mMethodIndex = toArrays(methods);
+    }
+
+    /** Drops the indexes, lookups scan all members again. */
+    public void dropIndex() {
+        mMethodIndex = null;
+        mConstructorIndex = null;
+    }
+
+    private static void add(Map<String, List<Integer>> index, String key, int position) {
+        List<Integer> positions = index.get(key);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(1);
+            index.put(key, positions);
+        }
+        positions.add(position);
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> index) {
+        Map<String, int[]> result = new HashMap<String, int[]>(index.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+            result.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static String signature(String name, List<String> parameterTypes) {
+        StringBuilder b = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i != 0) {
+                b.append(',');
+            }
+            b.append(parameterTypes.get(i));
+        }
+        return b.append(')').toString();
+    }
+
+    private static boolean hasGenericType(List<String> types) {
+        for (String type : types) {
+            if (isGenericType(type) || isGenericArrayType(type)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Look for a matching constructor and mark it as covered */
@@ -119,6 +220,29 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
         }
     }
 
+    /** Adds the ids of the constructors covered by a call with the given parameter types. */
+    public void collectConstructor(List<String> parameterTypes, BitSet ids) {
+        if (mSuperClass != null) {
+            mSuperClass.collectConstructor(parameterTypes, ids);
+        }
+        ApiConstructor apiConstructor = getConstructor(parameterTypes);
+        if (apiConstructor != null) {
+            ids.set(apiConstructor.getId());
+        }
+    }
+
+    /** Adds the ids of the methods covered by a call to the given method. */
+    public void collectMethod(String name, List<String> parameterTypes, String returnType,
+            BitSet ids) {
+        if (mSuperClass != null) {
+            mSuperClass.collectMethod(name, parameterTypes, returnType, ids);
+        }
+        ApiMethod apiMethod = getMethod(name, parameterTypes, returnType);
+        if (apiMethod != null) {
+            ids.set(apiMethod.getId());
+        }
+    }
+
     public Collection<ApiMethod> getMethods() {
         return Collections.unmodifiableList(mApiMethods);
     }
@@ -157,6 +281,36 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
     }
 
     private ApiMethod getMethod(String name, List<String> parameterTypes, String returnType) {
+        // read once, addMethod may reset the field
+        Map<String, int[]> methodIndex = mMethodIndex;
+        if (methodIndex != null) {
+            int best = Integer.MAX_VALUE;
+            int[] positions = methodIndex.get(signature(name, parameterTypes));
+            if (positions != null) {
+                for (int position : positions) {
+                    if (compareType(mApiMethods.get(position).getReturnType(), returnType)) {
+                        best = position;
+                        break;
+                    }
+                }
+            }
+            // generic overloads only matter if a linear scan would reach them first
+            int[] generic = mGenericMethodIndex.get(name);
+            if (generic != null) {
+                for (int position : generic) {
+                    if (position > best) {
+                        break;
+                    }
+                    ApiMethod method = mApiMethods.get(position);
+                    if (compareParameterTypes(method.getParameterTypes(), parameterTypes)
+                            && compareType(method.getReturnType(), returnType)) {
+                        best = position;
+                        break;
+                    }
+                }
+            }
+            return best == Integer.MAX_VALUE ? null : mApiMethods.get(best);
+        }
         for (ApiMethod method : mApiMethods) {
             boolean methodNameMatch = name.equals(method.getName());
             boolean parameterTypeMatch =
@@ -233,6 +387,25 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
     }
 
     private ApiConstructor getConstructor(List<String> parameterTypes) {
+        Map<String, int[]> constructorIndex = mConstructorIndex;
+        if (constructorIndex != null) {
+            int best = Integer.MAX_VALUE;
+            int[] positions = constructorIndex.get(signature("", parameterTypes));
+            if (positions != null) {
+                best = positions[0];
+            }
+            for (int position : mGenericConstructors) {
+                if (position > best) {
+                    break;
+                }
+                if (compareParameterTypes(
+                        mApiConstructors.get(position).getParameterTypes(), parameterTypes)) {
+                    best = position;
+                    break;
+                }
+            }
+            return best == Integer.MAX_VALUE ? null : mApiConstructors.get(best);
+        }
         for (ApiConstructor constructor : mApiConstructors) {
             if (compareParameterTypes(constructor.getParameterTypes(), parameterTypes)) {
                 return constructor;
@@ -16,30 +16,37 @@
 
 package com.android.cts.apicoverage;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import com.android.compatibility.common.util.TypePool;
+
 import java.util.List;
 
 /** Representation of a constructor in the API with parameters (arguments). */
-class ApiConstructor implements Comparable<ApiConstructor> {
+class ApiConstructor implements Comparable<ApiConstructor>, ApiMember {
 
     private final String mName;
 
-    private final List<String> mParameterTypes;
+    private final TypePool mTypePool;
+
+    private final int[] mParameterTypeIds;
 
     private final boolean mDeprecated;
 
-    private boolean mIsCovered;
+    // set concurrently by the scanner threads, only ever from false to true
+    private volatile boolean mIsCovered;
+
+    private int mId = -1;
 
-    ApiConstructor(String name, List<String> parameterTypes, boolean deprecated) {
-        mName = name;
-        mParameterTypes = new ArrayList<String>(parameterTypes);
+    ApiConstructor(TypePool typePool, String name, List<String> parameterTypes,
+            boolean deprecated) {
+        mTypePool = typePool;
+        mName = typePool.canonical(name);
+        mParameterTypeIds = typePool.intern(parameterTypes);
         mDeprecated = deprecated;
     }
 
     @Override
     public int compareTo(ApiConstructor another) {
-        return mParameterTypes.size() - another.mParameterTypes.size();
+        return mParameterTypeIds.length - another.mParameterTypeIds.length;
     }
 
     public String getName() {
@@ -47,7 +54,7 @@ class ApiConstructor implements Comparable<ApiConstructor> {
     }
 
     public List<String> getParameterTypes() {
-        return Collections.unmodifiableList(mParameterTypes);
+        return mTypePool.get(mParameterTypeIds);
     }
 
     public boolean isDeprecated() {
@@ -61,4 +68,14 @@ class ApiConstructor implements Comparable<ApiConstructor> {
     public void setCovered(boolean covered) {
         mIsCovered = covered;
     }
+
+    @Override
+    public int getId() {
+        return mId;
+    }
+
+    @Override
+    public void setId(int id) {
+        mId = id;
+    }
 }
\ No newline at end of file
@@ -16,10 +16,15 @@
 
 package com.android.cts.apicoverage;
 
+import com.android.compatibility.common.util.TypePool;
+
 import java.lang.String;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Representation of the entire API containing packages. */
@@ -27,6 +32,12 @@ class ApiCoverage {
 
     private final Map<String, ApiPackage> mPackages = new HashMap<String, ApiPackage>();
 
+    private final TypePool mTypePool = new TypePool();
+
+    private final List<ApiMember> mMembers = new ArrayList<ApiMember>();
+
+    private final List<String> mMemberNames = new ArrayList<String>();
+
     public void addPackage(ApiPackage pkg) {
         mPackages.put(pkg.getName(), pkg);
     }
@@ -39,11 +50,76 @@ class ApiCoverage {
         return Collections.unmodifiableCollection(mPackages.values());
     }
 
-    /** Iterate through all packages and update all classes to include its superclass */
-    public void resolveSuperClasses() {
-        for (Map.Entry<String, ApiPackage> entry : mPackages.entrySet()) {
-            ApiPackage pkg = entry.getValue();
-            pkg.resolveSuperClasses(mPackages);
+    /** Returns the pool holding the names and parameter types of all members. */
+    public TypePool getTypePool() {
+        return mTypePool;
+    }
+
+    /**
+     * Index the constructors and methods of all classes for the coverage lookups, and number
+     * them. Ids only depend on the API XML: packages and classes are visited by name, members in
+     * the order of the XML.
+     */
+    public void buildIndexes() {
+        mMembers.clear();
+        mMemberNames.clear();
+        List<String> packageNames = new ArrayList<String>(mPackages.keySet());
+        Collections.sort(packageNames);
+        for (String packageName : packageNames) {
+            List<ApiClass> classes = new ArrayList<ApiClass>(
+                    mPackages.get(packageName).getClasses());
+            Collections.sort(classes);
+            for (ApiClass apiClass : classes) {
+                apiClass.buildIndex();
+                String prefix = packageName + "." + apiClass.getName();
+                for (ApiConstructor constructor : apiClass.getConstructors()) {
+                    addMember(constructor, prefix + "(" + join(constructor.getParameterTypes())
+                            + ")");
+                }
+                for (ApiMethod method : apiClass.getMethods()) {
+                    addMember(method, prefix + "." + method.getName() + "("
+                            + join(method.getParameterTypes()) + ")");
+                }
+            }
+        }
+    }
+
+    private void addMember(ApiMember member, String name) {
+        member.setId(mMembers.size());
+        mMembers.add(member);
+        mMemberNames.add(name);
+    }
+
+    private static String join(List<String> types) {
+        StringBuilder b = new StringBuilder();
+        for (String type : types) {
+            if (b.length() != 0) {
+                b.append(", ");
+            }
+            b.append(type);
+        }
+        return b.toString();
+    }
+
+    /** Returns the number of members numbered by {@link #buildIndexes()}. */
+    public int getMemberCount() {
+        return mMembers.size();
+    }
+
+    /** Returns the signatures of the members, indexed by id. */
+    public List<String> getMemberNames() {
+        return Collections.unmodifiableList(mMemberNames);
+    }
+
+    /** Returns a readable signature of the member with the given id. */
+    public String getMemberName(int id) {
+        return mMemberNames.get(id);
+    }
+
+    /** Marks the members with the given ids as covered. */
+    public void markCovered(BitSet ids) {
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            mMembers.get(id).setCovered(true);
         }
     }
 }
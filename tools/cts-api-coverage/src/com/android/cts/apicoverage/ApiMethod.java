@@ -16,16 +16,18 @@
 
 package com.android.cts.apicoverage;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import com.android.compatibility.common.util.TypePool;
+
 import java.util.List;
 
 /** Representation of a method in the API with parameters (arguments) and a return value. */
-class ApiMethod implements Comparable<ApiMethod> {
+class ApiMethod implements Comparable<ApiMethod>, ApiMember {
 
     private final String mName;
 
-    private final List<String> mParameterTypes;
+    private final TypePool mTypePool;
+
+    private final int[] mParameterTypeIds;
 
     private final String mReturnType;
 
@@ -39,9 +41,13 @@ class ApiMethod implements Comparable<ApiMethod> {
 
     private final boolean mAbstractMethod;
 
-    private boolean mIsCovered;
+    // set concurrently by the scanner threads, only ever from false to true
+    private volatile boolean mIsCovered;
+
+    private int mId = -1;
 
     ApiMethod(
+            TypePool typePool,
             String name,
             List<String> parameterTypes,
             String returnType,
@@ -50,11 +56,12 @@ class ApiMethod implements Comparable<ApiMethod> {
             boolean staticMethod,
             boolean finalMethod,
             boolean abstractMethod) {
-        mName = name;
-        mParameterTypes = new ArrayList<String>(parameterTypes);
-        mReturnType = returnType;
+        mTypePool = typePool;
+        mName = typePool.canonical(name);
+        mParameterTypeIds = typePool.intern(parameterTypes);
+        mReturnType = typePool.canonical(returnType);
         mDeprecated = deprecated;
-        mVisibility = visibility;
+        mVisibility = typePool.canonical(visibility);
         mStaticMethod = staticMethod;
         mFinalMethod = finalMethod;
         mAbstractMethod = abstractMethod;
@@ -70,7 +77,7 @@ class ApiMethod implements Comparable<ApiMethod> {
     }
 
     public List<String> getParameterTypes() {
-        return Collections.unmodifiableList(mParameterTypes);
+        return mTypePool.get(mParameterTypeIds);
     }
 
     public String getReturnType() {
@@ -96,4 +103,14 @@ class ApiMethod implements Comparable<ApiMethod> {
     public void setCovered(boolean covered) {
         mIsCovered = covered;
     }
+
+    @Override
+    public int getId() {
+        return mId;
+    }
+
+    @Override
+    public void setId(int id) {
+        mId = id;
+    }
 }
\ No newline at end of file
@@ -19,9 +19,7 @@ package com.android.cts.apicoverage;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /** Representation of a package in the API containing classes. */
 class ApiPackage implements HasCoverage {
@@ -76,28 +74,4 @@ class ApiPackage implements HasCoverage {
     public int getMemberSize() {
         return getTotalMethods();
     }
-
-    /** Iterate through all classes and add superclass. */
-    public void resolveSuperClasses(Map<String, ApiPackage> packageMap) {
-        Iterator<Entry<String, ApiClass>> it = mApiClassMap.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, ApiClass> entry = it.next();
-            ApiClass apiClass = entry.getValue();
-            if (apiClass.getSuperClassName() != null) {
-                String superClassName = apiClass.getSuperClassName();
-                // Split the fully qualified class name into package and class name.
-                String packageName = superClassName.substring(0, superClassName.lastIndexOf('.'));
-                String className = superClassName.substring(
-                        superClassName.lastIndexOf('.') + 1, superClassName.length());
-                if (packageMap.containsKey(packageName)) {
-                    ApiPackage apiPackage = packageMap.get(packageName);
-                    ApiClass superClass = apiPackage.getClass(className);
-                    if (superClass != null) {
-                        // Add the super class
-                        apiClass.setSuperClass(superClass);
-                    }
-                }
-            }
-        }
-    }
 }
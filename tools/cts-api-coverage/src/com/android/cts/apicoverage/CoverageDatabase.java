@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.apicoverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk store of the coverage of individual APKs, so that a rerun only scans APKs that
+ * changed.
+ * <p>
+ * Entries are keyed by the SHA-1 of the APK and hold the ids of the API members it covers as a
+ * bitset. Ids are only meaningful for one API XML, so the database records the SHA-1 of the API
+ * XML and the signature of each member id. A database built against another API is not used to
+ * skip scans, but can still be compared with {@link #delta} through the signatures.
+ * <p>
+ * File format, big endian: magic, version, API digest (20 bytes), member count, the signature
+ * of each member in id order as modified UTF-8, entry count, then per entry the APK digest
+ * (20 bytes), the number of longs and the longs of {@link BitSet#toLongArray()}.
+ */
+class CoverageDatabase {
+
+    private static final int MAGIC = 0x43415044; // "CAPD"
+
+    private static final int VERSION = 2;
+
+    private static final int DIGEST_LENGTH = 20;
+
+    private final byte[] mApiDigest;
+
+    /** Signature of each member id, as given by {@link ApiCoverage#getMemberName(int)}. */
+    private final List<String> mMemberNames;
+
+    private final Map<String, BitSet> mEntries = new HashMap<String, BitSet>();
+
+    CoverageDatabase(byte[] apiDigest, List<String> memberNames) {
+        mApiDigest = apiDigest;
+        mMemberNames = memberNames;
+    }
+
+    /**
+     * Scans the coverage of APKs.
+     */
+    interface ApkScanner {
+        /** Returns the coverage of each APK, in the same order. */
+        List<BitSet> scan(List<File> apks) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Reads the database in {@code file}. Returns an empty database if the file does not exist
+     * or cannot be used with this API.
+     */
+    static CoverageDatabase load(File file, byte[] apiDigest, List<String> memberNames) {
+        if (file.exists()) {
+            try {
+                CoverageDatabase database = read(file);
+                if (Arrays.equals(database.mApiDigest, apiDigest)
+                        && database.mMemberNames.equals(memberNames)) {
+                    return database;
+                }
+                System.err.println("warning: ignoring coverage database built against"
+                        + " another API XML");
+            } catch (IOException e) {
+                System.err.println("warning: ignoring coverage database: " + e.getMessage());
+            }
+        }
+        return new CoverageDatabase(apiDigest, memberNames);
+    }
+
+    /**
+     * Reads the database in {@code file}, whatever API XML it was built against.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    static CoverageDatabase read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a coverage database of this version");
+            }
+            byte[] apiDigest = new byte[DIGEST_LENGTH];
+            in.readFully(apiDigest);
+            String[] memberNames = new String[in.readInt()];
+            for (int i = 0; i < memberNames.length; i++) {
+                memberNames[i] = in.readUTF();
+            }
+            CoverageDatabase database = new CoverageDatabase(apiDigest,
+                    Collections.unmodifiableList(Arrays.asList(memberNames)));
+            byte[] digest = new byte[DIGEST_LENGTH];
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                in.readFully(digest);
+                long[] words = new long[in.readInt()];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = in.readLong();
+                }
+                database.mEntries.put(toHex(digest), BitSet.valueOf(words));
+            }
+            return database;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Writes the database to a temporary file which then replaces {@code file}. */
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(mApiDigest);
+            out.writeInt(mMemberNames.size());
+            for (String name : mMemberNames) {
+                out.writeUTF(name);
+            }
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, BitSet> entry : mEntries.entrySet()) {
+                out.write(fromHex(entry.getKey()));
+                long[] words = entry.getValue().toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // renameTo does not replace existing files on every platform
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("failed to rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /** Returns the coverage of the APK with the given digest, or null if it is not known. */
+    BitSet get(String apkDigest) {
+        return mEntries.get(apkDigest);
+    }
+
+    void put(String apkDigest, BitSet covered) {
+        mEntries.put(apkDigest, covered);
+    }
+
+    /** Drops the entries of APKs that are not in {@code apkDigests}. */
+    void retainAll(Collection<String> apkDigests) {
+        mEntries.keySet().retainAll(apkDigests);
+    }
+
+    /**
+     * Returns the coverage of each APK. Only the APKs whose SHA-1 is not in the database are
+     * passed to {@code scanner}; the database then holds the entries of exactly these APKs.
+     */
+    List<BitSet> getCoverage(List<File> apks, ApkScanner scanner)
+            throws IOException, InterruptedException {
+        List<String> digests = new ArrayList<String>(apks.size());
+        List<File> changedApks = new ArrayList<File>();
+        List<String> changedDigests = new ArrayList<String>();
+        for (File apk : apks) {
+            String digest = sha1(apk);
+            digests.add(digest);
+            if (get(digest) == null && !changedDigests.contains(digest)) {
+                changedApks.add(apk);
+                changedDigests.add(digest);
+            }
+        }
+        List<BitSet> scanned = scanner.scan(changedApks);
+        for (int i = 0; i < scanned.size(); i++) {
+            put(changedDigests.get(i), scanned.get(i));
+        }
+        retainAll(digests);
+
+        List<BitSet> coverage = new ArrayList<BitSet>(apks.size());
+        for (String digest : digests) {
+            coverage.add(get(digest));
+        }
+        return coverage;
+    }
+
+    /** Returns the union of the coverage of all APKs. */
+    BitSet union() {
+        BitSet union = new BitSet(mMemberNames.size());
+        for (BitSet covered : mEntries.values()) {
+            union.or(covered);
+        }
+        return union;
+    }
+
+    /** Returns the SHA-1 of the file's content as a hex string. */
+    static String sha1(File file) throws IOException {
+        return toHex(digest(file));
+    }
+
+    /** Returns the SHA-1 of the file's content. */
+    static byte[] digest(File file) throws IOException {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                sha1.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return sha1.digest();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder b = new StringBuilder(bytes.length * 2);
+        for (byte x : bytes) {
+            b.append(Character.forDigit((x >> 4) & 0xF, 16));
+            b.append(Character.forDigit(x & 0xF, 16));
+        }
+        return b.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * Lists the members whose coverage differs between two builds, "+" for members only the new
+     * build covers and "-" for members only the old one covers. Members are matched by signature,
+     * so the builds may have been scanned against different API XMLs; a covered member missing
+     * from the other build's API counts as not covered there.
+     */
+    static List<String> delta(CoverageDatabase oldBuild, CoverageDatabase newBuild) {
+        Set<String> oldCovered = oldBuild.coveredNames();
+        Set<String> newCovered = newBuild.coveredNames();
+        List<String> lines = new ArrayList<String>();
+        addMissing(lines, "+ ", newBuild, oldCovered);
+        addMissing(lines, "- ", oldBuild, newCovered);
+        return lines;
+    }
+
+    /** Returns the signatures of the members covered by any APK. */
+    private Set<String> coveredNames() {
+        BitSet covered = union();
+        Set<String> names = new HashSet<String>(covered.cardinality() * 2);
+        for (int id = covered.nextSetBit(0); id >= 0; id = covered.nextSetBit(id + 1)) {
+            names.add(mMemberNames.get(id));
+        }
+        return names;
+    }
+
+    /** Adds the members covered by {@code build} that are not in {@code covered}, in id order. */
+    private static void addMissing(List<String> lines, String prefix, CoverageDatabase build,
+            Set<String> covered) {
+        BitSet ids = build.union();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            String name = build.mMemberNames.get(id);
+            if (!covered.contains(name)) {
+                lines.add(prefix + name);
+            }
+        }
+    }
+}
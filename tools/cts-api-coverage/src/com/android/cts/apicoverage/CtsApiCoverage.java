@@ -21,12 +21,16 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.xml.transform.TransformerException;
@@ -52,15 +56,19 @@ public class CtsApiCoverage {
         System.out.println("Use the Makefiles rules in CtsTestCoverage.mk to generate the report ");
         System.out.println("rather than executing this directly. If you still want to run this ");
         System.out.println("directly, then this must be used from the $ANDROID_BUILD_TOP ");
-        System.out.println("directory and dexdeps must be built via \"make dexdeps\".");
+        System.out.println("directory.");
         System.out.println();
         System.out.println("Options:");
         System.out.println("  -o FILE                output file or standard out if not given");
         System.out.println("  -f [txt|xml|html]      format of output");
-        System.out.println("  -d PATH                path to dexdeps or expected to be in $PATH");
+        System.out.println("  -j N                   number of APKs scanned in parallel");
         System.out.println("  -a PATH                path to the API XML file");
         System.out.println("  -p PACKAGENAMEPREFIX   report coverage only for package that start with");
         System.out.println("  -t TITLE               report title");
+        System.out.println("  -db FILE               coverage database, only APKs that changed since");
+        System.out.println("                         the database was written are scanned");
+        System.out.println("  -delta OLD NEW         list the members covered by only one of two");
+        System.out.println("                         databases, matching members by signature");
         System.out.println();
         System.exit(1);
     }
@@ -69,10 +77,12 @@ public class CtsApiCoverage {
         List<File> testApks = new ArrayList<File>();
         File outputFile = null;
         int format = FORMAT_TXT;
-        String dexDeps = "dexDeps";
+        int threads = Runtime.getRuntime().availableProcessors();
         String apiXmlPath = "";
         PackageFilter packageFilter = new PackageFilter();
         String reportTitle = "CTS API Coverage";
+        File databaseFile = null;
+        File[] deltaDatabases = null;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].startsWith("-")) {
@@ -90,13 +100,26 @@ public class CtsApiCoverage {
                         printUsage();
                     }
                 } else if ("-d".equals(args[i])) {
-                    dexDeps = getExpectedArg(args, ++i);
+                    // dexdeps is no longer used, accept the path for old makefiles
+                    getExpectedArg(args, ++i);
+                } else if ("-j".equals(args[i])) {
+                    try {
+                        threads = Integer.parseInt(getExpectedArg(args, ++i));
+                    } catch (NumberFormatException e) {
+                        printUsage();
+                    }
                 } else if ("-a".equals(args[i])) {
                     apiXmlPath = getExpectedArg(args, ++i);
                 } else if ("-p".equals(args[i])) {
                     packageFilter.addPrefixToFilter(getExpectedArg(args, ++i));
                 } else if ("-t".equals(args[i])) {
                     reportTitle = getExpectedArg(args, ++i);
+                } else if ("-db".equals(args[i])) {
+                    databaseFile = new File(getExpectedArg(args, ++i));
+                } else if ("-delta".equals(args[i])) {
+                    deltaDatabases = new File[] {
+                            new File(getExpectedArg(args, ++i)),
+                            new File(getExpectedArg(args, ++i))};
                 } else {
                     printUsage();
                 }
@@ -110,17 +133,22 @@ public class CtsApiCoverage {
          *    in current.xml. The object will have no information about the coverage for each
          *    constructor or method yet.
          *
-         * 2. For each provided APK, scan it using dexdeps, parse the output of dexdeps, and
-         *    call methods on the ApiCoverage object to cumulatively add coverage stats.
+         * 2. Scan the provided APKs in parallel, reading the framework methods referenced by
+         *    their dex files, and call methods on the ApiCoverage object to cumulatively add
+         *    coverage stats.
          *
          * 3. Output a report based on the coverage stats in the ApiCoverage object.
          */
 
+        if (deltaDatabases != null) {
+            outputCoverageDelta(deltaDatabases, outputFile);
+            return;
+        }
         ApiCoverage apiCoverage = getEmptyApiCoverage(apiXmlPath);
-        // Add superclass information into api coverage.
-        apiCoverage.resolveSuperClasses();
-        for (File testApk : testApks) {
-            addApiCoverage(apiCoverage, testApk, dexDeps);
+        apiCoverage.buildIndexes();
+        for (BitSet covered : getApiCoverage(apiCoverage, apiXmlPath, testApks, threads,
+                databaseFile)) {
+            apiCoverage.markCovered(covered);
         }
         outputCoverageReport(apiCoverage, testApks, outputFile, format, packageFilter, reportTitle);
     }
@@ -143,20 +171,21 @@ public class CtsApiCoverage {
      * @return an {@link ApiCoverage} object representing the API in current.xml without any
      *     coverage statistics yet
      */
-    private static ApiCoverage getEmptyApiCoverage(String apiXmlPath)
+    static ApiCoverage getEmptyApiCoverage(String apiXmlPath)
             throws SAXException, IOException {
         XMLReader xmlReader = XMLReaderFactory.createXMLReader();
         CurrentXmlHandler currentXmlHandler = new CurrentXmlHandler();
         xmlReader.setContentHandler(currentXmlHandler);
 
         File currentXml = new File(apiXmlPath);
-        FileReader fileReader = null;
+        // let the parser decode the bytes itself, as declared by the document
+        InputStream in = null;
         try {
-            fileReader = new FileReader(currentXml);
-            xmlReader.parse(new InputSource(fileReader));
+            in = new BufferedInputStream(new FileInputStream(currentXml), 64 * 1024);
+            xmlReader.parse(new InputSource(in));
         } finally {
-            if (fileReader != null) {
-                fileReader.close();
+            if (in != null) {
+                in.close();
             }
         }
 
@@ -164,26 +193,44 @@ public class CtsApiCoverage {
     }
 
     /**
-     * Adds coverage information gleamed from running dexdeps on the APK to the
-     * {@link ApiCoverage} object.
-     *
-     * @param apiCoverage object to which the coverage statistics will be added to
-     * @param testApk containing the tests that will be scanned by dexdeps
+     * Returns the coverage of each APK. With a database, only APKs it does not know are scanned,
+     * and the database is rewritten with the entries of the given APKs.
      */
-    private static void addApiCoverage(ApiCoverage apiCoverage, File testApk, String dexdeps)
-            throws SAXException, IOException {
-        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-        DexDepsXmlHandler dexDepsXmlHandler = new DexDepsXmlHandler(apiCoverage);
-        xmlReader.setContentHandler(dexDepsXmlHandler);
+    private static List<BitSet> getApiCoverage(ApiCoverage apiCoverage, String apiXmlPath,
+            List<File> testApks, final int threads, File databaseFile)
+            throws IOException, InterruptedException {
+        final DexCoverageScanner scanner = new DexCoverageScanner(apiCoverage);
+        if (databaseFile == null) {
+            return scanner.scan(testApks, threads);
+        }
 
-        String apkPath = testApk.getPath();
-        Process process = new ProcessBuilder(dexdeps, "--format=xml", apkPath).start();
+        CoverageDatabase database = CoverageDatabase.load(databaseFile,
+                CoverageDatabase.digest(new File(apiXmlPath)), apiCoverage.getMemberNames());
+        List<BitSet> coverage = database.getCoverage(testApks,
+                new CoverageDatabase.ApkScanner() {
+                    @Override
+                    public List<BitSet> scan(List<File> apks) throws InterruptedException {
+                        return scanner.scan(apks, threads);
+                    }
+                });
+        database.save(databaseFile);
+        return coverage;
+    }
+
+    private static void outputCoverageDelta(File[] databases, File outputFile)
+            throws IOException {
+        CoverageDatabase oldBuild = CoverageDatabase.read(databases[0]);
+        CoverageDatabase newBuild = CoverageDatabase.read(databases[1]);
+
+        PrintStream out = outputFile != null
+                ? new PrintStream(new FileOutputStream(outputFile))
+                : System.out;
         try {
-            xmlReader.parse(new InputSource(process.getInputStream()));
-        } catch (SAXException e) {
-          // Catch this exception, but continue. SAXException is acceptable in cases
-          // where the apk does not contain a classes.dex and therefore parsing won't work.
-          System.err.println("warning: dexdeps failed for: " + apkPath);
+            for (String line : CoverageDatabase.delta(oldBuild, newBuild)) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
         }
     }
 
@@ -16,15 +16,23 @@
 
 package com.android.cts.apicoverage;
 
+import com.android.compatibility.common.util.TypePool;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@link DefaultHandler} that builds an empty {@link ApiCoverage} object from scanning current.xml.
+ * <p>
+ * Names and types go through the {@link TypePool} of the coverage object, and each class is
+ * linked to its superclass as soon as both have been seen, so the model is complete when the
+ * document ends.
  */
 class CurrentXmlHandler extends DefaultHandler {
 
@@ -53,6 +61,15 @@ class CurrentXmlHandler extends DefaultHandler {
 
     private ApiCoverage mApiCoverage = new ApiCoverage();
 
+    private TypePool mTypePool = mApiCoverage.getTypePool();
+
+    /** Classes seen so far, keyed by "package/class". */
+    private final Map<String, ApiClass> mClasses = new HashMap<String, ApiClass>();
+
+    /** Classes whose superclass has not been seen yet, keyed by the superclass. */
+    private final Map<String, List<ApiClass>> mPendingSubclasses =
+            new HashMap<String, List<ApiClass>>();
+
     public ApiCoverage getApi() {
         return mApiCoverage;
     }
@@ -62,7 +79,7 @@ class CurrentXmlHandler extends DefaultHandler {
             throws SAXException {
         super.startElement(uri, localName, name, attributes);
         if ("package".equalsIgnoreCase(localName)) {
-            mCurrentPackageName = getValue(attributes, "name");
+            mCurrentPackageName = mTypePool.canonical(getValue(attributes, "name"));
 
             ApiPackage apiPackage = new ApiPackage(mCurrentPackageName);
             mApiCoverage.addPackage(apiPackage);
@@ -73,13 +90,14 @@ class CurrentXmlHandler extends DefaultHandler {
                 return;
             }
             mIgnoreCurrentClass = false;
-            mCurrentClassName = getValue(attributes, "name");
+            mCurrentClassName = mTypePool.canonical(getValue(attributes, "name"));
             mDeprecated = isDeprecated(attributes);
-            String superClass = attributes.getValue("extends");
+            String superClass = mTypePool.canonical(attributes.getValue("extends"));
             ApiClass apiClass = new ApiClass(
                     mCurrentClassName, mDeprecated, is(attributes, "abstract"), superClass);
             ApiPackage apiPackage = mApiCoverage.getPackage(mCurrentPackageName);
             apiPackage.addClass(apiClass);
+            addClass(apiClass);
         } else if ("interface".equalsIgnoreCase(localName)) {
             // don't add interface
             mIgnoreCurrentClass = true;
@@ -112,13 +130,14 @@ class CurrentXmlHandler extends DefaultHandler {
                 // Don't add empty default constructors...
                 return;
             }
-            ApiConstructor apiConstructor = new ApiConstructor(mCurrentClassName,
+            ApiConstructor apiConstructor = new ApiConstructor(mTypePool, mCurrentClassName,
                     mCurrentParameterTypes, mDeprecated);
             ApiPackage apiPackage = mApiCoverage.getPackage(mCurrentPackageName);
             ApiClass apiClass = apiPackage.getClass(mCurrentClassName);
             apiClass.addConstructor(apiConstructor);
         }  else if ("method".equalsIgnoreCase(localName)) {
             ApiMethod apiMethod = new ApiMethod(
+                    mTypePool,
                     mCurrentMethodName,
                     mCurrentParameterTypes,
                     mCurrentMethodReturnType,
@@ -133,6 +152,41 @@ class CurrentXmlHandler extends DefaultHandler {
         }
     }
 
+    /** Links the class to its superclass, and the classes waiting for it to the class. */
+    private void addClass(ApiClass apiClass) {
+        String key = mCurrentPackageName + "/" + apiClass.getName();
+        mClasses.put(key, apiClass);
+        List<ApiClass> subclasses = mPendingSubclasses.remove(key);
+        if (subclasses != null) {
+            for (ApiClass subclass : subclasses) {
+                subclass.setSuperClass(apiClass);
+            }
+        }
+
+        String superClassName = apiClass.getSuperClassName();
+        if (superClassName == null) {
+            return;
+        }
+        // Split the fully qualified name at its last dot, so nested superclasses stay unlinked.
+        int dot = superClassName.lastIndexOf('.');
+        if (dot < 0) {
+            return;
+        }
+        String superKey = superClassName.substring(0, dot) + "/"
+                + superClassName.substring(dot + 1);
+        ApiClass superClass = mClasses.get(superKey);
+        if (superClass != null) {
+            apiClass.setSuperClass(superClass);
+        } else {
+            List<ApiClass> pending = mPendingSubclasses.get(superKey);
+            if (pending == null) {
+                pending = new ArrayList<ApiClass>();
+                mPendingSubclasses.put(superKey, pending);
+            }
+            pending.add(apiClass);
+        }
+    }
+
     static String getValue(Attributes attributes, String key) {
         // Strip away generics <...> and make inner classes always use a "." rather than "$".
         return attributes.getValue(key)
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import dex.reader.DexArchive;
+import dex.reader.DexArchiveReader;
+import dex.structure.DexMethodRef;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the coverage of test APKs by reading the method references of their dex files
+ * in-process, instead of running dexdeps on each of them.
+ * <p>
+ * APKs are scanned concurrently on a fixed pool. The coverage of an APK is the set of ids of the
+ * API members it covers, see {@link ApiCoverage#buildIndexes()}. Each method reference is
+ * matched against the API only the first time any APK references it; the ids it covers are
+ * shared by all APKs. The API tree itself is only read.
+ */
+class DexCoverageScanner {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final ApiCoverage mApiCoverage;
+
+    // ids covered by each method reference seen so far, arrays are never modified
+    private final ConcurrentMap<DexMethodRef, int[]> mCoveredIds =
+            new ConcurrentHashMap<DexMethodRef, int[]>();
+
+    // readers pool their inflate buffers, so keep one per worker thread
+    private final ThreadLocal<DexArchiveReader> mReaders = new ThreadLocal<DexArchiveReader>() {
+        @Override
+        protected DexArchiveReader initialValue() {
+            return new DexArchiveReader();
+        }
+    };
+
+    /**
+     * @param apiCoverage with superclasses resolved and indexes built
+     */
+    DexCoverageScanner(ApiCoverage apiCoverage) {
+        mApiCoverage = apiCoverage;
+    }
+
+    /**
+     * Scans the given APKs using at most {@code threads} threads.
+     *
+     * @return the ids of the members covered by each APK, in the order of {@code testApks}
+     */
+    List<BitSet> scan(List<File> testApks, int threads) throws InterruptedException {
+        List<BitSet> coverage = new ArrayList<BitSet>(testApks.size());
+        if (testApks.isEmpty()) {
+            return coverage;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, testApks.size())));
+        try {
+            List<Future<BitSet>> results = new ArrayList<Future<BitSet>>();
+            for (final File testApk : testApks) {
+                results.add(executor.submit(new Callable<BitSet>() {
+                    @Override
+                    public BitSet call() {
+                        return scan(testApk);
+                    }
+                }));
+            }
+            for (Future<BitSet> result : results) {
+                try {
+                    coverage.add(result.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return coverage;
+    }
+
+    private BitSet scan(File testApk) {
+        BitSet covered = new BitSet(mApiCoverage.getMemberCount());
+        String apkPath = testApk.getPath();
+        DexArchive archive;
+        try {
+            archive = mReaders.get().read(apkPath);
+        } catch (IOException e) {
+            // Continue, as before with dexdeps, for instance if the apk has no classes.dex.
+            System.err.println("warning: failed to read dex files of: " + apkPath + ": "
+                    + e.getMessage());
+            return covered;
+        }
+        try {
+            for (DexMethodRef method : archive.getExternalMethodRefs()) {
+                int[] ids = mCoveredIds.get(method);
+                if (ids == null) {
+                    ids = coveredIds(method);
+                    mCoveredIds.putIfAbsent(method, ids);
+                }
+                for (int id : ids) {
+                    covered.set(id);
+                }
+            }
+        } finally {
+            archive.close();
+        }
+        return covered;
+    }
+
+    /** Returns the ids of the API members a call to the given method covers. */
+    int[] coveredIds(DexMethodRef method) {
+        String descriptor = method.getDeclaringClass();
+        // L<package>/<class>; where inner classes are separated by '$'
+        int slash = descriptor.lastIndexOf('/');
+        String packageName = slash < 0 ? "" : descriptor.substring(1, slash).replace('/', '.');
+        String className = descriptor.substring(slash + 1, descriptor.length() - 1)
+                .replace('$', '.');
+
+        ApiPackage apiPackage = mApiCoverage.getPackage(packageName);
+        if (apiPackage == null) {
+            return NO_IDS;
+        }
+        ApiClass apiClass = apiPackage.getClass(className);
+        if (apiClass == null) {
+            return NO_IDS;
+        }
+        List<String> parameterTypes = new ArrayList<String>(method.getParameterTypes().size());
+        for (String parameterType : method.getParameterTypes()) {
+            parameterTypes.add(descriptorToDot(parameterType));
+        }
+        BitSet ids = new BitSet();
+        if ("<init>".equals(method.getName())) {
+            apiClass.collectConstructor(parameterTypes, ids);
+        } else {
+            apiClass.collectMethod(method.getName(), parameterTypes,
+                    descriptorToDot(method.getReturnType()), ids);
+        }
+        if (ids.isEmpty()) {
+            return NO_IDS;
+        }
+        int[] result = new int[ids.cardinality()];
+        for (int i = 0, id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Converts a type descriptor to the form used in current.xml, for example
+     * "Landroid/app/Activity$Foo;" to "android.app.Activity.Foo" and "[I" to "int[]".
+     */
+    static String descriptorToDot(String descriptor) {
+        int arrayDepth = 0;
+        while (descriptor.charAt(arrayDepth) == '[') {
+            arrayDepth++;
+        }
+        StringBuilder b = new StringBuilder(descriptor.length() + arrayDepth * 2);
+        char c = descriptor.charAt(arrayDepth);
+        if (c == 'L') {
+            for (int i = arrayDepth + 1; i < descriptor.length() - 1; i++) {
+                char ch = descriptor.charAt(i);
+                b.append(ch == '/' || ch == '$' ? '.' : ch);
+            }
+        } else {
+            b.append(primitiveTypeName(c));
+        }
+        for (int i = 0; i < arrayDepth; i++) {
+            b.append("[]");
+        }
+        return b.toString();
+    }
+
+    private static String primitiveTypeName(char c) {
+        switch (c) {
+            case 'Z': return "boolean";
+            case 'B': return "byte";
+            case 'C': return "char";
+            case 'S': return "short";
+            case 'I': return "int";
+            case 'J': return "long";
+            case 'F': return "float";
+            case 'D': return "double";
+            case 'V': return "void";
+            default:
+                throw new IllegalArgumentException("not a primitive type: " + c);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.apicoverage;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CoverageDatabase}.
+ */
+public class CoverageDatabaseTest extends TestCase {
+
+    private static final byte[] API_DIGEST = new byte[20];
+
+    private static final List<String> NAMES = Arrays.asList(
+            "android.app.Activity#Activity()",
+            "android.app.Activity#finish()",
+            "android.view.View#invalidate()");
+
+    private File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("coverage", "");
+        mDir.delete();
+        mDir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that a saved database reads back with the same entries and member names.
+     */
+    public void testSaveAndRead() throws Exception {
+        CoverageDatabase database = new CoverageDatabase(API_DIGEST, NAMES);
+        database.put("0123456789abcdef0123456789abcdef01234567", bits(0, 2));
+        database.put("fedcba9876543210fedcba9876543210fedcba98", bits());
+        File file = new File(mDir, "coverage.db");
+        database.save(file);
+
+        CoverageDatabase read = CoverageDatabase.read(file);
+        assertEquals(bits(0, 2), read.get("0123456789abcdef0123456789abcdef01234567"));
+        assertEquals(bits(), read.get("fedcba9876543210fedcba9876543210fedcba98"));
+        assertNull(read.get("0000000000000000000000000000000000000000"));
+        assertEquals(bits(0, 2), read.union());
+
+        // a database of the same API is used, one of another API is not
+        assertEquals(bits(0, 2),
+                CoverageDatabase.load(file, API_DIGEST, NAMES).union());
+        byte[] otherDigest = new byte[20];
+        otherDigest[0] = 1;
+        assertEquals(bits(), CoverageDatabase.load(file, otherDigest, NAMES).union());
+    }
+
+    /**
+     * Test that only APKs whose content changed are scanned again.
+     */
+    public void testSkipUnchangedApk() throws Exception {
+        File first = writeApk("first.apk", "first");
+        File second = writeApk("second.apk", "second");
+        RecordingScanner scanner = new RecordingScanner();
+
+        CoverageDatabase database = new CoverageDatabase(API_DIGEST, NAMES);
+        List<BitSet> coverage = database.getCoverage(Arrays.asList(first, second), scanner);
+        assertEquals(Arrays.asList(first, second), scanner.mScanned);
+        assertEquals(Arrays.asList(bits(2), bits(0)), coverage);
+        File file = new File(mDir, "coverage.db");
+        database.save(file);
+
+        writeApk("second.apk", "changed");
+        scanner = new RecordingScanner();
+        database = CoverageDatabase.load(file, API_DIGEST, NAMES);
+        coverage = database.getCoverage(Arrays.asList(first, second), scanner);
+        assertEquals(Arrays.asList(second), scanner.mScanned);
+        assertEquals(Arrays.asList(bits(2), bits(1)), coverage);
+
+        // the entry of the old content of second.apk is dropped
+        assertEquals(bits(1, 2), database.union());
+    }
+
+    /**
+     * Test the delta of databases built against API XMLs with different members.
+     */
+    public void testDeltaAcrossApis() {
+        CoverageDatabase oldBuild = new CoverageDatabase(API_DIGEST,
+                Arrays.asList("A", "B", "C"));
+        oldBuild.put("0123456789abcdef0123456789abcdef01234567", bits(0, 2));
+        byte[] newDigest = new byte[20];
+        newDigest[0] = 1;
+        CoverageDatabase newBuild = new CoverageDatabase(newDigest,
+                Arrays.asList("A", "X", "C", "D"));
+        newBuild.put("0123456789abcdef0123456789abcdef01234567", bits(0));
+        newBuild.put("fedcba9876543210fedcba9876543210fedcba98", bits(1));
+
+        assertEquals(Arrays.asList("+ X", "- C"), CoverageDatabase.delta(oldBuild, newBuild));
+        assertEquals(Arrays.asList("+ C", "- X"), CoverageDatabase.delta(newBuild, oldBuild));
+        assertTrue(CoverageDatabase.delta(newBuild, newBuild).isEmpty());
+    }
+
+    /** Covers the member with the length of the APK's content as id. */
+    private static class RecordingScanner implements CoverageDatabase.ApkScanner {
+        final List<File> mScanned = new ArrayList<File>();
+
+        @Override
+        public List<BitSet> scan(List<File> apks) {
+            List<BitSet> coverage = new ArrayList<BitSet>();
+            for (File apk : apks) {
+                mScanned.add(apk);
+                coverage.add(bits((int) apk.length() % NAMES.size()));
+            }
+            return coverage;
+        }
+    }
+
+    private File writeApk(String name, String content) throws IOException {
+        File apk = new File(mDir, name);
+        FileOutputStream out = new FileOutputStream(apk);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return apk;
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import dex.reader.DexArchive;
+import dex.reader.DexArchiveReader;
+import dex.structure.DexMethodRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the coverage lookups of {@link ApiClass} with and without the member indexes.
+ * <p>
+ * The external method references of the given APKs are recorded once, in the order a scan
+ * sees them, then replayed against two copies of the API: one scanned linearly and one indexed.
+ * Both must end up with the same covered members.
+ * <p>
+ * Usage: LookupBenchmark API_XML ROUNDS APK...
+ */
+class LookupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: LookupBenchmark API_XML ROUNDS APK...");
+            System.exit(1);
+        }
+        String apiXmlPath = args[0];
+        int rounds = Integer.parseInt(args[1]);
+
+        List<DexMethodRef> stream = new ArrayList<DexMethodRef>();
+        DexArchiveReader reader = new DexArchiveReader();
+        for (int i = 2; i < args.length; i++) {
+            try {
+                DexArchive archive = reader.read(args[i]);
+                // the references only hold strings, they outlive the archive
+                stream.addAll(archive.getExternalMethodRefs());
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("warning: skipping " + args[i] + ": " + e.getMessage());
+            }
+        }
+        System.out.println("recorded " + stream.size() + " references");
+
+        ApiCoverage linear = load(apiXmlPath, false);
+        ApiCoverage indexed = load(apiXmlPath, true);
+        long linearNanos = replay(linear, stream, rounds);
+        long indexedNanos = replay(indexed, stream, rounds);
+        System.out.println("linear:  " + linearNanos / rounds / 1000 + " us/round");
+        System.out.println("indexed: " + indexedNanos / rounds / 1000 + " us/round");
+
+        List<String> linearCovered = covered(linear);
+        List<String> indexedCovered = covered(indexed);
+        if (!linearCovered.equals(indexedCovered)) {
+            System.err.println("coverage differs: " + linearCovered.size() + " vs "
+                    + indexedCovered.size() + " covered members");
+            System.exit(1);
+        }
+        System.out.println("covered: " + linearCovered.size() + " members, identical");
+    }
+
+    private static ApiCoverage load(String apiXmlPath, boolean index) throws Exception {
+        ApiCoverage apiCoverage = CtsApiCoverage.getEmptyApiCoverage(apiXmlPath);
+        // numbers the members, then drops the lookup indexes for the linear copy
+        apiCoverage.buildIndexes();
+        if (!index) {
+            for (ApiPackage pkg : apiCoverage.getPackages()) {
+                for (ApiClass apiClass : pkg.getClasses()) {
+                    apiClass.dropIndex();
+                }
+            }
+        }
+        return apiCoverage;
+    }
+
+    private static long replay(ApiCoverage apiCoverage, List<DexMethodRef> stream, int rounds) {
+        DexCoverageScanner scanner = new DexCoverageScanner(apiCoverage);
+        BitSet covered = new BitSet();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (DexMethodRef method : stream) {
+                for (int id : scanner.coveredIds(method)) {
+                    covered.set(id);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        apiCoverage.markCovered(covered);
+        return nanos;
+    }
+
+    private static List<String> covered(ApiCoverage apiCoverage) {
+        List<String> covered = new ArrayList<String>();
+        for (ApiPackage pkg : apiCoverage.getPackages()) {
+            for (ApiClass apiClass : pkg.getClasses()) {
+                String prefix = pkg.getName() + "." + apiClass.getName();
+                for (ApiConstructor constructor : apiClass.getConstructors()) {
+                    if (constructor.isCovered()) {
+                        covered.add(prefix + constructor.getParameterTypes());
+                    }
+                }
+                for (ApiMethod method : apiClass.getMethods()) {
+                    if (method.isCovered()) {
+                        covered.add(prefix + "." + method.getName() + method.getParameterTypes()
+                                + method.getReturnType());
+                    }
+                }
+            }
+        }
+        Collections.sort(covered);
+        return covered;
+    }
+}
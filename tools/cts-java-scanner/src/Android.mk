@@ -21,6 +21,7 @@ include $(CLEAR_VARS)
 
 LOCAL_SRC_FILES := $(call all-subdir-java-files)
 LOCAL_JAR_MANIFEST := MANIFEST.mf
+LOCAL_STATIC_JAVA_LIBRARIES := compatibility-java-scanner_v2
 
 LOCAL_MODULE := cts-java-scanner
 LOCAL_MODULE_TAGS := optional
@@ -15,7 +15,10 @@
  */
 package com.android.cts.javascanner;
 
+import com.android.compatibility.common.scanner.TestClassScanner;
+
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -23,30 +26,57 @@ import java.util.List;
 /**
  * Class that searches a source directory for native gTests and outputs a
  * list of test classes and methods.
+ * <p>
+ * Given -j, the compiled classes are scanned instead of running javadoc on
+ * the sources, with the same output.
  */
 public class CtsJavaScanner {
 
     private static void usage(String[] args) {
         System.err.println("Arguments: " + Arrays.asList(args));
         System.err.println("Usage: cts-java-scanner -s SOURCE_DIR -d DOCLET_PATH");
+        System.err.println("       cts-java-scanner -j JAR_OR_CLASS_DIR [-c CLASS_PATH]"
+                + " [-t THREADS]");
         System.exit(1);
     }
 
     public static void main(String[] args) throws Exception {
         List<File> sourceDirs = new ArrayList<File>();
         File docletPath = null;
+        List<File> jars = new ArrayList<File>();
+        List<File> classPath = new ArrayList<File>();
+        int threads = Runtime.getRuntime().availableProcessors();
 
         for (int i = 0; i < args.length; i++) {
             if ("-s".equals(args[i])) {
                 sourceDirs.add(new File(getArg(args, ++i, "Missing value for source directory")));
             } else if ("-d".equals(args[i])) {
                 docletPath = new File(getArg(args, ++i, "Missing value for docletPath"));
+            } else if ("-j".equals(args[i])) {
+                jars.add(new File(getArg(args, ++i, "Missing value for jar")));
+            } else if ("-c".equals(args[i])) {
+                for (String path : getArg(args, ++i, "Missing value for class path")
+                        .split(File.pathSeparator)) {
+                    if (!path.isEmpty()) {
+                        classPath.add(new File(path));
+                    }
+                }
+            } else if ("-t".equals(args[i])) {
+                threads = Integer.parseInt(getArg(args, ++i, "Missing value for threads"));
             } else {
                 System.err.println("Unsupported flag: " + args[i]);
                 usage(args);
             }
         }
 
+        if (!jars.isEmpty()) {
+            TestClassScanner scanner = new TestClassScanner(jars, classPath, threads);
+            scanner.setJUnit4(true);
+            scanner.setTimeouts(true);
+            scanner.scan(new PrintWriter(System.out));
+            return;
+        }
+
         if (sourceDirs.isEmpty()) {
             System.err.println("Source directory is required");
             usage(args);
@@ -36,6 +36,16 @@ $(LOCAL_BUILT_MODULE): $(LOCAL_PATH)/etc/$(LOCAL_MODULE) | $(ACP)
 
 # the other stuff
 # ============================================================
+# Writes the expectation snapshots that the generator is passed with -c.
+cts_xml_generator_jar := $(HOST_OUT_JAVA_LIBRARIES)/$(LOCAL_MODULE)$(COMMON_JAVA_PACKAGE_SUFFIX)
+$(CTS_EXPECTATIONS_SNAPSHOTS): PRIVATE_JAR := $(cts_xml_generator_jar)
+$(CTS_EXPECTATIONS_SNAPSHOTS): $(CTS_EXPECTATIONS) $(CTS_UNSUPPORTED_ABIS) $(cts_xml_generator_jar)
+	@echo "Expectation snapshots: $(dir $@)"
+	$(hide) mkdir -p $(dir $@)
+	$(hide) java -cp $(PRIVATE_JAR) vogar.ExpectationSnapshot $(dir $@) DEVICE $(CTS_EXPECTATIONS)
+	$(hide) java -cp $(PRIVATE_JAR) vogar.ExpectationSnapshot $(dir $@) DEVICE $(CTS_UNSUPPORTED_ABIS)
+	$(hide) touch $@
+
 subdirs := $(addprefix $(LOCAL_PATH)/,$(addsuffix /Android.mk, \
 		src \
 	))
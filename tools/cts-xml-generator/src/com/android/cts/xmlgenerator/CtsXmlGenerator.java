@@ -19,19 +19,41 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import vogar.ExpectationSnapshot;
 import vogar.ExpectationStore;
 import vogar.ModeId;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
-/** Class that outputs a test package xml. */
+/**
+ * Class that outputs a test package xml.
+ * <p>
+ * With -batch, a single run generates the xml of many test packages. Each line of the batch file
+ * holds the arguments of one package, as they would be given for a single package, plus
+ * -l TEST_LIST naming the file with the scanner output. Expectation files are parsed once for
+ * all packages that use them, the packages are generated in parallel, and output files are only
+ * rewritten when their content changed.
+ */
 public class CtsXmlGenerator {
 
     private static void usage(String[] args) {
@@ -39,11 +61,14 @@ public class CtsXmlGenerator {
         System.err.println("Usage: cts-xml-generator -p PACKAGE_NAME -n NAME [-t TEST_TYPE]"
                 + " [-j JAR_PATH] [-i INSTRUMENTATION] [-m MANIFEST_FILE] [-e EXPECTATION_FILE]"
                 + " [-b UNSUPPORTED_ABI_FILE] [-a ARCHITECTURE] [-o OUTPUT_FILE]"
-                + " [-s APP_NAME_SPACE] [-x ADDITIONAL_ATTRIBUTE_KEY->VALUE]");
+                + " [-s APP_NAME_SPACE] [-x ADDITIONAL_ATTRIBUTE_KEY->VALUE] [-l TEST_LIST]"
+                + " [-c SNAPSHOT_DIR]");
+        System.err.println("       cts-xml-generator -batch BATCH_FILE [-threads THREADS]");
         System.exit(1);
     }
 
-    public static void main(String[] args) throws Exception {
+    /** The arguments of one test package. */
+    private static class PackageOptions {
         String appPackageName = null;
         String name = null;
         String outputPath = null;
@@ -57,33 +82,63 @@ public class CtsXmlGenerator {
         String appNameSpace = null;
         String targetNameSpace = null;
         Map<String, String> additionalAttributes = new HashMap<String, String>();
+        File testListFile = null;
+        File snapshotDir = null;
+    }
 
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "-batch".equals(args[0])) {
+            runBatch(args);
+            return;
+        }
+
+        PackageOptions options = parseOptions(args);
+        XmlGenerator generator = createGenerator(options,
+                new HashMap<Set<File>, ExpectationStore>(),
+                DocumentBuilderFactory.newInstance().newDocumentBuilder());
+        InputStream input = System.in;
+        if (options.testListFile != null) {
+            input = new FileInputStream(options.testListFile);
+        }
+        try {
+            generator.writePackageXml(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static PackageOptions parseOptions(String[] args) {
+        PackageOptions options = new PackageOptions();
         for (int i = 0; i < args.length; i++) {
             if ("-p".equals(args[i])) {
-                appPackageName = getArg(args, ++i, "Missing value for test package");
+                options.appPackageName = getArg(args, ++i, "Missing value for test package");
             } else if ("-n".equals(args[i])) {
-                name = getArg(args, ++i, "Missing value for executable name");
+                options.name = getArg(args, ++i, "Missing value for executable name");
             } else if ("-t".equals(args[i])) {
-                testType = getArg(args, ++i, "Missing value for test type");
+                options.testType = getArg(args, ++i, "Missing value for test type");
             } else if ("-j".equals(args[i])) {
-                jarPath = getArg(args, ++i, "Missing value for jar path");
+                options.jarPath = getArg(args, ++i, "Missing value for jar path");
             } else if ("-m".equals(args[i])) {
-                manifestFile = new File(getArg(args, ++i, "Missing value for manifest"));
+                options.manifestFile = new File(getArg(args, ++i, "Missing value for manifest"));
             } else if ("-i".equals(args[i])) {
-                instrumentation = getArg(args, ++i, "Missing value for instrumentation");
+                options.instrumentation = getArg(args, ++i, "Missing value for instrumentation");
             } else if ("-e".equals(args[i])) {
-                expectationFiles.add(new File(getArg(args, ++i,
+                options.expectationFiles.add(new File(getArg(args, ++i,
                         "Missing value for expectation store")));
             } else if ("-b".equals(args[i])) {
-                abiFiles.add(new File(getArg(args, ++i, "Missing value for abi store")));
+                options.abiFiles.add(new File(getArg(args, ++i, "Missing value for abi store")));
             } else if ("-a".equals(args[i])) {
-                architecture = getArg(args, ++i, "Missing value for architecture");
+                options.architecture = getArg(args, ++i, "Missing value for architecture");
             } else if ("-o".equals(args[i])) {
-                outputPath = getArg(args, ++i, "Missing value for output file");
+                options.outputPath = getArg(args, ++i, "Missing value for output file");
             } else if ("-s".equals(args[i])) {
-                appNameSpace =  getArg(args, ++i, "Missing value for app name space");
+                options.appNameSpace =  getArg(args, ++i, "Missing value for app name space");
             } else if ("-r".equals(args[i])) {
-                targetNameSpace =  getArg(args, ++i, "Missing value for target name space");
+                options.targetNameSpace =  getArg(args, ++i, "Missing value for target name space");
+            } else if ("-c".equals(args[i])) {
+                options.snapshotDir = new File(getArg(args, ++i, "Missing value for snapshot dir"));
+            } else if ("-l".equals(args[i])) {
+                options.testListFile = new File(getArg(args, ++i, "Missing value for test list"));
             } else if ("-x".equals(args[i])) {
                 String value = getArg(args, ++i, "Missing value for additional attribute");
                 String[] tokens = value.split("->");
@@ -92,23 +147,41 @@ public class CtsXmlGenerator {
                             "For specifying additional attributes; use the format KEY->VALUE");
                     usage(args);
                 }
-                if (additionalAttributes.containsKey(tokens[0])) {
+                if (options.additionalAttributes.containsKey(tokens[0])) {
                     System.err.println(String.format(
                             "Additional attribute %s has already been specified", tokens[0]));
                     usage(args);
                 }
-                additionalAttributes.put(tokens[0], tokens[1]);
+                options.additionalAttributes.put(tokens[0], tokens[1]);
             } else {
                 System.err.println("Unsupported flag: " + args[i]);
                 usage(args);
             }
         }
 
+        if (options.appPackageName == null) {
+            System.out.println("Package name is required");
+            usage(args);
+        } else if (options.name == null) {
+            System.out.println("Executable name is required");
+            usage(args);
+        }
+        return options;
+    }
+
+    /**
+     * Creates the generator of one package. Expectation stores are taken from the given cache,
+     * keyed by their set of files, and parsed only when missing.
+     */
+    private static XmlGenerator createGenerator(PackageOptions options,
+            Map<Set<File>, ExpectationStore> stores, DocumentBuilder documentBuilder)
+            throws Exception {
+        String appNameSpace = options.appNameSpace;
+        String targetNameSpace = options.targetNameSpace;
         String runner = null;
 
-        if (manifestFile != null) {
-            Document manifest = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                    .parse(manifestFile);
+        if (options.manifestFile != null) {
+            Document manifest = documentBuilder.parse(options.manifestFile);
             Element documentElement = manifest.getDocumentElement();
             appNameSpace = documentElement.getAttribute("package");
             runner = getElementAttribute(documentElement, "instrumentation",
@@ -117,20 +190,136 @@ public class CtsXmlGenerator {
                     "android:targetPackage");
         }
 
-        if (appPackageName == null) {
-            System.out.println("Package name is required");
-            usage(args);
-        } else if (name == null) {
-            System.out.println("Executable name is required");
-            usage(args);
+        ExpectationStore failuresStore =
+                getStore(stores, options.expectationFiles, options.snapshotDir);
+        ExpectationStore abiStore = getStore(stores, options.abiFiles, options.snapshotDir);
+        return new XmlGenerator(failuresStore, abiStore, options.architecture,
+                appNameSpace, options.appPackageName, options.name, runner,
+                options.instrumentation, targetNameSpace, options.jarPath, options.testType,
+                options.outputPath, options.additionalAttributes);
+    }
+
+    /**
+     * Returns the store of the given files. With a snapshot directory, it is read from a fresh
+     * snapshot there, or parsed and written as a snapshot for the next run.
+     */
+    private static ExpectationStore getStore(Map<Set<File>, ExpectationStore> stores,
+            Set<File> files, File snapshotDir) throws IOException {
+        ExpectationStore store = stores.get(files);
+        if (store == null) {
+            if (snapshotDir != null) {
+                File snapshot = ExpectationSnapshot.getFile(snapshotDir, files, ModeId.DEVICE);
+                store = ExpectationStore.load(snapshot, files, ModeId.DEVICE);
+            } else {
+                store = ExpectationStore.parse(files, ModeId.DEVICE);
+            }
+            stores.put(files, store);
+        }
+        return store;
+    }
+
+    private static void runBatch(String[] args) throws Exception {
+        File batchFile = new File(getArg(args, 1, "Missing value for batch file"));
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if ("-threads".equals(args[i])) {
+                threads = Integer.parseInt(getArg(args, ++i, "Missing value for threads"));
+            } else {
+                System.err.println("Unsupported flag: " + args[i]);
+                usage(args);
+            }
         }
 
-        ExpectationStore failuresStore = ExpectationStore.parse(expectationFiles, ModeId.DEVICE);
-        ExpectationStore abiStore = ExpectationStore.parse(abiFiles, ModeId.DEVICE);
-        XmlGenerator generator = new XmlGenerator(failuresStore, abiStore, architecture,
-                appNameSpace, appPackageName, name, runner, instrumentation, targetNameSpace,
-                jarPath, testType, outputPath, additionalAttributes);
-        generator.writePackageXml();
+        // the generators are created up front, manifests and expectations are parsed once here
+        Map<Set<File>, ExpectationStore> stores = new HashMap<Set<File>, ExpectationStore>();
+        DocumentBuilder documentBuilder =
+                DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        List<XmlGenerator> generators = new ArrayList<XmlGenerator>();
+        List<File> testLists = new ArrayList<File>();
+        BufferedReader reader = new BufferedReader(new FileReader(batchFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] packageArgs = splitLine(line);
+                PackageOptions options = parseOptions(packageArgs);
+                if (options.outputPath == null || options.testListFile == null) {
+                    System.err.println("Batch entries require -o and -l");
+                    usage(packageArgs);
+                }
+                generators.add(createGenerator(options, stores, documentBuilder));
+                testLists.add(options.testListFile);
+            }
+        } finally {
+            reader.close();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        int written = 0;
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < generators.size(); i++) {
+                final XmlGenerator generator = generators.get(i);
+                final File testList = testLists.get(i);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        InputStream input = new FileInputStream(testList);
+                        try {
+                            return generator.updatePackageXml(input);
+                        } finally {
+                            input.close();
+                        }
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) {
+                        written++;
+                    }
+                } catch (ExecutionException e) {
+                    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println(String.format("Generated %d test package xml files, %d changed",
+                generators.size(), written));
+    }
+
+    /** Splits a batch line at whitespace. Double quotes group words and may be empty. */
+    private static String[] splitLine(String line) {
+        List<String> tokens = new ArrayList<String>();
+        StringBuilder token = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (token != null) {
+                    tokens.add(token.toString());
+                    token = null;
+                }
+            } else {
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+                token.append(c);
+            }
+        }
+        if (token != null) {
+            tokens.add(token.toString());
+        }
+        return tokens.toArray(new String[tokens.size()]);
     }
 
     private static String getArg(String[] args, int index, String message) {
@@ -22,12 +22,18 @@ import vogar.Expectation;
 import vogar.ExpectationStore;
 import vogar.Result;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -103,7 +109,11 @@ class XmlGenerator {
         mAdditionalAttributes = additionalAttributes;
     }
 
-    public void writePackageXml() throws IOException {
+    /**
+     * Writes the xml of the tests listed by the given input to the output file, or to standard
+     * out if there is none.
+     */
+    public void writePackageXml(InputStream testList) throws IOException {
         OutputStream output = System.out;
         if (mOutputPath != null) {
             File outputFile = new File(mOutputPath);
@@ -114,7 +124,7 @@ class XmlGenerator {
         try {
             writer = new PrintWriter(output);
             writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            writeTestPackage(writer);
+            writeTestPackage(writer, testList);
         } finally {
             if (writer != null) {
                 writer.close();
@@ -122,7 +132,47 @@ class XmlGenerator {
         }
     }
 
-    private void writeTestPackage(PrintWriter writer) {
+    /**
+     * Like {@link #writePackageXml(InputStream)} for an output file, but leaves the file alone
+     * if it already has the generated content.
+     *
+     * @return true if the file was written
+     */
+    public boolean updatePackageXml(InputStream testList) throws IOException {
+        StringWriter content = new StringWriter();
+        PrintWriter writer = new PrintWriter(content);
+        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writeTestPackage(writer, testList);
+        writer.flush();
+        // the same default encoding as writePackageXml
+        byte[] bytes = content.toString().getBytes(Charset.defaultCharset());
+
+        File outputFile = new File(mOutputPath);
+        if (outputFile.length() == bytes.length
+                && Arrays.equals(bytes, readFile(outputFile))) {
+            return false;
+        }
+        OutputStream output = new FileOutputStream(outputFile);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+        return true;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            input.readFully(bytes);
+        } finally {
+            input.close();
+        }
+        return bytes;
+    }
+
+    private void writeTestPackage(PrintWriter writer, InputStream testList) {
         writer.append("<TestPackage");
         if (mAppNamespace != null) {
             writer.append(" appNameSpace=\"").append(mAppNamespace).append("\"");
@@ -156,7 +206,7 @@ class XmlGenerator {
         writer.println(" version=\"1.0\">");
 
         TestListParser parser = new TestListParser();
-        Collection<TestSuite> suites = parser.parse(System.in);
+        Collection<TestSuite> suites = parser.parse(testList);
         StringBuilder nameCollector = new StringBuilder();
         writeTestSuites(writer, suites, nameCollector);
         writer.println("</TestPackage>");
@@ -204,21 +254,17 @@ class XmlGenerator {
         Collection<Test> sorted = sortCollection(tests);
         for (Test test : sorted) {
             String className = nameCollector.toString();
-            nameCollector.append('#').append(test.getName());
             writer.append("<Test name=\"").append(test.getName()).append("\"");
             String abis = getSupportedAbis(mUnsupportedAbis, mArchitecture,
-                    className, nameCollector.toString()).toString();
+                    className, test.getName()).toString();
             writer.append(" abis=\"" + abis.substring(1, abis.length() - 1) + "\"");
-            if (isKnownFailure(mKnownFailures, nameCollector.toString())) {
+            if (isKnownFailure(mKnownFailures, className, test.getName())) {
                 writer.append(" expectation=\"failure\"");
             }
             if (test.getTimeout() >= 0) {
                 writer.append(" timeout=\"" + test.getTimeout() + "\"");
             }
             writer.println(" />");
-
-            nameCollector.delete(nameCollector.length() - test.getName().length() - 1,
-                    nameCollector.length());
         }
     }
 
@@ -228,21 +274,22 @@ class XmlGenerator {
         return list;
     }
 
-    public static boolean isKnownFailure(ExpectationStore expectationStore, String testName) {
+    public static boolean isKnownFailure(ExpectationStore expectationStore, String className,
+            String methodName) {
         return expectationStore != null
-            && expectationStore.get(testName).getResult() != Result.SUCCESS;
+            && expectationStore.get(className, methodName).getResult() != Result.SUCCESS;
     }
 
-    // Returns the list of ABIs supported by this TestCase on this architecture.
+    // Returns the list of ABIs supported by the test className#methodName on this architecture.
     public static Set<String> getSupportedAbis(ExpectationStore expectationStore,
-            String architecture, String className, String testName) {
+            String architecture, String className, String methodName) {
         Set<String> supportedAbis = AbiUtils.getAbisForArch(architecture);
         if (expectationStore == null) {
             return supportedAbis;
         }
 
         removeUnsupportedAbis(expectationStore.get(className), supportedAbis);
-        removeUnsupportedAbis(expectationStore.get(testName), supportedAbis);
+        removeUnsupportedAbis(expectationStore.get(className, methodName), supportedAbis);
         return supportedAbis;
     }
 
@@ -33,4 +33,4 @@ $(LOCAL_BUILT_MODULE): $(LOCAL_PATH)/etc/dasm | $(ACP)
 
 INTERNAL_DALVIK_MODULES += $(LOCAL_INSTALLED_MODULE)
 
-include $(LOCAL_PATH)/src/Android.mk
+include $(LOCAL_PATH)/src/Android.mk $(LOCAL_PATH)/tests/Android.mk
@@ -61,11 +61,11 @@ import com.android.dx.util.IntList;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.HashMap;
+import java.util.Map;
 
 //TODO: copyright notice
 
@@ -83,12 +83,17 @@ public class DAsm {
     // number of errors reported in a file.
     int errors;
 
+    // destination of error messages, see setLog()
+    PrintStream log = System.out;
+
     // options for dex output
     DexOptions dexOptions = new DexOptions();
     // file being processed
     DexFile dexFile;
     int line_num;
     Scanner scanner;
+    // kept to be reused for the next file read by this instance
+    parser parse_obj;
 
     // state info for the class being built
     boolean class_header;
@@ -97,7 +102,7 @@ public class DAsm {
     String superclass_name;
     String source_name;
     String filename;
-    Vector<String> interfaces = new Vector<String>();
+    ArrayList<String> interfaces = new ArrayList<String>();
     ClassDefItem classDef;
 
     // method being built
@@ -110,7 +115,7 @@ public class DAsm {
     /**
      * list of exceptions that method can throw.
      */
-    Vector<String> throw_list = new Vector<String>();
+    ArrayList<String> throw_list = new ArrayList<String>();
 
     /**
      * Constructor of CatchTable instances from method data.
@@ -136,7 +141,7 @@ public class DAsm {
     /**
      * Hold a translation table "LabelX" -> CodeAddress, planted.
      */
-    Hashtable<String, LabelTableEntry> labels_table;
+    HashMap<String, LabelTableEntry> labels_table;
 
     /**
      * used by relative forward jumps. When relative forward offset is found,
@@ -146,17 +151,17 @@ public class DAsm {
      * output_finisher.
      */
     int current_insn_number;
-    Hashtable<Integer, CodeAddress> unprocessed_relative_goto_addr =
-            new Hashtable<Integer, CodeAddress>();
+    HashMap<Integer, CodeAddress> unprocessed_relative_goto_addr =
+            new HashMap<Integer, CodeAddress>();
 
     // fill-array-data data
     int fill_data_reg;
     String fill_array_data_type;
-    Vector<Number> fill_array_data_values;
+    ArrayList<Number> fill_array_data_values;
 
     // packed-switch and sparse-switch data
     int switch_reg;
-    Vector<Object> switch_targets;
+    ArrayList<Object> switch_targets;
     IntList switch_keys;
     int packed_switch_first_key;
     int packed_switch_current_key;
@@ -165,7 +170,7 @@ public class DAsm {
      * holds sparse-switch, packed-switch and fill-array-data data blocks to be
      * added at the end of method
      */
-    Vector<DalvInsn> data_blocks = new Vector<DalvInsn>();
+    ArrayList<DalvInsn> data_blocks = new ArrayList<DalvInsn>();
 
     /**
      * Returns the number of warnings/errors encountered while parsing a file. 0
@@ -175,9 +180,17 @@ public class DAsm {
         return errors;
     }
 
+    /**
+     * Sets the stream errors are reported to. Defaults to System.out. Used to
+     * keep the messages of one file together when assembling concurrently.
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
     void report_error(String msg) {
         errors++;
-        System.out.println("Line " + line_num + ": " + msg);
+        log.println("Line " + line_num + ": " + msg);
     }
 
     void throwDasmError(String msg) throws DasmError {
@@ -286,7 +299,7 @@ public class DAsm {
         boolean found = false;
         // search for duplicates
         for (int i = 0; i < sz; i++) {
-            String s = interfaces.elementAt(i);
+            String s = interfaces.get(i);
             if (s.compareTo(name) == 0) {
                 found = true;
                 break;
@@ -394,12 +407,9 @@ public class DAsm {
             System.out.println("newMethod(" + name + ", " + descriptor + ", "
                     + access + ")");
 
-        output_finisher = null;
-        throw_list.clear();
-        unprocessed_relative_goto_addr.clear();
-        labels_table = new Hashtable<String, LabelTableEntry>();
+        resetMethod();
+        labels_table = new HashMap<String, LabelTableEntry>();
         catch_builder = new DasmCatchBuilder(labels_table);
-        current_insn_number = 0;
         regs_count = 1;
 
         method_nat = new CstNat(new CstString(name), new CstString(descriptor));
@@ -412,6 +422,32 @@ public class DAsm {
         method_acc = access;
     }
 
+    /**
+     * Discards the state of the method being built, which is left behind if
+     * a file fails to parse before the .end method directive.
+     */
+    private void resetMethod() {
+        enc_method = null;
+        method_nat = null;
+        method_acc = 0;
+        regs_count = 0;
+        output_finisher = null;
+        throw_list.clear();
+        catch_builder = null;
+        labels_table = null;
+        current_insn_number = 0;
+        unprocessed_relative_goto_addr.clear();
+        fill_data_reg = 0;
+        fill_array_data_type = null;
+        fill_array_data_values = null;
+        switch_reg = 0;
+        switch_targets = null;
+        switch_keys = null;
+        packed_switch_first_key = 0;
+        packed_switch_current_key = 0;
+        data_blocks.clear();
+    }
+
     /**
      * called by the .end method directive to end the definition for a method
      */
@@ -422,7 +458,7 @@ public class DAsm {
         // end of method
         int sz = data_blocks.size();
         for (int i = 0; i < sz; i++) {
-            addInsn(data_blocks.elementAt(i));
+            addInsn(data_blocks.get(i));
         }
         data_blocks.clear();
 
@@ -430,12 +466,9 @@ public class DAsm {
         if (unprocessed_relative_goto_addr.size() != 0) {
             report_error("Relative forward jump offset too big.");
         }
-        Enumeration<String> e = labels_table.keys();
-        while (e.hasMoreElements()) {
-            String key = e.nextElement();
-            LabelTableEntry lte = labels_table.get(key);
-            if (lte.planted == false) {
-                report_error("Label " + key + " not found.");
+        for (Map.Entry<String, LabelTableEntry> e : labels_table.entrySet()) {
+            if (e.getValue().planted == false) {
+                report_error("Label " + e.getKey() + " not found.");
             }
         }
 
@@ -1278,7 +1311,7 @@ public class DAsm {
         }
 
         fill_array_data_type = type;
-        fill_array_data_values = new Vector<Number>();
+        fill_array_data_values = new ArrayList<Number>();
     }
 
     /**
@@ -1300,7 +1333,7 @@ public class DAsm {
                 + fill_array_data_type));
         for (int i = 0; i < sz; i++) {
             Constant constant;
-            Number num = fill_array_data_values.elementAt(i);
+            Number num = fill_array_data_values.get(i);
             if (arrayType == CstType.LONG_ARRAY) {
                 constant = CstLong.make(num.longValue());
             } else if (arrayType == CstType.FLOAT_ARRAY) {
@@ -1363,7 +1396,7 @@ public class DAsm {
 
         packed_switch_first_key = first_key;
         packed_switch_current_key = 0;
-        switch_targets = new Vector<Object>();
+        switch_targets = new ArrayList<Object>();
         switch_keys = new IntList();
     }
 
@@ -1405,7 +1438,7 @@ public class DAsm {
             throwDasmError("Bad arguments for sparse-switch (" + reg + ")");
         }
 
-        switch_targets = new Vector<Object>();
+        switch_targets = new ArrayList<Object>();
         switch_keys = new IntList();
     }
 
@@ -1440,7 +1473,7 @@ public class DAsm {
 
         CodeAddress targets[] = new CodeAddress[sz];
         for (int i = 0; i < sz; i++) {
-            Object o = switch_targets.elementAt(i);
+            Object o = switch_targets.get(i);
             CodeAddress addr;
             if (o instanceof String) {
                 String t = (String) o;
@@ -1503,7 +1536,7 @@ public class DAsm {
     /**
      * Creates TypeList from list of types
      */
-    protected TypeList createTypeListFromStrings(Vector<String> strings) {
+    protected TypeList createTypeListFromStrings(ArrayList<String> strings) {
         StdTypeList tl;
 
         if (strings.size() == 0)
@@ -1512,7 +1545,7 @@ public class DAsm {
             int sz = strings.size();
             tl = new StdTypeList(sz);
             for (int i = 0; i < sz; i++) {
-                tl.set(i, Type.internClassName(strings.elementAt(i)));
+                tl.set(i, Type.internClassName(strings.get(i)));
             }
         }
         return tl;
@@ -1601,16 +1634,55 @@ public class DAsm {
     public void readD(Reader input, String name, boolean numberLines)
             throws IOException, Exception {
 
+        reset();
+        appendD(input, name, numberLines);
+    }
+
+    /**
+     * Discards the classes read so far, so that this instance, together with
+     * its scanner and parser, can be reused for a new dex file.
+     */
+    public void reset() {
+        dexFile = null;
+        errors = 0;
+        line_num = 0;
+        class_header = false;
+        class_name = null;
+        class_acc = 0;
+        superclass_name = null;
+        source_name = null;
+        filename = null;
+        interfaces.clear();
+        classDef = null;
+        resetMethod();
+    }
+
+    /**
+     * Parses a .d file like {@link #readD(Reader, String, boolean)}, but adds
+     * its classes to the ones already read by this instance instead of
+     * starting a new dex file. This allows several .d files to be written out
+     * as a single .dex file.
+     */
+    public void appendD(Reader input, String name, boolean numberLines)
+            throws IOException, Exception {
+
         // TODO: numberLines?
         errors = 0;
         filename = name;
         source_name = name;
         class_header = false;
         classDef = null;
-        dexFile = new DexFile(dexOptions);
+        resetMethod();
+        if (dexFile == null) {
+            dexFile = new DexFile(dexOptions);
+        }
 
-        scanner = new Scanner(input);
-        parser parse_obj = new parser(this, scanner);
+        if (scanner == null) {
+            scanner = new Scanner(input);
+            parse_obj = new parser(this, scanner);
+        } else {
+            scanner.reset(input);
+        }
 
 
         if (PARSER_DEBUG) {
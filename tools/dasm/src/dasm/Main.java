@@ -17,14 +17,25 @@
 package dasm;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * DAsm entry point
@@ -57,6 +68,34 @@ public class Main {
      */
     private static boolean generateLineNumbers = false;
 
+    /**
+     * number of files assembled concurrently
+     */
+    private static int numThreads = 1;
+
+    /**
+     * print a throughput summary when done
+     */
+    private static boolean printStats = false;
+
+    /**
+     * counters for the throughput summary
+     */
+    private static final AtomicLong filesRead = new AtomicLong();
+    private static final AtomicLong bytesRead = new AtomicLong();
+    private static final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * DAsm instances are reused per thread so that their scanner and parser
+     * are only set up once.
+     */
+    private static final ThreadLocal<DAsm> dAsmPerThread = new ThreadLocal<DAsm>() {
+        @Override
+        protected DAsm initialValue() {
+            return new DAsm();
+        }
+    };
+
     private static void incompleteOption(String opt) {
         System.err.println("Command line option " + opt
                 + " required argument missed");
@@ -80,31 +119,53 @@ public class Main {
      *            is the name of the file containing the DAsm source code.
      */
     public static void assemble(String fname) {
-        DAsm dAsm = new DAsm();
-
-        // read and parse .d file
-        Reader inp = null;
-        try {
-            inp = createReader(fname);
-            dAsm.readD(inp, new File(fname).getName(), generateLineNumbers);
-            close(inp);
-        } catch (DasmError e) {
-            if (DEBUG) e.printStackTrace();
-            System.err.println("DASM Error: " + e.getMessage());
-        } catch (Exception e) {
-            if (DEBUG) e.printStackTrace();
-            System.err.println("Exception <" + e.getClass().getName() + ">"
-                    + e.getMessage() + " while reading and parsing " + fname);
-            return;
+        assemble(new String[] {fname}, System.out, System.err);
+    }
 
-        } finally {
-            close(inp);
-        }
+    /**
+     * Assembles the given files into a single .dex file, named after the
+     * last class read.
+     *
+     * @param fnames
+     *            the names of the files containing the DAsm source code.
+     * @param out
+     *            receives progress and parser messages.
+     * @param err
+     *            receives error messages.
+     * @return true if the .dex file was written successfully.
+     */
+    static boolean assemble(String[] fnames, PrintStream out, PrintStream err) {
+        DAsm dAsm = dAsmPerThread.get();
+        dAsm.reset();
+        dAsm.setLog(out);
+
+        for (String fname : fnames) {
+            // read and parse .d file
+            Reader inp = null;
+            try {
+                inp = createReader(fname);
+                dAsm.appendD(inp, new File(fname).getName(), generateLineNumbers);
+                close(inp);
+            } catch (DasmError e) {
+                if (DEBUG) e.printStackTrace(err);
+                err.println("DASM Error: " + e.getMessage());
+            } catch (Exception e) {
+                if (DEBUG) e.printStackTrace(err);
+                err.println("Exception <" + e.getClass().getName() + ">"
+                        + e.getMessage() + " while reading and parsing " + fname);
+                return false;
+
+            } finally {
+                close(inp);
+            }
 
-        if (dAsm.errorCount() > 0) {
-            System.err.println("Found " + dAsm.errorCount() + " errors "
-                    + " while reading and parsing " + fname);
-            return;
+            if (dAsm.errorCount() > 0) {
+                err.println("Found " + dAsm.errorCount() + " errors "
+                        + " while reading and parsing " + fname);
+                return false;
+            }
+            filesRead.incrementAndGet();
+            bytesRead.addAndGet(new File(fname).length());
         }
 
         String class_path[] = Utils
@@ -140,8 +201,8 @@ public class Main {
             }
 
             if (!dest.isDirectory()) {
-                System.err.println("Cannot create directory " + dest_dir);
-                return;
+                err.println("Cannot create directory " + dest_dir);
+                return false;
             }
         }
 
@@ -154,8 +215,8 @@ public class Main {
             if (humanHeadable) hr_outp = new FileWriter(hr_file);
             dAsm.write(outp, hr_outp);
         } catch (Exception e) {
-            if (DEBUG) e.printStackTrace();
-            System.err.println("Exception <" + e.getClass().getName() + ">"
+            if (DEBUG) e.printStackTrace(err);
+            err.println("Exception <" + e.getClass().getName() + ">"
                     + e.getMessage() + " while writing " + out_file.getPath());
 
             close(hr_outp);
@@ -164,13 +225,101 @@ public class Main {
             hr_file.delete();
             out_file.delete();
 
-            return;
+            return false;
         } finally {
             close(hr_outp);
             close(outp);
         }
 
-        System.out.println("Generated: " + out_file.getPath());
+        bytesWritten.addAndGet(out_file.length());
+        out.println("Generated: " + out_file.getPath());
+        return true;
+    }
+
+    /**
+     * Assembles each group of files on a pool of {@link #numThreads} workers.
+     * Every worker has its own DAsm, scanner and parser. The messages of a
+     * group are buffered and printed together once it is done, so that the
+     * output of concurrently assembled files does not interleave.
+     *
+     * @return the number of groups that failed to assemble.
+     */
+    private static int assembleAll(List<String[]> groups) {
+        if (numThreads <= 1) {
+            int failures = 0;
+            for (String[] group : groups) {
+                if (!assemble(group, System.out, System.err)) {
+                    failures++;
+                }
+            }
+            return failures;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(groups.size());
+        for (final String[] group : groups) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+                    ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+                    PrintStream out = new PrintStream(outBuffer);
+                    PrintStream err = new PrintStream(errBuffer);
+                    boolean success = assemble(group, out, err);
+                    out.flush();
+                    err.flush();
+                    synchronized (Main.class) {
+                        System.out.print(outBuffer.toString());
+                        System.err.print(errBuffer.toString());
+                    }
+                    return success;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int failures = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (!result.get()) {
+                    failures++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures++;
+            } catch (ExecutionException e) {
+                if (DEBUG) e.getCause().printStackTrace();
+                System.err.println("Exception <" + e.getCause().getClass().getName() + ">"
+                        + e.getCause().getMessage());
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Reads a response file. Every non-empty line that does not start with
+     * '#' lists the files of one group, separated by whitespace; the files
+     * of a group are assembled into a single .dex file.
+     */
+    private static void readResponseFile(String fname, List<String[]> groups) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(fname));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                groups.add(line.split("\\s+"));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read response file " + fname + ": "
+                    + e.getMessage());
+            System.exit(-1);
+        } finally {
+            close(reader);
+        }
     }
 
     private static void close(Closeable c) {
@@ -185,8 +334,7 @@ public class Main {
     public static void main(String args[]) {
         int i;
 
-        String files[] = new String[args.length];
-        int num_files = 0;
+        List<String[]> groups = new ArrayList<String[]>();
 
         if (args.length == 0) {
             printUsage();
@@ -217,25 +365,51 @@ public class Main {
                     incompleteOption("-e");
                 else
                     encoding = args[i];
+            } else if (args[i].equals("-j")) {
+                if (++i >= args.length)
+                    incompleteOption("-j");
+                else
+                    numThreads = Integer.parseInt(args[i]);
+            } else if (args[i].equals("-stats")) {
+                printStats = true;
+            } else if (args[i].startsWith("@")) {
+                readResponseFile(args[i].substring(1), groups);
             } else {
-                files[num_files++] = args[i];
+                groups.add(new String[] {args[i]});
             }
         }
 
-        for (i = 0; i < num_files; i++) {
-            assemble(files[i]);
+        long start = System.nanoTime();
+        int failures = assembleAll(groups);
+        long elapsed = System.nanoTime() - start;
+
+        if (printStats) {
+            double seconds = Math.max(elapsed / 1e9, 1e-9);
+            System.out.println(String.format(
+                    "Assembled %d files (%d bytes) into %d bytes of dex in %.2fs: "
+                    + "%.1f files/s, %.1f KB/s, %d failed",
+                    filesRead.get(), bytesRead.get(), bytesWritten.get(), seconds,
+                    filesRead.get() / seconds, bytesRead.get() / 1024.0 / seconds,
+                    failures));
+        }
+        if (failures > 0) {
+            System.exit(1);
         }
     }
 
     static void printUsage() {
         System.err
-                .println("dasm [-d <outpath>] [-g] [-h] [-e <encoding>] <file>"
-                        + "[<file> ...]\n\n"
+                .println("dasm [-d <outpath>] [-g] [-h] [-e <encoding>] [-j <threads>]"
+                        + " [-stats] <file>|@<responsefile> [<file>|@<responsefile> ...]\n\n"
                         + "  -g - autogenerate linenumbers\n"
                         + "  -e - codepage for inputfile encoding\n"
                         + "  -d - path for generated classfiles\n"
                         + "  -h - generate human-readable output\n"
+                        + "  -j - number of files to assemble concurrently\n"
+                        + "  -stats - print a throughput summary\n"
                         + "  file  - sourcefile\n"
+                        + "  responsefile - one line per .dex file to generate, listing\n"
+                        + "         the sourcefiles to assemble into it\n"
                         + "or: dasm -version\n"
                         + "or: dasm -help");
     }
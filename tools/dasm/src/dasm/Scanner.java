@@ -22,7 +22,7 @@ import dasm.tokens.relative_number_token;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.Hashtable;
+import java.util.HashMap;
 
 import java_cup.runtime.int_token;
 import java_cup.runtime.str_token;
@@ -96,18 +96,29 @@ class Scanner {
      * error reporting
      */
     public int line_num, token_line_num, char_num;
-    public StringBuffer line;
+    public StringBuilder line = new StringBuilder();
 
     /**
      * Holds new variables defined by .set directive
      */
-    public Hashtable dict = new Hashtable();
+    public HashMap<String, token> dict = new HashMap<String, token>();
 
     public Scanner(Reader i) throws IOException, DasmError {
+        reset(i);
+    }
+
+    /**
+     * Restarts this scanner on a new input, keeping its buffers. Variables
+     * defined by .set in the previous input are forgotten.
+     */
+    public void reset(Reader i) throws IOException, DasmError {
         inputReader = i;
         line_num = 1;
+        token_line_num = 0;
         char_num = 0;
-        line = new StringBuffer();
+        line.setLength(0);
+        charBuf.reset();
+        dict.clear();
         nextChar = 0;
         skipEmptyLines();
         if (nextChar == -1) throw new DasmError("empty source file");
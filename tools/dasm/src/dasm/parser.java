@@ -835,6 +835,8 @@ public class parser extends java_cup.runtime.lr_parser {
 
     action_obj.scanner = scanner;
     action_obj.dAsm = dAsm;
+    // the parser is reused for several files, drop what the last run left
+    stack.removeAllElements();
 
     }
 
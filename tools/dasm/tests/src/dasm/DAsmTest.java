@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dasm;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link DAsm}.
+ */
+public class DAsmTest extends TestCase {
+
+    private static final String VALID =
+            ".source Valid.java\n"
+            + ".class public dasm/test/Valid\n"
+            + ".super java/lang/Object\n"
+            + "\n"
+            + ".method public <init>()V\n"
+            + "    return-void\n"
+            + ".end method\n"
+            + "\n"
+            + ".method public run(I)I\n"
+            + "    .limit regs 3\n"
+            + "    packed-switch v2, 1\n"
+            + "        Label1\n"
+            + "        Label2\n"
+            + "    packed-switch-end\n"
+            + "Label1:\n"
+            + "    const/4 v0, 1\n"
+            + "    return v0\n"
+            + "Label2:\n"
+            + "    const/4 v0, 2\n"
+            + "    return v0\n"
+            + ".end method\n";
+
+    /** Fails to parse inside a method, after a data block was added to it. */
+    private static final String BROKEN =
+            ".source Broken.java\n"
+            + ".class public dasm/test/Broken\n"
+            + ".super java/lang/Object\n"
+            + "\n"
+            + ".method public run()V\n"
+            + "    .limit regs 2\n"
+            + "    fill-array-data v1 I\n"
+            + "        1\n"
+            + "        2\n"
+            + "    fill-array-data-end\n"
+            + "    throw-throw v1 v1 v1\n";
+
+    /**
+     * Test that a file failing to parse leaves nothing behind in the next .dex file written
+     * by the same instance.
+     */
+    public void testReuseAfterError() throws Exception {
+        byte[] expected = assemble(new DAsm(), VALID);
+
+        DAsm dAsm = new DAsm();
+        dAsm.setLog(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            dAsm.readD(new StringReader(BROKEN), "Broken.d", false);
+            assertTrue(dAsm.errorCount() > 0);
+        } catch (Exception e) {
+            // expected, depending on how far the parser recovers
+        }
+
+        assertTrue(Arrays.equals(expected, assemble(dAsm, VALID)));
+    }
+
+    private static byte[] assemble(DAsm dAsm, String source) throws Exception {
+        dAsm.readD(new StringReader(source), "Valid.d", false);
+        assertEquals(0, dAsm.errorCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dAsm.write(out, null);
+        return out.toByteArray();
+    }
+}
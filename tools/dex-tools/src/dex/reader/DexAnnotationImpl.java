@@ -20,6 +20,7 @@ import dex.reader.DexFileReader.FieldIdItem;
 import dex.structure.DexAnnotation;
 import dex.structure.DexAnnotationAttribute;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // FIXME provide special type for Signature annotation
@@ -28,16 +29,36 @@ import java.util.List;
     private int offset;
     private DexBuffer buffer;
     private int[] typeIds;
-    private String[] stringPool;
+    private StringPool stringPool;
     private Visibility visibility;
     private DexEncodedAnnotationImpl encodedAnnotation;
 
     private TypeFormatter formatter = new TypeFormatter();
     private final FieldIdItem[] fieldIdItems;
 
+    /**
+     * Reads all annotations of the annotation_set_item at setOffset.
+     */
+    static List<DexAnnotation> readAnnotationSet(DexBuffer buffer,
+            int setOffset, int[] typeIds, StringPool stringPool,
+            FieldIdItem[] fieldIdItems) {
+        final int size = buffer.readUInt(setOffset);
+        List<DexAnnotation> annotations = new ArrayList<DexAnnotation>(size);
+        for (int i = 0; i < size; i++) {
+            annotations.add(new DexAnnotationImpl(buffer,
+                    buffer.readUInt(setOffset + 4 + i * 4), typeIds,
+                    stringPool, fieldIdItems));
+        }
+        return annotations;
+    }
+
+    /**
+     * @param buffer the dex file, may be shared with other threads. The
+     *            annotation is decoded sequentially from a private copy.
+     */
     public DexAnnotationImpl(DexBuffer buffer, int offset, int[] typeIds,
-            String[] stringPool, FieldIdItem[] fieldIdItems) {
-        this.buffer = buffer;
+            StringPool stringPool, FieldIdItem[] fieldIdItems) {
+        this.buffer = buffer.createCopy();
         this.offset = offset;
         this.typeIds = typeIds;
         this.stringPool = stringPool;
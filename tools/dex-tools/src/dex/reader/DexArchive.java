@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import dex.structure.DexClass;
+import dex.structure.DexFieldRef;
+import dex.structure.DexFile;
+import dex.structure.DexMethodRef;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dex files of an apk or jar, as read by {@link DexArchiveReader}.
+ * <p>
+ * {@link #getDefinedClasses()} is the merged view of classes.dex,
+ * classes2.dex, ... . As with the runtime class loader, the first definition
+ * of a class wins; later definitions are reported by
+ * {@link #getDuplicateClasses()}.
+ * <p>
+ * Dex files inflated from compressed entries live in buffers pooled by the
+ * reader, so the classes of an archive must not be used after it is closed.
+ */
+public final class DexArchive implements DexFile, Closeable {
+
+    private final DexArchiveReader reader;
+    private final String name;
+    private final List<DexFile> dexFiles;
+    private final List<ByteBuffer> inflated;
+    private final List<DexClass> classes;
+    private final List<String> duplicates;
+    private final Set<String> classNames;
+    private List<DexFieldRef> externalFields;
+    private List<DexMethodRef> externalMethods;
+
+    /* package */DexArchive(DexArchiveReader reader, String name,
+            List<DexFile> dexFiles, List<ByteBuffer> inflated) {
+        this.reader = reader;
+        this.name = name;
+        this.dexFiles = Collections.unmodifiableList(dexFiles);
+        this.inflated = inflated;
+
+        List<DexClass> merged = new ArrayList<DexClass>();
+        List<String> duplicateNames = new ArrayList<String>();
+        Set<String> seen = new HashSet<String>();
+        for (DexFile dexFile : dexFiles) {
+            for (DexClass clazz : dexFile.getDefinedClasses()) {
+                if (seen.add(clazz.getName())) {
+                    merged.add(clazz);
+                } else {
+                    duplicateNames.add(clazz.getName());
+                }
+            }
+        }
+        classes = Collections.unmodifiableList(merged);
+        duplicates = Collections.unmodifiableList(duplicateNames);
+        classNames = seen;
+    }
+
+    /**
+     * Returns the dex files of this archive in class loading order.
+     */
+    public List<DexFile> getDexFiles() {
+        return dexFiles;
+    }
+
+    public List<DexClass> getDefinedClasses() {
+        return classes;
+    }
+
+    /**
+     * Returns the names of classes defined by more than one dex file of this
+     * archive, once per ignored definition.
+     */
+    public List<String> getDuplicateClasses() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the external fields of all dex files, without duplicates.
+     * References between dex files of this archive are not external.
+     */
+    public synchronized List<DexFieldRef> getExternalFieldRefs() {
+        if (externalFields == null) {
+            Set<DexFieldRef> refs = new LinkedHashSet<DexFieldRef>();
+            for (DexFile dexFile : dexFiles) {
+                for (DexFieldRef ref : dexFile.getExternalFieldRefs()) {
+                    if (!classNames.contains(ref.getDeclaringClass())) {
+                        refs.add(ref);
+                    }
+                }
+            }
+            externalFields = Collections.unmodifiableList(
+                    new ArrayList<DexFieldRef>(refs));
+        }
+        return externalFields;
+    }
+
+    /**
+     * Returns the external methods of all dex files, without duplicates.
+     * References between dex files of this archive are not external.
+     */
+    public synchronized List<DexMethodRef> getExternalMethodRefs() {
+        if (externalMethods == null) {
+            Set<DexMethodRef> refs = new LinkedHashSet<DexMethodRef>();
+            for (DexFile dexFile : dexFiles) {
+                for (DexMethodRef ref : dexFile.getExternalMethodRefs()) {
+                    if (!classNames.contains(ref.getDeclaringClass())) {
+                        refs.add(ref);
+                    }
+                }
+            }
+            externalMethods = Collections.unmodifiableList(
+                    new ArrayList<DexMethodRef>(refs));
+        }
+        return externalMethods;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the buffers of inflated dex files to the reader's pool.
+     */
+    public void close() {
+        synchronized (inflated) {
+            if (!inflated.isEmpty()) {
+                reader.release(inflated);
+                inflated.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + dexFiles;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import dex.structure.DexFile;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the dex files of an apk or jar without extracting them first.
+ * <p>
+ * The archive is mapped into memory. The central directory is parsed to
+ * locate classes.dex, classes2.dex, ... . Entries stored without compression
+ * are read in place from the mapped archive. Deflated entries are inflated
+ * into direct buffers, which go back to a pool of this reader when the
+ * returned {@link DexArchive} is closed. This makes scanning many archives
+ * in a row cheap.
+ * <p>
+ * A reader is not thread-safe; use one reader per thread.
+ */
+public final class DexArchiveReader {
+
+    private static final int LOCAL_FILE_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIG = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final DexFileReader dexFileReader;
+    private final Inflater inflater = new Inflater(true);
+    private final List<ByteBuffer> pool = new LinkedList<ByteBuffer>();
+
+    public DexArchiveReader() {
+        this(new DexFileReader());
+    }
+
+    /**
+     * @param dexFileReader used to read each dex file of an archive
+     */
+    public DexArchiveReader(DexFileReader dexFileReader) {
+        this.dexFileReader = dexFileReader;
+    }
+
+    private static final class Entry {
+        int method;
+        int compressedSize;
+        int size;
+        int localHeaderOffset;
+    }
+
+    /**
+     * Reads all classesN.dex entries of the given archive.
+     *
+     * @throws IOException if the archive cannot be read or contains no dex
+     *             file
+     */
+    public DexArchive read(String fileName) throws IOException {
+        ByteBuffer archive = map(fileName);
+        Map<String, Entry> entries = readCentralDirectory(fileName, archive);
+
+        List<DexFile> dexFiles = new ArrayList<DexFile>();
+        List<ByteBuffer> inflated = new ArrayList<ByteBuffer>();
+        boolean success = false;
+        try {
+            for (int i = 1; ; i++) {
+                String name = (i == 1) ? "classes.dex" : "classes" + i + ".dex";
+                Entry entry = entries.get(name);
+                if (entry == null) {
+                    break;
+                }
+                ByteBuffer data = entryData(fileName, archive, name, entry);
+                if (entry.method == METHOD_DEFLATED) {
+                    ByteBuffer target = obtain(entry.size);
+                    inflated.add(target);
+                    inflate(fileName, name, data, target);
+                    data = target.slice();
+                }
+                dexFiles.add(dexFileReader.read(new DexBuffer(data)));
+            }
+            if (dexFiles.isEmpty()) {
+                throw new IOException(fileName + " does not contain classes.dex");
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                release(inflated);
+            }
+        }
+        return new DexArchive(this, fileName, dexFiles, inflated);
+    }
+
+    private static ByteBuffer map(String fileName) throws IOException {
+        FileInputStream fis = new FileInputStream(fileName);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            fis.close();
+        }
+    }
+
+    private static Map<String, Entry> readCentralDirectory(String fileName,
+            ByteBuffer archive) throws IOException {
+        int eocd = -1;
+        int lowest = Math.max(0, archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE
+                - MAX_COMMENT_SIZE);
+        for (int i = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= lowest; i--) {
+            if (archive.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException(fileName + " is not a zip archive");
+        }
+        int count = archive.getShort(eocd + 10) & 0xFFFF;
+        int offset = archive.getInt(eocd + 16);
+        if (count == 0xFFFF || offset == -1) {
+            throw new IOException(fileName + ": zip64 archives are not supported");
+        }
+
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        for (int i = 0; i < count; i++) {
+            if (archive.getInt(offset) != CENTRAL_DIRECTORY_SIG) {
+                throw new IOException(fileName + ": corrupt central directory");
+            }
+            int nameLength = archive.getShort(offset + 28) & 0xFFFF;
+            int extraLength = archive.getShort(offset + 30) & 0xFFFF;
+            int commentLength = archive.getShort(offset + 32) & 0xFFFF;
+            String name = asciiName(archive, offset + 46, nameLength);
+            if (name != null && name.startsWith("classes") && name.endsWith(".dex")) {
+                Entry entry = new Entry();
+                entry.method = archive.getShort(offset + 10) & 0xFFFF;
+                entry.compressedSize = archive.getInt(offset + 20);
+                entry.size = archive.getInt(offset + 24);
+                entry.localHeaderOffset = archive.getInt(offset + 42);
+                entries.put(name, entry);
+            }
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    // returns null for names that are not plain ASCII, they are never dex files
+    private static String asciiName(ByteBuffer archive, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = archive.get(offset + i);
+            if (b < 0) {
+                return null;
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    private static ByteBuffer entryData(String fileName, ByteBuffer archive,
+            String name, Entry entry) throws IOException {
+        int header = entry.localHeaderOffset;
+        if (archive.getInt(header) != LOCAL_FILE_HEADER_SIG) {
+            throw new IOException(fileName + ": corrupt local header of " + name);
+        }
+        if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+            throw new IOException(fileName + ": unsupported compression method "
+                    + entry.method + " of " + name);
+        }
+        int nameLength = archive.getShort(header + 26) & 0xFFFF;
+        int extraLength = archive.getShort(header + 28) & 0xFFFF;
+        int start = header + 30 + nameLength + extraLength;
+
+        ByteBuffer data = archive.duplicate();
+        data.position(start);
+        data.limit(start + entry.compressedSize);
+        return data.slice();
+    }
+
+    private void inflate(String fileName, String name, ByteBuffer compressed,
+            ByteBuffer target) throws IOException {
+        // Inflater only takes arrays as input, feed it in chunks
+        byte[] in = new byte[64 * 1024];
+        byte[] out = new byte[64 * 1024];
+        inflater.reset();
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int n = Math.min(in.length, compressed.remaining());
+                    if (n == 0) {
+                        throw new IOException(fileName + ": truncated entry " + name);
+                    }
+                    compressed.get(in, 0, n);
+                    inflater.setInput(in, 0, n);
+                }
+                int n = inflater.inflate(out);
+                if (n > target.remaining()) {
+                    throw new IOException(fileName + ": entry " + name
+                            + " is larger than its declared size");
+                }
+                target.put(out, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(fileName + ": corrupt entry " + name + ": "
+                    + e.getMessage());
+        }
+        if (target.hasRemaining()) {
+            throw new IOException(fileName + ": entry " + name
+                    + " is smaller than its declared size");
+        }
+        target.flip();
+    }
+
+    // returns a pooled buffer of at least size bytes, or a new one
+    private ByteBuffer obtain(int size) {
+        synchronized (pool) {
+            for (Iterator<ByteBuffer> it = pool.iterator(); it.hasNext();) {
+                ByteBuffer buffer = it.next();
+                if (buffer.capacity() >= size) {
+                    it.remove();
+                    buffer.clear();
+                    buffer.limit(size);
+                    return buffer;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /* package */void release(List<ByteBuffer> buffers) {
+        synchronized (pool) {
+            pool.addAll(buffers);
+        }
+    }
+}
@@ -16,33 +16,28 @@
 
 package dex.reader;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 public final class DexBuffer {
 
     private ByteBuffer b;
 
+    /**
+     * Maps the given file read-only into memory. The file content is not
+     * copied onto the heap, pages are loaded by the OS as they are accessed.
+     */
     public DexBuffer(String fileName) throws IOException {
-
-        // FIXME channel? allocate fix size?
         FileInputStream fis = null;
         try {
             fis = new FileInputStream(fileName);
-
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = bis.read(buf)) > 0) {
-                bos.write(buf, 0, len);
-            }
-            byte[] bytes = bos.toByteArray();
-            initialize(ByteBuffer.wrap(bytes));
+            FileChannel channel = fis.getChannel();
+            // the mapping stays valid after the channel is closed
+            initialize(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
         } finally {
             if (fis != null) {
                 fis.close();
@@ -54,7 +49,11 @@ public final class DexBuffer {
         initialize(ByteBuffer.wrap(bytes));
     }
 
-    private DexBuffer(ByteBuffer slice) {
+    /**
+     * Wraps a region of memory, such as a dex entry of a mapped archive. The
+     * dex file must start at index 0 of the buffer and span its capacity.
+     */
+    /* package */DexBuffer(ByteBuffer slice) {
         initialize(slice);
     }
 
@@ -91,6 +90,9 @@ public final class DexBuffer {
      * pre 0 < nBytes <=4
      */
     public int readInt(int nBytes) {
+        if (nBytes == 4) {
+            return b.getInt();
+        }
         int endValue = 0;
         int tmp = 0;
         for (int i = 0; i < nBytes; i++) {
@@ -101,9 +103,12 @@ public final class DexBuffer {
     }
 
     /**
-     * pre 0 < nBytes <=1 FIXME: Sign extension
+     * pre 0 < nBytes <=2 FIXME: Sign extension
      */
     public short readShort(int nBytes) {
+        if (nBytes == 2) {
+            return b.getShort();
+        }
         short endValue = 0;
         int tmp = 0;
         for (int i = 0; i < nBytes; i++) {
@@ -114,9 +119,12 @@ public final class DexBuffer {
     }
 
     /**
-     * pre 0 < nBytes <=1
+     * pre 0 < nBytes <=2
      */
     public char readChar(int nBytes) {
+        if (nBytes == 2) {
+            return b.getChar();
+        }
         char endValue = 0;
         int tmp = 0;
         for (int i = 0; i < nBytes; i++) {
@@ -127,11 +135,14 @@ public final class DexBuffer {
     }
 
     /**
-     * pre 0 < nBytes <=7 FIXME: Sign extension
+     * pre 0 < nBytes <=8 FIXME: Sign extension
      */
     public long readLong(int nBytes) {
+        if (nBytes == 8) {
+            return b.getLong();
+        }
         long endValue = 0;
-        int tmp = 0;
+        long tmp = 0;
         for (int i = 0; i < nBytes; i++) {
             tmp = b.get() & 0xFF;
             endValue |= (tmp << i * 8);
@@ -179,4 +190,46 @@ public final class DexBuffer {
     public void skip(int nBytes) {
         b.position(b.position() + nBytes);
     }
+
+    // Absolute reads. They do not touch the position of this buffer and can
+    // therefore be used concurrently on a buffer shared between threads.
+
+    // returns int at offset
+    public int readUInt(int offset) {
+        return b.getInt(offset);
+    }
+
+    public int readUShort(int offset) {
+        return b.getShort(offset) & 0xFFFF;
+    }
+
+    // returns byte at offset
+    public byte readUByte(int offset) {
+        return b.get(offset);
+    }
+
+    /**
+     * Decodes the uleb128 value at offset. The value is returned in the low
+     * 32 bits and the number of bytes it occupies in the high 32 bits, see
+     * {@link #ulebValue(long)} and {@link #ulebLength(long)}.
+     */
+    public long readUleb128(int offset) {
+        int endValue = 0;
+        int value = 0;
+        int nr = 0;
+        do {
+            value = (b.get(offset + nr) & 0xFF);
+            endValue |= ((value & 0x7F) << 7 * nr);// cut away left most bit
+            nr++;
+        } while ((value & 0x80) != 0); // highest bit set?
+        return ((long) nr << 32) | (endValue & 0xFFFFFFFFL);
+    }
+
+    public static int ulebValue(long valueAndLength) {
+        return (int) valueAndLength;
+    }
+
+    public static int ulebLength(long valueAndLength) {
+        return (int) (valueAndLength >>> 32);
+    }
 }
@@ -42,10 +42,11 @@ import dex.structure.DexMethod;
     // allready parsed
     private final ClassDefItem classDefItem;
     private final int[] typeIds;
-    private final String[] stringPool;
+    private final StringPool stringPool;
     private ProtIdItem[] protoIdItems;
     private FieldIdItem[] fieldIdItems;
     private MethodsIdItem[] methodIdItems;
+    private final ReferencePool referencePool;
 
     //
     private List<DexField> fields;
@@ -64,12 +65,20 @@ import dex.structure.DexMethod;
     private TypeFormatter formatter = new TypeFormatter();
 
     private boolean hasClassData;
+    private boolean parsed;
 
 
+    /**
+     * Creates a view of the given class. The class data and annotations are
+     * only parsed once one of the accessors needs them. The buffer may be
+     * shared with other classes, it is only accessed through absolute reads.
+     */
     public DexClassImpl(DexBuffer buffer, ClassDefItem classDefItem,
-            String[] stringPool, int[] typeIds, ProtIdItem[] protoIdItems,
-            FieldIdItem[] fieldIdItems, MethodsIdItem[] methodIdItems) {
+            StringPool stringPool, int[] typeIds, ProtIdItem[] protoIdItems,
+            FieldIdItem[] fieldIdItems, MethodsIdItem[] methodIdItems,
+            ReferencePool referencePool) {
         this.buffer = buffer;
+        this.referencePool = referencePool;
         this.classDefItem = classDefItem;
         this.stringPool = stringPool;
         this.typeIds = typeIds;
@@ -77,9 +86,15 @@ import dex.structure.DexMethod;
         this.fieldIdItems = fieldIdItems;
         this.methodIdItems = methodIdItems;
         hasClassData = classDefItem.class_data_off != 0;
-        parseClassData();
-        parseAnnotationDirectory();
-        parseClassAnnotations();
+    }
+
+    private synchronized void ensureParsed() {
+        if (!parsed) {
+            parseClassData();
+            parseAnnotationDirectory();
+            parseClassAnnotations();
+            parsed = true;
+        }
     }
 
     static class AnnotationsDirectoryItem {
@@ -117,12 +132,13 @@ import dex.structure.DexMethod;
 
     private void parseAnnotationDirectory() {
         if (classDefItem.annotations_off != 0) {
-            buffer.setPosition(classDefItem.annotations_off);
+            int offset = classDefItem.annotations_off;
             annotationDir = new AnnotationsDirectoryItem();
-            annotationDir.class_annotations_off = buffer.readUInt();
-            annotationDir.fields_size = buffer.readUInt();
-            annotationDir.methods_size = buffer.readUInt();
-            annotationDir.annotated_params_size = buffer.readUInt();
+            annotationDir.class_annotations_off = buffer.readUInt(offset);
+            annotationDir.fields_size = buffer.readUInt(offset + 4);
+            annotationDir.methods_size = buffer.readUInt(offset + 8);
+            annotationDir.annotated_params_size = buffer.readUInt(offset + 12);
+            offset += 16;
 
             if (annotationDir.fields_size != 0) {
                 annotationDir.fieldAnnotations =
@@ -130,9 +146,10 @@ import dex.structure.DexMethod;
                 for (int i = 0; i < annotationDir.fields_size; i++) {
                     annotationDir.fieldAnnotations[i] = new FieldAnnotation();
                     annotationDir.fieldAnnotations[i].fieldIdx = buffer
-                            .readUInt();
+                            .readUInt(offset);
                     annotationDir.fieldAnnotations[i].annotationsOff = buffer
-                            .readUInt();
+                            .readUInt(offset + 4);
+                    offset += 8;
                     idToFieldAnnotation.put(
                             annotationDir.fieldAnnotations[i].fieldIdx,
                             annotationDir.fieldAnnotations[i]);
@@ -144,9 +161,10 @@ import dex.structure.DexMethod;
                 for (int i = 0; i < annotationDir.methods_size; i++) {
                     annotationDir.methodAnnotations[i] = new MethodAnnotation();
                     annotationDir.methodAnnotations[i].methodIdx = buffer
-                            .readUInt();
+                            .readUInt(offset);
                     annotationDir.methodAnnotations[i].annotationsOff = buffer
-                            .readUInt();
+                            .readUInt(offset + 4);
+                    offset += 8;
                     idToMethodAnnotation.put(
                             annotationDir.methodAnnotations[i].methodIdx,
                             annotationDir.methodAnnotations[i]);
@@ -160,9 +178,10 @@ import dex.structure.DexMethod;
                     annotationDir.parameterAnnotations[i] =
                             new ParameterAnnotation();
                     annotationDir.parameterAnnotations[i].methodIdx = buffer
-                            .readUInt();
+                            .readUInt(offset);
                     annotationDir.parameterAnnotations[i].annotationsOff =
-                            buffer.readUInt();
+                            buffer.readUInt(offset + 4);
+                    offset += 8;
                     idToParameterAnnotation.put(
                             annotationDir.parameterAnnotations[i].methodIdx,
                             annotationDir.parameterAnnotations[i]);
@@ -193,14 +212,23 @@ import dex.structure.DexMethod;
         int code_off; // uleb128
     }
 
+    // offset of the next uleb128 to read from the class_data_item
+    private int classDataOffset;
+
+    private int readClassDataUleb128() {
+        long valueAndLength = buffer.readUleb128(classDataOffset);
+        classDataOffset += DexBuffer.ulebLength(valueAndLength);
+        return DexBuffer.ulebValue(valueAndLength);
+    }
+
     private void parseClassData() {
         if (hasClassData) {
-            buffer.setPosition(classDefItem.class_data_off);
+            classDataOffset = classDefItem.class_data_off;
             classDataItem = new ClassDataItem();
-            classDataItem.static_fields_size = buffer.readUleb128();
-            classDataItem.instance_fields_size = buffer.readUleb128();
-            classDataItem.direct_methods_size = buffer.readUleb128();
-            classDataItem.virtual_methods_size = buffer.readUleb128();
+            classDataItem.static_fields_size = readClassDataUleb128();
+            classDataItem.instance_fields_size = readClassDataUleb128();
+            classDataItem.direct_methods_size = readClassDataUleb128();
+            classDataItem.virtual_methods_size = readClassDataUleb128();
             classDataItem.staticFields = parseFields(
                     classDataItem.static_fields_size);
             classDataItem.instanceFields = parseFields(
@@ -216,8 +244,8 @@ import dex.structure.DexMethod;
         EncodedField[] fields = new EncodedField[size];
         for (int i = 0; i < fields.length; i++) {
             fields[i] = new EncodedField();
-            fields[i].field_idx_diff = buffer.readUleb128();
-            fields[i].access_flags = buffer.readUleb128();
+            fields[i].field_idx_diff = readClassDataUleb128();
+            fields[i].access_flags = readClassDataUleb128();
         }
         return fields;
     }
@@ -226,9 +254,9 @@ import dex.structure.DexMethod;
         EncodedMethod[] methods = new EncodedMethod[size];
         for (int i = 0; i < methods.length; i++) {
             methods[i] = new EncodedMethod();
-            methods[i].method_idx_diff = buffer.readUleb128();
-            methods[i].access_flags = buffer.readUleb128();
-            methods[i].code_off = buffer.readUleb128();
+            methods[i].method_idx_diff = readClassDataUleb128();
+            methods[i].access_flags = readClassDataUleb128();
+            methods[i].code_off = readClassDataUleb128();
         }
         return methods;
     }
@@ -236,17 +264,15 @@ import dex.structure.DexMethod;
     private void parseClassAnnotations() {
         annotations = new HashSet<DexAnnotation>();
         if (annotationDir != null && annotationDir.class_annotations_off != 0) {
-            buffer.setPosition(annotationDir.class_annotations_off);
-            final int size = buffer.readUInt();
-            for (int i = 0; i < size; i++) {
-                annotations.add(new DexAnnotationImpl(buffer.createCopy(),
-                        buffer.readUInt(), typeIds, stringPool, fieldIdItems));
-            }
+            annotations.addAll(DexAnnotationImpl.readAnnotationSet(buffer,
+                    annotationDir.class_annotations_off, typeIds, stringPool,
+                    fieldIdItems));
         }
     }
 
     public synchronized List<DexField> getFields() {
         if (fields == null) {
+            ensureParsed();
             fields = new ArrayList<DexField>();
             if (hasClassData) {
                 fields.addAll(getDexFields(classDataItem.staticFields));
@@ -264,7 +290,7 @@ import dex.structure.DexMethod;
                 int accessFlags = fields[i].access_flags;
                 fieldIdIdx = (i == 0) ? fields[i].field_idx_diff : fieldIdIdx
                         + fields[i].field_idx_diff;
-                dexFields.add(new DexFieldImpl(buffer.createCopy(), this,
+                dexFields.add(new DexFieldImpl(buffer, this,
                         fieldIdItems[fieldIdIdx], accessFlags,
                         idToFieldAnnotation.get(fieldIdIdx), stringPool,
                         typeIds, fieldIdItems));
@@ -275,6 +301,7 @@ import dex.structure.DexMethod;
 
     public synchronized List<DexMethod> getMethods() {
         if (methods == null) {
+            ensureParsed();
             methods = new ArrayList<DexMethod>();
             if (hasClassData) {
                 methods.addAll(getDexMethods(classDataItem.directMethods));
@@ -296,10 +323,10 @@ import dex.structure.DexMethod;
                 dexMethods.add(new DexMethodImpl(buffer, this,
                         methodIdItems[methodIdIdx],
                         protoIdItems[methodIdItems[methodIdIdx].proto_idx],
-                        method.access_flags, idToMethodAnnotation
-                                .get(methodIdIdx), idToParameterAnnotation
-                                .get(methodIdIdx), stringPool, typeIds,
-                        fieldIdItems));
+                        method.access_flags, method.code_off,
+                        idToMethodAnnotation.get(methodIdIdx),
+                        idToParameterAnnotation.get(methodIdIdx), stringPool,
+                        typeIds, fieldIdItems, referencePool));
             }
         }
         return dexMethods;
@@ -311,10 +338,11 @@ import dex.structure.DexMethod;
         if (interfaces == null) {
             interfaces = new LinkedList<String>();
             if (classDefItem.interfaces_off != 0) {
-                buffer.setPosition(classDefItem.interfaces_off);
-                int size = buffer.readUInt();
+                int offset = classDefItem.interfaces_off;
+                int size = buffer.readUInt(offset);
                 for (int i = 0; i < size; i++) {
-                    interfaces.add(stringPool[typeIds[buffer.readUShort()]]);
+                    interfaces.add(stringPool.get(typeIds[buffer
+                            .readUShort(offset + 4 + i * 2)]));
                 }
             }
         }
@@ -324,15 +352,16 @@ import dex.structure.DexMethod;
     // returns null if no super class is present
     public String getSuperClass() {
         return classDefItem.superclass_idx == NO_INDEX ? null
-                : stringPool[typeIds[classDefItem.superclass_idx]];
+                : stringPool.get(typeIds[classDefItem.superclass_idx]);
     }
 
     public Set<DexAnnotation> getAnnotations() {
+        ensureParsed();
         return annotations;
     }
 
     public String getName() {
-        return stringPool[typeIds[classDefItem.class_idx]];
+        return stringPool.get(typeIds[classDefItem.class_idx]);
     }
 
     public int getModifiers() {
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.reader;
+
+import dex.structure.DexCode;
+
+/**
+ * The code_item of a method. The header is read eagerly; instructions are
+ * only walked by {@link #accept(ReferenceVisitor)}, which looks at the first
+ * code unit of each instruction to find its width and decodes the index of
+ * field access and invoke instructions only.
+ */
+/* package */final class DexCodeImpl implements DexCode {
+
+    // first and last opcodes of the instruction groups with references
+    private static final int IGET = 0x52;
+    private static final int IPUT_SHORT = 0x5f;
+    private static final int SGET = 0x60;
+    private static final int SPUT_SHORT = 0x6d;
+    private static final int INVOKE_VIRTUAL = 0x6e;
+    private static final int INVOKE_INTERFACE = 0x72;
+    private static final int INVOKE_VIRTUAL_RANGE = 0x74;
+    private static final int INVOKE_INTERFACE_RANGE = 0x78;
+    private static final int INVOKE_POLYMORPHIC = 0xfa;
+    private static final int INVOKE_POLYMORPHIC_RANGE = 0xfb;
+
+    // identifiers of the pseudo instructions which follow a nop opcode
+    private static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+    private static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+    private static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+
+    // width in code units of each opcode, unused opcodes count as one unit
+    private static final byte[] WIDTHS = new byte[256];
+
+    static {
+        fill(0x00, 0xff, 1);
+        WIDTHS[0x02] = 2; // move/from16
+        WIDTHS[0x03] = 3; // move/16
+        WIDTHS[0x05] = 2; // move-wide/from16
+        WIDTHS[0x06] = 3; // move-wide/16
+        WIDTHS[0x08] = 2; // move-object/from16
+        WIDTHS[0x09] = 3; // move-object/16
+        WIDTHS[0x13] = 2; // const/16
+        WIDTHS[0x14] = 3; // const
+        WIDTHS[0x15] = 2; // const/high16
+        WIDTHS[0x16] = 2; // const-wide/16
+        WIDTHS[0x17] = 3; // const-wide/32
+        WIDTHS[0x18] = 5; // const-wide
+        WIDTHS[0x19] = 2; // const-wide/high16
+        WIDTHS[0x1a] = 2; // const-string
+        WIDTHS[0x1b] = 3; // const-string/jumbo
+        WIDTHS[0x1c] = 2; // const-class
+        WIDTHS[0x1f] = 2; // check-cast
+        WIDTHS[0x20] = 2; // instance-of
+        WIDTHS[0x22] = 2; // new-instance
+        WIDTHS[0x23] = 2; // new-array
+        fill(0x24, 0x26, 3); // filled-new-array, /range, fill-array-data
+        WIDTHS[0x29] = 2; // goto/16
+        fill(0x2a, 0x2c, 3); // goto/32, packed-switch, sparse-switch
+        fill(0x2d, 0x3d, 2); // cmp*, if-*
+        fill(0x44, 0x6d, 2); // aget*, aput*, iget*, iput*, sget*, sput*
+        fill(0x6e, 0x72, 3); // invoke-*
+        fill(0x74, 0x78, 3); // invoke-*/range
+        fill(0x90, 0xaf, 2); // binop
+        fill(0xd0, 0xe2, 2); // binop/lit16, binop/lit8
+        fill(0xfa, 0xfb, 4); // invoke-polymorphic, /range
+        fill(0xfc, 0xfd, 3); // invoke-custom, /range
+        fill(0xfe, 0xff, 2); // const-method-handle, const-method-type
+    }
+
+    private static void fill(int from, int to, int width) {
+        for (int i = from; i <= to; i++) {
+            WIDTHS[i] = (byte) width;
+        }
+    }
+
+    private final DexBuffer buffer;
+    private final ReferencePool referencePool;
+    private final int registersSize;
+    private final int insSize;
+    private final int outsSize;
+    private final int instructionsSize;
+    private final int instructionsOffset;
+
+    public DexCodeImpl(DexBuffer buffer, int codeOffset,
+            ReferencePool referencePool) {
+        this.buffer = buffer;
+        this.referencePool = referencePool;
+        registersSize = buffer.readUShort(codeOffset);
+        insSize = buffer.readUShort(codeOffset + 2);
+        outsSize = buffer.readUShort(codeOffset + 4);
+        // tries_size and debug_info_off are not needed
+        instructionsSize = buffer.readUInt(codeOffset + 12);
+        instructionsOffset = codeOffset + 16;
+    }
+
+    public int getRegistersSize() {
+        return registersSize;
+    }
+
+    public int getInsSize() {
+        return insSize;
+    }
+
+    public int getOutsSize() {
+        return outsSize;
+    }
+
+    public int getInstructionsSize() {
+        return instructionsSize;
+    }
+
+    public void accept(ReferenceVisitor visitor) {
+        int address = 0;
+        while (address < instructionsSize) {
+            int offset = instructionsOffset + address * 2;
+            int unit = buffer.readUShort(offset);
+            int opcode = unit & 0xFF;
+            if (opcode >= IGET && opcode <= SPUT_SHORT) {
+                visitor.visitFieldRef(opcode, address, referencePool
+                        .getField(buffer.readUShort(offset + 2)));
+            } else if ((opcode >= INVOKE_VIRTUAL && opcode <= INVOKE_INTERFACE)
+                    || (opcode >= INVOKE_VIRTUAL_RANGE
+                            && opcode <= INVOKE_INTERFACE_RANGE)
+                    || opcode == INVOKE_POLYMORPHIC
+                    || opcode == INVOKE_POLYMORPHIC_RANGE) {
+                visitor.visitMethodRef(opcode, address, referencePool
+                        .getMethod(buffer.readUShort(offset + 2)));
+            }
+            address += (opcode == 0) ? nopWidth(unit, offset) : WIDTHS[opcode];
+        }
+    }
+
+    // a nop opcode may start a switch or array data table
+    private int nopWidth(int unit, int offset) {
+        switch (unit) {
+        case PACKED_SWITCH_PAYLOAD:
+            return 4 + buffer.readUShort(offset + 2) * 2;
+        case SPARSE_SWITCH_PAYLOAD:
+            return 2 + buffer.readUShort(offset + 2) * 4;
+        case FILL_ARRAY_DATA_PAYLOAD:
+            int elementWidth = buffer.readUShort(offset + 2);
+            long size = buffer.readUInt(offset + 4) & 0xFFFFFFFFL;
+            return (int) (4 + (size * elementWidth + 1) / 2);
+        default:
+            return 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "code registers=" + registersSize + " ins=" + insSize + " outs="
+                + outsSize + " size=" + instructionsSize;
+    }
+}
@@ -29,7 +29,7 @@ import java.util.Set;
 /* package */final class DexFieldImpl implements DexField {
 
     private DexBuffer buffer;
-    private String[] stringPool;
+    private StringPool stringPool;
     private FieldIdItem fieldIdItem;
     private int[] typeIds;
     private final int accessFlags;
@@ -41,7 +41,7 @@ import java.util.Set;
 
     public DexFieldImpl(DexBuffer buffer, DexClass declaringClass,
             FieldIdItem fieldIdItem, int accessFlags,
-            FieldAnnotation fieldAnnotation, String[] stringPool,
+            FieldAnnotation fieldAnnotation, StringPool stringPool,
             int[] typeIds, FieldIdItem[] fieldIdItems) {
         this.buffer = buffer;
         this.declaringClass = declaringClass;
@@ -51,27 +51,23 @@ import java.util.Set;
         this.stringPool = stringPool;
         this.typeIds = typeIds;
         this.fieldIdItems = fieldIdItems;
-        parseAnnotations();
     }
 
     private void parseAnnotations() {
         annotations = new HashSet<DexAnnotation>();
         if (fieldAnnotation != null) {
-            buffer.setPosition(fieldAnnotation.annotationsOff);
-            final int size = buffer.readUInt();
-            for (int i = 0; i < size; i++) {
-                annotations.add(new DexAnnotationImpl(buffer.createCopy(),
-                        buffer.readUInt(), typeIds, stringPool, fieldIdItems));
-            }
+            annotations.addAll(DexAnnotationImpl.readAnnotationSet(buffer,
+                    fieldAnnotation.annotationsOff, typeIds, stringPool,
+                    fieldIdItems));
         }
     }
 
     public String getName() {
-        return stringPool[fieldIdItem.name_idx];
+        return stringPool.get(fieldIdItem.name_idx);
     }
 
     public String getType() {
-        return stringPool[typeIds[fieldIdItem.type_idx]];
+        return stringPool.get(typeIds[fieldIdItem.type_idx]);
     }
 
     public int getModifiers() {
@@ -79,6 +75,9 @@ import java.util.Set;
     }
 
     public synchronized Set<DexAnnotation> getAnnotations() {
+        if (annotations == null) {
+            parseAnnotations();
+        }
         return annotations;
     }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.reader;
+
+import dex.structure.DexFieldRef;
+
+/* package */final class DexFieldRefImpl implements DexFieldRef {
+
+    private final String declaringClass;
+    private final String name;
+    private final String type;
+
+    public DexFieldRefImpl(String declaringClass, String name, String type) {
+        this.declaringClass = declaringClass;
+        this.name = name;
+        this.type = type;
+    }
+
+    public String getDeclaringClass() {
+        return declaringClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DexFieldRef)) {
+            return false;
+        }
+        DexFieldRef other = (DexFieldRef) o;
+        return declaringClass.equals(other.getDeclaringClass())
+                && name.equals(other.getName())
+                && type.equals(other.getType());
+    }
+
+    @Override
+    public int hashCode() {
+        return (declaringClass.hashCode() * 31 + name.hashCode()) * 31
+                + type.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return declaringClass + "->" + name + ":" + type;
+    }
+}
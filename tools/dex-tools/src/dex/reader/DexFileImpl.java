@@ -21,28 +21,36 @@ import dex.reader.DexFileReader.FieldIdItem;
 import dex.reader.DexFileReader.MethodsIdItem;
 import dex.reader.DexFileReader.ProtIdItem;
 import dex.structure.DexClass;
+import dex.structure.DexFieldRef;
 import dex.structure.DexFile;
+import dex.structure.DexMethodRef;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /* package */final class DexFileImpl implements DexFile {
 
-    private final String[] stringPool;
+    private final StringPool stringPool;
     private final int[] typeIds;
     private ProtIdItem[] protoIdItems;
     private FieldIdItem[] fieldIdItems;
     private MethodsIdItem[] methodIdItems;
     private ClassDefItem[] classDefItems;
     private final DexBuffer buffer;
+    private final ReferencePool referencePool;
 
     private List<DexClass> classes = null;
+    private List<DexFieldRef> externalFields = null;
+    private List<DexMethodRef> externalMethods = null;
 
-    public DexFileImpl(DexBuffer buffer, String[] stringPool, int[] typeIds,
+    public DexFileImpl(DexBuffer buffer, StringPool stringPool, int[] typeIds,
             ProtIdItem[] protoIds, FieldIdItem[] fieldIdItems,
-            MethodsIdItem[] methodIdItems, ClassDefItem[] classDefItems) {
+            MethodsIdItem[] methodIdItems, ClassDefItem[] classDefItems,
+            ReferencePool referencePool) {
         this.buffer = buffer;
+        this.referencePool = referencePool;
         this.stringPool = stringPool;
         this.typeIds = typeIds;
         this.protoIdItems = protoIds;
@@ -60,21 +68,52 @@ import java.util.List;
         if (classes == null) {
             classes = new ArrayList<DexClass>(classDefItems.length);
             for (int i = 0; i < classDefItems.length; i++) {
-                classes.add(new DexClassImpl(buffer.createCopy(),
+                classes.add(new DexClassImpl(buffer,
                         classDefItems[i], stringPool, typeIds, protoIdItems,
-                        fieldIdItems, methodIdItems));
+                        fieldIdItems, methodIdItems, referencePool));
             }
         }
         return classes;
     }
 
+    public synchronized List<DexFieldRef> getExternalFieldRefs() {
+        if (externalFields == null) {
+            externalFields = Collections.unmodifiableList(referencePool
+                    .getExternalFields(definedTypes()));
+        }
+        return externalFields;
+    }
+
+    public synchronized List<DexMethodRef> getExternalMethodRefs() {
+        if (externalMethods == null) {
+            externalMethods = Collections.unmodifiableList(referencePool
+                    .getExternalMethods(definedTypes()));
+        }
+        return externalMethods;
+    }
+
+    // marks the types defined by this file, arrays and primitives, by type id
+    private boolean[] definedTypes() {
+        boolean[] defined = new boolean[typeIds.length];
+        for (ClassDefItem item : classDefItems) {
+            defined[item.class_idx] = true;
+        }
+        for (int i = 0; i < typeIds.length; i++) {
+            String descriptor = stringPool.get(typeIds[i]);
+            if (descriptor.length() == 1 || descriptor.charAt(0) == '[') {
+                defined[i] = true;
+            }
+        }
+        return defined;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
-        b.append("StringPool:\n").append(Arrays.toString(stringPool));
+        b.append("StringPool:\n").append(stringPool);
         b.append("\nTypes:\n");
         for (int i = 0; i < typeIds.length; i++) {
-            b.append(stringPool[typeIds[i]] + "\n");
+            b.append(stringPool.get(typeIds[i]) + "\n");
         }
         b.append("\nProtos:\n").append(Arrays.toString(protoIdItems));
         b.append("\nFields:\n").append(Arrays.toString(fieldIdItems));
@@ -56,14 +56,29 @@ public final class DexFileReader {
     private int[] off = new int[9];
 
 
+    // number of decoded strings kept by the string pool, 0 for all
+    private final int stringCacheSize;
+
     //
-    private String[] stringPool;
+    private StringPool stringPool;
     private int[] typeIds; // values are index of stringPool
     private ProtIdItem[] protoIdItems;
     private FieldIdItem[] fieldIdItems;
     private MethodsIdItem[] methodIdItems;
     private ClassDefItem[] classDefItems;
 
+    public DexFileReader() {
+        this(0);
+    }
+
+    /**
+     * @param stringCacheSize the number of decoded strings the string pool of
+     *            files read by this reader keeps, 0 to keep all of them
+     */
+    public DexFileReader(int stringCacheSize) {
+        this.stringCacheSize = stringCacheSize;
+    }
+
     // starting buffer at zero
     public DexFile read(DexBuffer buffer) {
         this.b = buffer;
@@ -98,8 +113,11 @@ public final class DexFileReader {
         readMethods();
         readClasses();
 
-        return new DexFileImpl(b.createCopy(), stringPool, typeIds,
-                protoIdItems, fieldIdItems, methodIdItems, classDefItems);
+        ReferencePool referencePool = new ReferencePool(b, stringPool,
+                typeIds, protoIdItems, fieldIdItems, methodIdItems);
+        return new DexFileImpl(b, stringPool, typeIds,
+                protoIdItems, fieldIdItems, methodIdItems, classDefItems,
+                referencePool);
     }
 
     // MAGIC (8, U_BYTE)
@@ -144,25 +162,11 @@ public final class DexFileReader {
         off[attribute] = b.readUInt();
     }
 
-    // reads the string pool
+    // sets up the string pool, strings are decoded on demand
     private void readStrings() {
         int nStrings = size[STRING_IDS];
-        b.setPosition(off[STRING_IDS]); // the first string offset is here
-        int[] stringDataOffsets = new int[nStrings];
-
-        for (int i = 0; i < stringDataOffsets.length; i++) {
-            stringDataOffsets[i] = b.readUInt();
-        }
-
-        stringPool = new String[nStrings];
-        for (int i = 0; i < stringDataOffsets.length; i++) {
-            b.setPosition(stringDataOffsets[i]); // set buffer to offset
-            // Position
-            int lenght = b.readUleb128(); // read uleb128
-            byte[] values = new byte[lenght];
-            b.readBytes(values);
-            stringPool[i] = new String(values);
-        }
+        stringPool = new StringPool(b, off[STRING_IDS], nStrings,
+                stringCacheSize > 0 ? stringCacheSize : nStrings);
     }
 
     private void readTypeIds() {
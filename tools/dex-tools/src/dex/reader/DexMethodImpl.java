@@ -31,6 +31,7 @@ import dex.reader.DexFileReader.MethodsIdItem;
 import dex.reader.DexFileReader.ProtIdItem;
 import dex.structure.DexAnnotation;
 import dex.structure.DexClass;
+import dex.structure.DexCode;
 import dex.structure.DexMethod;
 import dex.structure.DexParameter;
 
@@ -38,7 +39,7 @@ import dex.structure.DexParameter;
 
     private DexBuffer buffer;
     private MethodsIdItem methodsIdItem;
-    private String[] stringPool;
+    private StringPool stringPool;
     private int[] typeIds;
     private ProtIdItem protoIdItem;
     private List<DexParameter> parameters;
@@ -50,12 +51,16 @@ import dex.structure.DexParameter;
     private final ParameterAnnotation parameterAnnotation;
     private Map<Integer, Integer> parameterIdToIndex;
     private final FieldIdItem[] fieldIdItems;
+    private final int codeOffset;
+    private final ReferencePool referencePool;
+    private DexCode code;
 
     public DexMethodImpl(DexBuffer buffer, DexClass declaringClass,
             MethodsIdItem methodsIdItem, ProtIdItem protoIdItem,
-            int accessFlags, MethodAnnotation methodAnnotation,
-            ParameterAnnotation parameterAnnotation, String[] stringPool,
-            int[] typeIds, FieldIdItem[] fieldIdItems) {
+            int accessFlags, int codeOffset, MethodAnnotation methodAnnotation,
+            ParameterAnnotation parameterAnnotation, StringPool stringPool,
+            int[] typeIds, FieldIdItem[] fieldIdItems,
+            ReferencePool referencePool) {
         this.buffer = buffer;
         this.declaringClass = declaringClass;
         this.methodsIdItem = methodsIdItem;
@@ -66,17 +71,17 @@ import dex.structure.DexParameter;
         this.stringPool = stringPool;
         this.typeIds = typeIds;
         this.fieldIdItems = fieldIdItems;
-        parseAnnotations();
-        parseParameterAnnotations();
+        this.codeOffset = codeOffset;
+        this.referencePool = referencePool;
     }
 
     private void parseParameterAnnotations() {
         parameterIdToIndex = new HashMap<Integer, Integer>();
         if (parameterAnnotation != null) {
-            buffer.setPosition(parameterAnnotation.annotationsOff);
-            int numberOfParameters = buffer.readUInt();
+            int offset = parameterAnnotation.annotationsOff;
+            int numberOfParameters = buffer.readUInt(offset);
             for (int i = 0; i < numberOfParameters; i++) {
-                parameterIdToIndex.put(i, buffer.readUInt());
+                parameterIdToIndex.put(i, buffer.readUInt(offset + 4 + i * 4));
             }
         }
     }
@@ -84,38 +89,36 @@ import dex.structure.DexParameter;
     private void parseAnnotations() {
         annotations = new HashSet<DexAnnotation>();
         if (methodAnnotation != null) {
-            buffer.setPosition(methodAnnotation.annotationsOff);
-            final int size = buffer.readUInt();
-            for (int i = 0; i < size; i++) {
-                annotations.add(new DexAnnotationImpl(buffer.createCopy(),
-                        buffer.readUInt(), typeIds, stringPool, fieldIdItems));
-            }
+            annotations.addAll(DexAnnotationImpl.readAnnotationSet(buffer,
+                    methodAnnotation.annotationsOff, typeIds, stringPool,
+                    fieldIdItems));
         }
     }
 
     public String getName() {
-        return stringPool[methodsIdItem.name_idx];
+        return stringPool.get(methodsIdItem.name_idx);
     }
 
     public String getReturnType() {
-        return stringPool[typeIds[protoIdItem.return_type_idx]];
+        return stringPool.get(typeIds[protoIdItem.return_type_idx]);
     }
 
     public synchronized List<DexParameter> getParameters() {
         if (parameters == null) {
             parameters = new LinkedList<DexParameter>();
             if (protoIdItem.parameter_off != 0) {
+                parseParameterAnnotations();
 
-                buffer.setPosition(protoIdItem.parameter_off);
-                int size = buffer.readUInt();
+                int offset = protoIdItem.parameter_off;
+                int size = buffer.readUInt(offset);
 
                 int[] paramTypeIdx = new int[size];
                 for (int i = 0; i < size; i++) {
-                    paramTypeIdx[i] = buffer.readUShort();
+                    paramTypeIdx[i] = buffer.readUShort(offset + 4 + i * 2);
                 }
                 for (int i = 0; i < paramTypeIdx.length; i++) {
-                    parameters.add(new DexParameterImpl(buffer.createCopy(),
-                            stringPool[typeIds[paramTypeIdx[i]]],
+                    parameters.add(new DexParameterImpl(buffer,
+                            stringPool.get(typeIds[paramTypeIdx[i]]),
                             parameterIdToIndex.get(i), typeIds, stringPool,
                             fieldIdItems));
                 }
@@ -128,7 +131,10 @@ import dex.structure.DexParameter;
         return accessFlags;
     }
 
-    public Set<DexAnnotation> getAnnotations() {
+    public synchronized Set<DexAnnotation> getAnnotations() {
+        if (annotations == null) {
+            parseAnnotations();
+        }
         return annotations;
     }
 
@@ -136,6 +142,13 @@ import dex.structure.DexParameter;
         return declaringClass;
     }
 
+    public synchronized DexCode getCode() {
+        if (code == null && codeOffset != 0) {
+            code = new DexCodeImpl(buffer, codeOffset, referencePool);
+        }
+        return code;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
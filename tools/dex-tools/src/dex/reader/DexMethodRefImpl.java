@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.reader;
+
+import dex.structure.DexMethodRef;
+
+import java.util.List;
+
+/* package */final class DexMethodRefImpl implements DexMethodRef {
+
+    private final String declaringClass;
+    private final String name;
+    private final String returnType;
+    private final List<String> parameterTypes;
+
+    public DexMethodRefImpl(String declaringClass, String name,
+            String returnType, List<String> parameterTypes) {
+        this.declaringClass = declaringClass;
+        this.name = name;
+        this.returnType = returnType;
+        this.parameterTypes = parameterTypes;
+    }
+
+    public String getDeclaringClass() {
+        return declaringClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public List<String> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DexMethodRef)) {
+            return false;
+        }
+        DexMethodRef other = (DexMethodRef) o;
+        return declaringClass.equals(other.getDeclaringClass())
+                && name.equals(other.getName())
+                && returnType.equals(other.getReturnType())
+                && parameterTypes.equals(other.getParameterTypes());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = declaringClass.hashCode() * 31 + name.hashCode();
+        h = h * 31 + returnType.hashCode();
+        return h * 31 + parameterTypes.hashCode();
+    }
+
+    // smali style, e.g. Ljava/lang/Object;->equals(Ljava/lang/Object;)Z
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(declaringClass).append("->").append(name).append('(');
+        for (String type : parameterTypes) {
+            b.append(type);
+        }
+        return b.append(')').append(returnType).toString();
+    }
+}
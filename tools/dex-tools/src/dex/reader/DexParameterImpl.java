@@ -30,11 +30,11 @@ public class DexParameterImpl implements DexParameter {
     private Set<DexAnnotation> annotations;
     private final DexBuffer buffer;
     private final int[] typeIds;
-    private final String[] stringPool;
+    private final StringPool stringPool;
     private final FieldIdItem[] fieldIdItems;
 
     public DexParameterImpl(DexBuffer buffer, String typeName,
-            Integer annotationOffset, int[] typeIds, String[] stringPool,
+            Integer annotationOffset, int[] typeIds, StringPool stringPool,
             FieldIdItem[] fieldIdItems) {
         this.buffer = buffer;
         this.typeName = typeName;
@@ -48,12 +48,8 @@ public class DexParameterImpl implements DexParameter {
     private void parseAnnotations() {
         annotations = new HashSet<DexAnnotation>();
         if (annotationOffset != null) {
-            buffer.setPosition(annotationOffset);
-            final int size = buffer.readUInt();
-            for (int i = 0; i < size; i++) {
-                annotations.add(new DexAnnotationImpl(buffer.createCopy(),
-                        buffer.readUInt(), typeIds, stringPool, fieldIdItems));
-            }
+            annotations.addAll(DexAnnotationImpl.readAnnotationSet(buffer,
+                    annotationOffset, typeIds, stringPool, fieldIdItems));
         }
     }
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.reader;
+
+import dex.reader.DexFileReader.FieldIdItem;
+import dex.reader.DexFileReader.MethodsIdItem;
+import dex.reader.DexFileReader.ProtIdItem;
+import dex.structure.DexFieldRef;
+import dex.structure.DexMethodRef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The field_ids and method_ids sections of a dex file as
+ * {@link DexFieldRef} and {@link DexMethodRef} objects. References are
+ * resolved on first access and cached, so the code of all methods shares one
+ * object per id.
+ * <p>
+ * References are immutable and the pool only uses absolute reads, so it may
+ * be used from several threads. Two threads racing on the same id may both
+ * resolve it; both results are equal.
+ */
+/* package */final class ReferencePool {
+
+    private final DexBuffer buffer;
+    private final StringPool stringPool;
+    private final int[] typeIds;
+    private final ProtIdItem[] protoIdItems;
+    private final FieldIdItem[] fieldIdItems;
+    private final MethodsIdItem[] methodIdItems;
+
+    private final DexFieldRef[] fieldRefs;
+    private final DexMethodRef[] methodRefs;
+
+    public ReferencePool(DexBuffer buffer, StringPool stringPool,
+            int[] typeIds, ProtIdItem[] protoIdItems,
+            FieldIdItem[] fieldIdItems, MethodsIdItem[] methodIdItems) {
+        this.buffer = buffer;
+        this.stringPool = stringPool;
+        this.typeIds = typeIds;
+        this.protoIdItems = protoIdItems;
+        this.fieldIdItems = fieldIdItems;
+        this.methodIdItems = methodIdItems;
+        fieldRefs = new DexFieldRef[fieldIdItems.length];
+        methodRefs = new DexMethodRef[methodIdItems.length];
+    }
+
+    public int fieldCount() {
+        return fieldRefs.length;
+    }
+
+    public int methodCount() {
+        return methodRefs.length;
+    }
+
+    public int fieldClassIdx(int fieldIdx) {
+        return fieldIdItems[fieldIdx].class_idx;
+    }
+
+    public int methodClassIdx(int methodIdx) {
+        return methodIdItems[methodIdx].class_idx;
+    }
+
+    public DexFieldRef getField(int fieldIdx) {
+        DexFieldRef ref = fieldRefs[fieldIdx];
+        if (ref == null) {
+            FieldIdItem item = fieldIdItems[fieldIdx];
+            ref = new DexFieldRefImpl(type(item.class_idx),
+                    stringPool.get(item.name_idx), type(item.type_idx));
+            fieldRefs[fieldIdx] = ref;
+        }
+        return ref;
+    }
+
+    public DexMethodRef getMethod(int methodIdx) {
+        DexMethodRef ref = methodRefs[methodIdx];
+        if (ref == null) {
+            MethodsIdItem item = methodIdItems[methodIdx];
+            ProtIdItem proto = protoIdItems[item.proto_idx];
+            ref = new DexMethodRefImpl(type(item.class_idx),
+                    stringPool.get(item.name_idx),
+                    type(proto.return_type_idx),
+                    parameterTypes(proto.parameter_off));
+            methodRefs[methodIdx] = ref;
+        }
+        return ref;
+    }
+
+    private String type(int typeIdx) {
+        return stringPool.get(typeIds[typeIdx]);
+    }
+
+    private List<String> parameterTypes(int offset) {
+        if (offset == 0) {
+            return Collections.emptyList();
+        }
+        int size = buffer.readUInt(offset);
+        String[] types = new String[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = type(buffer.readUShort(offset + 4 + i * 2));
+        }
+        return Collections.unmodifiableList(Arrays.asList(types));
+    }
+
+    /**
+     * Returns the references whose declaring class is not marked in the
+     * given array, which is indexed by type id.
+     */
+    public List<DexFieldRef> getExternalFields(boolean[] definedTypes) {
+        List<DexFieldRef> refs = new ArrayList<DexFieldRef>();
+        for (int i = 0; i < fieldRefs.length; i++) {
+            if (!definedTypes[fieldIdItems[i].class_idx]) {
+                refs.add(getField(i));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Returns the references whose declaring class is not marked in the
+     * given array, which is indexed by type id.
+     */
+    public List<DexMethodRef> getExternalMethods(boolean[] definedTypes) {
+        List<DexMethodRef> refs = new ArrayList<DexMethodRef>();
+        for (int i = 0; i < methodRefs.length; i++) {
+            if (!definedTypes[methodIdItems[i].class_idx]) {
+                refs.add(getMethod(i));
+            }
+        }
+        return refs;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+/**
+ * The string_ids section of a dex file. Strings are decoded on first access
+ * only, so tools that look at a few names do not pay for the whole pool.
+ * Decoded strings are kept in a direct-mapped cache which covers the whole
+ * pool unless a smaller size is requested.
+ * <p>
+ * The pool only uses absolute reads and may be used from several threads.
+ */
+/* package */final class StringPool {
+
+    private final DexBuffer buffer;
+    private final int idsOffset;
+    private final int size;
+
+    // immutable, so entries read through a data race are always consistent
+    private static final class Entry {
+        final int index;
+        final String value;
+
+        Entry(int index, String value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private final Entry[] cache;
+
+    /**
+     * @param buffer the dex file
+     * @param idsOffset offset of the string_ids section
+     * @param size number of strings
+     * @param cacheSize number of decoded strings to keep, at most size
+     */
+    public StringPool(DexBuffer buffer, int idsOffset, int size, int cacheSize) {
+        this.buffer = buffer;
+        this.idsOffset = idsOffset;
+        this.size = size;
+        cacheSize = Math.max(1, Math.min(size, cacheSize));
+        cache = new Entry[cacheSize];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("string index " + index
+                    + " not in [0, " + size + ")");
+        }
+        int slot = index % cache.length;
+        Entry e = cache[slot];
+        if (e == null || e.index != index) {
+            e = new Entry(index, decode(index));
+            cache[slot] = e;
+        }
+        return e.value;
+    }
+
+    private String decode(int index) {
+        int dataOffset = buffer.readUInt(idsOffset + index * 4);
+        long utf16Size = buffer.readUleb128(dataOffset);
+        return decodeMutf8(buffer, dataOffset + DexBuffer.ulebLength(utf16Size),
+                DexBuffer.ulebValue(utf16Size));
+    }
+
+    /**
+     * Decodes a modified UTF-8 string of the given number of UTF-16 code
+     * units starting at offset.
+     */
+    static String decodeMutf8(DexBuffer buffer, int offset, int utf16Size) {
+        char[] chars = new char[utf16Size];
+        for (int i = 0; i < utf16Size; i++) {
+            int a = buffer.readUByte(offset++) & 0xFF;
+            if (a < 0x80) {
+                chars[i] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = buffer.readUByte(offset++) & 0xFF;
+                if ((b & 0xC0) != 0x80) {
+                    throw new IllegalStateException("bad second byte in MUTF-8 string");
+                }
+                chars[i] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0) {
+                int b = buffer.readUByte(offset++) & 0xFF;
+                int c = buffer.readUByte(offset++) & 0xFF;
+                if (((b & 0xC0) != 0x80) || ((c & 0xC0) != 0x80)) {
+                    throw new IllegalStateException("bad second or third byte in MUTF-8 string");
+                }
+                chars[i] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new IllegalStateException("bad byte in MUTF-8 string");
+            }
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i != 0) {
+                b.append(", ");
+            }
+            b.append(get(i));
+        }
+        return b.append(']').toString();
+    }
+}
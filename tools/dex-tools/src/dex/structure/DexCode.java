@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.structure;
+
+/**
+ * {@code DexCode} represents the code_item of a method.
+ */
+public interface DexCode {
+
+    int getRegistersSize();
+
+    int getInsSize();
+
+    int getOutsSize();
+
+    /**
+     * Returns the size of the instructions in 16-bit code units.
+     */
+    int getInstructionsSize();
+
+    /**
+     * Calls the visitor for every field access (iget*, iput*, sget*, sput*)
+     * and invoke-* instruction, in instruction order, with the resolved
+     * field or method reference. Other instructions are skipped without
+     * being decoded.
+     */
+    void accept(ReferenceVisitor visitor);
+
+    /**
+     * Receives the references of a {@link DexCode}. The opcode is the dex
+     * opcode of the instruction, the address its offset in code units.
+     */
+    public interface ReferenceVisitor {
+
+        void visitFieldRef(int opcode, int address, DexFieldRef field);
+
+        void visitMethodRef(int opcode, int address, DexMethodRef method);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.structure;
+
+/**
+ * {@code DexFieldRef} is an entry of the field_ids section of a dex file: a
+ * field referenced by the code of the file, which may be declared by a class
+ * of the file or by an external one. Two references to the same field are
+ * equal, even if they come from different dex files.
+ */
+public interface DexFieldRef {
+
+    /**
+     * Returns the descriptor of the class the field is looked up in.
+     */
+    String getDeclaringClass();
+
+    String getName();
+
+    String getType();
+}
@@ -26,11 +26,27 @@ public interface DexFile extends NamedElement {
 
     /**
      * Returns a list of {@code DexClass} elements that are part of this {@code
-     * DexFile}.
+     * DexFile}. The list supports random access, and its classes, together
+     * with their fields, methods and annotations, may be inspected from
+     * several threads concurrently.
      * 
      * @return a list of {@code DexClass} elements that are part of this {@code
      *         DexFile}
      */
     public List<DexClass> getDefinedClasses();
 
+    /**
+     * Returns the fields referenced by this {@code DexFile} whose declaring
+     * class is not defined by it, in field_ids order. Array and primitive
+     * types count as defined.
+     */
+    public List<DexFieldRef> getExternalFieldRefs();
+
+    /**
+     * Returns the methods referenced by this {@code DexFile} whose declaring
+     * class is not defined by it, in method_ids order. Array and primitive
+     * types count as defined.
+     */
+    public List<DexMethodRef> getExternalMethodRefs();
+
 }
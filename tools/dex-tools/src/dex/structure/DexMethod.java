@@ -35,4 +35,10 @@ public interface DexMethod extends WithModifiers, DexAnnotatedElement,
     public String getReturnType();
 
     public DexClass getDeclaringClass();
+
+    /**
+     * Returns the code of this method, or {@code null} if it is abstract or
+     * native.
+     */
+    public DexCode getCode();
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import dex.structure.DexAnnotation;
+import dex.structure.DexClass;
+import dex.structure.DexField;
+import dex.structure.DexFile;
+import dex.structure.DexMethod;
+import dex.structure.DexParameter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentReadTests extends DexTestsCommon {
+
+    private static final int THREADS = 8;
+
+    /**
+     * Inspects all classes of a large dex file from several threads at once,
+     * every class being visited by more than one thread, and compares the
+     * result with a sequential run.
+     */
+    @Test
+    public void testConcurrentClassTraversal() throws Exception {
+        List<String> expected = describeAll(prepareDexFile("dex/classes0.dex"));
+
+        final List<DexClass> classes =
+                prepareDexFile("dex/classes0.dex").getDefinedClasses();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int start = t % 2;
+                results.add(executor.submit(new Callable<List<String>>() {
+                    public List<String> call() {
+                        List<String> descriptions = new ArrayList<String>();
+                        for (int i = start; i < classes.size(); i += 2) {
+                            descriptions.add(describe(classes.get(i)));
+                        }
+                        return descriptions;
+                    }
+                }));
+            }
+            for (int t = 0; t < THREADS; t++) {
+                List<String> descriptions = results.get(t).get();
+                int start = t % 2;
+                for (int i = 0; i < descriptions.size(); i++) {
+                    assertEquals(expected.get(start + 2 * i), descriptions.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> describeAll(DexFile file) {
+        List<String> descriptions = new ArrayList<String>();
+        for (DexClass clazz : file.getDefinedClasses()) {
+            descriptions.add(describe(clazz));
+        }
+        return descriptions;
+    }
+
+    private static String describe(DexClass clazz) {
+        StringBuilder b = new StringBuilder();
+        b.append(clazz.getName()).append(' ').append(clazz.getSuperClass())
+                .append(' ').append(clazz.getInterfaces())
+                .append(annotations(clazz.getAnnotations())).append('\n');
+        for (DexField field : clazz.getFields()) {
+            b.append(field.getType()).append(' ').append(field.getName())
+                    .append(annotations(field.getAnnotations())).append('\n');
+        }
+        for (DexMethod method : clazz.getMethods()) {
+            b.append(method.getReturnType()).append(' ').append(method.getName())
+                    .append(annotations(method.getAnnotations()));
+            for (DexParameter parameter : method.getParameters()) {
+                b.append(' ').append(parameter.getTypeName())
+                        .append(annotations(parameter.getAnnotations()));
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    // annotations are kept in hash sets, compare them in a stable order
+    private static List<String> annotations(Iterable<DexAnnotation> annotations) {
+        List<String> result = new ArrayList<String>();
+        for (DexAnnotation annotation : annotations) {
+            result.add(annotation.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import dex.structure.DexClass;
+import dex.structure.DexFile;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DexArchiveReaderTests extends DexTestsCommon {
+
+    /**
+     * Reads an archive holding the same dex file twice, once stored and once
+     * deflated, and compares it with the dex file read on its own.
+     */
+    @Test
+    public void testMultiDexArchive() throws IOException {
+        byte[] dex = readFully("dex/classes0.dex");
+        File apk = File.createTempFile("multidex", ".apk");
+        try {
+            ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk));
+            try {
+                zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+                zip.write(new byte[] {1, 2, 3});
+                ZipEntry stored = new ZipEntry("classes.dex");
+                CRC32 crc = new CRC32();
+                crc.update(dex);
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(dex.length);
+                stored.setCrc(crc.getValue());
+                zip.putNextEntry(stored);
+                zip.write(dex);
+                zip.putNextEntry(new ZipEntry("classes2.dex"));
+                zip.write(dex);
+            } finally {
+                zip.close();
+            }
+
+            List<String> expected = classNames(prepareDexFile("dex/classes0.dex"));
+            DexArchiveReader reader = new DexArchiveReader();
+            for (int i = 0; i < 2; i++) {
+                // the second round reuses the pooled buffer of the first
+                DexArchive archive = reader.read(apk.getPath());
+                try {
+                    assertEquals(2, archive.getDexFiles().size());
+                    assertEquals(expected, classNames(archive.getDexFiles().get(0)));
+                    assertEquals(expected, classNames(archive.getDexFiles().get(1)));
+                    assertEquals(expected, classNames(archive));
+                    assertEquals(expected, archive.getDuplicateClasses());
+                } finally {
+                    archive.close();
+                }
+            }
+        } finally {
+            apk.delete();
+        }
+    }
+
+    private static List<String> classNames(DexFile file) {
+        List<String> names = new ArrayList<String>();
+        for (DexClass clazz : file.getDefinedClasses()) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    private static byte[] readFully(String fileName) throws IOException {
+        InputStream in = new FileInputStream(fileName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
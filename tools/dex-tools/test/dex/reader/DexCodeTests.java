@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dex.reader;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import dex.structure.DexClass;
+import dex.structure.DexCode;
+import dex.structure.DexField;
+import dex.structure.DexFieldRef;
+import dex.structure.DexFile;
+import dex.structure.DexMethod;
+import dex.structure.DexMethodRef;
+import dex.structure.DexParameter;
+
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DexCodeTests extends DexTestsCommon {
+
+    /**
+     * Decodes the code of all methods of a core library and checks that the
+     * referenced fields and methods have the static-ness the instruction
+     * requires, which fails as soon as an instruction is decoded at a wrong
+     * address.
+     */
+    @Test
+    public void testReferencesMatchDeclarations() throws Exception {
+        DexFile file = prepareDexFile("dex/classes0.dex");
+        final Map<String, Integer> fields = new HashMap<String, Integer>();
+        final Map<String, Integer> methods = new HashMap<String, Integer>();
+        for (DexClass clazz : file.getDefinedClasses()) {
+            for (DexField field : clazz.getFields()) {
+                fields.put(clazz.getName() + "->" + field.getName() + ":"
+                        + field.getType(), field.getModifiers());
+            }
+            for (DexMethod method : clazz.getMethods()) {
+                methods.put(key(clazz, method), method.getModifiers());
+            }
+        }
+
+        final int[] counts = new int[2];
+        for (DexClass clazz : file.getDefinedClasses()) {
+            for (DexMethod method : clazz.getMethods()) {
+                DexCode code = method.getCode();
+                int modifiers = method.getModifiers();
+                if (Modifier.isAbstract(modifiers) || Modifier.isNative(modifiers)) {
+                    assertNull(code);
+                    continue;
+                }
+                assertNotNull(code);
+                assertTrue(code.getInsSize() <= code.getRegistersSize());
+                code.accept(new DexCode.ReferenceVisitor() {
+                    public void visitFieldRef(int opcode, int address,
+                            DexFieldRef field) {
+                        Integer modifiers = fields.get(field.toString());
+                        if (modifiers != null) {
+                            // sget* and sput* start at 0x60
+                            assertTrue(field.toString(), (opcode >= 0x60)
+                                    == Modifier.isStatic(modifiers));
+                        }
+                        counts[0]++;
+                    }
+
+                    public void visitMethodRef(int opcode, int address,
+                            DexMethodRef method) {
+                        Integer modifiers = methods.get(method.toString());
+                        if (modifiers != null && (opcode == 0x71 || opcode == 0x77)) {
+                            // invoke-static and invoke-static/range
+                            assertTrue(method.toString(), Modifier.isStatic(modifiers));
+                        }
+                        counts[1]++;
+                    }
+                });
+            }
+        }
+        assertTrue(counts[0] > 0);
+        assertTrue(counts[1] > 0);
+    }
+
+    /**
+     * A core library only references classes it defines, arrays and
+     * primitives.
+     */
+    @Test
+    public void testNoExternalReferencesInCoreLibrary() throws Exception {
+        DexFile file = prepareDexFile("dex/classes0.dex");
+        assertTrue(file.getExternalFieldRefs().isEmpty());
+        assertTrue(file.getExternalMethodRefs().isEmpty());
+    }
+
+    private static String key(DexClass clazz, DexMethod method) {
+        StringBuilder b = new StringBuilder();
+        b.append(clazz.getName()).append("->").append(method.getName()).append('(');
+        for (DexParameter parameter : method.getParameters()) {
+            b.append(parameter.getTypeName());
+        }
+        return b.append(')').append(method.getReturnType()).toString();
+    }
+}
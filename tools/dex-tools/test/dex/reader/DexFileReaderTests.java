@@ -347,6 +347,19 @@ public class DexFileReaderTests extends DexTestsCommon {
         System.out.println(E.getFields());
     }
 
+    /**
+     * Tests that names outside of ASCII are decoded from modified UTF-8.
+     */
+    @Test
+    public void testNonAsciiNames() throws IOException {
+        JavaSource source = new JavaSource("U0",
+                "public class U0 { public int gr\\u00fc\\u00dfe; public void \\u20acuro() {} }");
+        DexFile dexFile = javaToDexUtil.getFrom(source);
+        DexClass clazz = getClass(dexFile, "LU0;");
+        assertEquals("gr\u00fc\u00dfe", getField(clazz, "gr\u00fc\u00dfe").getName());
+        assertEquals("\u20acuro", getMethod(clazz, "\u20acuro").getName());
+    }
+
     /**
      * Tests parsing of huge dex file. 
      * @throws IOException
@@ -18,7 +18,8 @@ include $(CLEAR_VARS)
 
 LOCAL_SRC_FILES := \
     $(call all-java-files-under, src) \
-    $(call all-java-files-under, ../../libs/commonutil/src)
+    $(call all-java-files-under, ../../libs/commonutil/src) \
+    ../../common/util/src/com/android/compatibility/common/util/ValueArrayCodec.java
 
 LOCAL_JAVA_RESOURCE_DIRS := res
 
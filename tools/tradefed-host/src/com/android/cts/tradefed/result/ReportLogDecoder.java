@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.compatibility.common.util.ValueArrayCodec;
+import com.android.cts.util.ReportLogEncoder;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the records of a report encoded by {@link ReportLogEncoder} one at a time,
+ * decoding the base64 as it goes.
+ * <p/>
+ * Call {@link #next()} until it returns {@link ReportLogEncoder#END}; the getters
+ * return the fields of the record it last returned.
+ */
+class ReportLogDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mReport;
+    private int mPos;
+    /** Decoded bytes not yet read, in the low bits. */
+    private int mBits;
+    private int mBitCount;
+
+    private String mSource;
+    private String mMessage;
+    private double mTarget;
+    private ResultType mType;
+    private ResultUnit mUnit;
+    private double[] mValues;
+
+    /**
+     * @return true if {@code report} was encoded by {@link ReportLogEncoder}, rather than
+     * being a text report
+     */
+    static boolean isEncoded(String report) {
+        return report.startsWith(ReportLogEncoder.PREFIX);
+    }
+
+    ReportLogDecoder(String report) throws IOException {
+        if (!isEncoded(report)) {
+            throw new IOException("Not an encoded report");
+        }
+        mReport = report;
+        mPos = ReportLogEncoder.PREFIX.length();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return its kind, {@link ReportLogEncoder#SUMMARY} or {@link ReportLogEncoder#VALUES},
+     * or {@link ReportLogEncoder#END} after the last record
+     * @throws IOException if the report is malformed
+     */
+    int next() throws IOException {
+        int kind = readByte();
+        switch (kind) {
+            case ReportLogEncoder.END:
+                return kind;
+            case ReportLogEncoder.SUMMARY:
+                mSource = null;
+                mMessage = readString();
+                mTarget = readDouble();
+                readTypeAndUnit();
+                mValues = new double[] { readDouble() };
+                return kind;
+            case ReportLogEncoder.VALUES:
+                mSource = readString();
+                mMessage = readString();
+                mTarget = Double.NaN;
+                readTypeAndUnit();
+                int count = readInt();
+                // each value takes 8 bytes, or 32/3 base64 digits
+                if (count < 0 || count > (mReport.length() - mPos) * 3L / 32 + 1) {
+                    throw new IOException("Bad value count " + count);
+                }
+                mValues = new double[count];
+                for (int i = 0; i < count; i++) {
+                    mValues[i] = readDouble();
+                }
+                return kind;
+            default:
+                throw new IOException("Unknown record " + kind);
+        }
+    }
+
+    /**
+     * @return the test and line that measured the values, or null for a summary
+     */
+    String getSource() {
+        return mSource;
+    }
+
+    String getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * @return the performance target of a summary, or {@link Double#NaN} if there is none
+     */
+    double getTarget() {
+        return mTarget;
+    }
+
+    ResultType getType() {
+        return mType;
+    }
+
+    ResultUnit getUnit() {
+        return mUnit;
+    }
+
+    /**
+     * @return the values of the record; a summary has one
+     */
+    double[] getValues() {
+        return mValues;
+    }
+
+    private void readTypeAndUnit() throws IOException {
+        try {
+            mType = ResultType.valueOf(readString());
+            mUnit = ResultUnit.valueOf(readString());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown result type or unit", e);
+        }
+    }
+
+    private String readString() throws IOException {
+        int length = readInt();
+        if (length < 0 || length > mReport.length() - mPos) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) readByte();
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private double readDouble() throws IOException {
+        long high = readInt();
+        long low = readInt() & 0xffffffffL;
+        return Double.longBitsToDouble(high << 32 | low);
+    }
+
+    private int readInt() throws IOException {
+        return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    private int readByte() throws IOException {
+        while (mBitCount < 8) {
+            if (mPos == mReport.length()) {
+                throw new IOException("Truncated report");
+            }
+            char c = mReport.charAt(mPos++);
+            int value = ValueArrayCodec.decodeBase64Digit(c);
+            if (value < 0) {
+                throw new IOException("Bad character in report: " + c);
+            }
+            mBits = (mBits << 6) | value;
+            mBitCount += 6;
+        }
+        mBitCount -= 8;
+        return (mBits >> mBitCount) & 0xff;
+    }
+}
@@ -15,8 +15,11 @@
  */
 package com.android.cts.tradefed.result;
 
+import com.android.compatibility.common.util.ValueArrayCodec;
 import com.android.ddmlib.Log;
 import com.android.cts.tradefed.result.TestLog.TestLogType;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
 
 import org.kxml2.io.KXmlSerializer;
 import org.xmlpull.v1.XmlPullParser;
@@ -59,6 +62,9 @@ class Test extends AbstractXmlPullParser {
     // summary and details passed from cts
     private String mSummary;
     private String mDetails;
+    // summary and details passed from cts as typed records, used if the above are not set
+    private PerfResultSummary mPerfSummary;
+    private List<PerfResultDetail> mPerfDetails;
 
     /**
      * Log info for this test like a logcat dump or bugreport.
@@ -151,6 +157,51 @@ class Test extends AbstractXmlPullParser {
         mDetails = details;
     }
 
+    /**
+     * Set the performance summary from typed values, as decoded by {@link ReportLogDecoder}.
+     *
+     * @param target the performance target, or {@link Double#NaN} if there is none
+     */
+    public void setPerfSummary(String message, double target, ResultType type, ResultUnit unit,
+            double value) {
+        PerfResultSummary summary = new PerfResultSummary();
+        summary.mMessage = message;
+        summary.mTarget = Double.isNaN(target) ? " " : Double.toString(target);
+        summary.mType = type.getXmlString();
+        summary.mUnit = unit.getXmlString();
+        summary.mValue = Double.toString(value);
+        mPerfSummary = summary;
+    }
+
+    /**
+     * Add an array of performance values, as decoded by {@link ReportLogDecoder}.
+     */
+    public void addPerfDetail(String source, String message, ResultType type, ResultUnit unit,
+            double[] values) {
+        PerfResultDetail detail = new PerfResultDetail();
+        detail.mSource = source;
+        detail.mMessage = message;
+        detail.mType = type.getXmlString();
+        detail.mUnit = unit.getXmlString();
+        detail.mDoubleValues = values;
+        addPerfDetail(detail);
+    }
+
+    private void addPerfDetail(PerfResultDetail detail) {
+        if (mPerfDetails == null) {
+            mPerfDetails = new ArrayList<>();
+        }
+        mPerfDetails.add(detail);
+    }
+
+    /**
+     * Set the performance summary and details to those of {@code decoded}.
+     */
+    public void setPerfResults(Test decoded) {
+        mPerfSummary = decoded.mPerfSummary;
+        mPerfDetails = decoded.mPerfDetails;
+    }
+
     public void updateEndTime() {
         mEndTime = TimeUtil.getTimestamp();
     }
@@ -185,10 +236,10 @@ class Test extends AbstractXmlPullParser {
             }
             serializer.endTag(CtsXmlResultReporter.ns, SCENE_TAG);
         }
-        if (mSummary != null) {
+        if (mSummary != null || mPerfSummary != null) {
             // <Summary message = "screen copies per sec" scoretype="higherBetter" unit="fps">
             // 23938.82978723404</Summary>
-            PerfResultSummary summary = parseSummary(mSummary);
+            PerfResultSummary summary = mSummary != null ? parseSummary(mSummary) : mPerfSummary;
             if (summary != null) {
                 serializer.startTag(CtsXmlResultReporter.ns, SUMMARY_TAG);
                 serializer.attribute(CtsXmlResultReporter.ns, MESSAGE_ATTR, summary.mMessage);
@@ -207,8 +258,13 @@ class Test extends AbstractXmlPullParser {
                 //     <Value>0.1</Value>
                 //   </ValueArray>
                 // </Details>
+                PerfResultDetail[] ds = null;
                 if (mDetails != null) {
-                    PerfResultDetail[] ds = parseDetails(mDetails);
+                    ds = parseDetails(mDetails);
+                } else if (mPerfDetails != null) {
+                    ds = mPerfDetails.toArray(new PerfResultDetail[mPerfDetails.size()]);
+                }
+                if (ds != null) {
                     serializer.startTag(CtsXmlResultReporter.ns, DETAILS_TAG);
                         for (PerfResultDetail d : ds) {
                             if (d == null) {
@@ -220,14 +276,7 @@ class Test extends AbstractXmlPullParser {
                                     d.mMessage);
                             serializer.attribute(CtsXmlResultReporter.ns, SCORETYPE_ATTR, d.mType);
                             serializer.attribute(CtsXmlResultReporter.ns, UNIT_ATTR, d.mUnit);
-                            for (String v : d.mValues) {
-                                if (v == null) {
-                                    continue;
-                                }
-                                serializer.startTag(CtsXmlResultReporter.ns, VALUE_TAG);
-                                serializer.text(v);
-                                serializer.endTag(CtsXmlResultReporter.ns, VALUE_TAG);
-                            }
+                            serializeValues(serializer, d);
                             serializer.endTag(CtsXmlResultReporter.ns, VALUEARRAY_TAG);
                         }
                     serializer.endTag(CtsXmlResultReporter.ns, DETAILS_TAG);
@@ -237,6 +286,35 @@ class Test extends AbstractXmlPullParser {
         serializer.endTag(CtsXmlResultReporter.ns, TAG);
     }
 
+    /**
+     * Serialize the values of a detail, as one EncodedValues element if they are numbers and
+     * there are many of them.
+     */
+    private static void serializeValues(KXmlSerializer serializer, PerfResultDetail d)
+            throws IOException {
+        if (d.mDoubleValues != null
+                && d.mDoubleValues.length > ValueArrayCodec.ENCODING_THRESHOLD) {
+            serializer.startTag(CtsXmlResultReporter.ns, ValueArrayCodec.TAG);
+            serializer.text(ValueArrayCodec.encode(d.mDoubleValues));
+            serializer.endTag(CtsXmlResultReporter.ns, ValueArrayCodec.TAG);
+        } else if (d.mDoubleValues != null) {
+            for (double v : d.mDoubleValues) {
+                serializer.startTag(CtsXmlResultReporter.ns, VALUE_TAG);
+                serializer.text(Double.toString(v));
+                serializer.endTag(CtsXmlResultReporter.ns, VALUE_TAG);
+            }
+        } else {
+            for (String v : d.mValues) {
+                if (v == null) {
+                    continue;
+                }
+                serializer.startTag(CtsXmlResultReporter.ns, VALUE_TAG);
+                serializer.text(v);
+                serializer.endTag(CtsXmlResultReporter.ns, VALUE_TAG);
+            }
+        }
+    }
+
     /**
      *  class containing performance result.
      */
@@ -253,7 +331,9 @@ class Test extends AbstractXmlPullParser {
 
     private class PerfResultDetail extends PerfResultCommon {
         public String mSource;
+        // values as text, or as numbers if mDoubleValues is set
         public String[] mValues;
+        public double[] mDoubleValues;
     }
 
     private PerfResultSummary parseSummary(String summary) {
@@ -348,6 +428,12 @@ class Test extends AbstractXmlPullParser {
                 mStackTrace = parser.nextText();
             } else if (eventType == XmlPullParser.START_TAG && TestLog.isTag(parser.getName())) {
                 parseTestLog(parser);
+            } else if (eventType == XmlPullParser.START_TAG
+                    && parser.getName().equals(SUMMARY_TAG)) {
+                parsePerfSummary(parser);
+            } else if (eventType == XmlPullParser.START_TAG
+                    && parser.getName().equals(VALUEARRAY_TAG)) {
+                parsePerfDetail(parser);
             } else if (eventType == XmlPullParser.END_TAG && parser.getName().equals(TAG)) {
                 return;
             }
@@ -355,6 +441,53 @@ class Test extends AbstractXmlPullParser {
         }
     }
 
+    /** Parse a performance summary from the parser positioned at a Summary tag. */
+    private void parsePerfSummary(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        PerfResultSummary summary = new PerfResultSummary();
+        summary.mMessage = getAttribute(parser, MESSAGE_ATTR);
+        String target = getAttribute(parser, TARGET_ATTR);
+        summary.mTarget = target != null ? target : " ";
+        summary.mType = getAttribute(parser, SCORETYPE_ATTR);
+        summary.mUnit = getAttribute(parser, UNIT_ATTR);
+        summary.mValue = parser.nextText();
+        mPerfSummary = summary;
+    }
+
+    /**
+     * Parse performance values from the parser positioned at a ValueArray tag, whether they
+     * are Value elements or one EncodedValues element.
+     */
+    private void parsePerfDetail(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        PerfResultDetail detail = new PerfResultDetail();
+        detail.mSource = getAttribute(parser, SOURCE_ATTR);
+        detail.mMessage = getAttribute(parser, MESSAGE_ATTR);
+        detail.mType = getAttribute(parser, SCORETYPE_ATTR);
+        detail.mUnit = getAttribute(parser, UNIT_ATTR);
+        List<String> values = new ArrayList<>();
+        int eventType = parser.next();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && parser.getName().equals(VALUE_TAG)) {
+                values.add(parser.nextText());
+            } else if (eventType == XmlPullParser.START_TAG
+                    && parser.getName().equals(ValueArrayCodec.TAG)) {
+                try {
+                    detail.mDoubleValues = ValueArrayCodec.decode(parser.nextText());
+                } catch (IllegalArgumentException e) {
+                    throw new XmlPullParserException(String.format(
+                            "invalid XML: %s in %s", e.getMessage(), ValueArrayCodec.TAG));
+                }
+            } else if (eventType == XmlPullParser.END_TAG
+                    && parser.getName().equals(VALUEARRAY_TAG)) {
+                break;
+            }
+            eventType = parser.next();
+        }
+        detail.mValues = values.toArray(new String[values.size()]);
+        addPerfDetail(detail);
+    }
+
     /** Parse a TestLog entry from the parser positioned at a TestLog tag. */
     private void parseTestLog(XmlPullParser parser) throws XmlPullParserException{
         TestLog log = TestLog.fromXml(parser);
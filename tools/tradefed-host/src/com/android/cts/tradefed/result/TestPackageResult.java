@@ -18,6 +18,7 @@ package com.android.cts.tradefed.result;
 import com.android.cts.tradefed.testtype.CtsTest;
 import com.android.cts.tradefed.util.CtsHostStore;
 import com.android.cts.util.AbiUtils;
+import com.android.cts.util.ReportLogEncoder;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.log.LogUtil.CLog;
 
@@ -254,7 +255,17 @@ class TestPackageResult extends AbstractXmlPullParser {
             if (perfResult == null) {
                 perfResult = CtsHostStore.removeCtsResult(mDeviceSerial, mAbi, test.toString());
             }
-            if (perfResult != null) {
+            if (perfResult != null && ReportLogDecoder.isEncoded(perfResult)) {
+                Test result = findTest(test);
+                try {
+                    result.setPerfResults(decodePerfResult(perfResult));
+                    result.setResultStatus(CtsTestStatus.PASS);
+                } catch (IOException e) {
+                    CLog.e("CTS Result unrecognizable: %s", e.getMessage());
+                    result.setResultStatus(CtsTestStatus.FAIL);
+                    result.setStackTrace("Unrecognizable performance report: " + e.getMessage());
+                }
+            } else if (perfResult != null) {
                 // CTS result is passed in Summary++++Details format.
                 // Extract Summary and Details, and pass them.
                 Matcher m = mCtsLogPattern.matcher(perfResult);
@@ -270,6 +281,28 @@ class TestPackageResult extends AbstractXmlPullParser {
         }
     }
 
+    /**
+     * Decodes a report encoded by {@link ReportLogEncoder}.
+     *
+     * @return a {@link Test} holding only the summary and details of the report
+     * @throws IOException if the report is malformed
+     */
+    private static Test decodePerfResult(String perfResult) throws IOException {
+        Test decoded = new Test();
+        ReportLogDecoder decoder = new ReportLogDecoder(perfResult);
+        int record;
+        while ((record = decoder.next()) != ReportLogEncoder.END) {
+            if (record == ReportLogEncoder.SUMMARY) {
+                decoded.setPerfSummary(decoder.getMessage(), decoder.getTarget(),
+                        decoder.getType(), decoder.getUnit(), decoder.getValues()[0]);
+            } else {
+                decoded.addPerfDetail(decoder.getSource(), decoder.getMessage(),
+                        decoder.getType(), decoder.getUnit(), decoder.getValues());
+            }
+        }
+        return decoded;
+    }
+
     /**
      * Report the given test as a failure.
      *
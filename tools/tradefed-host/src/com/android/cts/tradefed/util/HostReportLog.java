@@ -40,6 +40,7 @@ public class HostReportLog extends ReportLog {
     }
 
     public void deliverReportToHost() {
-        CtsHostStore.storeCtsResult(mDeviceSerial, mAbiName, mClassMethodName, generateReport());
+        CtsHostStore.storeCtsResult(mDeviceSerial, mAbiName, mClassMethodName,
+                generateEncodedReport());
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.util.ReportLog;
+import com.android.cts.util.ReportLogEncoder;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ReportLogDecoder}, decoding the reports of {@link ReportLog}.
+ */
+public class ReportLogDecoderTest extends TestCase {
+
+    private static final String SOURCE = "com.example.ExampleTest#testPerf:42";
+
+    /** Exposes the reports of {@link ReportLog}. */
+    private static class TestReportLog extends ReportLog {
+        String encodedReport() {
+            return generateEncodedReport();
+        }
+
+        String textReport() {
+            return generateReport();
+        }
+    }
+
+    /**
+     * Test that values and messages survive the round trip exactly, including the
+     * separators of the text report.
+     */
+    public void testRoundTrip() throws IOException {
+        TestReportLog log = new TestReportLog();
+        double[] values = { 0.1, 1.0 / 3, -0.0, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN };
+        log.printArray(SOURCE, "frame time +++ | ++++", values, ResultType.LOWER_BETTER,
+                ResultUnit.MS);
+        log.printArray(SOURCE, "caf\u00e9 \u2603", new double[0], ResultType.NEUTRAL,
+                ResultUnit.COUNT);
+        log.printSummaryWithTarget("total|time", 10.0, 5.0, ResultType.LOWER_BETTER,
+                ResultUnit.MS);
+
+        String report = log.encodedReport();
+        assertTrue(ReportLogDecoder.isEncoded(report));
+        ReportLogDecoder decoder = new ReportLogDecoder(report);
+
+        assertEquals(ReportLogEncoder.VALUES, decoder.next());
+        assertEquals(SOURCE, decoder.getSource());
+        assertEquals("frame time +++ | ++++", decoder.getMessage());
+        assertEquals(ResultType.LOWER_BETTER, decoder.getType());
+        assertEquals(ResultUnit.MS, decoder.getUnit());
+        assertTrue(Arrays.equals(values, decoder.getValues()));
+
+        assertEquals(ReportLogEncoder.VALUES, decoder.next());
+        assertEquals("caf\u00e9 \u2603", decoder.getMessage());
+        assertEquals(ResultType.NEUTRAL, decoder.getType());
+        assertEquals(ResultUnit.COUNT, decoder.getUnit());
+        assertEquals(0, decoder.getValues().length);
+
+        assertEquals(ReportLogEncoder.SUMMARY, decoder.next());
+        assertNull(decoder.getSource());
+        assertEquals("total|time", decoder.getMessage());
+        assertEquals(10.0, decoder.getTarget());
+        assertEquals(5.0, decoder.getValues()[0]);
+
+        assertEquals(ReportLogEncoder.END, decoder.next());
+    }
+
+    /**
+     * Test that a summary without target decodes with a NaN target.
+     */
+    public void testSummaryWithoutTarget() throws IOException {
+        TestReportLog log = new TestReportLog();
+        log.printSummary("score", 1234.5, ResultType.HIGHER_BETTER, ResultUnit.SCORE);
+        ReportLogDecoder decoder = new ReportLogDecoder(log.encodedReport());
+        assertEquals(ReportLogEncoder.SUMMARY, decoder.next());
+        assertTrue(Double.isNaN(decoder.getTarget()));
+        assertEquals(1234.5, decoder.getValues()[0]);
+        assertEquals(ResultType.HIGHER_BETTER, decoder.getType());
+        assertEquals(ResultUnit.SCORE, decoder.getUnit());
+        assertEquals(ReportLogEncoder.END, decoder.next());
+    }
+
+    /**
+     * Test that reports are cleared once generated, and that empty reports are empty strings
+     * as in the text format.
+     */
+    public void testEmptyReport() {
+        TestReportLog log = new TestReportLog();
+        assertEquals("", log.encodedReport());
+        log.printValue(SOURCE, "value", 1.0, ResultType.NEUTRAL, ResultUnit.NONE);
+        assertFalse(log.encodedReport().isEmpty());
+        assertEquals("", log.encodedReport());
+        assertEquals("", log.textReport());
+    }
+
+    /**
+     * Test that text reports are told apart from encoded ones.
+     */
+    public void testTextReportNotEncoded() {
+        TestReportLog log = new TestReportLog();
+        log.printValue(SOURCE, "value", 1.0, ResultType.NEUTRAL, ResultUnit.NONE);
+        log.printSummary("score", 2.0, ResultType.HIGHER_BETTER, ResultUnit.SCORE);
+        assertFalse(ReportLogDecoder.isEncoded(log.textReport()));
+    }
+
+    /**
+     * Test that a truncated report fails to decode instead of returning partial values.
+     */
+    public void testTruncatedReport() throws IOException {
+        TestReportLog log = new TestReportLog();
+        log.printArray(SOURCE, "values", new double[] { 1.0, 2.0 }, ResultType.NEUTRAL,
+                ResultUnit.NONE);
+        String report = log.encodedReport();
+        ReportLogDecoder decoder = new ReportLogDecoder(report.substring(0, report.length() - 8));
+        try {
+            decoder.next();
+            fail("IOException not thrown");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -15,12 +15,17 @@
  */
 package com.android.cts.tradefed.result;
 
+import com.android.cts.util.ReportLog;
+import com.android.cts.util.ReportLogEncoder;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
 import com.android.ddmlib.testrunner.TestIdentifier;
 
 import junit.framework.TestCase;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Unit tests for {@link TestPackageResult}.
@@ -43,4 +48,57 @@ public class TestPackageResultTest extends TestCase {
         assertEquals(1, tests.size());
         assertEquals(includedTest, tests.iterator().next());
     }
+
+    /**
+     * Test that a test reporting an encoded performance report passes.
+     */
+    public void testEncodedPerfResult() {
+        Test result = reportPerfResult(encodedReport());
+        assertEquals(CtsTestStatus.PASS, result.getResult());
+        assertNull(result.getStackTrace());
+    }
+
+    /**
+     * Test that a test whose encoded performance report can't be decoded fails.
+     */
+    public void testBadEncodedPerfResult() {
+        String report = encodedReport();
+        Test result = reportPerfResult(report.substring(0, report.length() - 8));
+        assertEquals(CtsTestStatus.FAIL, result.getResult());
+        assertTrue(result.getStackTrace().contains("Truncated report"));
+
+        int bad = ReportLogEncoder.PREFIX.length() + 4;
+        result = reportPerfResult(report.substring(0, bad) + "!" + report.substring(bad + 1));
+        assertEquals(CtsTestStatus.FAIL, result.getResult());
+        assertTrue(result.getStackTrace().contains("Bad character in report"));
+    }
+
+    /** Exposes the encoded report of {@link ReportLog}. */
+    private static class TestReportLog extends ReportLog {
+        String encodedReport() {
+            return generateEncodedReport();
+        }
+    }
+
+    private static String encodedReport() {
+        TestReportLog log = new TestReportLog();
+        log.printArray("com.example.ExampleTest#testPerf:42", "frames", new double[] { 1.0, 2.0 },
+                ResultType.LOWER_BETTER, ResultUnit.MS);
+        log.printSummary("score", 1234.5, ResultType.HIGHER_BETTER, ResultUnit.SCORE);
+        return log.encodedReport();
+    }
+
+    /**
+     * Reports a test that ended with {@code perfResult} and returns its result.
+     */
+    private static Test reportPerfResult(String perfResult) {
+        TestPackageResult pkgResult = new TestPackageResult();
+        TestIdentifier test = new TestIdentifier("com.example.ExampleTest", "testPerf");
+        pkgResult.insertTest(test);
+        Map<String, String> testMetrics = new HashMap<String, String>();
+        testMetrics.put(TestPackageResult.CTS_RESULT_KEY, perfResult);
+        pkgResult.reportTestEnded(test, testMetrics);
+        pkgResult.populateMetrics(new HashMap<String, String>());
+        return pkgResult.findTest(test);
+    }
 }
@@ -15,8 +15,20 @@
  */
 package com.android.cts.tradefed.result;
 
+import com.android.compatibility.common.util.ValueArrayCodec;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
 import junit.framework.TestCase;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 /**
  * Unit tests for {@link Test}.
  * <p/>
@@ -24,6 +36,18 @@ import junit.framework.TestCase;
  */
 public class TestTest extends TestCase {
 
+    private static final String PERF_TEST_START =
+        "<Test name=\"testPerf\" result=\"pass\" starttime=\"st\" endtime=\"et\" >" +
+            "<Summary message=\"average\" scoreType=\"lower_better\" unit=\"ms\" >" +
+            "2.5</Summary>" +
+            "<Details>";
+    private static final String PERF_TEST_END =
+            "</Details>" +
+        "</Test>";
+    private static final String VALUE_ARRAY_START =
+        "<ValueArray source=\"Foo#testPerf:10\" message=\"frames\" scoreType=\"neutral\"" +
+        " unit=\"ms\" >";
+
     /**
      * Test {@link Test#getFailureMessageFromStackTrace(String)} for an empty stack
      */
@@ -65,4 +89,73 @@ public class TestTest extends TestCase {
         assertEquals("this is a line\nthis is also a line",
                 Test.getFailureMessageFromStackTrace(stack));
     }
+
+    /**
+     * Test that performance values parsed from Value and EncodedValues elements are
+     * serialized again, as Value elements for short arrays.
+     */
+    public void testParse_perfValues() throws Exception {
+        Test test = parseTest(PERF_TEST_START +
+                VALUE_ARRAY_START + "<Value>1.0</Value><Value>2.0</Value></ValueArray>" +
+                // 1.0 and 11.0
+                VALUE_ARRAY_START + "<EncodedValues>AAAAAAAA8D8AAAAAAAAmQA==</EncodedValues>" +
+                "</ValueArray>" +
+                PERF_TEST_END);
+        String xml = serialize(test);
+        assertTrue(xml, xml.contains(">2.5</Summary>"));
+        assertTrue(xml, xml.contains("<Value>1.0</Value><Value>2.0</Value></ValueArray>"));
+        assertTrue(xml, xml.contains("<Value>1.0</Value><Value>11.0</Value></ValueArray>"));
+    }
+
+    /**
+     * Test that long arrays of performance values are serialized as one EncodedValues element,
+     * and parsed back exactly.
+     */
+    public void testSerialize_encodedPerfValues() throws Exception {
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i / 7.0;
+        }
+        Test test = new Test("testPerf");
+        test.setPerfSummary("average", Double.NaN, ResultType.LOWER_BETTER, ResultUnit.MS, 2.5);
+        test.addPerfDetail("Foo#testPerf:10", "frames", ResultType.NEUTRAL, ResultUnit.MS, values);
+        String xml = serialize(test);
+        assertTrue(xml, xml.contains("<EncodedValues>" + ValueArrayCodec.encode(values)
+                + "</EncodedValues>"));
+        assertFalse(xml, xml.contains("<Value>"));
+        assertEquals(xml, serialize(parseTest(xml)));
+    }
+
+    /**
+     * Test that malformed encoded values fail to parse.
+     */
+    public void testParse_badEncodedValues() throws Exception {
+        try {
+            parseTest(PERF_TEST_START + VALUE_ARRAY_START + "<EncodedValues>AAAA</EncodedValues>"
+                    + "</ValueArray>" + PERF_TEST_END);
+            fail("XmlPullParserException not thrown");
+        } catch (XmlPullParserException e) {
+            // expected
+        }
+    }
+
+    private Test parseTest(String xml) throws Exception {
+        XmlPullParserFactory factory = org.xmlpull.v1.XmlPullParserFactory.newInstance();
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(new StringReader(xml));
+        // Move the parser from the START_DOCUMENT stage to the START_TAG of the test.
+        parser.next();
+        Test test = new Test();
+        test.parse(parser);
+        return test;
+    }
+
+    private String serialize(Test test) throws Exception {
+        KXmlSerializer serializer = new KXmlSerializer();
+        StringWriter writer = new StringWriter();
+        serializer.setOutput(writer);
+        test.serialize(serializer);
+        serializer.flush();
+        return writer.toString();
+    }
 }
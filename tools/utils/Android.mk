@@ -25,6 +25,6 @@ LOCAL_SRC_FILES := CollectAllTests.java DescriptionGenerator.java VogarUtils.jav
 LOCAL_CLASSPATH := $(HOST_JDK_TOOLS_JAR)
 
 LOCAL_JAVA_LIBRARIES := junit
-LOCAL_STATIC_JAVA_LIBRARIES := ctsabiutilslib vogarexpectlib
+LOCAL_STATIC_JAVA_LIBRARIES := ctsabiutilslib vogarexpectlib compatibility-java-scanner_v2
 
 include $(BUILD_HOST_JAVA_LIBRARY)
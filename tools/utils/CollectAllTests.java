@@ -13,9 +13,9 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import com.android.compatibility.common.scanner.ClassFile;
 import com.android.cts.util.AbiUtils;
 
-import org.junit.runner.RunWith;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -24,29 +24,32 @@ import org.w3c.dom.NodeList;
 import vogar.Expectation;
 import vogar.ExpectationStore;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import junit.framework.TestCase;
-
 public class CollectAllTests extends DescriptionGenerator {
 
     private static final String ATTRIBUTE_RUNNER = "runner";
@@ -59,13 +62,18 @@ public class CollectAllTests extends DescriptionGenerator {
     private static final String ATTRIBUTE_JAR_PATH = "jarPath";
     private static final String ATTRIBUTE_JAVA_PACKAGE_FILTER = "javaPackageFilter";
 
+    private static final String JUNIT3_TEST_CASE = "junit/framework/TestCase";
+    private static final String JUNIT4_TEST = "Lorg/junit/Test;";
+    private static final String JUNIT4_RUN_WITH = "Lorg/junit/runner/RunWith;";
+
     private static final String JAR_PATH = "LOCAL_JAR_PATH :=";
     private static final String TEST_TYPE = "LOCAL_TEST_TYPE :";
 
     public static void main(String[] args) {
-        if (args.length < 5 || args.length > 7) {
+        if (args.length < 5 || args.length > 8) {
             System.err.println("usage: CollectAllTests <output-file> <manifest-file> <jar-file> "
-                               + "<java-package> <architecture> [expectation-dir [makefile-file]]");
+                               + "<java-package> <architecture>"
+                               + " [expectation-dir [makefile-file [snapshot-dir]]]");
             if (args.length != 0) {
                 System.err.println("received:");
                 for (String arg : args) {
@@ -106,6 +114,7 @@ public class CollectAllTests extends DescriptionGenerator {
         }
         String libcoreExpectationDir = (args.length > 5) ? args[5] : null;
         String androidMakeFile = (args.length > 6) ? args[6] : null;
+        String snapshotDir = (args.length > 7) ? args[7] : null;
 
         final TestType testType = TestType.getTestType(androidMakeFile);
 
@@ -171,8 +180,9 @@ public class CollectAllTests extends DescriptionGenerator {
 
         try {
             libcoreVogarExpectationStore
-                    = VogarUtils.provideExpectationStore(libcoreExpectationDir);
-            ctsVogarExpectationStore = VogarUtils.provideExpectationStore(CTS_EXPECTATION_DIR);
+                    = VogarUtils.provideExpectationStore(libcoreExpectationDir, snapshotDir);
+            ctsVogarExpectationStore
+                    = VogarUtils.provideExpectationStore(CTS_EXPECTATION_DIR, snapshotDir);
         } catch (IOException e) {
             System.err.println("Can't initialize vogar expectation store from "
                                + libcoreExpectationDir);
@@ -184,9 +194,9 @@ public class CollectAllTests extends DescriptionGenerator {
             libcoreVogarExpectationStore, ctsVogarExpectationStore
         };
 
-        JarFile jarFile = null;
+        TestJar testJar = null;
         try {
-            jarFile = new JarFile(jarFileName);
+            testJar = TestJar.read(jarFileName, Runtime.getRuntime().availableProcessors());
         } catch (Exception e) {
             System.err.println("cannot open jarfile " + jarFileName);
             e.printStackTrace();
@@ -195,15 +205,8 @@ public class CollectAllTests extends DescriptionGenerator {
 
         Map<String,TestClass> testCases = new LinkedHashMap<String, TestClass>();
 
-        Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements()) {
-            JarEntry jarEntry = jarEntries.nextElement();
-            String name = jarEntry.getName();
-            if (!name.endsWith(".class")) {
-                continue;
-            }
-            String className
-                    = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        for (ClassFile classFile : testJar.getClasses()) {
+            String className = classFile.getName().replace('/', '.');
 
             boolean matchesPrefix = false;
             if (javaPackagePrefixes.length > 0) {
@@ -227,45 +230,22 @@ public class CollectAllTests extends DescriptionGenerator {
                 continue;
             }
 
-            try {
-                Class<?> klass = Class.forName(className,
-                                               false,
-                                               CollectAllTests.class.getClassLoader());
-                final int modifiers = klass.getModifiers();
-                if (Modifier.isAbstract(modifiers) || !Modifier.isPublic(modifiers)) {
-                    continue;
-                }
-
-                final boolean isJunit4Class = isJunit4Class(klass);
-                if (!isJunit4Class && !isJunit3Test(klass)) {
-                    continue;
-                }
+            final int modifiers = classFile.getAccess();
+            if ((modifiers & ClassFile.ACC_ABSTRACT) != 0
+                    || (modifiers & ClassFile.ACC_PUBLIC) == 0) {
+                continue;
+            }
 
-                try {
-                    klass.getConstructor(new Class<?>[] { String.class } );
-                    addToTests(expectations, architecture, testCases, klass);
-                    continue;
-                } catch (NoSuchMethodException e) {
-                } catch (SecurityException e) {
-                    System.out.println("Known bug (Working as intended): problem with class "
-                            + className);
-                    e.printStackTrace();
-                }
+            final List<ClassFile.Method> methods = testJar.getPublicMethods(classFile);
+            final boolean isJunit3Test = isJunit3Test(testJar, classFile);
+            if (!isJunit4Class(testJar, classFile, methods) && !isJunit3Test) {
+                continue;
+            }
 
-                try {
-                    klass.getConstructor(new Class<?>[0]);
-                    addToTests(expectations, architecture, testCases, klass);
-                    continue;
-                } catch (NoSuchMethodException e) {
-                } catch (SecurityException e) {
-                    System.out.println("Known bug (Working as intended): problem with class "
-                            + className);
-                    e.printStackTrace();
-                }
-            } catch (ClassNotFoundException e) {
-                System.out.println("class not found " + className);
-                e.printStackTrace();
-                System.exit(1);
+            if (hasPublicConstructor(classFile, "(Ljava/lang/String;)V")
+                    || hasPublicConstructor(classFile, "()V")) {
+                addToTests(expectations, architecture, testCases, className, isJunit3Test,
+                        methods);
             }
         }
 
@@ -344,76 +324,159 @@ public class CollectAllTests extends DescriptionGenerator {
         }
     }
 
-    private static String getKnownFailure(final Class<?> testClass,
-            final String testName) {
-        return getAnnotation(testClass, testName, KNOWN_FAILURE);
-    }
+    /**
+     * The classes of a test jar, read from their class files so that no class gets loaded or
+     * initialized, and none of their dependencies need to be on the class path. Superclasses
+     * outside the jar are read from the class path the same way.
+     */
+    private static class TestJar {
+        private final List<ClassFile> mClasses;
+        private final Map<String, ClassFile> mClassesByName = new HashMap<String, ClassFile>();
+        private final Map<String, ClassFile> mClassPathClasses = new HashMap<String, ClassFile>();
+
+        private TestJar(List<ClassFile> classes) {
+            mClasses = classes;
+            for (ClassFile classFile : classes) {
+                mClassesByName.put(classFile.getName(), classFile);
+            }
+        }
 
-    private static boolean isKnownFailure(final Class<?> testClass,
-            final String testName) {
-        return getAnnotation(testClass, testName, KNOWN_FAILURE) != null;
-    }
+        /** Parses the class files of the jar on the given number of threads. */
+        static TestJar read(String fileName, int threads) throws Exception {
+            final JarFile jarFile = new JarFile(fileName);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Callable<ClassFile>> tasks = new ArrayList<Callable<ClassFile>>();
+                Enumeration<JarEntry> jarEntries = jarFile.entries();
+                while (jarEntries.hasMoreElements()) {
+                    final JarEntry jarEntry = jarEntries.nextElement();
+                    if (!jarEntry.getName().endsWith(".class")) {
+                        continue;
+                    }
+                    tasks.add(new Callable<ClassFile>() {
+                        public ClassFile call() throws IOException {
+                            return parse(jarFile.getInputStream(jarEntry));
+                        }
+                    });
+                }
+                // keep the order of the jar
+                List<ClassFile> classes = new ArrayList<ClassFile>();
+                for (Future<ClassFile> result : executor.invokeAll(tasks)) {
+                    classes.add(result.get());
+                }
+                return new TestJar(classes);
+            } finally {
+                executor.shutdownNow();
+                jarFile.close();
+            }
+        }
 
-    private static boolean isSuppressed(final Class<?> testClass,
-            final String testName)  {
-        return getAnnotation(testClass, testName, SUPPRESSED_TEST) != null;
-    }
+        private static ClassFile parse(InputStream input) throws IOException {
+            InputStream in = new BufferedInputStream(input);
+            try {
+                return ClassFile.parse(in);
+            } finally {
+                in.close();
+            }
+        }
 
-    private static String getAnnotation(final Class<?> testClass,
-            final String testName, final String annotationName) {
-        try {
-            Method testMethod = testClass.getMethod(testName, (Class[])null);
-            Annotation[] annotations = testMethod.getAnnotations();
-            for (Annotation annot : annotations) {
-
-                if (annot.annotationType().getName().equals(annotationName)) {
-                    String annotStr = annot.toString();
-                    String knownFailure = null;
-                    if (annotStr.contains("(value=")) {
-                        knownFailure =
-                            annotStr.substring(annotStr.indexOf("=") + 1,
-                                    annotStr.length() - 1);
+        List<ClassFile> getClasses() {
+            return mClasses;
+        }
 
-                    }
+        /**
+         * Returns the superclass, or null for java.lang.Object. Exits if the superclass is in
+         * neither the jar nor the class path, as the tests of the class could not be listed.
+         */
+        ClassFile getSuperclass(ClassFile classFile) {
+            String name = classFile.getSuperName();
+            if (name == null) {
+                return null;
+            }
+            ClassFile superclass = mClassesByName.get(name);
+            if (superclass == null) {
+                superclass = mClassPathClasses.get(name);
+            }
+            if (superclass != null) {
+                return superclass;
+            }
+            InputStream in = CollectAllTests.class.getClassLoader()
+                    .getResourceAsStream(name + ".class");
+            if (in == null) {
+                System.out.println("class not found " + name.replace('/', '.'));
+                System.exit(1);
+            }
+            try {
+                superclass = parse(in);
+            } catch (IOException e) {
+                System.out.println("cannot read class " + name.replace('/', '.'));
+                e.printStackTrace();
+                System.exit(1);
+            }
+            mClassPathClasses.put(name, superclass);
+            return superclass;
+        }
 
-                    if (knownFailure == null) {
-                        knownFailure = "true";
+        /**
+         * Returns the public methods of the class, including inherited ones, as
+         * {@link Class#getMethods()} does: a method overridden in a subclass is left out.
+         */
+        List<ClassFile.Method> getPublicMethods(ClassFile classFile) {
+            List<ClassFile.Method> methods = new ArrayList<ClassFile.Method>();
+            Set<String> signatures = new HashSet<String>();
+            for (ClassFile c = classFile; c != null; c = getSuperclass(c)) {
+                for (ClassFile.Method method : c.getMethods()) {
+                    if ((method.getAccess() & ClassFile.ACC_PUBLIC) != 0
+                            && !method.getName().startsWith("<")
+                            && signatures.add(method.getName() + method.getDescriptor())) {
+                        methods.add(method);
                     }
-
-                    return knownFailure;
                 }
-
             }
-
-        } catch (NoSuchMethodException e) {
+            return methods;
         }
+    }
+
+    private static boolean hasAnnotation(ClassFile.Method method, String annotationName) {
+        ClassFile.Annotation annotation =
+                method.getAnnotation("L" + annotationName.replace('.', '/') + ";");
+        return annotation != null && annotation.isRuntimeVisible();
+    }
+
+    private static boolean isKnownFailure(ClassFile.Method method) {
+        return hasAnnotation(method, KNOWN_FAILURE);
+    }
+
+    private static boolean isSuppressed(ClassFile.Method method) {
+        return hasAnnotation(method, SUPPRESSED_TEST);
+    }
 
-        return null;
+    private static boolean hasPublicConstructor(ClassFile classFile, String descriptor) {
+        for (ClassFile.Method method : classFile.getMethods()) {
+            if ("<init>".equals(method.getName()) && descriptor.equals(method.getDescriptor())
+                    && (method.getAccess() & ClassFile.ACC_PUBLIC) != 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private static void addToTests(ExpectationStore[] expectations,
                                    String architecture,
                                    Map<String,TestClass> testCases,
-                                   Class<?> testClass) {
+                                   String testClassName,
+                                   boolean isJunit3Test,
+                                   List<ClassFile.Method> testMethods) {
         Set<String> testNames = new HashSet<String>();
 
-        boolean isJunit3Test = isJunit3Test(testClass);
-
-        Method[] testMethods = testClass.getMethods();
-        for (Method testMethod : testMethods) {
+        for (ClassFile.Method testMethod : testMethods) {
             String testName = testMethod.getName();
             if (testNames.contains(testName)) {
                 continue;
             }
 
-            /* Make sure the method has the right signature. */
-            if (!Modifier.isPublic(testMethod.getModifiers())) {
-                continue;
-            }
-            if (!testMethod.getReturnType().equals(Void.TYPE)) {
-                continue;
-            }
-            if (testMethod.getParameterTypes().length != 0) {
+            /* Make sure the method has the right signature: public, no parameters and void. */
+            if (!"()V".equals(testMethod.getDescriptor())) {
                 continue;
             }
 
@@ -423,29 +486,28 @@ public class CollectAllTests extends DescriptionGenerator {
             }
 
             testNames.add(testName);
-            addToTests(expectations, architecture, testCases, testClass, testName);
+            addToTests(expectations, architecture, testCases, testClassName, testMethod);
         }
     }
 
     private static void addToTests(ExpectationStore[] expectations,
                                    String architecture,
                                    Map<String,TestClass> testCases,
-                                   Class<?> test,
-                                   String testName) {
-
-        String testClassName = test.getName();
-        String knownFailure = getKnownFailure(test, testName);
+                                   String testClassName,
+                                   ClassFile.Method testMethod) {
 
-        if (isKnownFailure(test, testName)) {
-            System.out.println("ignoring known failure: " + test + "#" + testName);
+        String testName = testMethod.getName();
+        if (isKnownFailure(testMethod)) {
+            System.out.println("ignoring known failure: class " + testClassName + "#" + testName);
             return;
-        } else if (isSuppressed(test, testName)) {
-            System.out.println("ignoring suppressed test: " + test + "#" + testName);
+        } else if (isSuppressed(testMethod)) {
+            System.out.println("ignoring suppressed test: class " + testClassName + "#"
+                    + testName);
             return;
         } else if (VogarUtils.isVogarKnownFailure(expectations,
                                                   testClassName,
                                                   testName)) {
-            System.out.println("ignoring expectation known failure: " + test
+            System.out.println("ignoring expectation known failure: class " + testClassName
                                + "#" + testName);
             return;
         }
@@ -465,26 +527,35 @@ public class CollectAllTests extends DescriptionGenerator {
             testCases.put(testClassName, testClass);
         }
 
+        // known failures are skipped above, so none is recorded
         testClass.mCases.add(new TestMethod(testName, "", "", supportedAbis,
-              knownFailure, false, false, timeoutInMinutes));
+              null, false, false, timeoutInMinutes));
     }
 
-    private static boolean isJunit3Test(Class<?> klass) {
-        return TestCase.class.isAssignableFrom(klass);
+    private static boolean isJunit3Test(TestJar testJar, ClassFile classFile) {
+        for (ClassFile c = testJar.getSuperclass(classFile); c != null;
+                c = testJar.getSuperclass(c)) {
+            if (JUNIT3_TEST_CASE.equals(c.getName())) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private static boolean isJunit4Class(Class<?> klass) {
-        for (Annotation a : klass.getAnnotations()) {
-            if (RunWith.class.isAssignableFrom(a.annotationType())) {
+    private static boolean isJunit4Class(TestJar testJar, ClassFile classFile,
+            List<ClassFile.Method> publicMethods) {
+        // @RunWith is @Inherited
+        for (ClassFile c = classFile; c != null; c = testJar.getSuperclass(c)) {
+            if (c.getAnnotation(JUNIT4_RUN_WITH) != null) {
                 // @RunWith is currently not supported for CTS tests because tradefed cannot handle
                 // a single test spawning other tests with different names.
-                System.out.println("Skipping test class " + klass.getName()
+                System.out.println("Skipping test class " + classFile.getName().replace('/', '.')
                         + ": JUnit4 @RunWith is not supported");
                 return false;
             }
         }
 
-        for (Method m : klass.getMethods()) {
+        for (ClassFile.Method m : publicMethods) {
             if (isJunit4TestMethod(m)) {
                 return true;
             }
@@ -493,14 +564,9 @@ public class CollectAllTests extends DescriptionGenerator {
         return false;
     }
 
-    private static boolean isJunit4TestMethod(Method method) {
-        for (Annotation a : method.getAnnotations()) {
-            if (org.junit.Test.class.isAssignableFrom(a.annotationType())) {
-                return true;
-            }
-        }
-
-        return false;
+    private static boolean isJunit4TestMethod(ClassFile.Method method) {
+        ClassFile.Annotation test = method.getAnnotation(JUNIT4_TEST);
+        return test != null && test.isRuntimeVisible();
     }
 
     /**
@@ -574,8 +574,7 @@ public class DescriptionGenerator extends Doclet {
                 }
 
                 if (name.startsWith("test")) {
-                    Expectation expectation = expectationStore.get(
-                            VogarUtils.buildFullTestName(clazz.toString(), name));
+                    Expectation expectation = expectationStore.get(clazz.toString(), name);
                     Set<String> supportedAbis =
                             VogarUtils.extractSupportedAbis(architecture, expectation);
                     int timeoutInMinutes = VogarUtils.timeoutInMinutes(expectation);
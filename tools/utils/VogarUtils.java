@@ -17,6 +17,7 @@
 import com.android.cts.util.AbiUtils;
 
 import vogar.Expectation;
+import vogar.ExpectationSnapshot;
 import vogar.ExpectationStore;
 import vogar.ModeId;
 import vogar.Result;
@@ -25,11 +26,18 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 public class VogarUtils {
 
+    /** The parsed ABI lists of expectation descriptions, weakly keyed by expectation. */
+    private static final Map<Expectation, Set<String>> sAbiLists =
+            new WeakHashMap<Expectation, Set<String>>();
+
     public static boolean isVogarKnownFailure(ExpectationStore[] expectationStores,
             final String testClassName,
             final String testMethodName) {
@@ -51,23 +59,52 @@ public class VogarUtils {
         if (expectationStore == null) {
             return false;
         }
-        String fullTestName = buildFullTestName(testClassName, testMethodName);
-        Expectation expectation = expectationStore.get(fullTestName);
+        Expectation expectation = expectationStore.get(testClassName, testMethodName);
         if (expectation.getResult() == Result.SUCCESS) {
             return false;
         }
 
-        String description = expectation.getDescription();
-        boolean foundAbi = AbiUtils.parseAbiList(description).size() > 0;
+        boolean foundAbi = getAbiList(expectation).size() > 0;
 
         return expectation.getResult() != Result.SUCCESS && !foundAbi;
     }
 
+    /**
+     * Returns the ABI list in the description of {@code expectation}. Lists are parsed once per
+     * expectation.
+     */
+    private static Set<String> getAbiList(Expectation expectation) {
+        synchronized (sAbiLists) {
+            Set<String> abis = sAbiLists.get(expectation);
+            if (abis == null) {
+                abis = Collections.unmodifiableSet(
+                        AbiUtils.parseAbiList(expectation.getDescription()));
+                sAbiLists.put(expectation, abis);
+            }
+            return abis;
+        }
+    }
+
     public static ExpectationStore provideExpectationStore(String dir) throws IOException {
+        return provideExpectationStore(dir, null);
+    }
+
+    /**
+     * Returns the expectations in {@code dir}. If {@code snapshotDir} is not null, they are read
+     * from the snapshot kept there when it is fresh, and the snapshot is updated otherwise.
+     */
+    public static ExpectationStore provideExpectationStore(String dir, String snapshotDir)
+            throws IOException {
         if (dir == null) {
             return null;
         }
-        ExpectationStore result = ExpectationStore.parse(getExpectationFiles(dir), ModeId.DEVICE);
+        Set<File> files = getExpectationFiles(dir);
+        if (snapshotDir != null) {
+            File snapshot = ExpectationSnapshot.getFile(new File(snapshotDir), files,
+                    ModeId.DEVICE);
+            return ExpectationStore.load(snapshot, files, ModeId.DEVICE);
+        }
+        ExpectationStore result = ExpectationStore.parse(files, ModeId.DEVICE);
         return result;
     }
 
@@ -85,11 +122,6 @@ public class VogarUtils {
         return expectSet;
     }
 
-    /** @return the test name in the form of com.android.myclass.TestClass#testMyMethod */
-    public static String buildFullTestName(String testClass, String testMethodName) {
-        return String.format("%s#%s", testClass, testMethodName);
-    }
-
     /**
      * This method looks in the description field of the Vogar entry for the ABI_LIST_MARKER
      * and returns the list of abis found there.
@@ -104,7 +136,7 @@ public class VogarUtils {
         }
 
         // Remove any abis that are not supported for the test.
-        supportedAbiSet.removeAll(AbiUtils.parseAbiList(expectation.getDescription()));
+        supportedAbiSet.removeAll(getAbiList(expectation));
 
         return supportedAbiSet;
     }
@@ -120,10 +152,9 @@ public class VogarUtils {
                                                    String className,
                                                    String testName) {
 
-        String fullTestName = buildFullTestName(className, testName);
         Set<String> supportedAbiSet = AbiUtils.getAbisForArch(architecture);
         for (ExpectationStore expectationStore : expectationStores) {
-            Expectation expectation = expectationStore.get(fullTestName);
+            Expectation expectation = expectationStore.get(className, testName);
             supportedAbiSet.retainAll(extractSupportedAbis(architecture, expectation));
         }
 
@@ -157,8 +188,7 @@ public class VogarUtils {
         if (expectationStore == null) {
             return 0;
         }
-        String fullTestName = buildFullTestName(testClassName, testMethodName);
-        return timeoutInMinutes(expectationStore.get(fullTestName));
+        return timeoutInMinutes(expectationStore.get(testClassName, testMethodName));
     }
 
     /**
@@ -25,13 +25,10 @@ import junit.framework.TestResult;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -190,24 +187,20 @@ public class BuildDalvikSuite {
         }
         li.add(method);
     }
-    private String curJunitFileName = null;
-    private String curJunitName = null;
-    private String curJunitFileData = "";
+    private CodeEmitter curJunitFile = null;
 
     private SourceBuildStep hostJunitBuildStep;
 
     private void flushHostJunitFile() {
-        if (curJunitFileName != null) {
-            File toWrite = new File(curJunitFileName);
-            String absPath = toWrite.getAbsolutePath();
+        if (curJunitFile != null) {
+            String absPath = curJunitFile.getFile().getAbsolutePath();
             // add to java source files for later compilation
             hostJunitBuildStep.addSourceFile(absPath);
-            // write file
-            curJunitFileData += "\n}\n";
-            writeToFileMkdir(toWrite, curJunitFileData);
+            // finish and write file
+            curJunitFile.append("\n}\n");
+            curJunitFile.close();
 
-            curJunitFileName = null;
-            curJunitFileData = "";
+            curJunitFile = null;
         }
     }
 
@@ -217,9 +210,10 @@ public class BuildDalvikSuite {
         String sourceName = "JUnit_" + classOnlyName;
 
         // prepare current testcase-file
-        curJunitFileName = HOSTJUNIT_SRC_OUTPUT_FOLDER + "/" + pName.replaceAll("\\.","/") + "/" +
-        sourceName + ".java";
-        curJunitFileData = getWarningMessage() +
+        String curJunitFileName = HOSTJUNIT_SRC_OUTPUT_FOLDER + "/" +
+                pName.replaceAll("\\.","/") + "/" + sourceName + ".java";
+        curJunitFile = CodeEmitter.open(new File(curJunitFileName));
+        curJunitFile.append(getWarningMessage()).append(
         "package " + pName + ";\n" +
         "import java.io.IOException;\n" +
         "import java.util.concurrent.TimeUnit;\n\n" +
@@ -229,14 +223,13 @@ public class BuildDalvikSuite {
         "import com.android.tradefed.testtype.DeviceTestCase;\n" +
         "import com.android.tradefed.util.AbiFormatter;\n" +
         "\n" +
-        "public class " + sourceName + " extends DeviceTestCase implements IAbiReceiver {\n";
+        "public class " + sourceName + " extends DeviceTestCase implements IAbiReceiver {\n");
     }
 
-    private String getShellExecJavaLine(String classpath, String mainclass) {
+    private void emitShellExecJavaLine(CodeEmitter code, String classpath, String mainclass) {
       String cmd = String.format("ANDROID_DATA=%s dalvikvm|#ABI#| -Xmx512M -Xss32K " +
               "-Djava.io.tmpdir=%s -classpath %s %s", TARGET_JAR_ROOT_PATH, TARGET_JAR_ROOT_PATH,
               classpath, mainclass);
-      StringBuilder code = new StringBuilder();
       code.append("    String cmd = AbiFormatter.formatCmdForAbi(\"")
           .append(cmd)
           .append("\", mAbi.getBitness());\n")
@@ -244,7 +237,6 @@ public class BuildDalvikSuite {
           .append("    getDevice().executeShellCommand(cmd, receiver, 6, TimeUnit.MINUTES, 1);\n")
           .append("    // A sucessful adb shell command returns an empty string.\n")
           .append("    assertEquals(cmd, \"\", receiver.getOutput());");
-      return code.toString();
     }
 
     private String getWarningMessage() {
@@ -253,7 +245,7 @@ public class BuildDalvikSuite {
 
     private void addCTSHostMethod(String pName, String method, MethodData md,
             Set<String> dependentTestClassNames) {
-        curJunitFileData += "public void " + method + "() throws Exception {\n";
+        curJunitFile.append("public void ").append(method).append("() throws Exception {\n");
         final String targetCoreJarPath = String.format("%s/dot/junit/dexcore.jar",
                 TARGET_JAR_ROOT_PATH);
 
@@ -262,27 +254,26 @@ public class BuildDalvikSuite {
         String pPath = pName.replaceAll("\\.","/");
         String mainJar = String.format("%s/%s/%s", TARGET_JAR_ROOT_PATH, pPath, mjar);
 
-        String cp = String.format("%s:%s", targetCoreJarPath, mainJar);
+        StringBuilder cp = new StringBuilder();
+        cp.append(targetCoreJarPath).append(':').append(mainJar);
         for (String depFqcn : dependentTestClassNames) {
-            int lastDotPos = depFqcn.lastIndexOf('.');
-            String sourceName = depFqcn.replaceAll("\\.", "/") + ".jar";
-            String targetName= String.format("%s/%s", TARGET_JAR_ROOT_PATH,
-                    sourceName);
-            cp += ":" + targetName;
+            String sourceName = depFqcn.replace('.', '/') + ".jar";
+            cp.append(':').append(TARGET_JAR_ROOT_PATH).append('/').append(sourceName);
             // dot.junit.opcodes.invoke_interface_range.ITest
             // -> dot/junit/opcodes/invoke_interface_range/ITest.jar
         }
 
         //"dot.junit.opcodes.add_double_2addr.Main_testN2";
         String mainclass = pName + ".Main_" + method;
-        curJunitFileData += getShellExecJavaLine(cp, mainclass);
-        curJunitFileData += "\n}\n\n";
+        emitShellExecJavaLine(curJunitFile, cp.toString(), mainclass);
+        curJunitFile.append("\n}\n\n");
     }
 
     private void handleTests() throws IOException {
         System.out.println("collected " + testMethodsCnt + " test methods in " +
                 testClassCnt + " junit test classes");
-        String datafileContent = "";
+        File scriptDataDir = new File(OUTPUT_FOLDER + "/data/");
+        CodeEmitter datafile = CodeEmitter.open(new File(scriptDataDir, "scriptdata"));
         Set<BuildStep> targets = new TreeSet<BuildStep>();
 
         SourceBuildStep srcBuildStep;
@@ -291,181 +282,193 @@ public class BuildDalvikSuite {
 
         srcBuildStep = new JavacBuildStep(CLASSES_OUTPUT_FOLDER, CLASS_PATH);
 
-        for (Entry<String, List<String>> entry : map.entrySet()) {
-
-            String fqcn = entry.getKey();
-            int lastDotPos = fqcn.lastIndexOf('.');
-            String pName = fqcn.substring(0, lastDotPos);
-            String classOnlyName = fqcn.substring(lastDotPos + 1);
-            String instPrefix = "new " + classOnlyName + "()";
+        try {
+            for (Entry<String, List<String>> entry : map.entrySet()) {
+
+                String fqcn = entry.getKey();
+                int lastDotPos = fqcn.lastIndexOf('.');
+                String pName = fqcn.substring(0, lastDotPos);
+                String classOnlyName = fqcn.substring(lastDotPos + 1);
+                String instPrefix = "new " + classOnlyName + "()";
+
+                openCTSHostFileFor(pName, classOnlyName);
+
+                curJunitFile.append("\n" +
+                        "protected IAbi mAbi;\n" +
+                        "@Override\n" +
+                        "public void setAbi(IAbi abi) {\n" +
+                        "    mAbi = abi;\n" +
+                        "}\n\n");
+
+                List<String> methods = entry.getValue();
+                Collections.sort(methods, new Comparator<String>() {
+                    public int compare(String s1, String s2) {
+                        // TODO sort according: test ... N, B, E, VFE
+                        return s1.compareTo(s2);
+                    }
+                });
+                for (String method : methods) {
+                    // e.g. testN1
+                    if (!method.startsWith("test")) {
+                        throw new RuntimeException("no test method: " + method);
+                    }
 
-            openCTSHostFileFor(pName, classOnlyName);
+                    // generate the Main_xx java class
 
-            curJunitFileData += "\n" +
-                    "protected IAbi mAbi;\n" +
-                    "@Override\n" +
-                    "public void setAbi(IAbi abi) {\n" +
-                    "    mAbi = abi;\n" +
-                    "}\n\n";
+                    // a Main_testXXX.java contains:
+                    // package <packagenamehere>;
+                    // public class Main_testxxx {
+                    // public static void main(String[] args) {
+                    // new dxc.junit.opcodes.aaload.Test_aaload().testN1();
+                    // }
+                    // }
+                    MethodData md = parseTestMethod(pName, classOnlyName, method);
+                    String methodContent = md.methodBody;
 
-            List<String> methods = entry.getValue();
-            Collections.sort(methods, new Comparator<String>() {
-                public int compare(String s1, String s2) {
-                    // TODO sort according: test ... N, B, E, VFE
-                    return s1.compareTo(s2);
-                }
-            });
-            for (String method : methods) {
-                // e.g. testN1
-                if (!method.startsWith("test")) {
-                    throw new RuntimeException("no test method: " + method);
-                }
+                    Set<String> dependentTestClassNames = parseTestClassName(pName,
+                            classOnlyName, methodContent);
 
-                // generate the Main_xx java class
+                    addCTSHostMethod(pName, method, md, dependentTestClassNames);
 
-                // a Main_testXXX.java contains:
-                // package <packagenamehere>;
-                // public class Main_testxxx {
-                // public static void main(String[] args) {
-                // new dxc.junit.opcodes.aaload.Test_aaload().testN1();
-                // }
-                // }
-                MethodData md = parseTestMethod(pName, classOnlyName, method);
-                String methodContent = md.methodBody;
 
-                Set<String> dependentTestClassNames = parseTestClassName(pName,
-                        classOnlyName, methodContent);
-
-                addCTSHostMethod(pName, method, md, dependentTestClassNames);
+                    if (dependentTestClassNames.isEmpty()) {
+                        continue;
+                    }
 
 
-                if (dependentTestClassNames.isEmpty()) {
-                    continue;
-                }
+                    File sourceFile = getFileFromPackage(pName, method);
+
+                    CodeEmitter mainFile = CodeEmitter.open(sourceFile);
+                    try {
+                        mainFile.append(getWarningMessage())
+                                .append("package ").append(pName).append(";\n")
+                                .append("import ").append(pName).append(".d.*;\n")
+                                .append("import dot.junit.*;\n")
+                                .append("public class Main_").append(method)
+                                .append(" extends DxAbstractMain {\n")
+                                .append("    public static void main(String[] args)")
+                                .append(" throws Exception {")
+                                .append(methodContent).append("\n}\n");
+                        mainFile.close();
+                    } finally {
+                        mainFile.abort();
+                    }
+                    if (useJack) {
+                        File jackFile = new File(CLASSES_OUTPUT_FOLDER + "/" +
+                                getFileName(pName, method, ".jack"));
+                        JackBuildStep step = new JackBuildStep(jackFile.getAbsolutePath(),
+                                CLASS_PATH);
+                        step.addSourceFile(sourceFile.getAbsolutePath());
+                        if (!step.build()) {
+                            System.out.println("main src dalvik-cts-buildutil build step failed");
+                            System.exit(1);
+                        }
+                    } else {
+                        srcBuildStep.addSourceFile(sourceFile.getAbsolutePath());
+                    }
 
+                    BuildStep dexBuildStep = generateDexBuildStep(
+                            CLASSES_OUTPUT_FOLDER, getFileName(pName, method, ""), null);
+                    targets.add(dexBuildStep);
 
-                String content = getWarningMessage() +
-                "package " + pName + ";\n" +
-                "import " + pName + ".d.*;\n" +
-                "import dot.junit.*;\n" +
-                "public class Main_" + method + " extends DxAbstractMain {\n" +
-                "    public static void main(String[] args) throws Exception {" +
-                methodContent + "\n}\n";
 
-                File sourceFile = getFileFromPackage(pName, method);
+                    // prepare the entry in the data file for the bash script.
+                    // e.g.
+                    // main class to execute; opcode/constraint; test purpose
+                    // dxc.junit.opcodes.aaload.Main_testN1;aaload;normal case test
+                    // (#1)
 
-                writeToFile(sourceFile, content);
-                if (useJack) {
-                    File jackFile = new File(CLASSES_OUTPUT_FOLDER + "/" +
-                            getFileName(pName, method, ".jack"));
-                    JackBuildStep step = new JackBuildStep(jackFile.getAbsolutePath(), CLASS_PATH);
-                    step.addSourceFile(sourceFile.getAbsolutePath());
-                    if (!step.build()) {
-                        System.out.println("main src dalvik-cts-buildutil build step failed");
-                        System.exit(1);
+                    char ca = method.charAt("test".length()); // either N,B,E,
+                    // or V (VFE)
+                    String comment;
+                    switch (ca) {
+                    case 'N':
+                        comment = "Normal #" + method.substring(5);
+                        break;
+                    case 'B':
+                        comment = "Boundary #" + method.substring(5);
+                        break;
+                    case 'E':
+                        comment = "Exception #" + method.substring(5);
+                        break;
+                    case 'V':
+                        comment = "Verifier #" + method.substring(7);
+                        break;
+                    default:
+                        throw new RuntimeException("unknown test abbreviation:"
+                                + method + " for " + fqcn);
                     }
-                } else {
-                    srcBuildStep.addSourceFile(sourceFile.getAbsolutePath());
-                }
-
-                BuildStep dexBuildStep = generateDexBuildStep(
-                        CLASSES_OUTPUT_FOLDER, getFileName(pName, method, ""), null);
-                targets.add(dexBuildStep);
-
 
-                // prepare the entry in the data file for the bash script.
-                // e.g.
-                // main class to execute; opcode/constraint; test purpose
-                // dxc.junit.opcodes.aaload.Main_testN1;aaload;normal case test
-                // (#1)
-
-                char ca = method.charAt("test".length()); // either N,B,E,
-                // or V (VFE)
-                String comment;
-                switch (ca) {
-                case 'N':
-                    comment = "Normal #" + method.substring(5);
-                    break;
-                case 'B':
-                    comment = "Boundary #" + method.substring(5);
-                    break;
-                case 'E':
-                    comment = "Exception #" + method.substring(5);
-                    break;
-                case 'V':
-                    comment = "Verifier #" + method.substring(7);
-                    break;
-                default:
-                    throw new RuntimeException("unknown test abbreviation:"
-                            + method + " for " + fqcn);
-                }
+                    datafile.append(pName).append(".Main_").append(method).append(';');
+                    for (String className : dependentTestClassNames) {
+                        datafile.append(className).append(' ');
+                    }
 
-                String line = pName + ".Main_" + method + ";";
-                for (String className : dependentTestClassNames) {
-                    line += className + " ";
-                }
 
+                    // test description
+                    String[] pparts = pName.split("\\.");
+                    // detail e.g. add_double
+                    String detail = pparts[pparts.length-1];
+                    // type := opcode | verify
+                    String type = pparts[pparts.length-2];
+
+                    String description;
+                    if ("format".equals(type)) {
+                        description = "format";
+                    } else if ("opcodes".equals(type)) {
+                        // Beautify name, so it matches the actual mnemonic
+                        detail = detail.replaceAll("_", "-");
+                        detail = detail.replace("-from16", "/from16");
+                        detail = detail.replace("-high16", "/high16");
+                        detail = detail.replace("-lit8", "/lit8");
+                        detail = detail.replace("-lit16", "/lit16");
+                        detail = detail.replace("-4", "/4");
+                        detail = detail.replace("-16", "/16");
+                        detail = detail.replace("-32", "/32");
+                        detail = detail.replace("-jumbo", "/jumbo");
+                        detail = detail.replace("-range", "/range");
+                        detail = detail.replace("-2addr", "/2addr");
+
+                        // Unescape reserved words
+                        detail = detail.replace("opc-", "");
+
+                        description = detail;
+                    } else if ("verify".equals(type)) {
+                        description = "verifier";
+                    } else {
+                        description = type + " " + detail;
+                    }
 
-                // test description
-                String[] pparts = pName.split("\\.");
-                // detail e.g. add_double
-                String detail = pparts[pparts.length-1];
-                // type := opcode | verify
-                String type = pparts[pparts.length-2];
-
-                String description;
-                if ("format".equals(type)) {
-                    description = "format";
-                } else if ("opcodes".equals(type)) {
-                    // Beautify name, so it matches the actual mnemonic
-                    detail = detail.replaceAll("_", "-");
-                    detail = detail.replace("-from16", "/from16");
-                    detail = detail.replace("-high16", "/high16");
-                    detail = detail.replace("-lit8", "/lit8");
-                    detail = detail.replace("-lit16", "/lit16");
-                    detail = detail.replace("-4", "/4");
-                    detail = detail.replace("-16", "/16");
-                    detail = detail.replace("-32", "/32");
-                    detail = detail.replace("-jumbo", "/jumbo");
-                    detail = detail.replace("-range", "/range");
-                    detail = detail.replace("-2addr", "/2addr");
-
-                    // Unescape reserved words
-                    detail = detail.replace("opc-", "");
-
-                    description = detail;
-                } else if ("verify".equals(type)) {
-                    description = "verifier";
-                } else {
-                    description = type + " " + detail;
-                }
+                    String details = (md.title != null ? md.title : "");
+                    if (md.constraint != null) {
+                        details = " Constraint " + md.constraint + ", " + details;
+                    }
+                    if (details.length() != 0) {
+                        details = details.substring(0, 1).toUpperCase()
+                                + details.substring(1);
+                    }
 
-                String details = (md.title != null ? md.title : "");
-                if (md.constraint != null) {
-                    details = " Constraint " + md.constraint + ", " + details;
-                }
-                if (details.length() != 0) {
-                    details = details.substring(0, 1).toUpperCase()
-                            + details.substring(1);
+                    datafile.append(';').append(description).append(';').append(comment)
+                            .append(';').append(details).append('\n');
+                    generateBuildStepFor(pName, method, dependentTestClassNames,
+                            targets);
                 }
 
-                line += ";" + description + ";" + comment + ";" + details;
 
-                datafileContent += line + "\n";
-                generateBuildStepFor(pName, method, dependentTestClassNames,
-                        targets);
             }
 
+            // write latest HOSTJUNIT generated file.
+            flushHostJunitFile();
 
+            datafile.close();
+        } finally {
+            datafile.abort();
+            if (curJunitFile != null) {
+                curJunitFile.abort();
+                curJunitFile = null;
+            }
         }
 
-        // write latest HOSTJUNIT generated file.
-        flushHostJunitFile();
-
-        File scriptDataDir = new File(OUTPUT_FOLDER + "/data/");
-        scriptDataDir.mkdirs();
-        writeToFile(new File(scriptDataDir, "scriptdata"), datafileContent);
-
         if (!hostJunitBuildStep.build()) {
             System.out.println("main javac cts-host-hostjunit-classes build step failed");
             System.exit(1);
@@ -806,41 +809,6 @@ public class BuildDalvikSuite {
         return md;
     }
 
-    private void writeToFileMkdir(File file, String content) {
-        File parent = file.getParentFile();
-        if (!parent.exists() && !parent.mkdirs()) {
-            throw new RuntimeException("failed to create directory: " + parent.getAbsolutePath());
-        }
-        writeToFile(file, content);
-    }
-
-    private void writeToFile(File file, String content) {
-        try {
-            if (file.exists() && file.length() == content.length()) {
-                FileReader reader = new FileReader(file);
-                char[] charContents = new char[(int) file.length()];
-                reader.read(charContents);
-                reader.close();
-                String contents = new String(charContents);
-                if (contents.equals(content)) {
-                    // System.out.println("skipping identical: "
-                    // + file.getAbsolutePath());
-                    return;
-                }
-            }
-
-            //System.out.println("writing file " + file.getAbsolutePath());
-
-            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(file), "utf-8"));
-            bw.write(content);
-            bw.close();
-        } catch (Exception e) {
-            throw new RuntimeException("error while writing to file: " + e.getClass().getName() +
-                    ", msg:" + e.getMessage());
-        }
-    }
-
     private File getFileFromPackage(String pname, String methodName)
     throws IOException {
         // e.g. dxc.junit.argsreturns.pargsreturn
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util.build;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Streams generated source or data files to disk instead of accumulating them
+ * in a single String.
+ * <p>
+ * Content is written to a temporary sibling of the target file. On
+ * {@link #close()} the temporary file replaces the target, unless the target
+ * already has identical content, in which case it is left untouched so that
+ * its timestamp does not trigger needless recompilation. If generation fails,
+ * {@link #abort()} deletes the temporary file and leaves the target as it was.
+ */
+class CodeEmitter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mTarget;
+    private final File mTmp;
+    private final Writer mWriter;
+    private boolean mDone;
+
+    private CodeEmitter(File target) throws IOException {
+        mTarget = target;
+        mTmp = new File(target.getPath() + ".tmp");
+        mWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(mTmp), "utf-8"), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens an emitter for the given file, creating its parent folder if needed.
+     */
+    static CodeEmitter open(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new RuntimeException("failed to create directory: " + parent.getAbsolutePath());
+        }
+        try {
+            return new CodeEmitter(file);
+        } catch (IOException e) {
+            throw new RuntimeException("error while opening file: " + e.getClass().getName() +
+                    ", msg:" + e.getMessage());
+        }
+    }
+
+    File getFile() {
+        return mTarget;
+    }
+
+    CodeEmitter append(String s) {
+        try {
+            mWriter.write(s);
+        } catch (IOException e) {
+            throw new RuntimeException("error while writing to file: " + e.getClass().getName() +
+                    ", msg:" + e.getMessage());
+        }
+        return this;
+    }
+
+    CodeEmitter append(char c) {
+        try {
+            mWriter.write(c);
+        } catch (IOException e) {
+            throw new RuntimeException("error while writing to file: " + e.getClass().getName() +
+                    ", msg:" + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (mDone) {
+            return;
+        }
+        mDone = true;
+        try {
+            mWriter.close();
+            if (mTarget.exists() && sameContent(mTmp, mTarget)) {
+                mTmp.delete();
+                return;
+            }
+            if (!mTmp.renameTo(mTarget)) {
+                // renameTo does not replace existing files on every platform
+                mTarget.delete();
+                if (!mTmp.renameTo(mTarget)) {
+                    throw new IOException("failed to rename " + mTmp + " to " + mTarget);
+                }
+            }
+        } catch (IOException e) {
+            mTmp.delete();
+            throw new RuntimeException("error while writing to file: " + e.getClass().getName() +
+                    ", msg:" + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards the content written so far unless {@link #close()} already
+     * completed, so that no temporary file is left behind. Call it from a
+     * finally block after {@link #close()}.
+     */
+    void abort() {
+        if (mDone) {
+            return;
+        }
+        mDone = true;
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            // the content is discarded anyway
+        }
+        mTmp.delete();
+    }
+
+    private static boolean sameContent(File a, File b) throws IOException {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        InputStream ia = new BufferedInputStream(new FileInputStream(a), BUFFER_SIZE);
+        InputStream ib = new BufferedInputStream(new FileInputStream(b), BUFFER_SIZE);
+        try {
+            int ca;
+            while ((ca = ia.read()) != -1) {
+                if (ca != ib.read()) {
+                    return false;
+                }
+            }
+            return ib.read() == -1;
+        } finally {
+            ia.close();
+            ib.close();
+        }
+    }
+}